@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.ma2;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Iteration over the values of an {@link Array}, as a whole, as a strided section, and transposed. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ArrayBenchmark {
+  private static final int[] SHAPE = {32, 256, 256};
+
+  public enum View {
+    canonical, section, transposed
+  }
+
+  @Param
+  public View view;
+
+  private Array array;
+
+  @Setup
+  public void setup() throws InvalidRangeException {
+    Array data = Array.factory(DataType.FLOAT, SHAPE);
+    for (int i = 0; i < data.getSize(); i++) {
+      data.setFloat(i, i % 1000);
+    }
+    switch (view) {
+      case canonical:
+        array = data;
+        break;
+      case section:
+        array = data.section(new Section("0:31:2,10:245,0:255:3").getRanges());
+        break;
+      default:
+        array = data.transpose(1, 2);
+    }
+  }
+
+  @Benchmark
+  public double indexIterator() {
+    double sum = 0;
+    IndexIterator iter = array.getIndexIterator();
+    while (iter.hasNext()) {
+      sum += iter.getFloatNext();
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public double index() {
+    double sum = 0;
+    Index index = array.getIndex();
+    int[] shape = array.getShape();
+    for (int i = 0; i < shape[0]; i++) {
+      for (int j = 0; j < shape[1]; j++) {
+        for (int k = 0; k < shape[2]; k++) {
+          sum += array.getFloat(index.set(i, j, k));
+        }
+      }
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public double copyTo1DJavaArray() {
+    float[] values = (float[]) array.get1DJavaArray(DataType.FLOAT);
+    double sum = 0;
+    for (float value : values) {
+      sum += value;
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.ma2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * {@link Section} intersection of a requested subset with each chunk of a chunked variable, as done when reading
+ * chunked data, with and without a stride in the request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SectionBenchmark {
+  private static final int[] SHAPE = {64, 1024, 1024};
+  private static final int[] CHUNK = {1, 128, 128};
+
+  @Param({"0:63,100:899,100:899", "0:63:4,100:899:3,100:899:7"})
+  public String request;
+
+  private Section section;
+  private List<Section> chunks;
+
+  @Setup
+  public void setup() throws InvalidRangeException {
+    section = new Section(request);
+    chunks = new ArrayList<>();
+    for (int t = 0; t < SHAPE[0]; t += CHUNK[0]) {
+      for (int y = 0; y < SHAPE[1]; y += CHUNK[1]) {
+        for (int x = 0; x < SHAPE[2]; x += CHUNK[2]) {
+          chunks.add(new Section(new int[] {t, y, x}, CHUNK));
+        }
+      }
+    }
+  }
+
+  @Benchmark
+  public void intersectChunks(Blackhole bh) throws InvalidRangeException {
+    for (Section chunk : chunks) {
+      if (section.intersects(chunk)) {
+        bh.consume(section.intersect(chunk));
+      }
+    }
+  }
+
+  @Benchmark
+  public Section parse() throws InvalidRangeException {
+    return new Section(request);
+  }
+}
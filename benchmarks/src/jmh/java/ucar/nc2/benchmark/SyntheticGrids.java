@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import ucar.ma2.Array;
+import ucar.ma2.ArrayFloat;
+import ucar.ma2.ArrayInt;
+import ucar.ma2.DataType;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.Attribute;
+import ucar.nc2.Variable;
+import ucar.nc2.constants.CDM;
+import ucar.nc2.write.Nc4Chunking;
+import ucar.nc2.write.NetcdfFileFormat;
+import ucar.nc2.write.NetcdfFormatWriter;
+
+/**
+ * Writes the synthetic files the benchmarks read: a float variable "data(time, y, x)" holding a smooth field
+ * plus a little noise, so that it compresses about as well as real model output, and a coordinate "time(time)".
+ */
+public final class SyntheticGrids {
+  public static final String VAR_NAME = "data";
+
+  private SyntheticGrids() {}
+
+  /**
+   * Write a grid.
+   *
+   * @param location write to this file; overwritten if it exists.
+   * @param format file format; netcdf-4 files are written in pure Java.
+   * @param chunker netcdf-4 chunking, or null for netcdf-3.
+   * @param chunkSizes _ChunkSizes for the data variable, or null for the chunker's choice.
+   * @param unlimited make time the record dimension.
+   * @param timeOffset value of the first time coordinate, so that files can be aggregated.
+   * @param shape {ntimes, ny, nx}.
+   */
+  public static void write(String location, NetcdfFileFormat format, Nc4Chunking chunker, int[] chunkSizes,
+      boolean unlimited, int timeOffset, int[] shape) throws IOException {
+    int ntimes = shape[0];
+    int ny = shape[1];
+    int nx = shape[2];
+
+    NetcdfFormatWriter.Builder builder = format.isNetcdf4Format()
+        ? NetcdfFormatWriter.createNewNetcdf4(format, location, chunker).setUsePureJava(true)
+        : NetcdfFormatWriter.createNewNetcdf3(location);
+    if (unlimited) {
+      builder.addUnlimitedDimension("time");
+    } else {
+      builder.addDimension("time", ntimes);
+    }
+    builder.addDimension("y", ny);
+    builder.addDimension("x", nx);
+    builder.addVariable("time", DataType.INT, "time").addAttribute(new Attribute(CDM.UNITS, "hours since 2024-01-01"));
+    Variable.Builder<?> data = builder.addVariable(VAR_NAME, DataType.FLOAT, "time y x");
+    if (chunkSizes != null) {
+      data.addAttribute(Attribute.builder(CDM.CHUNK_SIZES).setValues(Array.makeFromJavaArray(chunkSizes))
+          .build());
+    }
+
+    Random random = new Random(location.hashCode());
+    try (NetcdfFormatWriter writer = builder.build()) {
+      ArrayInt.D1 times = new ArrayInt.D1(ntimes, false);
+      ArrayFloat.D3 values = new ArrayFloat.D3(1, ny, nx);
+      for (int t = 0; t < ntimes; t++) {
+        times.set(t, timeOffset + t);
+        for (int j = 0; j < ny; j++) {
+          for (int i = 0; i < nx; i++) {
+            float value = (float) (280 + 10 * Math.sin((i + t) / 20.0) + 5 * Math.cos(j / 15.0));
+            values.set(0, j, i, value + (float) random.nextGaussian() * 0.1f);
+          }
+        }
+        writer.write(VAR_NAME, new int[] {t, 0, 0}, values);
+      }
+      writer.write("time", times);
+    } catch (InvalidRangeException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /** Delete dir and the files in it. */
+  public static void delete(File dir) {
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    dir.delete();
+  }
+}
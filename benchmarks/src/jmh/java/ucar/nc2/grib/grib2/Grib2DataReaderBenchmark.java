@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.grib.grib2;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import ucar.unidata.io.RandomAccessFile;
+
+/**
+ * Decoding of GRIB-2 data sections with {@link Grib2DataReader}, for each data representation template that can
+ * be encoded here: simple packing (0), complex packing (2), complex packing with second order spatial differencing
+ * (3), and PNG (41). The data representation and data sections are written for a smooth 12 bit field on a
+ * 0.5 degree global grid; templates 40 (JPEG 2000) and 50002 (ECMWF second order packing) have no encoder.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class Grib2DataReaderBenchmark {
+  private static final int NX = 720;
+  private static final int NY = 361;
+  private static final int NBITS = 12;
+  private static final int GROUP_LENGTH = 32;
+  private static final int SPATIAL_BYTES = 2;
+
+  @Param({"0", "2", "3", "41"})
+  public int template;
+
+  private File file;
+  private RandomAccessFile raf;
+  private Grib2Drs gdrs;
+  private Grib2DataReader reader;
+  private final Grib2SectionBitMap noBitmap = new Grib2SectionBitMap(0, 255);
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    int[] values = makeField();
+
+    ByteArrayOutputStream drsBytes = new ByteArrayOutputStream();
+    DataOutputStream drs = new DataOutputStream(drsBytes);
+    byte[] data;
+    switch (template) {
+      case 0:
+        data = simplePacking(drs, values);
+        break;
+      case 2:
+        data = complexPacking(drs, values, false);
+        break;
+      case 3:
+        data = complexPacking(drs, values, true);
+        break;
+      case 41:
+        data = pngPacking(drs, values);
+        break;
+      default:
+        throw new IllegalArgumentException("Cant encode DRS template " + template);
+    }
+
+    file = File.createTempFile("grib2Benchmark", ".bin");
+    try (OutputStream out = new FileOutputStream(file)) {
+      drsBytes.writeTo(out);
+      DataOutputStream section7 = new DataOutputStream(out);
+      section7.writeInt(5 + data.length);
+      section7.writeByte(7);
+      section7.write(data);
+    }
+
+    raf = new RandomAccessFile(file.getPath(), "r");
+    gdrs = Grib2Drs.factory(template, raf);
+    reader = new Grib2DataReader(template, values.length, values.length, 0, NX, drsBytes.size(), 5 + data.length);
+
+    // make sure that what is being timed is a correct decoding
+    float[] decoded = reader.getData(raf, noBitmap, gdrs);
+    for (int i = 0; i < values.length; i++) {
+      if (decoded[i] != values[i]) {
+        throw new IllegalStateException("template " + template + " decodes " + decoded[i] + " != " + values[i]);
+      }
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    raf.close();
+    file.delete();
+  }
+
+  @Benchmark
+  public float[] getData() throws IOException {
+    return reader.getData(raf, noBitmap, gdrs);
+  }
+
+  private static int[] makeField() {
+    Random random = new Random(42);
+    int[] values = new int[NX * NY];
+    for (int j = 0; j < NY; j++) {
+      for (int i = 0; i < NX; i++) {
+        double value = 2048 + 1500 * Math.sin(i / 40.0) * Math.cos(j / 30.0) + random.nextInt(7) - 3;
+        values[j * NX + i] = (int) Math.max(0, Math.min((1 << NBITS) - 1, Math.round(value)));
+      }
+    }
+    return values;
+  }
+
+  /** Template 5.0 for reference value 0, no scaling, and the given number of bits. */
+  private static void writeTemplate0(DataOutputStream drs, int nbits) throws IOException {
+    drs.writeFloat(0); // reference value
+    drs.writeShort(0); // binary scale factor
+    drs.writeShort(0); // decimal scale factor
+    drs.writeByte(nbits);
+    drs.writeByte(1); // integer
+  }
+
+  private static byte[] simplePacking(DataOutputStream drs, int[] values) throws IOException {
+    writeTemplate0(drs, NBITS);
+    BitWriter writer = new BitWriter();
+    for (int value : values) {
+      writer.write(value, NBITS);
+    }
+    return writer.toByteArray();
+  }
+
+  /** Templates 5.2 and 5.3, using groups of a fixed length. */
+  private static byte[] complexPacking(DataOutputStream drs, int[] values, boolean spatialDifferencing)
+      throws IOException {
+    int n = values.length;
+    int[] packed = values;
+    int minsd = 0;
+    if (spatialDifferencing) {
+      // second order differences; the first two values are sent separately
+      packed = new int[n];
+      minsd = Integer.MAX_VALUE;
+      for (int i = 2; i < n; i++) {
+        packed[i] = values[i] - 2 * values[i - 1] + values[i - 2];
+        minsd = Math.min(minsd, packed[i]);
+      }
+      for (int i = 2; i < n; i++) {
+        packed[i] -= minsd;
+      }
+    }
+
+    int ngroups = (n + GROUP_LENGTH - 1) / GROUP_LENGTH;
+    int lastGroupLength = n - (ngroups - 1) * GROUP_LENGTH;
+    int[] refs = new int[ngroups];
+    int[] widths = new int[ngroups];
+    int maxRef = 0;
+    int maxWidth = 0;
+    for (int g = 0; g < ngroups; g++) {
+      int min = Integer.MAX_VALUE;
+      int max = Integer.MIN_VALUE;
+      for (int i = g * GROUP_LENGTH; i < Math.min(n, (g + 1) * GROUP_LENGTH); i++) {
+        min = Math.min(min, packed[i]);
+        max = Math.max(max, packed[i]);
+      }
+      refs[g] = min;
+      widths[g] = bitsNeeded(max - min);
+      maxRef = Math.max(maxRef, min);
+      maxWidth = Math.max(maxWidth, widths[g]);
+    }
+    int refBits = bitsNeeded(maxRef);
+    int widthBits = bitsNeeded(maxWidth);
+
+    writeTemplate0(drs, refBits);
+    drs.writeByte(1); // group splitting method: general
+    drs.writeByte(0); // no missing values
+    drs.writeFloat(0); // primary missing value
+    drs.writeFloat(0); // secondary missing value
+    drs.writeInt(ngroups);
+    drs.writeByte(0); // reference for group widths
+    drs.writeByte(widthBits);
+    drs.writeInt(GROUP_LENGTH); // reference for group lengths
+    drs.writeByte(1); // length increment
+    drs.writeInt(lastGroupLength);
+    drs.writeByte(0); // bits for the scaled group lengths: all groups have the reference length
+    if (spatialDifferencing) {
+      drs.writeByte(2); // order of spatial differencing
+      drs.writeByte(SPATIAL_BYTES);
+    }
+
+    BitWriter writer = new BitWriter();
+    if (spatialDifferencing) {
+      writer.writeSigned(values[0], SPATIAL_BYTES * 8);
+      writer.writeSigned(values[1], SPATIAL_BYTES * 8);
+      writer.writeSigned(minsd, SPATIAL_BYTES * 8);
+      writer.align();
+    }
+    for (int ref : refs) {
+      writer.write(ref, refBits);
+    }
+    writer.align();
+    for (int width : widths) {
+      writer.write(width, widthBits);
+    }
+    writer.align();
+    for (int g = 0; g < ngroups; g++) {
+      for (int i = g * GROUP_LENGTH; i < Math.min(n, (g + 1) * GROUP_LENGTH); i++) {
+        writer.write(packed[i] - refs[g], widths[g]);
+      }
+    }
+    return writer.toByteArray();
+  }
+
+  /** Template 5.41 as a 16 bit grayscale PNG. */
+  private static byte[] pngPacking(DataOutputStream drs, int[] values) throws IOException {
+    writeTemplate0(drs, 16);
+    BufferedImage image = new BufferedImage(NX, NY, BufferedImage.TYPE_USHORT_GRAY);
+    WritableRaster raster = image.getRaster();
+    raster.setPixels(0, 0, NX, NY, values);
+    ByteArrayOutputStream png = new ByteArrayOutputStream();
+    ImageIO.write(image, "png", png);
+    return png.toByteArray();
+  }
+
+  private static int bitsNeeded(int value) {
+    return 32 - Integer.numberOfLeadingZeros(value);
+  }
+
+  /** Packs values most significant bit first, as {@link ucar.nc2.iosp.BitReader} reads them. */
+  private static class BitWriter {
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private int buff;
+    private int nbits;
+
+    void write(long value, int width) {
+      for (int bit = width - 1; bit >= 0; bit--) {
+        buff = (buff << 1) | (int) ((value >>> bit) & 1);
+        if (++nbits == 8) {
+          out.write(buff);
+          buff = 0;
+          nbits = 0;
+        }
+      }
+    }
+
+    /** Sign bit followed by the magnitude. */
+    void writeSigned(int value, int width) {
+      write(value < 0 ? 1 : 0, 1);
+      write(Math.abs(value), width - 1);
+    }
+
+    /** Pad with zero bits to the next octet boundary. */
+    void align() {
+      if (nbits > 0) {
+        write(0, 8 - nbits);
+      }
+    }
+
+    byte[] toByteArray() {
+      align();
+      return out.toByteArray();
+    }
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.internal.iosp.hdf5;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import ucar.ma2.Array;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import ucar.nc2.Variable;
+import ucar.nc2.benchmark.SyntheticGrids;
+import ucar.nc2.write.Nc4Chunking;
+import ucar.nc2.write.Nc4ChunkingStrategy;
+import ucar.nc2.write.NetcdfFileFormat;
+
+/**
+ * Subset reads through {@link H5iospNew} from contiguous, chunked, and chunked and deflated netCDF-4 files.
+ * The files are written with {@link H5iospWriter}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class H5iospBenchmark {
+  private static final int[] SHAPE = {64, 256, 256};
+  private static final int[] CHUNKS = {8, 64, 64};
+
+  public enum Layout {
+    contiguous, chunked, deflated
+  }
+
+  @Param
+  public Layout layout;
+
+  /** A horizontal slice, a box through all times, and a time series at a point. */
+  @Param({"10,:,:", ":,64:191,64:191", ":,128,128"})
+  public String section;
+
+  private File dir;
+  private NetcdfFile ncfile;
+  private Variable var;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    dir = Files.createTempDirectory("h5Benchmark").toFile();
+    String location = new File(dir, "grid.nc4").getPath();
+
+    Nc4Chunking chunker;
+    switch (layout) {
+      case contiguous:
+        chunker = Nc4ChunkingStrategy.factory(Nc4Chunking.Strategy.none, 0, false);
+        break;
+      case chunked:
+        chunker = Nc4ChunkingStrategy.factory(Nc4Chunking.Strategy.standard, 0, false);
+        break;
+      default:
+        chunker = Nc4ChunkingStrategy.factory(Nc4Chunking.Strategy.standard, 5, true);
+    }
+    SyntheticGrids.write(location, NetcdfFileFormat.NETCDF4, chunker, layout == Layout.contiguous ? null : CHUNKS,
+        false, 0, SHAPE);
+    ncfile = NetcdfFiles.open(location);
+    var = ncfile.findVariable(SyntheticGrids.VAR_NAME);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    ncfile.close();
+    SyntheticGrids.delete(dir);
+  }
+
+  @Benchmark
+  public Array read() throws IOException, InvalidRangeException {
+    return var.read(section);
+  }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.internal.iosp.netcdf3;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import ucar.ma2.Array;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import ucar.nc2.Variable;
+import ucar.nc2.benchmark.SyntheticGrids;
+import ucar.nc2.write.NetcdfFileFormat;
+
+/**
+ * Subset reads through {@link N3iospNew} from a netCDF-3 file, with time as a fixed dimension (each variable is
+ * contiguous) and as the record dimension (records of all variables are interleaved).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class N3iospBenchmark {
+  private static final int[] SHAPE = {64, 256, 256};
+
+  @Param({"false", "true"})
+  public boolean unlimited;
+
+  /** A horizontal slice, a box through all times, and a time series at a point. */
+  @Param({"10,:,:", ":,64:191,64:191", ":,128,128"})
+  public String section;
+
+  private File dir;
+  private NetcdfFile ncfile;
+  private Variable var;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    dir = Files.createTempDirectory("n3Benchmark").toFile();
+    String location = new File(dir, "grid.nc").getPath();
+    SyntheticGrids.write(location, NetcdfFileFormat.NETCDF3, null, null, unlimited, 0, SHAPE);
+    ncfile = NetcdfFiles.open(location);
+    var = ncfile.findVariable(SyntheticGrids.VAR_NAME);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    ncfile.close();
+    SyntheticGrids.delete(dir);
+  }
+
+  @Benchmark
+  public Array read() throws IOException, InvalidRangeException {
+    return var.read(section);
+  }
+}
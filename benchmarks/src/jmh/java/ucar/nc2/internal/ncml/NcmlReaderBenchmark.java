@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.internal.ncml;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import ucar.ma2.Array;
+import ucar.nc2.benchmark.SyntheticGrids;
+import ucar.nc2.dataset.NetcdfDataset;
+import ucar.nc2.write.NetcdfFileFormat;
+
+/**
+ * Opening a joinExisting aggregation of netCDF-3 files with {@link NcmlReader}, with the files listed explicitly
+ * and found by a directory scan. Opening reads the time coordinate of every file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class NcmlReaderBenchmark {
+  private static final int[] SHAPE = {4, 64, 64};
+
+  @Param({"10", "100"})
+  public int nfiles;
+
+  @Param({"false", "true"})
+  public boolean scan;
+
+  private File dir;
+  private String ncmlLocation;
+
+  @Setup(Level.Trial)
+  public void setup() throws IOException {
+    dir = Files.createTempDirectory("ncmlBenchmark").toFile();
+    File dataDir = new File(dir, "data");
+    dataDir.mkdir();
+
+    StringBuilder ncml = new StringBuilder();
+    ncml.append("<?xml version='1.0' encoding='UTF-8'?>\n");
+    ncml.append("<netcdf xmlns='http://www.unidata.ucar.edu/namespaces/netcdf/ncml-2.2'>\n");
+    ncml.append("  <aggregation dimName='time' type='joinExisting'>\n");
+    for (int i = 0; i < nfiles; i++) {
+      String location = new File(dataDir, String.format("grid%04d.nc", i)).getPath();
+      SyntheticGrids.write(location, NetcdfFileFormat.NETCDF3, null, null, true, i * SHAPE[0], SHAPE);
+      if (!scan) {
+        ncml.append("    <netcdf location='").append(location).append("'/>\n");
+      }
+    }
+    if (scan) {
+      ncml.append("    <scan location='").append(dataDir.getPath()).append("' suffix='.nc'/>\n");
+    }
+    ncml.append("  </aggregation>\n</netcdf>\n");
+
+    File ncmlFile = new File(dir, "aggregation.ncml");
+    try (PrintWriter out = new PrintWriter(ncmlFile, StandardCharsets.UTF_8.name())) {
+      out.print(ncml);
+    }
+    ncmlLocation = ncmlFile.getPath();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    SyntheticGrids.delete(new File(dir, "data"));
+    SyntheticGrids.delete(dir);
+  }
+
+  @Benchmark
+  public Array open() throws IOException {
+    try (NetcdfDataset ncd = NcmlReader.readNcml(ncmlLocation, null, null).build()) {
+      return ncd.findVariable("time").read();
+    }
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.unidata.io;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Buffered reads through {@link RandomAccessFile}: sequential primitives, block reads, and random seeks. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RandomAccessFileBenchmark {
+  private static final int FILE_SIZE = 16 * 1024 * 1024;
+  private static final int NSEEKS = 10_000;
+
+  @Param({"8192", "65536"})
+  public int bufferSize;
+
+  @Param({"512", "8192"})
+  public int blockSize;
+
+  private File dir;
+  private String location;
+  private long[] seekPositions;
+  private byte[] block;
+  private RandomAccessFile raf;
+
+  @Setup(Level.Trial)
+  public void createFile() throws IOException {
+    dir = Files.createTempDirectory("rafBenchmark").toFile();
+    File file = new File(dir, "data.bin");
+    Random random = new Random(42);
+    byte[] buff = new byte[1024 * 1024];
+    try (OutputStream out = new FileOutputStream(file)) {
+      for (int i = 0; i < FILE_SIZE / buff.length; i++) {
+        random.nextBytes(buff);
+        out.write(buff);
+      }
+    }
+    location = file.getPath();
+
+    seekPositions = new long[NSEEKS];
+    for (int i = 0; i < NSEEKS; i++) {
+      seekPositions[i] = random.nextInt(FILE_SIZE - blockSize);
+    }
+    block = new byte[blockSize];
+  }
+
+  @Setup(Level.Invocation)
+  public void open() throws IOException {
+    raf = new RandomAccessFile(location, "r", bufferSize);
+  }
+
+  @TearDown(Level.Invocation)
+  public void close() throws IOException {
+    raf.close();
+  }
+
+  @TearDown(Level.Trial)
+  public void deleteFile() {
+    new File(location).delete();
+    dir.delete();
+  }
+
+  @Benchmark
+  public void sequentialReadInt(Blackhole bh) throws IOException {
+    for (int i = 0; i < FILE_SIZE / 4; i++) {
+      bh.consume(raf.readInt());
+    }
+  }
+
+  @Benchmark
+  public void sequentialReadFully(Blackhole bh) throws IOException {
+    for (int i = 0; i < FILE_SIZE / blockSize; i++) {
+      raf.readFully(block);
+      bh.consume(block);
+    }
+  }
+
+  @Benchmark
+  public void sequentialReadDoubleArray(Blackhole bh) throws IOException {
+    double[] values = new double[blockSize / 8];
+    for (int i = 0; i < FILE_SIZE / blockSize; i++) {
+      raf.readDouble(values, 0, values.length);
+      bh.consume(values);
+    }
+  }
+
+  @Benchmark
+  public void randomSeekReadFully(Blackhole bh) throws IOException {
+    for (long pos : seekPositions) {
+      raf.seek(pos);
+      raf.readFully(block);
+      bh.consume(block);
+    }
+  }
+}
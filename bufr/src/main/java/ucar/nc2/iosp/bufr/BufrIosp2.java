@@ -4,11 +4,20 @@
  */
 package ucar.nc2.iosp.bufr;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Formatter;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import javax.annotation.Nullable;
 import org.jdom2.Element;
 import ucar.ma2.Array;
 import ucar.ma2.ArraySequence;
@@ -24,6 +33,7 @@ import ucar.nc2.Variable;
 import ucar.nc2.constants.DataFormatType;
 import ucar.nc2.iosp.AbstractIOServiceProvider;
 import ucar.nc2.util.CancelTask;
+import ucar.nc2.util.DiskCache2;
 import ucar.unidata.io.RandomAccessFile;
 
 /**
@@ -46,9 +56,43 @@ public class BufrIosp2 extends AbstractIOServiceProvider {
     debugIter = debugFlag.isSet("Bufr/iter");
   }
 
+  // message indexes
+  private static volatile DiskCache2 indexCache;
+
+  /**
+   * Keep a MessageIndex of each BUFR file in the given DiskCache2, so that the file is scanned for messages only once,
+   * and not each time it is opened and iterated over. An index is remade when the file's length or last modified time
+   * changes.
+   *
+   * @param diskCache where the index files are kept; if null, dont use an index.
+   */
+  public static void setIndexCache(@Nullable DiskCache2 diskCache) {
+    indexCache = diskCache;
+  }
+
+  // multithreading
+  private static volatile Executor executor;
+  private static volatile int maxPendingDecodes = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * Decode the messages of a local file on the given Executor. The messages are found on the iterating thread, and up
+   * to maxPending of them are decoded at the same time; the records are returned in the same order as when the
+   * messages are decoded one at a time.
+   *
+   * @param exec decode on this Executor; if null, decode one message at a time as it is iterated over.
+   * @param maxPending maximum number of messages that an iterator has decoded or in progress at the same time.
+   */
+  public static void setExecutor(@Nullable Executor exec, int maxPending) {
+    if (maxPending < 1)
+      throw new IllegalArgumentException("maxPending must be > 0");
+    maxPendingDecodes = maxPending;
+    executor = exec;
+  }
+
   private Structure obsStructure;
   private Message protoMessage; // prototypical message: all messages in the file must be the same.
   private MessageScanner scanner;
+  private MessageIndex index; // null if not using an index
   private HashSet<Integer> messHash;
   private boolean isSingle;
   private BufrConfig config;
@@ -69,7 +113,7 @@ public class BufrIosp2 extends AbstractIOServiceProvider {
     super.open(raf, rootGroup.getNcfile(), cancelTask);
 
     scanner = new MessageScanner(raf);
-    protoMessage = scanner.getFirstDataMessage();
+    protoMessage = readFirstDataMessage();
     if (protoMessage == null)
       throw new IOException("No data messages in the file= " + raf.getLocation());
     if (!protoMessage.isTablesComplete())
@@ -90,6 +134,21 @@ public class BufrIosp2 extends AbstractIOServiceProvider {
     connectSequences(obsStructure.getVariables(), protoMessage.getRootDataDescriptor().getSubKeys());
   }
 
+  // use the index if there is one, else search the file
+  private Message readFirstDataMessage() throws IOException {
+    DiskCache2 diskCache = indexCache;
+    index = (diskCache == null) ? null : MessageIndex.open(raf, diskCache);
+    if (index == null)
+      return scanner.getFirstDataMessage();
+
+    nelems = (int) index.getNobs();
+    for (int i = 0; i < index.getProtoIndex(); i++) {
+      if (index.getKind(i) == MessageIndex.TABLE)
+        scanner.readMessage(index.getPos(i)); // add its tables to the scanner
+    }
+    return scanner.readMessage(index.getPos(index.getProtoIndex()));
+  }
+
   private void connectSequences(List<Variable> variables, List<DataDescriptor> dataDescriptors) {
     for (Variable v : variables) {
       if (v instanceof Sequence) {
@@ -116,7 +175,7 @@ public class BufrIosp2 extends AbstractIOServiceProvider {
     super.open(raf, ncfile, cancelTask);
 
     scanner = new MessageScanner(raf);
-    protoMessage = scanner.getFirstDataMessage();
+    protoMessage = readFirstDataMessage();
     if (protoMessage == null)
       throw new IOException("No data messages in the file= " + ncfile.getLocation());
     if (!protoMessage.isTablesComplete())
@@ -171,6 +230,12 @@ public class BufrIosp2 extends AbstractIOServiceProvider {
     return iospParam;
   }
 
+  /** The index of the messages in the file, or null if not using one. */
+  @Nullable
+  public MessageIndex getMessageIndex() {
+    return index;
+  }
+
   private int nelems = -1;
 
   @Override
@@ -192,6 +257,10 @@ public class BufrIosp2 extends AbstractIOServiceProvider {
   private class SeqIter implements StructureDataIterator {
     StructureDataIterator currIter;
     int recnum;
+    int messno; // the next message in the index
+    final Executor exec = (executor != null && new File(raf.getLocation()).isFile()) ? executor : null;
+    final int maxPending = maxPendingDecodes;
+    final Deque<Future<ArrayStructure>> pending = new ArrayDeque<>(); // messages being decoded, in file order
 
     SeqIter() {
       reset();
@@ -200,7 +269,9 @@ public class BufrIosp2 extends AbstractIOServiceProvider {
     @Override
     public StructureDataIterator reset() {
       recnum = 0;
+      messno = 0;
       currIter = null;
+      cancelPending();
       scanner.reset();
       return this;
     }
@@ -230,33 +301,79 @@ public class BufrIosp2 extends AbstractIOServiceProvider {
     }
 
     private StructureDataIterator readNextMessage() throws IOException {
-      if (!scanner.hasNext())
-        return null;
-      Message m = scanner.next();
-      if (m == null) {
-        log.warn("BUFR scanner hasNext() true but next() null!");
+      if (exec == null) {
+        Message m = nextDataMessage();
+        return (m == null) ? null : readMessage(m, raf).getStructureDataIterator();
+      }
+
+      while (pending.size() < maxPending) {
+        Message m = nextDataMessage();
+        if (m == null)
+          break;
+        m.getRootDataDescriptor(); // make the descriptor tree on this thread
+        FutureTask<ArrayStructure> task = new FutureTask<>(() -> {
+          try (RandomAccessFile decodeRaf = RandomAccessFile.acquire(raf.getLocation())) {
+            return readMessage(m, decodeRaf);
+          }
+        });
+        exec.execute(task);
+        pending.add(task);
+      }
+
+      Future<ArrayStructure> future = pending.poll();
+      return (future == null) ? null : waitFor(future).getStructureDataIterator();
+    }
+
+    // the next data message of the same type as the proto message, or null if there are no more
+    private Message nextDataMessage() throws IOException {
+      if (index != null) {
+        while (messno < index.getNumberMessages()) {
+          int i = messno++;
+          byte kind = index.getKind(i);
+          if (kind == MessageIndex.TABLE) {
+            scanner.readMessage(index.getPos(i)); // add its tables to the scanner
+          } else if (kind == MessageIndex.OTHER) {
+            if (index.getHash(i) != protoMessage.hashCode())
+              warnDifferentType(index.getHash(i));
+          } else {
+            Message m = scanner.readMessage(index.getPos(i));
+            if (m != null)
+              return m;
+          }
+        }
         return null;
       }
-      if (m.containsBufrTable()) // data messages only
-        return readNextMessage();
-
-      // mixed messages
-      if (!protoMessage.equals(m)) {
-        if (messHash == null)
-          messHash = new HashSet<>(20);
-        if (!messHash.contains(m.hashCode())) {
-          log.warn("File " + raf.getLocation() + " has different BUFR message types hash=" + protoMessage.hashCode()
-              + "; skipping");
-          messHash.add(m.hashCode());
+
+      while (scanner.hasNext()) {
+        Message m = scanner.next();
+        if (m == null) {
+          log.warn("BUFR scanner hasNext() true but next() null!");
+          return null;
         }
-        return readNextMessage();
+        if (m.containsBufrTable()) // data messages only
+          continue;
+
+        // mixed messages
+        if (!protoMessage.equals(m)) {
+          warnDifferentType(m.hashCode());
+          continue;
+        }
+        return m;
       }
+      return null;
+    }
 
-      ArrayStructure as = readMessage(m);
-      return as.getStructureDataIterator();
+    private void warnDifferentType(int hash) {
+      if (messHash == null)
+        messHash = new HashSet<>(20);
+      if (!messHash.contains(hash)) {
+        log.warn("File " + raf.getLocation() + " has different BUFR message types hash=" + protoMessage.hashCode()
+            + "; skipping");
+        messHash.add(hash);
+      }
     }
 
-    private ArrayStructure readMessage(Message m) throws IOException {
+    private ArrayStructure readMessage(Message m, RandomAccessFile raf) throws IOException {
       ArrayStructure as;
       if (m.dds.isCompressed()) {
         MessageCompressedDataReader reader = new MessageCompressedDataReader();
@@ -268,6 +385,33 @@ public class BufrIosp2 extends AbstractIOServiceProvider {
       return as;
     }
 
+    private ArrayStructure waitFor(Future<ArrayStructure> future) throws IOException {
+      try {
+        return future.get();
+
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("interrupted decoding BUFR messages");
+
+      } catch (ExecutionException e) {
+        cancelPending();
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException)
+          throw (IOException) cause;
+        if (cause instanceof RuntimeException)
+          throw (RuntimeException) cause;
+        if (cause instanceof Error)
+          throw (Error) cause;
+        throw new IOException(cause);
+      }
+    }
+
+    private void cancelPending() {
+      for (Future<ArrayStructure> future : pending)
+        future.cancel(false);
+      pending.clear();
+    }
+
     @Override
     public int getCurrentRecno() {
       return recnum - 1;
@@ -278,6 +422,7 @@ public class BufrIosp2 extends AbstractIOServiceProvider {
       if (currIter != null)
         currIter.close();
       currIter = null;
+      cancelPending();
       if (debugIter)
         System.out.printf("BUFR read recnum %d%n", recnum);
     }
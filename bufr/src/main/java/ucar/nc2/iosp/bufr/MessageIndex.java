@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.iosp.bufr;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import javax.annotation.Nullable;
+import ucar.nc2.time.CalendarDate;
+import ucar.nc2.time.CalendarDateRange;
+import ucar.nc2.util.DiskCache2;
+import ucar.unidata.io.RandomAccessFile;
+
+/**
+ * An index of the messages in a BUFR file: the position, kind, descriptor hash, number of observations and reference
+ * time of each message. It is made by scanning the file once, and kept in a sidecar file in a DiskCache2 until the
+ * length or last modified time of the BUFR file changes. With it, the file is iterated over without searching it for
+ * messages, and the number of observations is known when the file is opened.
+ *
+ * @see BufrIosp2#setIndexCache
+ */
+public final class MessageIndex {
+  private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(MessageIndex.class);
+
+  public static final String SUFFIX = ".bfx";
+  private static final int MAGIC = 0x42465849; // "BFXI"
+  private static final int VERSION = 1;
+
+  /** The message contains BUFR tables, which are used by the messages after it. */
+  static final byte TABLE = 0;
+  /** A data message of the same type as the first data message. */
+  static final byte DATA = 1;
+  /** A data message of another type, or an empty one before the first data message; it is skipped. */
+  static final byte OTHER = 2;
+
+  private final long length;
+  private final long lastModified;
+  private final int protoIndex; // the first data message with observations
+  private final int nmess;
+  private final long[] pos;
+  private final byte[] kind;
+  private final int[] hash;
+  private final int[] nobs;
+  private final long[] time;
+
+  private MessageIndex(long length, long lastModified, int protoIndex, int nmess, long[] pos, byte[] kind, int[] hash,
+      int[] nobs, long[] time) {
+    this.length = length;
+    this.lastModified = lastModified;
+    this.protoIndex = protoIndex;
+    this.nmess = nmess;
+    this.pos = pos;
+    this.kind = kind;
+    this.hash = hash;
+    this.nobs = nobs;
+    this.time = time;
+  }
+
+  /**
+   * Get the index of a BUFR file, reading it from the DiskCache2 if it is up to date, otherwise scanning the file and
+   * writing the index to the cache.
+   *
+   * @param raf the BUFR file
+   * @param diskCache where the index files are kept
+   * @return the index, or null if the file is not a local file, or has no data messages.
+   */
+  @Nullable
+  static MessageIndex open(RandomAccessFile raf, DiskCache2 diskCache) throws IOException {
+    File bufrFile = new File(raf.getLocation());
+    if (!bufrFile.isFile()) {
+      return null;
+    }
+    File indexFile = diskCache.getFile(raf.getLocation() + SUFFIX);
+    if (indexFile == null) {
+      return null;
+    }
+
+    MessageIndex index = read(indexFile, bufrFile.length(), bufrFile.lastModified());
+    if (index == null) {
+      index = scan(raf, bufrFile.length(), bufrFile.lastModified());
+      if (index != null) {
+        try {
+          index.write(indexFile);
+        } catch (IOException e) {
+          logger.warn("Cant write BUFR index {}: {}", indexFile.getPath(), e.getMessage());
+        }
+      }
+    }
+    return index;
+  }
+
+  // scan the file, in the same way that BufrIosp2 iterates over it
+  @Nullable
+  private static MessageIndex scan(RandomAccessFile raf, long length, long lastModified) throws IOException {
+    int n = 0;
+    long[] pos = new long[100];
+    byte[] kind = new byte[100];
+    int[] hash = new int[100];
+    int[] nobs = new int[100];
+    long[] time = new long[100];
+
+    Message proto = null;
+    int protoIndex = -1;
+    MessageScanner scanner = new MessageScanner(raf);
+    while (scanner.hasNext()) {
+      Message m = scanner.next();
+      if (m == null) {
+        continue;
+      }
+      if (n == pos.length) {
+        int size = 2 * n;
+        pos = Arrays.copyOf(pos, size);
+        kind = Arrays.copyOf(kind, size);
+        hash = Arrays.copyOf(hash, size);
+        nobs = Arrays.copyOf(nobs, size);
+        time = Arrays.copyOf(time, size);
+      }
+
+      if (m.containsBufrTable()) {
+        kind[n] = TABLE;
+      } else {
+        if (proto == null && m.getNumberDatasets() > 0) {
+          proto = m;
+          protoIndex = n;
+        }
+        kind[n] = (proto != null && proto.equals(m)) ? DATA : OTHER;
+        hash[n] = m.hashCode();
+      }
+      pos[n] = m.getStartPos();
+      nobs[n] = m.getNumberDatasets();
+      time[n] = m.getReferenceTime().getMillis();
+      n++;
+    }
+
+    if (proto == null) {
+      return null;
+    }
+    return new MessageIndex(length, lastModified, protoIndex, n, pos, kind, hash, nobs, time);
+  }
+
+  // null if the index file does not exist, is out of date, or cannot be read
+  @Nullable
+  private static MessageIndex read(File indexFile, long length, long lastModified) {
+    if (!indexFile.exists()) {
+      return null;
+    }
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile.toPath()), 64 * 1024))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        return null;
+      }
+      if (in.readLong() != length || in.readLong() != lastModified) {
+        return null; // the BUFR file has changed
+      }
+
+      int protoIndex = in.readInt();
+      int n = in.readInt();
+      long[] pos = new long[n];
+      byte[] kind = new byte[n];
+      int[] hash = new int[n];
+      int[] nobs = new int[n];
+      long[] time = new long[n];
+      for (int i = 0; i < n; i++) {
+        pos[i] = in.readLong();
+        kind[i] = in.readByte();
+        hash[i] = in.readInt();
+        nobs[i] = in.readInt();
+        time[i] = in.readLong();
+      }
+      return new MessageIndex(length, lastModified, protoIndex, n, pos, kind, hash, nobs, time);
+
+    } catch (IOException | RuntimeException e) {
+      logger.warn("Cant read BUFR index {}: {}", indexFile.getPath(), e.getMessage());
+      return null;
+    }
+  }
+
+  // write to a temporary file which then replaces the index file, so that readers never see a partly written index
+  private void write(File indexFile) throws IOException {
+    File dir = indexFile.getAbsoluteFile().getParentFile();
+    File tempFile = File.createTempFile(indexFile.getName(), ".tmp", dir);
+    try {
+      try (DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile.toPath()), 64 * 1024))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(length);
+        out.writeLong(lastModified);
+        out.writeInt(protoIndex);
+        out.writeInt(nmess);
+        for (int i = 0; i < nmess; i++) {
+          out.writeLong(pos[i]);
+          out.writeByte(kind[i]);
+          out.writeInt(hash[i]);
+          out.writeInt(nobs[i]);
+          out.writeLong(time[i]);
+        }
+      }
+      Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tempFile.toPath());
+    }
+  }
+
+  /** The number of messages in the file, of all kinds. */
+  public int getNumberMessages() {
+    return nmess;
+  }
+
+  /** The index of the first data message with observations, which is the prototype of the file. */
+  int getProtoIndex() {
+    return protoIndex;
+  }
+
+  long getPos(int i) {
+    return pos[i];
+  }
+
+  byte getKind(int i) {
+    return kind[i];
+  }
+
+  /** The hash of the message's descriptors, as Message.hashCode(); 0 for messages with tables. */
+  int getHash(int i) {
+    return hash[i];
+  }
+
+  /** The number of observations in the data messages that are read, ie the number of obs records. */
+  public long getNobs() {
+    long result = 0;
+    for (int i = 0; i < nmess; i++) {
+      if (kind[i] == DATA) {
+        result += nobs[i];
+      }
+    }
+    return result;
+  }
+
+  /** The range of reference times of the data messages that are read. */
+  public CalendarDateRange getDateRange() {
+    long start = Long.MAX_VALUE;
+    long end = Long.MIN_VALUE;
+    for (int i = 0; i < nmess; i++) {
+      if (kind[i] == DATA) {
+        start = Math.min(start, time[i]);
+        end = Math.max(end, time[i]);
+      }
+    }
+    return CalendarDateRange.of(CalendarDate.of(start), CalendarDate.of(end));
+  }
+}
@@ -194,6 +194,20 @@ public class MessageScanner {
     }
   }
 
+  /**
+   * Read the message that starts at the given position, eg from a MessageIndex, without searching for it.
+   * Messages with embedded tables are processed as in next(). The WMO header is not read.
+   *
+   * @param pos position of the message, from Message.getStartPos()
+   * @return the message, or null if it cant be read
+   */
+  public Message readMessage(long pos) throws IOException {
+    header = new byte[0];
+    startPos = pos;
+    raf.seek(pos);
+    return next();
+  }
+
   public TableLookup getTableLookup() throws IOException {
     while (hasNext()) {
       next();
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.iosp.bufr;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.StructureDataIterator;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import ucar.nc2.Structure;
+import ucar.nc2.util.DiskCache2;
+import ucar.nc2.write.Ncdump;
+
+/** Test the BUFR message index, and decoding messages concurrently. */
+public class TestMessageIndex {
+  private static final String FILENAME = "../bufr/src/test/data/RadiosondeStationData.bufr";
+  private static final int NMESS = 7;
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private String location;
+  private File cacheDir;
+  private ExecutorService pool;
+
+  @Before
+  public void setup() throws IOException {
+    // several messages, with bytes between them that are not part of a message
+    byte[] message = Files.readAllBytes(new File(FILENAME).toPath());
+    File file = new File(tempFolder.newFolder("data"), "radiosonde.bufr");
+    try (OutputStream out = new FileOutputStream(file)) {
+      for (int i = 0; i < NMESS; i++) {
+        out.write(message);
+        out.write(new byte[i * 100]);
+      }
+    }
+    location = file.getPath();
+    cacheDir = tempFolder.newFolder("cache");
+    pool = Executors.newFixedThreadPool(3);
+  }
+
+  @After
+  public void cleanup() {
+    BufrIosp2.setIndexCache(null);
+    BufrIosp2.setExecutor(null, Runtime.getRuntime().availableProcessors());
+    pool.shutdown();
+  }
+
+  @Test
+  public void testIndex() throws IOException {
+    List<String> want = readObs(false);
+    assertThat(want).hasSize(NMESS);
+    assertThat(cacheDir.list()).isEmpty();
+
+    BufrIosp2.setIndexCache(makeCache());
+    assertThat(readObs(true)).isEqualTo(want);
+    File indexFile = findIndexFile();
+    assertThat(indexFile.getName()).endsWith(MessageIndex.SUFFIX);
+
+    // the index is used, not rewritten
+    long written = indexFile.lastModified() - 10000;
+    assertThat(indexFile.setLastModified(written)).isTrue();
+    assertThat(readObs(true)).isEqualTo(want);
+    assertThat(findIndexFile().lastModified()).isEqualTo(written);
+
+    // a changed file is indexed again
+    File file = new File(location);
+    assertThat(file.setLastModified(file.lastModified() + 60 * 1000)).isTrue();
+    assertThat(readObs(true)).isEqualTo(want);
+    assertThat(findIndexFile().lastModified()).isNotEqualTo(written);
+  }
+
+  @Test
+  public void testConcurrentDecode() throws IOException {
+    List<String> want = readObs(false);
+
+    BufrIosp2.setExecutor(pool, 2);
+    assertThat(readObs(false)).isEqualTo(want);
+
+    BufrIosp2.setIndexCache(makeCache());
+    assertThat(readObs(true)).isEqualTo(want);
+    assertThat(readObs(true)).isEqualTo(want);
+  }
+
+  private DiskCache2 makeCache() {
+    DiskCache2 diskCache = new DiskCache2(cacheDir.getPath(), false, 0, 0);
+    diskCache.setAlwaysUseCache(true); // not next to the BUFR file
+    diskCache.setPolicy(DiskCache2.CachePathPolicy.OneDirectory);
+    return diskCache;
+  }
+
+  private File findIndexFile() {
+    File[] files = cacheDir.listFiles((dir, name) -> name.endsWith(MessageIndex.SUFFIX));
+    assertThat(files).hasLength(1);
+    return files[0];
+  }
+
+  private List<String> readObs(boolean indexed) throws IOException {
+    List<String> result = new ArrayList<>();
+    try (NetcdfFile ncfile = NetcdfFiles.open(location)) {
+      BufrIosp2 iosp = (BufrIosp2) ncfile.getIosp();
+      MessageIndex index = iosp.getMessageIndex();
+      assertThat(index != null).isEqualTo(indexed);
+
+      Structure obs = (Structure) ncfile.findVariable(BufrIosp2.obsRecordName);
+      try (StructureDataIterator iter = obs.getStructureIterator()) {
+        while (iter.hasNext()) {
+          result.add(Ncdump.printStructureData(iter.next()));
+        }
+      }
+      if (index != null) {
+        assertThat(index.getNumberMessages()).isEqualTo(NMESS);
+        assertThat(index.getNobs()).isEqualTo(result.size());
+        assertThat(index.getDateRange()).isNotNull();
+      }
+    }
+    return result;
+  }
+}
@@ -271,6 +271,46 @@ public abstract class ArrayStructure extends Array implements Iterable<Structure
     return new ArrayStructureIterator();
   }
 
+  /**
+   * Get an iterator for a single pass over the records, where each StructureData is only used until the next call to
+   * next(). Implementations whose records are views of the member data return the same StructureDataCursor for every
+   * record, so that no StructureData object is made or kept for each record. Others return
+   * getStructureDataIterator().
+   *
+   * @return StructureDataIterator whose StructureData is only valid until the next call to next().
+   */
+  public StructureDataIterator getCursorIterator() {
+    return getStructureDataIterator();
+  }
+
+  /** Iterates by moving one StructureDataCursor, for subclasses whose makeStructureData() returns a StructureDataA. */
+  protected class CursorIterator implements StructureDataIterator {
+    private final StructureDataCursor cursor = new StructureDataCursor(ArrayStructure.this);
+    private final int size = (int) getSize();
+    private int count;
+
+    @Override
+    public boolean hasNext() {
+      return count < size;
+    }
+
+    @Override
+    public StructureData next() {
+      return cursor.moveTo(count++);
+    }
+
+    @Override
+    public StructureDataIterator reset() {
+      count = 0;
+      return this;
+    }
+
+    @Override
+    public int getCurrentRecno() {
+      return count - 1;
+    }
+  }
+
   public class ArrayStructureIterator implements StructureDataIterator, Iterator<StructureData> {
     private int count;
     private int size = (int) getSize();
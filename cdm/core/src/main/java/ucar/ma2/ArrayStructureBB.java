@@ -104,6 +104,8 @@ public class ArrayStructureBB extends ArrayStructure {
 
   /**
    * Construct an ArrayStructureBB with the given ByteBuffer.
+   * The ByteBuffer may be direct or a read-only mapping of a file; the data is read with absolute gets, so its
+   * position and limit are not used.
    *
    * @param members the list of structure members.
    * @param shape the shape of the structure array
@@ -116,11 +118,31 @@ public class ArrayStructureBB extends ArrayStructure {
     this.bb_offset = offset;
   }
 
+  /**
+   * Create a new Array of type StructureData and the given members and shape, whose data is stored outside of the
+   * java heap, in a direct ByteBuffer. The ByteBuffer has no backing array.
+   *
+   * @param members a description of the structure members
+   * @param shape the shape of the Array.
+   * @return ArrayStructureBB with a direct ByteBuffer, in big endian order.
+   */
+  public static ArrayStructureBB allocateDirect(StructureMembers members, int[] shape) {
+    int size = (int) Index.computeSize(shape) * members.getStructureSize();
+    ByteBuffer bb = ByteBuffer.allocateDirect(size);
+    bb.order(ByteOrder.BIG_ENDIAN);
+    return new ArrayStructureBB(members, shape, bb, 0);
+  }
+
   @Override
   protected StructureData makeStructureData(ArrayStructure as, int index) {
     return new StructureDataA(as, index);
   }
 
+  @Override
+  public StructureDataIterator getCursorIterator() {
+    return new CursorIterator();
+  }
+
   /**
    * Return backing storage as a ByteBuffer
    * 
@@ -257,6 +257,11 @@ public class ArrayStructureMA extends ArrayStructure {
     return new StructureDataA(as, index);
   }
 
+  @Override
+  public StructureDataIterator getCursorIterator() {
+    return new CursorIterator();
+  }
+
   /**
    * Set the data array for this member.
    * 
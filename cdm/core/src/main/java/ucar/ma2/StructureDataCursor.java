@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.ma2;
+
+/**
+ * A reusable StructureData that is moved from record to record of an ArrayStructure.
+ * All member accessors delegate to the ArrayStructure at the current record, so for an ArrayStructureBB the data is
+ * read from the ByteBuffer, which may be direct or mapped, without creating an object for each record.
+ * <p>
+ * The values seen through a cursor change when it is moved. If you need to keep a record, make a copy, eg with
+ * StructureDataDeep.copy().
+ *
+ * @see ArrayStructure#getCursorIterator()
+ */
+public class StructureDataCursor extends StructureDataA {
+
+  /**
+   * Constructor.
+   *
+   * @param sa iterate over the records of this ArrayStructure.
+   */
+  public StructureDataCursor(ArrayStructure sa) {
+    super(sa, 0);
+  }
+
+  /**
+   * Move to the given record.
+   *
+   * @param recno the record number in the ArrayStructure.
+   * @return this
+   */
+  public StructureDataCursor moveTo(int recno) {
+    this.recno = recno;
+    return this;
+  }
+
+  /** The current record number in the ArrayStructure. */
+  public int getRecno() {
+    return recno;
+  }
+}
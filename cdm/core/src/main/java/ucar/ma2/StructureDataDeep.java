@@ -44,7 +44,7 @@ public class StructureDataDeep extends StructureDataA {
                                                                       // later
       ArrayStructureBB abb = (ArrayStructureBB) as;
       ByteBuffer bb = abb.getByteBuffer();
-      if (bo == null || bo.equals(bb.order()))
+      if (bb.hasArray() && (bo == null || bo.equals(bb.order()))) // callers may use the backing array
         return abb;
     }
 
@@ -56,7 +56,7 @@ public class StructureDataDeep extends StructureDataA {
       bb.order(bo);
     }
 
-    try (StructureDataIterator iter = as.getStructureDataIterator()) {
+    try (StructureDataIterator iter = as.getCursorIterator()) { // each record is copied, so no need to keep them
       while (iter.hasNext())
         copyToArrayBB(iter.next(), abb);
     }
@@ -81,7 +81,7 @@ public class StructureDataDeep extends StructureDataA {
       bb.order(bo);
     }
 
-    try (StructureDataIterator iter = as.getStructureDataIterator()) {
+    try (StructureDataIterator iter = as.getCursorIterator()) { // each record is copied, so no need to keep them
       while (iter.hasNext())
         copyToArrayBB(iter.next(), abb);
     }
@@ -57,6 +57,8 @@ public class NetcdfFiles {
   private static final List<String> possibleCompressedSuffixes = Arrays.asList("Z", "zip", "gzip", "gz", "bz2");
   private static boolean loadWarnings = false;
   private static boolean userLoads;
+  private static long memoryMapThreshold = -1;
+  private static long compressedSeekThreshold = -1;
 
   // load core service providers
   static {
@@ -205,6 +207,31 @@ public class NetcdfFiles {
     }
   }
 
+  /**
+   * Open local files of at least this size with a memory mapped {@link ucar.unidata.io.MMapRandomAccessFile}
+   * instead of the usual buffered RandomAccessFile. Contiguous data, such as netCDF-3 variables and contiguous
+   * HDF5 datasets, is then copied straight from the mapping into the result array.
+   * Memory mapped files are not kept in the RandomAccessFile global file cache.
+   *
+   * @param minFileSize minimum file size in bytes to memory map, or -1 to never memory map (the default)
+   */
+  public static void setMemoryMapThreshold(long minFileSize) {
+    memoryMapThreshold = minFileSize;
+  }
+
+  /**
+   * Open local gzip and bzip2 files of at least this size with a {@link ucar.unidata.io.CompressedRandomAccessFile},
+   * which reads the compressed file in place, instead of uncompressing the whole file to the DiskCache before it is
+   * opened. The seek points found the first time the file is opened are kept in an index file in the DiskCache.
+   * Reads then only uncompress the part of the file that holds the data, which is faster for large files of
+   * which only a part is read. Other compressed files are uncompressed to the DiskCache as before.
+   *
+   * @param minFileSize minimum compressed file size in bytes, or -1 to always uncompress to the DiskCache (the default)
+   */
+  public static void setCompressedSeekThreshold(long minFileSize) {
+    compressedSeekThreshold = minFileSize;
+  }
+
   ///////////////////////////////////////////////////////////////////////////////////////////////
 
   /**
@@ -445,8 +472,12 @@ public class NetcdfFiles {
         uriString = StringUtil2.unescape(uriString.substring(5)); // 11/10/2010 from erussell@ngs.org
       }
 
+      if (useCompressedSeek(uriString)) {
+        raf = openCompressedSeek(uriString, buffer_size);
+      }
+
       String uncompressedFileName = null;
-      if (looksCompressed(uriString)) {
+      if (raf == null && looksCompressed(uriString)) {
         try {
           stringLocker.control(uriString); // Avoid race condition where the decompressed file is trying to be read by
                                            // one thread while another is decompressing it
@@ -459,9 +490,13 @@ public class NetcdfFiles {
         }
       }
 
-      if (uncompressedFileName != null) {
+      if (raf != null) {
+        log.debug("read compressed file {} in place", uriString);
+      } else if (uncompressedFileName != null) {
         // open uncompressed file as a RandomAccessFile.
         raf = ucar.unidata.io.RandomAccessFile.acquire(uncompressedFileName, buffer_size);
+      } else if (useMemoryMap(uriString)) {
+        raf = new ucar.unidata.io.MMapRandomAccessFile(uriString);
       } else {
         // normal case - not compressed
         raf = ucar.unidata.io.RandomAccessFile.acquire(uriString, buffer_size);
@@ -475,6 +510,36 @@ public class NetcdfFiles {
     return raf;
   }
 
+  private static boolean useMemoryMap(String filename) {
+    if (memoryMapThreshold < 0)
+      return false;
+    File file = new File(filename);
+    return file.isFile() && file.length() >= memoryMapThreshold;
+  }
+
+  private static boolean useCompressedSeek(String filename) {
+    if (compressedSeekThreshold < 0 || !ucar.unidata.io.CompressedRandomAccessFile.isCompressedName(filename))
+      return false;
+    File file = new File(filename);
+    return file.isFile() && file.length() >= compressedSeekThreshold;
+  }
+
+  // null if it fails, so that the file is uncompressed to the DiskCache instead
+  @Nullable
+  private static ucar.unidata.io.RandomAccessFile openCompressedSeek(String filename, int buffer_size) {
+    File indexFile =
+        DiskCache.getFileStandardPolicy(filename + ucar.unidata.io.CompressedRandomAccessFile.INDEX_SUFFIX);
+    try {
+      stringLocker.control(filename); // only one thread makes the index
+      return new ucar.unidata.io.CompressedRandomAccessFile(filename, indexFile, buffer_size);
+    } catch (Exception e) {
+      log.warn("Failed to index compressed file {}, err= {}; uncompress it instead.", filename, e.getMessage());
+      return null;
+    } finally {
+      stringLocker.release(filename);
+    }
+  }
+
   private static String removeFragment(String uriString) {
     return uriString.split("#")[0];
   }
@@ -41,6 +41,11 @@ public class Sequence extends Structure {
     return ncfile.getStructureIterator(this, bufferSize);
   }
 
+  @Override
+  public StructureDataIterator getCursorIterator(int bufferSize) throws java.io.IOException {
+    return getStructureIterator(bufferSize);
+  }
+
   /**
    * @throws UnsupportedOperationException always
    */
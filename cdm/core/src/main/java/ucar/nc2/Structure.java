@@ -460,7 +460,22 @@ public class Structure extends Variable {
    * @throws java.io.IOException on read error
    */
   public StructureDataIterator getStructureIterator(int bufferSize) throws java.io.IOException {
-    return (getRank() < 2) ? new Structure.IteratorRank1(bufferSize) : new Structure.Iterator(bufferSize);
+    return (getRank() < 2) ? new Structure.IteratorRank1(bufferSize, false) : new Structure.Iterator(bufferSize, false);
+  }
+
+  /**
+   * Get an iterator over all the data in the Structure, like getStructureIterator(bufferSize), for a single pass where
+   * each StructureData is only used until the next call to next().
+   * Where the IOSP returns its data as an ArrayStructureBB or ArrayStructureMA, the same StructureDataCursor is
+   * returned for each record of a buffer, so that no StructureData object is made for each record.
+   *
+   * @param bufferSize size in bytes to buffer, set < 0 to use default size
+   * @return StructureDataIterator whose StructureData is only valid until the next call to next().
+   * @throws java.io.IOException on read error
+   * @see ArrayStructure#getCursorIterator()
+   */
+  public StructureDataIterator getCursorIterator(int bufferSize) throws java.io.IOException {
+    return (getRank() < 2) ? new Structure.IteratorRank1(bufferSize, true) : new Structure.Iterator(bufferSize, true);
   }
 
   /**
@@ -473,8 +488,11 @@ public class Structure extends Variable {
     private int readCount;
     private int readAtaTime;
     private ArrayStructure as;
+    private final boolean useCursor;
+    private StructureDataIterator cursorIter; // over as, if useCursor
 
-    IteratorRank1(int bufferSize) {
+    IteratorRank1(int bufferSize, boolean useCursor) {
+      this.useCursor = useCursor;
       setBufferSize(bufferSize);
     }
 
@@ -498,7 +516,8 @@ public class Structure extends Variable {
       }
 
       count++;
-      return as.getStructureData(readCount++);
+      readCount++;
+      return useCursor ? cursorIter.next() : as.getStructureData(readCount - 1);
     }
 
     @Override
@@ -520,6 +539,8 @@ public class Structure extends Variable {
       } // cant happen
       readStart += need;
       readCount = 0;
+      if (useCursor)
+        cursorIter = as.getCursorIterator();
     }
 
     @Override
@@ -548,8 +569,11 @@ public class Structure extends Variable {
     private int readCount; // count within the current buffer [0,readAtaTime)
     private int outerCount; // over the outer Dimension
     private ArrayStructure as;
+    private final boolean useCursor;
+    private StructureDataIterator cursorIter; // over as, if useCursor
 
-    Iterator(int bufferSize) {
+    Iterator(int bufferSize, boolean useCursor) {
+      this.useCursor = useCursor;
       reset();
     }
 
@@ -579,7 +603,8 @@ public class Structure extends Variable {
         readNextGeneralRank();
 
       count++;
-      return as.getStructureData(readCount++);
+      readCount++;
+      return useCursor ? cursorIter.next() : as.getStructureData(readCount - 1);
     }
 
     private void readNextGeneralRank() throws IOException {
@@ -602,6 +627,8 @@ public class Structure extends Variable {
 
       readStart += as.getSize();
       readCount = 0;
+      if (useCursor)
+        cursorIter = as.getCursorIterator();
     }
 
   }
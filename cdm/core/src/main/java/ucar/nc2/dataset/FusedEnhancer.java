@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.dataset;
+
+import java.util.List;
+import java.util.stream.IntStream;
+import javax.annotation.Nullable;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.nc2.filter.ConvertMissing;
+import ucar.nc2.filter.Enhancement;
+import ucar.nc2.filter.ScaleOffset;
+import ucar.nc2.filter.UnsignedConversion;
+
+/**
+ * Applies the standard enhancements (unsigned conversion, missing values, scale/offset) and any loaded
+ * enhancements to an Array in a single pass over its primitive storage, without boxing the values.
+ * The data is processed in fixed size blocks, in parallel when there is more than one block.
+ */
+class FusedEnhancer {
+  private static final int BLOCK_SIZE = 8192;
+
+  private final UnsignedConversion unsignedConversion;
+  private final ConvertMissing convertMissing;
+  private final ScaleOffset scaleOffset;
+  private final Enhancement[] others;
+
+  /**
+   * @param unsignedConversion apply first, or null to skip
+   * @param convertMissing apply second, or null to skip
+   * @param scaleOffset apply third, or null to skip
+   * @param others apply last, in order
+   */
+  FusedEnhancer(@Nullable UnsignedConversion unsignedConversion, @Nullable ConvertMissing convertMissing,
+      @Nullable ScaleOffset scaleOffset, List<Enhancement> others) {
+    this.unsignedConversion =
+        unsignedConversion != null && unsignedConversion.getSignedness() == DataType.Signedness.UNSIGNED
+            ? unsignedConversion
+            : null;
+    this.convertMissing = convertMissing;
+    this.scaleOffset = scaleOffset;
+    this.others = others.toArray(new Enhancement[0]);
+  }
+
+  /**
+   * Convert the data.
+   *
+   * @param data the numeric data to convert, in any index order.
+   * @param outType the DataType of the result.
+   * @return a new Array of type outType, with the shape of data.
+   */
+  Array convert(Array data, DataType outType) {
+    // wraps the backing storage when data is already in canonical order, otherwise copies it once
+    Array in = Array.factory(data.getDataType(), data.getShape(), data.get1DJavaArray(data.getDataType()));
+    Array out = Array.factory(outType, data.getShape());
+    int size = (int) in.getSize();
+
+    int nblocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    if (nblocks > 1) {
+      IntStream.range(0, nblocks).parallel().forEach(b -> convertBlock(in, out, b * BLOCK_SIZE,
+          Math.min(BLOCK_SIZE, size - b * BLOCK_SIZE), new double[BLOCK_SIZE]));
+    } else if (size > 0) {
+      convertBlock(in, out, 0, size, new double[size]);
+    }
+    return out;
+  }
+
+  private void convertBlock(Array in, Array out, int start, int len, double[] buf) {
+    read(in, start, len, buf);
+    apply(buf, len);
+    write(buf, len, out, start);
+  }
+
+  /** Read in[start, start + len) as doubles, with the same semantics as Array.getDouble(). */
+  private static void read(Array in, int start, int len, double[] buf) {
+    Object storage = in.getStorage();
+    if (storage instanceof double[]) {
+      System.arraycopy(storage, start, buf, 0, len);
+    } else if (storage instanceof float[]) {
+      float[] src = (float[]) storage;
+      for (int i = 0; i < len; i++) {
+        buf[i] = src[start + i];
+      }
+    } else if (storage instanceof short[]) {
+      short[] src = (short[]) storage;
+      if (in.isUnsigned()) {
+        for (int i = 0; i < len; i++) {
+          buf[i] = src[start + i] & 0xFFFF;
+        }
+      } else {
+        for (int i = 0; i < len; i++) {
+          buf[i] = src[start + i];
+        }
+      }
+    } else {
+      for (int i = 0; i < len; i++) {
+        buf[i] = in.getDouble(start + i);
+      }
+    }
+  }
+
+  private void apply(double[] buf, int len) {
+    if (unsignedConversion != null) {
+      for (int i = 0; i < len; i++) {
+        buf[i] = unsignedConversion.convert(buf[i]);
+      }
+    }
+    if (convertMissing != null && convertMissing.hasMissing()) {
+      for (int i = 0; i < len; i++) {
+        if (convertMissing.isMissing(buf[i])) {
+          buf[i] = Double.NaN;
+        }
+      }
+    }
+    if (scaleOffset != null) {
+      for (int i = 0; i < len; i++) {
+        buf[i] = scaleOffset.convert(buf[i]);
+      }
+    }
+    for (Enhancement e : others) {
+      for (int i = 0; i < len; i++) {
+        buf[i] = e.convert(buf[i]);
+      }
+    }
+  }
+
+  /** Write buf into out[start, start + len), with the same semantics as Array.setDouble(). */
+  private static void write(double[] buf, int len, Array out, int start) {
+    Object storage = out.getStorage();
+    if (storage instanceof double[]) {
+      System.arraycopy(buf, 0, storage, start, len);
+    } else if (storage instanceof float[]) {
+      float[] dest = (float[]) storage;
+      for (int i = 0; i < len; i++) {
+        dest[start + i] = (float) buf[i];
+      }
+    } else {
+      for (int i = 0; i < len; i++) {
+        out.setDouble(start + i, buf[i]);
+      }
+    }
+  }
+}
@@ -35,6 +35,11 @@ public class SequenceDS extends StructureDS {
     return new StructureDataConverter(this, orgSeq.getStructureIterator(bufferSize));
   }
 
+  @Override
+  public StructureDataIterator getCursorIterator(int bufferSize) throws java.io.IOException {
+    return getStructureIterator(bufferSize);
+  }
+
   private static class StructureDataConverter implements StructureDataIterator {
     private StructureDataIterator orgIter;
     private SequenceDS newStruct;
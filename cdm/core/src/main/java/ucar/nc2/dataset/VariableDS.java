@@ -275,39 +275,25 @@ public class VariableDS extends Variable implements VariableEnhanced, EnhanceSca
 
 
       // TODO: change to a provider for extensible Enhancements
-      List<Enhancement> toApply = new ArrayList<>();
+      UnsignedConversion applyUnsigned = null;
+      ConvertMissing applyMissing = null;
+      ScaleOffset applyScaleOffset = null;
 
       if (enhancements.contains(Enhance.ConvertUnsigned) && unsignedConversion != null) {
-        toApply.add(unsignedConversion);
+        applyUnsigned = unsignedConversion;
         convertedType = unsignedConversion.getOutType();
       }
       if (enhancements.contains(Enhance.ConvertMissing) && convertMissing != null
           && (dataType == DataType.FLOAT || dataType == DataType.DOUBLE)) {
-        toApply.add(convertMissing);
+        applyMissing = convertMissing;
       }
       if (enhancements.contains(Enhance.ApplyScaleOffset) && scaleOffset != null) {
-        toApply.add(scaleOffset);
+        applyScaleOffset = scaleOffset;
         convertedType = scaleOffset.getScaledOffsetType();
       }
 
-      toApply.addAll(loadedEnhancements);
-
-
-      double[] dataArray = (double[]) data.get1DJavaArray(DataType.DOUBLE);
-
-      dataArray = Arrays.stream(dataArray).parallel().map((num) -> {
-        for (Enhancement e : toApply) {
-          num = e.convert(num);
-        }
-        return num;
-      }).toArray();
-
-      Array out = Array.factory(convertedType, data.getShape());
-      IndexIterator iterOut = out.getIndexIterator();
-      for (int i = 0; i < data.getSize(); i++) {
-        iterOut.setObjectNext(dataArray[i]);
-      }
-      return out;
+      return new FusedEnhancer(applyUnsigned, applyMissing, applyScaleOffset, loadedEnhancements).convert(data,
+          convertedType);
     }
   }
 
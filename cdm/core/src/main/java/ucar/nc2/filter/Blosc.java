@@ -5,17 +5,139 @@
 
 package ucar.nc2.filter;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Locale;
 import java.util.Map;
+import java.util.stream.IntStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
-
-// TODO: Still to be implemented
+/**
+ * Filter implementation of the Blosc (version 1) meta-compressor, as described by the
+ * <a href="https://numcodecs.readthedocs.io/en/stable/blosc.html">NumCodecs</a> project, and used by the HDF5 filter
+ * with id 32001.
+ * <p>
+ * Decoding is pure Java and supports the byte and bit shuffles, split blocks, and the blosclz, lz4, lz4hc, zlib and
+ * zstd codecs. The blocks of large buffers are decoded in parallel.
+ * Encoding supports the shuffles and the zlib and lz4 codecs; with other codecs the blocks are stored uncompressed,
+ * which is still readable by any Blosc decoder.
+ */
 public class Blosc extends Filter {
 
   private static final String name = "blosc";
 
   private static final int id = 32001;
 
-  public Blosc(Map<String, Object> properties) {}
+  public static class Keys {
+    public static final String CNAME_KEY = "cname";
+    public static final String CLEVEL_KEY = "clevel";
+    public static final String SHUFFLE_KEY = "shuffle";
+    public static final String BLOCKSIZE_KEY = "blocksize";
+    public static final String TYPESIZE_KEY = "typesize";
+  }
+
+  /** The codecs used inside Blosc, with their header format code. */
+  public enum Compressor {
+    BLOSCLZ("blosclz", 0), LZ4("lz4", 1), LZ4HC("lz4hc", 1), SNAPPY("snappy", 2), ZLIB("zlib", 3), ZSTD("zstd", 4);
+
+    private final String cname;
+    private final int format;
+
+    Compressor(String cname, int format) {
+      this.cname = cname;
+      this.format = format;
+    }
+
+    public String getName() {
+      return cname;
+    }
+
+    static Compressor fromName(String cname) {
+      for (Compressor c : values()) {
+        if (c.cname.equals(cname.toLowerCase(Locale.ROOT))) {
+          return c;
+        }
+      }
+      throw new IllegalArgumentException("Unknown Blosc compressor: " + cname);
+    }
+  }
+
+  // shuffle modes, as in numcodecs
+  public static final int NOSHUFFLE = 0;
+  public static final int SHUFFLE = 1;
+  public static final int BITSHUFFLE = 2;
+  public static final int AUTOSHUFFLE = -1;
+
+  private static final int HEADER_SIZE = 16;
+  private static final int MAX_TYPESIZE = 255;
+  private static final int MAX_SPLITS = 16;
+  private static final int MIN_BUFFERSIZE = 128;
+  private static final int DEFAULT_BLOCKSIZE = 256 * 1024;
+  private static final int MAX_BUFFERSIZE = Integer.MAX_VALUE - HEADER_SIZE - 8;
+
+  // decode blocks in parallel when the buffer is at least this large
+  private static final int PARALLEL_THRESHOLD = 256 * 1024;
+
+  // header flags
+  private static final int FLAG_SHUFFLE = 0x01;
+  private static final int FLAG_MEMCPYED = 0x02;
+  private static final int FLAG_BITSHUFFLE = 0x04;
+  private static final int FLAG_NOSPLIT = 0x10;
+
+  private static final int VERSION_FORMAT = 2;
+  private static final int VERSION_LZ = 1;
+
+  private final Compressor compressor;
+  private final int clevel;
+  private final int shuffle;
+  private final int blocksize; // 0 means automatic
+  private final int typesize;
+
+  public Blosc(Map<String, Object> properties) {
+    int[] data = properties.get(Filters.Keys.DATA) instanceof int[] ? (int[]) properties.get(Filters.Keys.DATA) : null;
+    if (data != null && data.length >= 7) {
+      // HDF5 filter client data: revision, version, typesize, chunk size, clevel, shuffle, compressor code
+      this.typesize = data[2];
+      this.clevel = data[4];
+      this.shuffle = data[5];
+      this.compressor = fromFormat(data[6]);
+      this.blocksize = 0;
+    } else {
+      Object cname = properties.get(Keys.CNAME_KEY);
+      this.compressor = cname == null ? Compressor.LZ4 : Compressor.fromName(cname.toString());
+      this.clevel = intProperty(properties, Keys.CLEVEL_KEY, 5);
+      this.shuffle = intProperty(properties, Keys.SHUFFLE_KEY, SHUFFLE);
+      this.blocksize = intProperty(properties, Keys.BLOCKSIZE_KEY, 0);
+      this.typesize = intProperty(properties, Keys.TYPESIZE_KEY, intProperty(properties, Filters.Keys.ELEM_SIZE, 1));
+    }
+    if (clevel < 0 || clevel > 9) {
+      throw new IllegalArgumentException("Invalid Blosc compression level: " + clevel);
+    }
+    if (shuffle < AUTOSHUFFLE || shuffle > BITSHUFFLE) {
+      throw new IllegalArgumentException("Invalid Blosc shuffle: " + shuffle);
+    }
+  }
+
+  private static int intProperty(Map<String, Object> properties, String key, int defaultValue) {
+    Object value = properties.get(key);
+    if (value instanceof Number) {
+      return ((Number) value).intValue();
+    } else if (value instanceof String) {
+      return Integer.parseInt((String) value);
+    }
+    return defaultValue;
+  }
+
+  private static Compressor fromFormat(int format) {
+    for (Compressor c : Compressor.values()) {
+      if (c.format == format) {
+        return c;
+      }
+    }
+    throw new IllegalArgumentException("Unknown Blosc compressor code: " + format);
+  }
 
   @Override
   public String getName() {
@@ -27,14 +149,399 @@ public class Blosc extends Filter {
     return id;
   }
 
+  ////////////////////////////////////////////////////////////////////////////////////
+  // decoding
+
   @Override
-  public byte[] encode(byte[] dataIn) {
-    return new byte[0];
+  public byte[] decode(byte[] dataIn) throws IOException {
+    if (dataIn.length < HEADER_SIZE) {
+      throw new IOException("Invalid Blosc buffer: too short");
+    }
+    int version = dataIn[0] & 0xFF;
+    int flags = dataIn[2] & 0xFF;
+    int typesize = dataIn[3] & 0xFF;
+    int nbytes = readIntLE(dataIn, 4);
+    int blocksize = readIntLE(dataIn, 8);
+    int cbytes = readIntLE(dataIn, 12);
+    if (nbytes < 0 || nbytes > MAX_BUFFERSIZE || cbytes < HEADER_SIZE || cbytes > dataIn.length || typesize == 0) {
+      throw new IOException("Invalid Blosc header");
+    }
+
+    byte[] dataOut = new byte[nbytes];
+    if (nbytes == 0) {
+      return dataOut;
+    }
+    if ((flags & FLAG_MEMCPYED) != 0) {
+      if (HEADER_SIZE + nbytes > cbytes) {
+        throw new IOException("Invalid Blosc buffer: truncated");
+      }
+      System.arraycopy(dataIn, HEADER_SIZE, dataOut, 0, nbytes);
+      return dataOut;
+    }
+    if (blocksize <= 0) {
+      throw new IOException("Invalid Blosc block size " + blocksize);
+    }
+    if ((flags & 0xE0) >>> 5 > Compressor.ZSTD.format) {
+      throw new IOException("Unknown Blosc compressor code " + ((flags & 0xE0) >>> 5));
+    }
+
+    int nblocks = nbytes / blocksize + (nbytes % blocksize == 0 ? 0 : 1);
+    if (HEADER_SIZE + 4L * nblocks > cbytes) {
+      throw new IOException("Invalid Blosc buffer: truncated");
+    }
+    BlockDecoder decoder = new BlockDecoder(dataIn, cbytes, dataOut, version, flags, typesize, blocksize, nblocks);
+    try {
+      IntStream blocks = IntStream.range(0, nblocks);
+      if (nblocks > 1 && nbytes >= PARALLEL_THRESHOLD) {
+        blocks = blocks.parallel();
+      }
+      blocks.forEach(decoder::decodeBlock);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    return dataOut;
+  }
+
+  // decodes the blocks of one buffer, each block may be decoded on a different thread
+  private static class BlockDecoder {
+    final byte[] src;
+    final int srcEnd;
+    final byte[] dest;
+    final int version;
+    final int typesize;
+    final int blocksize;
+    final int nblocks;
+    final Compressor compressor;
+    final boolean dontSplit;
+    final boolean doShuffle;
+    final boolean doBitShuffle;
+
+    BlockDecoder(byte[] src, int srcEnd, byte[] dest, int version, int flags, int typesize, int blocksize,
+        int nblocks) {
+      this.src = src;
+      this.srcEnd = srcEnd;
+      this.dest = dest;
+      this.version = version;
+      this.typesize = typesize;
+      this.blocksize = blocksize;
+      this.nblocks = nblocks;
+      this.compressor = fromFormat((flags & 0xE0) >>> 5);
+      this.dontSplit = (flags & FLAG_NOSPLIT) != 0;
+      this.doShuffle = (flags & FLAG_SHUFFLE) != 0 && typesize > 1;
+      this.doBitShuffle = (flags & FLAG_BITSHUFFLE) != 0 && blocksize >= typesize;
+    }
+
+    void decodeBlock(int block) {
+      try {
+        int destStart = block * blocksize;
+        boolean leftover = block == nblocks - 1 && dest.length % blocksize != 0;
+        int bsize = leftover ? dest.length - destStart : blocksize;
+
+        // decompress into a temporary block if it must be unshuffled
+        boolean unshuffle = doShuffle || doBitShuffle;
+        byte[] out = unshuffle ? new byte[bsize] : dest;
+        int outStart = unshuffle ? 0 : destStart;
+
+        int nsplits = 1;
+        if (!dontSplit && !leftover && typesize <= MAX_SPLITS && blocksize / typesize >= MIN_BUFFERSIZE) {
+          nsplits = typesize;
+        }
+        int neblock = bsize / nsplits;
+        int ip = readIntLE(src, HEADER_SIZE + 4 * block);
+        ZstdDecoder zstd = compressor == Compressor.ZSTD ? new ZstdDecoder() : null;
+        for (int j = 0; j < nsplits; j++) {
+          if (ip < 0 || ip + 4 > srcEnd) {
+            throw new IOException("Invalid Blosc buffer: bad block start");
+          }
+          int csize = readIntLE(src, ip);
+          ip += 4;
+          if (csize < 0 || ip + csize > srcEnd) {
+            throw new IOException("Invalid Blosc buffer: truncated block");
+          }
+          int op = outStart + j * neblock;
+          int n;
+          if (csize == neblock) { // stored uncompressed
+            System.arraycopy(src, ip, out, op, neblock);
+            n = neblock;
+          } else {
+            n = decompress(zstd, ip, csize, out, op, neblock);
+          }
+          if (n != neblock) {
+            throw new IOException("Invalid Blosc buffer: block decompressed to " + n + " bytes, expected " + neblock);
+          }
+          ip += csize;
+        }
+
+        if (doShuffle) {
+          unshuffle(typesize, bsize, out, dest, destStart);
+        } else if (doBitShuffle) {
+          bitunshuffle(typesize, bsize, out, dest, destStart);
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    private int decompress(ZstdDecoder zstd, int ip, int csize, byte[] out, int op, int maxout) throws IOException {
+      switch (compressor) {
+        case BLOSCLZ:
+          return BloscLZDecoder.decompress(src, ip, csize, out, op, maxout);
+        case LZ4:
+        case LZ4HC:
+          return LZ4Codec.decompress(src, ip, csize, out, op, maxout);
+        case ZLIB:
+          return inflate(src, ip, csize, out, op, maxout);
+        case ZSTD:
+          return zstd.decompress(src, ip, csize, out, op, maxout);
+        default:
+          throw new IOException("Blosc compressor " + compressor.getName() + " is not supported");
+      }
+    }
+
+    private void bitunshuffle(int typesize, int bsize, byte[] src, byte[] dest, int destStart) {
+      int size = bsize / typesize;
+      if (version == VERSION_FORMAT) {
+        // format version 2 only bitshuffles blocks with a multiple of 8 elements
+        if (size % 8 != 0) {
+          System.arraycopy(src, 0, dest, destStart, bsize);
+          return;
+        }
+      } else {
+        size -= size % 8;
+      }
+      bitUnshuffle(typesize, size, src, dest, destStart);
+      int offset = size * typesize;
+      System.arraycopy(src, offset, dest, destStart + offset, bsize - offset);
+    }
+  }
+
+  private static int inflate(byte[] src, int ip, int csize, byte[] out, int op, int maxout) throws IOException {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(src, ip, csize);
+      int n = 0;
+      while (n < maxout && !inflater.finished()) {
+        int count = inflater.inflate(out, op + n, maxout - n);
+        if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        n += count;
+      }
+      return n;
+    } catch (DataFormatException e) {
+      throw new IOException(e);
+    } finally {
+      inflater.end();
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////////////////
+  // shuffles
+
+  // undo the byte shuffle of one block
+  static void unshuffle(int typesize, int bsize, byte[] src, byte[] dest, int destStart) {
+    int neblock = bsize / typesize;
+    for (int j = 0; j < typesize; j++) {
+      int s = j * neblock;
+      int d = destStart + j;
+      for (int i = 0; i < neblock; i++) {
+        dest[d] = src[s++];
+        d += typesize;
+      }
+    }
+    int leftover = bsize - neblock * typesize;
+    System.arraycopy(src, neblock * typesize, dest, destStart + neblock * typesize, leftover);
+  }
+
+  // byte shuffle of one block
+  static void shuffle(int typesize, int bsize, byte[] src, int srcStart, byte[] dest) {
+    int neblock = bsize / typesize;
+    for (int j = 0; j < typesize; j++) {
+      int s = srcStart + j;
+      int d = j * neblock;
+      for (int i = 0; i < neblock; i++) {
+        dest[d++] = src[s];
+        s += typesize;
+      }
+    }
+    int leftover = bsize - neblock * typesize;
+    System.arraycopy(src, srcStart + neblock * typesize, dest, neblock * typesize, leftover);
+  }
+
+  /*
+   * The bit shuffle groups bit i of byte j of every element together: bit plane (8 * j + i) holds one bit per element,
+   * element k in bit (k % 8) of byte (k / 8). Only size, a multiple of 8, elements are shuffled.
+   */
+  static void bitUnshuffle(int typesize, int size, byte[] src, byte[] dest, int destStart) {
+    int nbyteRow = size / 8; // bytes in one bit plane
+    for (int j = 0; j < typesize; j++) {
+      for (int k = 0; k < nbyteRow; k++) {
+        // transpose the 8x8 bit matrix formed by bit planes 8j..8j+7 of elements 8k..8k+7
+        long x = 0;
+        for (int i = 0; i < 8; i++) {
+          x |= (src[(8 * j + i) * nbyteRow + k] & 0xFFL) << (8 * i);
+        }
+        x = transposeBits(x);
+        int d = destStart + 8 * k * typesize + j;
+        for (int e = 0; e < 8; e++) {
+          dest[d + e * typesize] = (byte) (x >>> (8 * e));
+        }
+      }
+    }
+  }
+
+  static void bitShuffle(int typesize, int size, byte[] src, int srcStart, byte[] dest) {
+    int nbyteRow = size / 8;
+    for (int j = 0; j < typesize; j++) {
+      for (int k = 0; k < nbyteRow; k++) {
+        long x = 0;
+        int s = srcStart + 8 * k * typesize + j;
+        for (int e = 0; e < 8; e++) {
+          x |= (src[s + e * typesize] & 0xFFL) << (8 * e);
+        }
+        x = transposeBits(x);
+        for (int i = 0; i < 8; i++) {
+          dest[(8 * j + i) * nbyteRow + k] = (byte) (x >>> (8 * i));
+        }
+      }
+    }
+  }
+
+  // transpose an 8x8 bit matrix, byte r of x is row r, bit c of a row is column c
+  private static long transposeBits(long x) {
+    long t = (x ^ (x >>> 7)) & 0x00AA00AA00AA00AAL;
+    x = x ^ t ^ (t << 7);
+    t = (x ^ (x >>> 14)) & 0x0000CCCC0000CCCCL;
+    x = x ^ t ^ (t << 14);
+    t = (x ^ (x >>> 28)) & 0x00000000F0F0F0F0L;
+    x = x ^ t ^ (t << 28);
+    return x;
   }
 
+  ////////////////////////////////////////////////////////////////////////////////////
+  // encoding
+
   @Override
-  public byte[] decode(byte[] dataIn) {
-    return new byte[0];
+  public byte[] encode(byte[] dataIn) throws IOException {
+    int nbytes = dataIn.length;
+    if (nbytes > MAX_BUFFERSIZE) {
+      throw new IOException("Buffer too large for Blosc: " + nbytes);
+    }
+    int typesize = (this.typesize < 1 || this.typesize > MAX_TYPESIZE) ? 1 : this.typesize;
+    int shuffle = this.shuffle == AUTOSHUFFLE ? (typesize == 1 ? BITSHUFFLE : SHUFFLE) : this.shuffle;
+
+    int flags = FLAG_NOSPLIT | (compressor.format << 5);
+    if (shuffle == SHUFFLE) {
+      flags |= FLAG_SHUFFLE;
+    } else if (shuffle == BITSHUFFLE) {
+      flags |= FLAG_BITSHUFFLE;
+    }
+
+    int blocksize = this.blocksize > 0 ? this.blocksize : DEFAULT_BLOCKSIZE;
+    blocksize = Math.min(blocksize, nbytes);
+    if (blocksize > typesize) {
+      blocksize -= blocksize % typesize;
+    }
+    int nblocks = blocksize == 0 ? 0 : nbytes / blocksize + (nbytes % blocksize == 0 ? 0 : 1);
+
+    if (clevel == 0 || nbytes < MIN_BUFFERSIZE) {
+      return memcpyed(dataIn, flags, typesize, blocksize);
+    }
+
+    byte[] out = new byte[HEADER_SIZE + 4 * nblocks + nbytes + 4 * nblocks]; // room for storing every block raw
+    int op = HEADER_SIZE + 4 * nblocks;
+    byte[] shuffled = new byte[blocksize];
+    byte[] compressed = new byte[LZ4Codec.maxCompressedLength(blocksize)];
+    for (int b = 0; b < nblocks; b++) {
+      int start = b * blocksize;
+      int bsize = Math.min(blocksize, nbytes - start);
+      byte[] block = dataIn;
+      int blockStart = start;
+      if (shuffle == SHUFFLE && typesize > 1) {
+        shuffle(typesize, bsize, dataIn, start, shuffled);
+        block = shuffled;
+        blockStart = 0;
+      } else if (shuffle == BITSHUFFLE && bsize >= typesize && (bsize / typesize) % 8 == 0) {
+        // format version 2 only bitshuffles blocks with a multiple of 8 elements
+        int size = bsize / typesize;
+        bitShuffle(typesize, size, dataIn, start, shuffled);
+        System.arraycopy(dataIn, start + size * typesize, shuffled, size * typesize, bsize - size * typesize);
+        block = shuffled;
+        blockStart = 0;
+      }
+
+      int csize = compress(block, blockStart, bsize, compressed);
+      writeIntLE(out, HEADER_SIZE + 4 * b, op);
+      if (csize > 0 && csize < bsize) {
+        writeIntLE(out, op, csize);
+        System.arraycopy(compressed, 0, out, op + 4, csize);
+        op += 4 + csize;
+      } else { // store uncompressed
+        writeIntLE(out, op, bsize);
+        System.arraycopy(block, blockStart, out, op + 4, bsize);
+        op += 4 + bsize;
+      }
+    }
+
+    if (op >= HEADER_SIZE + nbytes) {
+      return memcpyed(dataIn, flags, typesize, blocksize);
+    }
+    writeHeader(out, flags, typesize, nbytes, blocksize, op);
+    byte[] result = new byte[op];
+    System.arraycopy(out, 0, result, 0, op);
+    return result;
+  }
+
+  // return size of compressed block, or 0 if not compressible with this compressor
+  private int compress(byte[] src, int start, int len, byte[] dest) {
+    switch (compressor) {
+      case LZ4:
+      case LZ4HC:
+        return LZ4Codec.compress(src, start, len, dest, 0);
+      case ZLIB: {
+        Deflater deflater = new Deflater(clevel);
+        try {
+          deflater.setInput(src, start, len);
+          deflater.finish();
+          int n = deflater.deflate(dest, 0, Math.min(dest.length, len));
+          return deflater.finished() ? n : 0;
+        } finally {
+          deflater.end();
+        }
+      }
+      default:
+        return 0;
+    }
+  }
+
+  private static byte[] memcpyed(byte[] dataIn, int flags, int typesize, int blocksize) {
+    byte[] out = new byte[HEADER_SIZE + dataIn.length];
+    // shuffle flags are meaningless for a memcpyed buffer
+    writeHeader(out, (flags & ~(FLAG_SHUFFLE | FLAG_BITSHUFFLE)) | FLAG_MEMCPYED, typesize, dataIn.length, blocksize,
+        out.length);
+    System.arraycopy(dataIn, 0, out, HEADER_SIZE, dataIn.length);
+    return out;
+  }
+
+  private static void writeHeader(byte[] out, int flags, int typesize, int nbytes, int blocksize, int cbytes) {
+    out[0] = VERSION_FORMAT;
+    out[1] = VERSION_LZ;
+    out[2] = (byte) flags;
+    out[3] = (byte) typesize;
+    writeIntLE(out, 4, nbytes);
+    writeIntLE(out, 8, blocksize);
+    writeIntLE(out, 12, cbytes);
+  }
+
+  private static int readIntLE(byte[] b, int pos) {
+    return (b[pos] & 0xFF) | (b[pos + 1] & 0xFF) << 8 | (b[pos + 2] & 0xFF) << 16 | (b[pos + 3] & 0xFF) << 24;
+  }
+
+  private static void writeIntLE(byte[] b, int pos, int value) {
+    b[pos] = (byte) value;
+    b[pos + 1] = (byte) (value >>> 8);
+    b[pos + 2] = (byte) (value >>> 16);
+    b[pos + 3] = (byte) (value >>> 24);
   }
 
   public static class Provider implements FilterProvider {
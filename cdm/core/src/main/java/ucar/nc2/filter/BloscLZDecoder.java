@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2.filter;
+
+import java.io.IOException;
+
+/**
+ * Pure Java decoder for BloscLZ, the default (FastLZ derived) codec of {@link Blosc}.
+ */
+class BloscLZDecoder {
+  private static final int MAX_DISTANCE = 8191;
+
+  private BloscLZDecoder() {}
+
+  /**
+   * Decompress src[srcOff, srcOff + srcLen) into dst, starting at dstOff.
+   *
+   * @return number of bytes written to dst
+   * @throws IOException on malformed input, or if dst is too small
+   */
+  static int decompress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) throws IOException {
+    if (srcLen == 0) {
+      return 0;
+    }
+    int ip = srcOff;
+    int srcEnd = srcOff + srcLen;
+    int op = dstOff;
+    int dstEnd = dstOff + dstLen;
+
+    int ctrl = src[ip++] & 31;
+    while (true) {
+      if (ctrl >= 32) { // match
+        int len = (ctrl >>> 5) - 1;
+        int ofs = (ctrl & 31) << 8;
+        int code;
+        if (len == 7 - 1) {
+          do {
+            if (ip + 1 >= srcEnd) {
+              throw new IOException("Truncated BloscLZ input");
+            }
+            code = src[ip++] & 0xFF;
+            len += code;
+          } while (code == 255);
+        } else if (ip + 1 >= srcEnd) {
+          throw new IOException("Truncated BloscLZ input");
+        }
+        code = src[ip++] & 0xFF;
+        len += 3;
+        int distance = ofs + code + 1;
+
+        // match from 16-bit distance
+        if (code == 255 && ofs == (31 << 8)) {
+          if (ip + 1 >= srcEnd) {
+            throw new IOException("Truncated BloscLZ input");
+          }
+          ofs = (src[ip++] & 0xFF) << 8;
+          ofs += src[ip++] & 0xFF;
+          distance = ofs + MAX_DISTANCE + 1;
+        }
+
+        if (op + len > dstEnd) {
+          throw new IOException("BloscLZ output exceeds destination size");
+        }
+        int ref = op - distance;
+        if (ref < dstOff) {
+          throw new IOException("Invalid BloscLZ match distance");
+        }
+        if (distance >= len) {
+          System.arraycopy(dst, ref, dst, op, len);
+          op += len;
+        } else { // overlapping copy, including runs
+          for (int i = 0; i < len; i++) {
+            dst[op++] = dst[ref++];
+          }
+        }
+        if (ip >= srcEnd) {
+          break;
+        }
+        ctrl = src[ip++] & 0xFF;
+
+      } else { // literal run
+        ctrl++;
+        if (op + ctrl > dstEnd) {
+          throw new IOException("BloscLZ output exceeds destination size");
+        }
+        if (ip + ctrl > srcEnd) {
+          throw new IOException("Truncated BloscLZ input");
+        }
+        System.arraycopy(src, ip, dst, op, ctrl);
+        op += ctrl;
+        ip += ctrl;
+        if (ip >= srcEnd) {
+          break;
+        }
+        ctrl = src[ip++] & 0xFF;
+      }
+    }
+    return op - dstOff;
+  }
+}
@@ -13,12 +13,12 @@ import java.util.zip.CRC32;
 import java.util.zip.Checksum;
 
 /**
- * Filter implementation for 32-bit checksums: Fletcher, Adler, and CRC
+ * Filter implementation for 32-bit checksums: Fletcher, Adler, CRC and CRC-32C
  */
 public class Checksum32 extends Filter {
 
   public enum CType {
-    FLETCHER("fletcher32", 3), ADLER("adler32", -1), CRC("crc32", -1);
+    FLETCHER("fletcher32", 3), ADLER("adler32", -1), CRC("crc32", -1), CRC32C("crc32c", -1);
 
     private final String name;
 
@@ -54,11 +54,11 @@ public class Checksum32 extends Filter {
     int checksum = (int) getChecksum(dataIn);
     // append checksum in front or behind data
     // Adler and CRC are supported by Zarr, which follows the NumCodec spec with a checksum before the data
-    // Fletcher is support by hdf5, which has the checksum after the data
+    // Fletcher is support by hdf5, and CRC-32C by Zarr v3, which have the checksum after the data
     byte[] dataOut = new byte[dataIn.length + nbytes];
-    int dataStart = this.type == CType.FLETCHER ? 0 : nbytes;
+    int dataStart = checksumAfterData() ? 0 : nbytes;
     System.arraycopy(dataIn, 0, dataOut, dataStart, dataIn.length);
-    int checksumStart = this.type == CType.FLETCHER ? dataOut.length - nbytes : 0;
+    int checksumStart = checksumAfterData() ? dataOut.length - nbytes : 0;
     // encode as little endian by default
     System.arraycopy(Ints.toByteArray(Integer.reverseBytes(checksum)), 0, dataOut, checksumStart, nbytes);;
     return dataOut;
@@ -69,13 +69,13 @@ public class Checksum32 extends Filter {
     // strip the checksum
     byte[] dataOut = new byte[dataIn.length - nbytes];
     // Adler and CRC are supported by Zarr, which follows the NumCodec spec with a checksum before the data
-    // Fletcher is support by hdf5, which has the checksum after the data
-    int dataStart = this.type == CType.FLETCHER ? 0 : nbytes;
+    // Fletcher is support by hdf5, and CRC-32C by Zarr v3, which have the checksum after the data
+    int dataStart = checksumAfterData() ? 0 : nbytes;
     System.arraycopy(dataIn, dataStart, dataOut, 0, dataOut.length);
     // verify checksum
     int checksum = (int) getChecksum(dataOut);
     byte[] bytes = new byte[nbytes];
-    int checksumStart = this.type == CType.FLETCHER ? dataIn.length - nbytes : 0;
+    int checksumStart = checksumAfterData() ? dataIn.length - nbytes : 0;
     System.arraycopy(dataIn, checksumStart, bytes, 0, nbytes);
     int i = Integer.reverseBytes(Ints.fromByteArray(bytes)); // convert from little endian
     if (i != checksum) {
@@ -85,6 +85,10 @@ public class Checksum32 extends Filter {
     return dataOut;
   }
 
+  private boolean checksumAfterData() {
+    return this.type == CType.FLETCHER || this.type == CType.CRC32C;
+  }
+
   private long getChecksum(byte[] data) {
     Checksum checksum;
     switch (type) {
@@ -94,6 +98,9 @@ public class Checksum32 extends Filter {
       case CRC:
         checksum = new CRC32();
         break;
+      case CRC32C:
+        checksum = new CRC32C();
+        break;
       case FLETCHER:
       default:
         checksum = new Fletcher32();
@@ -150,6 +157,48 @@ public class Checksum32 extends Filter {
     }
   }
 
+  /**
+   * CRC-32C (Castagnoli), which java.util.zip only has from Java 9
+   */
+  private static class CRC32C implements Checksum {
+
+    private static final int[] table = new int[256];
+
+    static {
+      for (int i = 0; i < 256; i++) {
+        int crc = i;
+        for (int k = 0; k < 8; k++) {
+          crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0x82F63B78 : crc >>> 1;
+        }
+        table[i] = crc;
+      }
+    }
+
+    private int crc = 0xFFFFFFFF;
+
+    @Override
+    public void update(int b) {
+      crc = (crc >>> 8) ^ table[(crc ^ b) & 0xff];
+    }
+
+    @Override
+    public void update(byte[] b, int off, int len) {
+      for (int i = off; i < off + len; i++) {
+        crc = (crc >>> 8) ^ table[(crc ^ b[i]) & 0xff];
+      }
+    }
+
+    @Override
+    public long getValue() {
+      return ~crc & 0xFFFFFFFFL;
+    }
+
+    @Override
+    public void reset() {
+      crc = 0xFFFFFFFF;
+    }
+  }
+
   public static class Fletcher32Provider implements FilterProvider {
 
     @Override
@@ -203,4 +252,22 @@ public class Checksum32 extends Filter {
       return new Checksum32(CType.CRC);
     }
   }
+
+  public static class CRC32CProvider implements FilterProvider {
+
+    @Override
+    public String getName() {
+      return CType.CRC32C.name;
+    }
+
+    @Override
+    public int getId() {
+      return CType.CRC32C.id;
+    }
+
+    @Override
+    public Filter create(Map<String, Object> properties) {
+      return new Checksum32(CType.CRC32C);
+    }
+  }
 }
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2.filter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import ucar.nc2.util.IO;
+
+/**
+ * Filter implementation of gzip compression, eg the Zarr "gzip" codec.
+ */
+public class Gzip extends Filter {
+  private static final int MAX_ARRAY_LEN = Integer.MAX_VALUE - 8;
+
+  private static final String name = "gzip";
+
+  private static final int id = -1;
+
+  private final int clevel; // compression level
+
+  public Gzip(Map<String, Object> properties) {
+    final Object levelObj = properties.get("level");
+    if (levelObj == null) {
+      this.clevel = 1; // default value
+    } else if (levelObj instanceof String) {
+      this.clevel = Integer.parseInt((String) levelObj);
+    } else {
+      this.clevel = ((Number) levelObj).intValue();
+    }
+    if (clevel < 0 || clevel > 9) {
+      throw new IllegalArgumentException("Invalid compression level: " + clevel);
+    }
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public int getId() {
+    return id;
+  }
+
+  @Override
+  public byte[] encode(byte[] dataIn) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream(dataIn.length);
+    try (GZIPOutputStream gos = new GZIPOutputStream(os) {
+      {
+        def.setLevel(clevel == 0 ? Deflater.NO_COMPRESSION : clevel);
+      }
+    }) {
+      gos.write(dataIn);
+      gos.finish();
+    }
+    return os.toByteArray();
+  }
+
+  @Override
+  public byte[] decode(byte[] dataIn) throws IOException {
+    int len = Math.min(8 * dataIn.length, MAX_ARRAY_LEN);
+    try (ByteArrayInputStream in = new ByteArrayInputStream(dataIn);
+        GZIPInputStream gis = new GZIPInputStream(in, Math.max(dataIn.length, 512));
+        ByteArrayOutputStream os = new ByteArrayOutputStream(len)) {
+
+      IO.copyB(gis, os, IO.default_socket_buffersize);
+
+      return os.toByteArray();
+    }
+  }
+
+  public static class Provider implements FilterProvider {
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public int getId() {
+      return id;
+    }
+
+    @Override
+    public Filter create(Map<String, Object> properties) {
+      return new Gzip(properties);
+    }
+  }
+}
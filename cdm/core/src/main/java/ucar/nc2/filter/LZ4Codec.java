@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2.filter;
+
+import java.io.IOException;
+
+/**
+ * Pure Java codec for the LZ4 block format, as used internally by {@link Blosc}.
+ * The compressor is a simple greedy matcher; its output is valid LZ4 but not as small as the reference library's.
+ */
+class LZ4Codec {
+  private static final int MIN_MATCH = 4;
+  private static final int MF_LIMIT = 12; // a match must start at least this far from the end
+  private static final int LAST_LITERALS = 5; // the last bytes are always literals
+  private static final int MAX_DISTANCE = 65535;
+  private static final int HASH_LOG = 14;
+
+  private LZ4Codec() {}
+
+  /**
+   * Decompress the LZ4 block src[srcOff, srcOff + srcLen) into dst, starting at dstOff.
+   *
+   * @return number of bytes written to dst
+   * @throws IOException on malformed input, or if dst is too small
+   */
+  static int decompress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) throws IOException {
+    int ip = srcOff;
+    int srcEnd = srcOff + srcLen;
+    int op = dstOff;
+    int dstEnd = dstOff + dstLen;
+
+    while (ip < srcEnd) {
+      int token = src[ip++] & 0xFF;
+
+      // literals
+      int litLen = token >>> 4;
+      if (litLen == 15) {
+        int b;
+        do {
+          if (ip >= srcEnd) {
+            throw new IOException("Truncated LZ4 input");
+          }
+          b = src[ip++] & 0xFF;
+          litLen += b;
+        } while (b == 255);
+      }
+      if (ip + litLen > srcEnd || op + litLen > dstEnd) {
+        throw new IOException("Invalid LZ4 literal length");
+      }
+      System.arraycopy(src, ip, dst, op, litLen);
+      ip += litLen;
+      op += litLen;
+      if (ip >= srcEnd) {
+        break; // the last sequence has no match
+      }
+
+      // match
+      if (ip + 2 > srcEnd) {
+        throw new IOException("Truncated LZ4 input");
+      }
+      int offset = (src[ip] & 0xFF) | (src[ip + 1] & 0xFF) << 8;
+      ip += 2;
+      if (offset == 0 || offset > op - dstOff) {
+        throw new IOException("Invalid LZ4 match offset " + offset);
+      }
+      int matchLen = token & 0x0F;
+      if (matchLen == 15) {
+        int b;
+        do {
+          if (ip >= srcEnd) {
+            throw new IOException("Truncated LZ4 input");
+          }
+          b = src[ip++] & 0xFF;
+          matchLen += b;
+        } while (b == 255);
+      }
+      matchLen += MIN_MATCH;
+      if (op + matchLen > dstEnd) {
+        throw new IOException("LZ4 output exceeds destination size");
+      }
+      int ref = op - offset;
+      if (offset >= matchLen) {
+        System.arraycopy(dst, ref, dst, op, matchLen);
+        op += matchLen;
+      } else { // overlapping copy
+        for (int i = 0; i < matchLen; i++) {
+          dst[op++] = dst[ref++];
+        }
+      }
+    }
+    return op - dstOff;
+  }
+
+  /** The largest size that compressing n bytes can produce. */
+  static int maxCompressedLength(int n) {
+    return n + n / 255 + 16;
+  }
+
+  /**
+   * Compress src[srcOff, srcOff + srcLen) as an LZ4 block into dst, starting at dstOff.
+   * dst must have room for {@link #maxCompressedLength(int)} bytes.
+   *
+   * @return number of bytes written to dst
+   */
+  static int compress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff) {
+    int srcEnd = srcOff + srcLen;
+    int op = dstOff;
+    int anchor = srcOff;
+    int ip = srcOff;
+
+    if (srcLen >= MF_LIMIT + 1) {
+      int[] table = new int[1 << HASH_LOG];
+      java.util.Arrays.fill(table, -1);
+      int matchLimit = srcEnd - LAST_LITERALS;
+      int ipLimit = srcEnd - MF_LIMIT;
+
+      while (ip <= ipLimit) {
+        int seq = readInt(src, ip);
+        int h = (seq * -1640531535) >>> (32 - HASH_LOG);
+        int ref = table[h];
+        table[h] = ip;
+        if (ref < 0 || ip - ref > MAX_DISTANCE || readInt(src, ref) != seq) {
+          ip++;
+          continue;
+        }
+
+        int matchLen = MIN_MATCH;
+        while (ip + matchLen < matchLimit && src[ref + matchLen] == src[ip + matchLen]) {
+          matchLen++;
+        }
+        op = writeSequence(src, anchor, ip - anchor, dst, op, ip - ref, matchLen);
+        ip += matchLen;
+        anchor = ip;
+      }
+    }
+
+    // last literals
+    return writeSequence(src, anchor, srcEnd - anchor, dst, op, 0, 0) - dstOff;
+  }
+
+  private static int writeSequence(byte[] src, int litStart, int litLen, byte[] dst, int op, int offset,
+      int matchLen) {
+    int tokenPos = op++;
+    int token = Math.min(litLen, 15) << 4;
+    if (litLen >= 15) {
+      op = writeLength(dst, op, litLen - 15);
+    }
+    System.arraycopy(src, litStart, dst, op, litLen);
+    op += litLen;
+
+    if (matchLen > 0) {
+      dst[op++] = (byte) offset;
+      dst[op++] = (byte) (offset >>> 8);
+      int ml = matchLen - MIN_MATCH;
+      token |= Math.min(ml, 15);
+      if (ml >= 15) {
+        op = writeLength(dst, op, ml - 15);
+      }
+    }
+    dst[tokenPos] = (byte) token;
+    return op;
+  }
+
+  private static int writeLength(byte[] dst, int op, int len) {
+    while (len >= 255) {
+      dst[op++] = (byte) 255;
+      len -= 255;
+    }
+    dst[op++] = (byte) len;
+    return op;
+  }
+
+  private static int readInt(byte[] b, int pos) {
+    return (b[pos] & 0xFF) | (b[pos + 1] & 0xFF) << 8 | (b[pos + 2] & 0xFF) << 16 | (b[pos + 3] & 0xFF) << 24;
+  }
+}
@@ -5,10 +5,9 @@ import java.util.HashMap;
 import java.util.Map;
 import ucar.nc2.constants.CDM;
 import java.util.Set;
-import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
 import ucar.ma2.Array;
 import ucar.ma2.DataType;
-import ucar.ma2.IndexIterator;
+import ucar.nc2.Attribute;
 import ucar.nc2.AttributeContainer;
 import ucar.nc2.Variable;
 import ucar.nc2.dataset.NetcdfDataset.Enhance;
@@ -20,23 +19,37 @@ public class Normalizer implements Enhancement {
   private final double minimum;
   private final double range; // maximum - minimum
   private static String name = "Normalizer";
+  private static final String ATTRIBUTE_NAME = "normalize";
 
+  /**
+   * Create from the statistics of the variable's data. If the "normalize" attribute holds two numbers, they
+   * are used as the minimum and maximum (see {@link #getAttribute()}); otherwise the data is read one
+   * section at a time, and the result cached for the next time the variable is opened.
+   */
   public static Normalizer createFromVariable(VariableDS var) {
+    DataType type = var.getDataType();
+    Attribute att = var.attributes().findAttribute(ATTRIBUTE_NAME);
+    if (att != null && !att.isString() && att.getLength() == 2) {
+      return create(att.getNumericValue(0).doubleValue(), att.getNumericValue(1).doubleValue(), type);
+    }
     try {
-      Array arr = var.read();
-      DataType type = var.getDataType();
-      return createFromArray(arr, type);
+      StreamingStatistics statistics = StreamingStatistics.of(var, Normalizer.class);
+      return create(statistics.getMin(), statistics.getMax(), type);
     } catch (IOException e) {
-      return new Normalizer(0.0, 1.0, var.getDataType());
+      return new Normalizer(0.0, 1.0, type);
     }
   }
 
   public static Normalizer createFromArray(Array arr, DataType type) {
-    SummaryStatistics statistics = calculationHelper(arr);
-    if ((statistics.getMax() - statistics.getMin()) == 0) {
+    StreamingStatistics statistics = StreamingStatistics.compute(arr);
+    return create(statistics.getMin(), statistics.getMax(), type);
+  }
+
+  private static Normalizer create(double minimum, double maximum, DataType type) {
+    if ((maximum - minimum) == 0) {
       return new Normalizer(0.0, 1.0, type);
     }
-    return new Normalizer(statistics.getMin(), (statistics.getMax() - statistics.getMin()), type);
+    return new Normalizer(minimum, maximum - minimum, type);
   }
 
   private Normalizer(double minimum, double range, DataType type) {
@@ -49,18 +62,6 @@ public class Normalizer implements Enhancement {
     scaleOffset = new ScaleOffset(props);
   }
 
-  private static SummaryStatistics calculationHelper(Array arr) {
-    SummaryStatistics sumStat = new SummaryStatistics();
-    IndexIterator iterArr = arr.getIndexIterator();
-    while (iterArr.hasNext()) {
-      Number value = (Number) iterArr.getObjectNext();
-      if (!Double.isNaN(value.doubleValue())) {
-        sumStat.addValue(value.doubleValue());
-      }
-    }
-    return sumStat;
-  }
-
   public Array convert(Array arr) {
     return scaleOffset.applyScaleOffset(arr);
   }
@@ -77,9 +78,16 @@ public class Normalizer implements Enhancement {
     return range;
   }
 
-  public static class Provider implements EnhancementProvider {
+  /**
+   * The minimum and maximum as a "normalize" attribute. Adding it to the variable, for example in NcML,
+   * lets {@link #createFromVariable} skip reading the data.
+   */
+  public Attribute getAttribute() {
+    return Attribute.builder(ATTRIBUTE_NAME).setValues(Array.makeFromJavaArray(new double[] {minimum, minimum + range}))
+        .build();
+  }
 
-    private static final String ATTRIBUTE_NAME = "normalize";
+  public static class Provider implements EnhancementProvider {
 
     @Override
     public String getAttributeName() {
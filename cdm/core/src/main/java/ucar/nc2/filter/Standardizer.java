@@ -6,10 +6,9 @@ import java.util.Map;
 import ucar.nc2.constants.CDM;
 
 import java.util.Set;
-import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
 import ucar.ma2.Array;
 import ucar.ma2.DataType;
-import ucar.ma2.IndexIterator;
+import ucar.nc2.Attribute;
 import ucar.nc2.AttributeContainer;
 import ucar.nc2.dataset.NetcdfDataset.Enhance;
 import ucar.nc2.dataset.VariableDS;
@@ -20,23 +19,37 @@ public class Standardizer implements Enhancement {
   private final double mean;
   private final double stdDev;
   private static String name = "Standardizer";
+  private static final String ATTRIBUTE_NAME = "standardize";
 
+  /**
+   * Create from the statistics of the variable's data. If the "standardize" attribute holds two numbers, they
+   * are used as the mean and standard deviation (see {@link #getAttribute()}); otherwise the data is read one
+   * section at a time, and the result cached for the next time the variable is opened.
+   */
   public static Standardizer createFromVariable(VariableDS var) {
+    DataType type = var.getDataType();
+    Attribute att = var.attributes().findAttribute(ATTRIBUTE_NAME);
+    if (att != null && !att.isString() && att.getLength() == 2) {
+      return create(att.getNumericValue(0).doubleValue(), att.getNumericValue(1).doubleValue(), type);
+    }
     try {
-      Array arr = var.read();
-      DataType type = var.getDataType();
-      return createFromArray(arr, type);
+      StreamingStatistics statistics = StreamingStatistics.of(var, Standardizer.class);
+      return create(statistics.getMean(), statistics.getStandardDeviation(), type);
     } catch (IOException e) {
-      return new Standardizer(0.0, 1.0, var.getDataType());
+      return new Standardizer(0.0, 1.0, type);
     }
   }
 
   public static Standardizer createFromArray(Array arr, DataType type) {
-    SummaryStatistics statistics = calculationHelper(arr);
-    if (statistics.getStandardDeviation() == 0) {
+    StreamingStatistics statistics = StreamingStatistics.compute(arr);
+    return create(statistics.getMean(), statistics.getStandardDeviation(), type);
+  }
+
+  private static Standardizer create(double mean, double stdDev, DataType type) {
+    if (stdDev == 0) {
       return new Standardizer(0.0, 1.0, type);
     }
-    return new Standardizer(statistics.getMean(), statistics.getStandardDeviation(), type);
+    return new Standardizer(mean, stdDev, type);
   }
 
   private Standardizer(double mean, double stdDev, DataType type) {
@@ -49,18 +62,6 @@ public class Standardizer implements Enhancement {
     scaleOffset = new ScaleOffset(props);
   }
 
-  private static SummaryStatistics calculationHelper(Array arr) {
-    SummaryStatistics sumStat = new SummaryStatistics();
-    IndexIterator iterArr = arr.getIndexIterator();
-    while (iterArr.hasNext()) {
-      Number value = (Number) iterArr.getObjectNext();
-      if (!Double.isNaN(value.doubleValue())) {
-        sumStat.addValue(value.doubleValue());
-      }
-    }
-    return sumStat;
-  }
-
   public Array convert(Array arr) {
     return scaleOffset.applyScaleOffset(arr);
   }
@@ -77,11 +78,17 @@ public class Standardizer implements Enhancement {
     return stdDev;
   }
 
+  /**
+   * The mean and standard deviation as a "standardize" attribute. Adding it to the variable, for example in NcML,
+   * lets {@link #createFromVariable} skip reading the data.
+   */
+  public Attribute getAttribute() {
+    return Attribute.builder(ATTRIBUTE_NAME).setValues(Array.makeFromJavaArray(new double[] {mean, stdDev})).build();
+  }
 
 
-  public static class Provider implements EnhancementProvider {
 
-    private static final String ATTRIBUTE_NAME = "standardize";
+  public static class Provider implements EnhancementProvider {
 
     @Override
     public String getAttributeName() {
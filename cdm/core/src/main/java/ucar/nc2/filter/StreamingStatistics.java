@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2.filter;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import ucar.ma2.Array;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Variable;
+import ucar.nc2.dataset.VariableDS;
+
+/**
+ * Mean, standard deviation, minimum and maximum of the non-NaN values of a variable, accumulated one section
+ * at a time so the whole variable never has to be in memory. Values are combined with the parallel form of
+ * Welford's algorithm, so large sections are also summarized in parallel.
+ * Results are cached per (file, variable, enhancement) so re-opening a dataset does not rescan its data.
+ */
+class StreamingStatistics {
+  private static final long MAX_CHUNK_BYTES = 16 * 1000 * 1000;
+  private static final int BLOCK_SIZE = 64 * 1024;
+  private static final Cache<String, StreamingStatistics> cache =
+      CacheBuilder.newBuilder().maximumSize(1000).build();
+
+  private long count;
+  private double mean;
+  private double m2; // sum of squared differences from the mean
+  private double min = Double.NaN;
+  private double max = Double.NaN;
+
+  /**
+   * Statistics of all of the data in var. Cached when the variable is backed by a file.
+   *
+   * @param var read data from this variable
+   * @param forClass the Enhancement computing the statistics; part of the cache key, since the data read
+   *        can depend on the enhancements that are already in place.
+   */
+  static StreamingStatistics of(VariableDS var, Class<? extends Enhancement> forClass) throws IOException {
+    String key = cacheKey(var, forClass);
+    if (key == null) {
+      return compute(var, MAX_CHUNK_BYTES);
+    }
+    StreamingStatistics stats = cache.getIfPresent(key);
+    if (stats == null) {
+      stats = compute(var, MAX_CHUNK_BYTES);
+      cache.put(key, stats);
+    }
+    return stats;
+  }
+
+  /**
+   * Statistics of the data in var, read in sections of at most maxChunkBytes. Each section is a run of consecutive
+   * elements: whole slabs of the innermost dimensions that fit, stepped through with a counter of their origin, so
+   * variables with more than 2^31 elements are walked without int overflow.
+   */
+  static StreamingStatistics compute(Variable var, long maxChunkBytes) throws IOException {
+    StreamingStatistics stats = new StreamingStatistics();
+    long maxChunkElems = Math.max(1, maxChunkBytes / var.getElementSize());
+    int[] shape = var.getShape();
+    int rank = shape.length;
+    if (rank == 0) {
+      stats.add(var.read());
+      return stats;
+    }
+
+    // the number of elements in one step of each dimension
+    long[] stride = new long[rank];
+    long product = 1;
+    for (int d = rank - 1; d >= 0; d--) {
+      stride[d] = product;
+      product *= shape[d];
+    }
+    if (product == 0) {
+      return stats;
+    }
+
+    // the outermost dimension whose steps fit in a section; sections span the dimensions inside it
+    int split = rank - 1;
+    while (split > 0 && stride[split - 1] <= maxChunkElems) {
+      split--;
+    }
+    int[] origin = new int[rank];
+    int[] chunkShape = shape.clone();
+    while (true) {
+      for (int d = 0; d < split; d++) {
+        chunkShape[d] = 1;
+      }
+      chunkShape[split] = (int) Math.min(maxChunkElems / stride[split], shape[split] - origin[split]);
+      try {
+        stats.add(var.read(origin, chunkShape));
+      } catch (InvalidRangeException e) {
+        throw new IOException(e);
+      }
+
+      // advance the origin, carrying into the outer dimensions
+      int d = split;
+      origin[d] += chunkShape[d];
+      while (origin[d] == shape[d]) {
+        origin[d] = 0;
+        if (--d < 0) {
+          return stats;
+        }
+        origin[d]++;
+      }
+    }
+  }
+
+  /** Statistics of the data in arr. */
+  static StreamingStatistics compute(Array arr) {
+    StreamingStatistics stats = new StreamingStatistics();
+    stats.add(arr);
+    return stats;
+  }
+
+  /** Add the values in arr. */
+  void add(Array arr) {
+    // wraps the backing storage when arr is already in canonical order, otherwise copies it once
+    Array data = Array.factory(arr.getDataType(), arr.getShape(), arr.get1DJavaArray(arr.getDataType()));
+    int size = (int) data.getSize();
+    int nblocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    if (nblocks > 1) {
+      IntStream.range(0, nblocks).parallel().mapToObj(b -> {
+        StreamingStatistics part = new StreamingStatistics();
+        part.addRange(data, b * BLOCK_SIZE, Math.min(size, (b + 1) * BLOCK_SIZE));
+        return part;
+      }).forEachOrdered(this::merge);
+    } else {
+      addRange(data, 0, size);
+    }
+  }
+
+  private void addRange(Array data, int start, int end) {
+    Object storage = data.getStorage();
+    if (storage instanceof double[]) {
+      double[] values = (double[]) storage;
+      for (int i = start; i < end; i++) {
+        add(values[i]);
+      }
+    } else if (storage instanceof float[]) {
+      float[] values = (float[]) storage;
+      for (int i = start; i < end; i++) {
+        add(values[i]);
+      }
+    } else {
+      for (int i = start; i < end; i++) {
+        add(data.getDouble(i));
+      }
+    }
+  }
+
+  /** Add a single value; NaNs are ignored. */
+  void add(double value) {
+    if (Double.isNaN(value)) {
+      return;
+    }
+    count++;
+    double delta = value - mean;
+    mean += delta / count;
+    m2 += delta * (value - mean);
+    if (count == 1) {
+      min = value;
+      max = value;
+    } else {
+      min = Math.min(min, value);
+      max = Math.max(max, value);
+    }
+  }
+
+  /** Combine the values summarized by other into this. */
+  void merge(StreamingStatistics other) {
+    if (other.count == 0) {
+      return;
+    }
+    if (count == 0) {
+      count = other.count;
+      mean = other.mean;
+      m2 = other.m2;
+      min = other.min;
+      max = other.max;
+      return;
+    }
+    long total = count + other.count;
+    double delta = other.mean - mean;
+    mean += delta * other.count / total;
+    m2 += other.m2 + delta * delta * ((double) count * other.count / total);
+    count = total;
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+  }
+
+  long getCount() {
+    return count;
+  }
+
+  /** The mean, or NaN if there are no values. */
+  double getMean() {
+    return count == 0 ? Double.NaN : mean;
+  }
+
+  /** The sample (bias corrected) standard deviation; 0 for a single value, NaN if there are no values. */
+  double getStandardDeviation() {
+    if (count == 0) {
+      return Double.NaN;
+    }
+    return count == 1 ? 0.0 : Math.sqrt(m2 / (count - 1));
+  }
+
+  double getMin() {
+    return min;
+  }
+
+  double getMax() {
+    return max;
+  }
+
+  /** For testing. */
+  static void clearCache() {
+    cache.invalidateAll();
+  }
+
+  private static String cacheKey(VariableDS var, Class<? extends Enhancement> forClass) {
+    Variable orgVar = var.getOriginalVariable();
+    NetcdfFile ncfile = orgVar == null ? null : orgVar.getNetcdfFile();
+    if (ncfile == null || ncfile.getLocation() == null) {
+      return null;
+    }
+    File file = new File(ncfile.getLocation());
+    if (!file.isFile()) {
+      return null; // only local files, whose changes can be seen
+    }
+    return forClass.getName() + ";" + file.getAbsolutePath() + ";" + file.length() + ";" + file.lastModified() + ";"
+        + orgVar.getFullName() + ";" + Arrays.toString(var.getShape()) + ";" + var.getEnhanceMode() + ";"
+        + var.getDataType() + ";" + var.getScaleFactor() + ";" + var.getOffset();
+  }
+}
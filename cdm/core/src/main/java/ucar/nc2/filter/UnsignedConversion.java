@@ -53,24 +53,21 @@ public class UnsignedConversion implements Enhancement {
   }
 
   public double convert(double value) {
-    Number val;
+    if (this.signedness != DataType.Signedness.UNSIGNED) {
+      return value;
+    }
+    // narrow to the original integral type, then widen it as unsigned
     switch (outType) {
       case UBYTE:
-        val = new Byte((byte) value);
-        break;
       case USHORT:
-        val = new Byte((byte) value);
-        break;
+        return DataType.unsignedByteToShort((byte) value);
       case UINT:
-        val = new Short((short) value);
-        break;
+        return DataType.unsignedShortToInt((short) value);
       case ULONG:
-        val = new Integer((int) value);
-        break;
+        return DataType.unsignedIntToLong((int) value);
       default:
-        val = new Double(value);
+        return value;
     }
-    return this.signedness == DataType.Signedness.UNSIGNED ? DataType.widenNumberIfNegative(val).doubleValue() : value;
   }
 
   public Array convertUnsigned(Array in) {
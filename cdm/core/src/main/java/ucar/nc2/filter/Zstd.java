@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2.filter;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Filter implementation of Zstandard decompression, eg the Zarr "zstd" codec.
+ * Compression is not implemented.
+ */
+public class Zstd extends Filter {
+
+  private static final String name = "zstd";
+
+  private static final int id = 32015; // registered HDF5 filter id
+
+  public Zstd(Map<String, Object> properties) {} // compression level is not needed to decompress
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public int getId() {
+    return id;
+  }
+
+  @Override
+  public byte[] encode(byte[] dataIn) throws IOException {
+    throw new IOException("Zstandard compression is not implemented");
+  }
+
+  @Override
+  public byte[] decode(byte[] dataIn) throws IOException {
+    long size = ZstdDecoder.frameContentSize(dataIn, 0, dataIn.length);
+    if (size < 0 || size > Integer.MAX_VALUE) {
+      throw new IOException("Zstandard frame does not record a usable decompressed size: " + size);
+    }
+    byte[] out = new byte[(int) size];
+    int n = new ZstdDecoder().decompress(dataIn, 0, dataIn.length, out, 0, out.length);
+    if (n != out.length) {
+      throw new IOException("Zstandard frame decompressed to " + n + " bytes, expected " + out.length);
+    }
+    return out;
+  }
+
+  public static class Provider implements FilterProvider {
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public int getId() {
+      return id;
+    }
+
+    @Override
+    public Filter create(Map<String, Object> properties) {
+      return new Zstd(properties);
+    }
+  }
+}
@@ -0,0 +1,834 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2.filter;
+
+import java.io.IOException;
+
+/**
+ * Pure Java decoder for Zstandard frames (RFC 8878), as used internally by {@link Blosc}.
+ * Dictionaries are not supported, and content checksums are not verified.
+ * An instance keeps the decoding state of one frame, and is not thread-safe.
+ */
+class ZstdDecoder {
+  private static final int MAGIC = 0xFD2FB528;
+  private static final int SKIPPABLE_MAGIC = 0x184D2A50; // low 4 bits may vary
+  private static final int MAX_BLOCK_SIZE = 128 * 1024;
+
+  // literals length codes: baseline and number of extra bits
+  private static final int[] LL_BASE = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 18, 20, 22, 24, 28,
+      32, 40, 48, 64, 128, 256, 512, 1024, 2048, 4096, 8192, 16384, 32768, 65536};
+  private static final int[] LL_BITS =
+      {0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 3, 3, 4, 6, 7, 8, 9, 10, 11, 12, 13, 14,
+          15, 16};
+
+  // match length codes: baseline and number of extra bits
+  private static final int[] ML_BASE = {3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 21, 22, 23, 24,
+      25, 26, 27, 28, 29, 30, 31, 32, 33, 34, 35, 37, 39, 41, 43, 47, 51, 59, 67, 83, 99, 131, 259, 515, 1027, 2051,
+      4099, 8195, 16387, 32771, 65539};
+  private static final int[] ML_BITS = {0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+      0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 3, 3, 4, 4, 5, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16};
+
+  // predefined FSE distributions
+  private static final short[] LL_DEFAULT = {4, 3, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 2, 1, 1, 1, 2, 2, 2, 2, 2, 2, 2, 2, 2,
+      3, 2, 1, 1, 1, 1, 1, -1, -1, -1, -1};
+  private static final short[] ML_DEFAULT = {1, 4, 3, 2, 2, 2, 2, 2, 2, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1,
+      1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, -1, -1, -1, -1, -1, -1, -1};
+  private static final short[] OF_DEFAULT =
+      {1, 1, 1, 1, 1, 1, 2, 2, 2, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1, -1, -1, -1, -1, -1};
+
+  private static final FseTable LL_PREDEFINED = predefined(LL_DEFAULT, 6);
+  private static final FseTable ML_PREDEFINED = predefined(ML_DEFAULT, 6);
+  private static final FseTable OF_PREDEFINED = predefined(OF_DEFAULT, 5);
+
+  private static FseTable predefined(short[] norm, int accuracyLog) {
+    try {
+      return new FseTable(norm, norm.length - 1, accuracyLog);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  // state carried across the blocks of a frame
+  private FseTable llTable, mlTable, ofTable;
+  private HuffmanTable huffTable;
+  private final int[] rep = new int[3];
+  private final byte[] literals = new byte[MAX_BLOCK_SIZE];
+
+  /**
+   * The decompressed size recorded in the header of the first frame in src[srcOff, srcOff + srcLen).
+   *
+   * @return decompressed size, or -1 if the frame header does not record it
+   * @throws IOException on malformed input
+   */
+  static long frameContentSize(byte[] src, int srcOff, int srcLen) throws IOException {
+    int srcEnd = srcOff + srcLen;
+    if (readIntLE(src, srcOff, srcEnd) != MAGIC) {
+      return -1;
+    }
+    int ip = srcOff + 4;
+    int descriptor = u8(src, ip++, srcEnd);
+    int fcsFlag = descriptor >>> 6;
+    boolean singleSegment = (descriptor & 0x20) != 0;
+    int dictIdFlag = descriptor & 0x03;
+    ip += (singleSegment ? 0 : 1) + (dictIdFlag == 3 ? 4 : dictIdFlag);
+    int fcsSize = fcsFlag == 0 ? (singleSegment ? 1 : 0) : 1 << fcsFlag;
+    if (fcsSize == 0) {
+      return -1;
+    }
+    long contentSize = 0;
+    for (int i = 0; i < fcsSize; i++) {
+      contentSize |= (long) u8(src, ip++, srcEnd) << (8 * i);
+    }
+    return fcsSize == 2 ? contentSize + 256 : contentSize;
+  }
+
+  /**
+   * Decompress all the frames in src[srcOff, srcOff + srcLen) into dst, starting at dstOff.
+   *
+   * @return number of bytes written to dst
+   * @throws IOException on malformed or unsupported input, or if dst is too small
+   */
+  int decompress(byte[] src, int srcOff, int srcLen, byte[] dst, int dstOff, int dstLen) throws IOException {
+    int ip = srcOff;
+    int srcEnd = srcOff + srcLen;
+    int op = dstOff;
+    int dstEnd = dstOff + dstLen;
+    while (ip < srcEnd) {
+      int magic = readIntLE(src, ip, srcEnd);
+      ip += 4;
+      if ((magic & 0xFFFFFFF0) == SKIPPABLE_MAGIC) {
+        ip += 4 + readIntLE(src, ip, srcEnd);
+        continue;
+      }
+      if (magic != MAGIC) {
+        throw new IOException("Invalid Zstandard magic number " + Integer.toHexString(magic));
+      }
+      int[] pos = {ip, op};
+      decompressFrame(src, srcEnd, dst, dstEnd, pos);
+      ip = pos[0];
+      op = pos[1];
+    }
+    return op - dstOff;
+  }
+
+  private void decompressFrame(byte[] src, int srcEnd, byte[] dst, int dstEnd, int[] pos) throws IOException {
+    int ip = pos[0];
+    int op = pos[1];
+    int frameStart = op;
+
+    int descriptor = u8(src, ip++, srcEnd);
+    int fcsFlag = descriptor >>> 6;
+    boolean singleSegment = (descriptor & 0x20) != 0;
+    boolean hasChecksum = (descriptor & 0x04) != 0;
+    int dictIdFlag = descriptor & 0x03;
+    if ((descriptor & 0x08) != 0) {
+      throw new IOException("Invalid Zstandard frame header: reserved bit set");
+    }
+
+    long windowSize = 0;
+    if (!singleSegment) {
+      int wd = u8(src, ip++, srcEnd);
+      long windowBase = 1L << (10 + (wd >>> 3));
+      windowSize = windowBase + (windowBase / 8) * (wd & 0x07);
+    }
+
+    int dictIdSize = dictIdFlag == 3 ? 4 : dictIdFlag;
+    long dictId = 0;
+    for (int i = 0; i < dictIdSize; i++) {
+      dictId |= (long) u8(src, ip++, srcEnd) << (8 * i);
+    }
+    if (dictId != 0) {
+      throw new IOException("Zstandard dictionaries are not supported");
+    }
+
+    int fcsSize = fcsFlag == 0 ? (singleSegment ? 1 : 0) : 1 << fcsFlag;
+    long contentSize = -1;
+    if (fcsSize > 0) {
+      contentSize = 0;
+      for (int i = 0; i < fcsSize; i++) {
+        contentSize |= (long) u8(src, ip++, srcEnd) << (8 * i);
+      }
+      if (fcsSize == 2) {
+        contentSize += 256;
+      }
+    }
+    if (singleSegment) {
+      windowSize = contentSize;
+    }
+    int maxBlockSize = (int) Math.min(windowSize, MAX_BLOCK_SIZE);
+
+    // reset the frame state
+    rep[0] = 1;
+    rep[1] = 4;
+    rep[2] = 8;
+    llTable = mlTable = ofTable = null;
+    huffTable = null;
+
+    boolean last = false;
+    while (!last) {
+      int header = u8(src, ip, srcEnd) | u8(src, ip + 1, srcEnd) << 8 | u8(src, ip + 2, srcEnd) << 16;
+      ip += 3;
+      last = (header & 1) != 0;
+      int type = (header >>> 1) & 3;
+      int size = header >>> 3;
+      switch (type) {
+        case 0: // raw
+          checkRange(ip, size, srcEnd);
+          checkOutput(op, size, dstEnd);
+          System.arraycopy(src, ip, dst, op, size);
+          ip += size;
+          op += size;
+          break;
+        case 1: // rle
+          checkOutput(op, size, dstEnd);
+          byte b = (byte) u8(src, ip++, srcEnd);
+          for (int i = 0; i < size; i++) {
+            dst[op++] = b;
+          }
+          break;
+        case 2: // compressed
+          if (size > maxBlockSize) {
+            throw new IOException("Zstandard block larger than maximum block size");
+          }
+          checkRange(ip, size, srcEnd);
+          op = decompressBlock(src, ip, ip + size, dst, frameStart, op, dstEnd);
+          ip += size;
+          break;
+        default:
+          throw new IOException("Invalid Zstandard block type");
+      }
+    }
+
+    if (hasChecksum) {
+      checkRange(ip, 4, srcEnd);
+      ip += 4;
+    }
+    if (contentSize >= 0 && op - frameStart != contentSize) {
+      throw new IOException("Zstandard frame content size mismatch");
+    }
+    pos[0] = ip;
+    pos[1] = op;
+  }
+
+  private int decompressBlock(byte[] src, int ip, int blockEnd, byte[] dst, int frameStart, int op, int dstEnd)
+      throws IOException {
+    // literals section
+    int b0 = u8(src, ip, blockEnd);
+    int litType = b0 & 3;
+    int sizeFormat = (b0 >>> 2) & 3;
+    int litSize;
+    byte[] lits = literals;
+    int litStart = 0; // lits are read from here
+    if (litType == 0 || litType == 1) { // raw or rle
+      switch (sizeFormat) {
+        case 1:
+          litSize = (b0 >>> 4) + (u8(src, ip + 1, blockEnd) << 4);
+          ip += 2;
+          break;
+        case 3:
+          litSize = (b0 >>> 4) + (u8(src, ip + 1, blockEnd) << 4) + (u8(src, ip + 2, blockEnd) << 12);
+          ip += 3;
+          break;
+        default:
+          litSize = b0 >>> 3;
+          ip += 1;
+      }
+      if (litSize > MAX_BLOCK_SIZE) {
+        throw new IOException("Zstandard literals section too large");
+      }
+      if (litType == 0) {
+        checkRange(ip, litSize, blockEnd);
+        lits = src; // read them in place
+        litStart = ip;
+        ip += litSize;
+      } else {
+        byte b = (byte) u8(src, ip++, blockEnd);
+        for (int i = 0; i < litSize; i++) {
+          literals[i] = b;
+        }
+      }
+    } else { // huffman compressed or treeless
+      int compSize;
+      boolean singleStream = sizeFormat == 0;
+      switch (sizeFormat) {
+        case 0:
+        case 1: {
+          int h = b0 | u8(src, ip + 1, blockEnd) << 8 | u8(src, ip + 2, blockEnd) << 16;
+          litSize = (h >>> 4) & 0x3FF;
+          compSize = (h >>> 14) & 0x3FF;
+          ip += 3;
+          break;
+        }
+        case 2: {
+          int h = b0 | u8(src, ip + 1, blockEnd) << 8 | u8(src, ip + 2, blockEnd) << 16
+              | u8(src, ip + 3, blockEnd) << 24;
+          litSize = (h >>> 4) & 0x3FFF;
+          compSize = (h >>> 18) & 0x3FFF;
+          ip += 4;
+          break;
+        }
+        default: {
+          long h = b0 | u8(src, ip + 1, blockEnd) << 8 | u8(src, ip + 2, blockEnd) << 16
+              | (long) u8(src, ip + 3, blockEnd) << 24 | (long) u8(src, ip + 4, blockEnd) << 32;
+          litSize = (int) ((h >>> 4) & 0x3FFFF);
+          compSize = (int) ((h >>> 22) & 0x3FFFF);
+          ip += 5;
+        }
+      }
+      if (litSize > MAX_BLOCK_SIZE) {
+        throw new IOException("Zstandard literals section too large");
+      }
+      checkRange(ip, compSize, blockEnd);
+      int litEnd = ip + compSize;
+      if (litType == 2) {
+        huffTable = new HuffmanTable();
+        ip = huffTable.read(src, ip, litEnd);
+      } else if (huffTable == null) {
+        throw new IOException("Zstandard treeless literals without a previous Huffman table");
+      }
+      decodeLiterals(src, ip, litEnd, litSize, singleStream);
+      ip = litEnd;
+    }
+
+    // sequences section
+    int nbSeq = u8(src, ip++, blockEnd);
+    if (nbSeq >= 128) {
+      if (nbSeq == 255) {
+        nbSeq = u8(src, ip, blockEnd) + (u8(src, ip + 1, blockEnd) << 8) + 0x7F00;
+        ip += 2;
+      } else {
+        nbSeq = ((nbSeq - 128) << 8) + u8(src, ip++, blockEnd);
+      }
+    }
+
+    int litPos = litStart;
+    int litEnd = litStart + litSize;
+    if (nbSeq > 0) {
+      int modes = u8(src, ip++, blockEnd);
+      if ((modes & 3) != 0) {
+        throw new IOException("Invalid Zstandard sequences header: reserved bits set");
+      }
+      int[] next = {ip};
+      llTable = selectTable(modes >>> 6, src, next, blockEnd, LL_PREDEFINED, 35, 9, llTable);
+      ofTable = selectTable((modes >>> 4) & 3, src, next, blockEnd, OF_PREDEFINED, 31, 8, ofTable);
+      mlTable = selectTable((modes >>> 2) & 3, src, next, blockEnd, ML_PREDEFINED, 52, 9, mlTable);
+      ip = next[0];
+
+      BackwardBitReader br = new BackwardBitReader(src, ip, blockEnd);
+      int llState = (int) br.read(llTable.accuracyLog);
+      int ofState = (int) br.read(ofTable.accuracyLog);
+      int mlState = (int) br.read(mlTable.accuracyLog);
+
+      for (int seq = 0; seq < nbSeq; seq++) {
+        int ofCode = ofTable.symbol[ofState];
+        int mlCode = mlTable.symbol[mlState];
+        int llCode = llTable.symbol[llState];
+        if (ofCode > 31 || mlCode >= ML_BASE.length || llCode >= LL_BASE.length) {
+          throw new IOException("Invalid Zstandard sequence code");
+        }
+
+        long ofValue = (1L << ofCode) + br.read(ofCode);
+        int matchLength = ML_BASE[mlCode] + (int) br.read(ML_BITS[mlCode]);
+        int litLength = LL_BASE[llCode] + (int) br.read(LL_BITS[llCode]);
+
+        // repeat offsets
+        int offset;
+        if (ofValue > 3) {
+          offset = (int) (ofValue - 3);
+          rep[2] = rep[1];
+          rep[1] = rep[0];
+          rep[0] = offset;
+        } else {
+          int idx = (int) ofValue - 1 + (litLength == 0 ? 1 : 0);
+          if (idx == 0) {
+            offset = rep[0];
+          } else {
+            offset = idx == 3 ? rep[0] - 1 : rep[idx];
+            if (idx != 1) {
+              rep[2] = rep[1];
+            }
+            rep[1] = rep[0];
+            rep[0] = offset;
+          }
+        }
+
+        if (seq < nbSeq - 1) { // update states
+          llState = llTable.base[llState] + (int) br.read(llTable.nbBits[llState]);
+          mlState = mlTable.base[mlState] + (int) br.read(mlTable.nbBits[mlState]);
+          ofState = ofTable.base[ofState] + (int) br.read(ofTable.nbBits[ofState]);
+        }
+
+        // execute the sequence
+        if (litLength > litEnd - litPos) {
+          throw new IOException("Invalid Zstandard sequence: not enough literals");
+        }
+        checkOutput(op, litLength + matchLength, dstEnd);
+        System.arraycopy(lits, litPos, dst, op, litLength);
+        litPos += litLength;
+        op += litLength;
+
+        if (offset <= 0 || offset > op - frameStart) {
+          throw new IOException("Invalid Zstandard sequence: bad offset " + offset);
+        }
+        int ref = op - offset;
+        if (offset >= matchLength) {
+          System.arraycopy(dst, ref, dst, op, matchLength);
+          op += matchLength;
+        } else {
+          for (int i = 0; i < matchLength; i++) {
+            dst[op++] = dst[ref++];
+          }
+        }
+      }
+      if (!br.isFinished()) {
+        throw new IOException("Invalid Zstandard sequences bitstream");
+      }
+    }
+
+    // last literals
+    int rest = litEnd - litPos;
+    checkOutput(op, rest, dstEnd);
+    System.arraycopy(lits, litPos, dst, op, rest);
+    return op + rest;
+  }
+
+  private FseTable selectTable(int mode, byte[] src, int[] next, int end, FseTable predefined, int maxSymbol,
+      int maxLog, FseTable previous) throws IOException {
+    switch (mode) {
+      case 0:
+        return predefined;
+      case 1: {
+        int symbol = u8(src, next[0]++, end);
+        if (symbol > maxSymbol) {
+          throw new IOException("Invalid Zstandard RLE symbol");
+        }
+        return FseTable.rle(symbol);
+      }
+      case 2: {
+        short[] norm = new short[maxSymbol + 1];
+        int[] info = readNormalizedCounts(src, next[0], end, norm, maxSymbol, maxLog);
+        next[0] = info[2];
+        return new FseTable(norm, info[1], info[0]);
+      }
+      default:
+        if (previous == null) {
+          throw new IOException("Zstandard repeat mode without a previous table");
+        }
+        return previous;
+    }
+  }
+
+  /**
+   * Read an FSE table description.
+   *
+   * @return {accuracyLog, maxSymbol, position after the description}
+   */
+  static int[] readNormalizedCounts(byte[] src, int ip, int end, short[] norm, int maxSymbol, int maxLog)
+      throws IOException {
+    ForwardBitReader br = new ForwardBitReader(src, ip, end);
+    int accuracyLog = br.read(4) + 5;
+    if (accuracyLog > maxLog) {
+      throw new IOException("Zstandard FSE accuracy log too large");
+    }
+    int remaining = (1 << accuracyLog) + 1;
+    int threshold = 1 << accuracyLog;
+    int nbBits = accuracyLog + 1;
+    int symbol = 0;
+    boolean previous0 = false;
+    while (remaining > 1 && symbol <= maxSymbol) {
+      if (previous0) {
+        int n0 = symbol;
+        while (br.peek(16) == 0xFFFF) {
+          n0 += 24;
+          br.skip(16);
+        }
+        while (br.peek(2) == 3) {
+          n0 += 3;
+          br.skip(2);
+        }
+        n0 += br.read(2);
+        if (n0 > maxSymbol) {
+          throw new IOException("Invalid Zstandard FSE table description");
+        }
+        while (symbol < n0) {
+          norm[symbol++] = 0;
+        }
+      }
+      int max = (2 * threshold - 1) - remaining;
+      int count;
+      int low = br.peek(nbBits - 1);
+      if (low < max) {
+        count = low;
+        br.skip(nbBits - 1);
+      } else {
+        count = br.peek(nbBits);
+        if (count >= threshold) {
+          count -= max;
+        }
+        br.skip(nbBits);
+      }
+      count--;
+      remaining -= Math.abs(count);
+      norm[symbol++] = (short) count;
+      previous0 = count == 0;
+      while (remaining < threshold) {
+        nbBits--;
+        threshold >>= 1;
+      }
+    }
+    if (remaining != 1) {
+      throw new IOException("Invalid Zstandard FSE table description");
+    }
+    for (int s = symbol; s <= maxSymbol; s++) {
+      norm[s] = 0;
+    }
+    return new int[] {accuracyLog, symbol - 1, br.bytePosition()};
+  }
+
+  private void decodeLiterals(byte[] src, int ip, int end, int litSize, boolean singleStream) throws IOException {
+    if (singleStream) {
+      huffTable.decodeStream(src, ip, end, literals, 0, litSize);
+      return;
+    }
+    checkRange(ip, 6, end);
+    int size1 = u8(src, ip, end) | u8(src, ip + 1, end) << 8;
+    int size2 = u8(src, ip + 2, end) | u8(src, ip + 3, end) << 8;
+    int size3 = u8(src, ip + 4, end) | u8(src, ip + 5, end) << 8;
+    int start1 = ip + 6;
+    int start2 = start1 + size1;
+    int start3 = start2 + size2;
+    int start4 = start3 + size3;
+    if (start4 > end) {
+      throw new IOException("Invalid Zstandard literals jump table");
+    }
+    int segment = (litSize + 3) / 4;
+    if (3 * segment > litSize) {
+      throw new IOException("Invalid Zstandard literals size");
+    }
+    huffTable.decodeStream(src, start1, start2, literals, 0, segment);
+    huffTable.decodeStream(src, start2, start3, literals, segment, segment);
+    huffTable.decodeStream(src, start3, start4, literals, 2 * segment, segment);
+    huffTable.decodeStream(src, start4, end, literals, 3 * segment, litSize - 3 * segment);
+  }
+
+  /////////////////////////////////////////////////////////////////////
+
+  /** FSE decoding table. */
+  static class FseTable {
+    final int accuracyLog;
+    final int[] symbol;
+    final int[] nbBits;
+    final int[] base;
+
+    private FseTable(int accuracyLog, int[] symbol, int[] nbBits, int[] base) {
+      this.accuracyLog = accuracyLog;
+      this.symbol = symbol;
+      this.nbBits = nbBits;
+      this.base = base;
+    }
+
+    static FseTable rle(int symbol) {
+      return new FseTable(0, new int[] {symbol}, new int[1], new int[1]);
+    }
+
+    FseTable(short[] norm, int maxSymbol, int accuracyLog) throws IOException {
+      this.accuracyLog = accuracyLog;
+      int tableSize = 1 << accuracyLog;
+      this.symbol = new int[tableSize];
+      this.nbBits = new int[tableSize];
+      this.base = new int[tableSize];
+
+      int[] symbolNext = new int[maxSymbol + 1];
+      int highThreshold = tableSize - 1;
+      for (int s = 0; s <= maxSymbol; s++) {
+        if (norm[s] == -1) {
+          symbol[highThreshold--] = s;
+          symbolNext[s] = 1;
+        } else {
+          symbolNext[s] = norm[s];
+        }
+      }
+
+      // spread symbols
+      int mask = tableSize - 1;
+      int step = (tableSize >>> 1) + (tableSize >>> 3) + 3;
+      int position = 0;
+      for (int s = 0; s <= maxSymbol; s++) {
+        for (int i = 0; i < norm[s]; i++) {
+          symbol[position] = s;
+          do {
+            position = (position + step) & mask;
+          } while (position > highThreshold);
+        }
+      }
+      if (position != 0) {
+        throw new IOException("Invalid Zstandard FSE distribution");
+      }
+
+      // build decoding states
+      for (int u = 0; u < tableSize; u++) {
+        int s = symbol[u];
+        int nextState = symbolNext[s]++;
+        int bits = accuracyLog - (31 - Integer.numberOfLeadingZeros(nextState));
+        nbBits[u] = bits;
+        base[u] = (nextState << bits) - tableSize;
+      }
+    }
+  }
+
+  /** Huffman decoding table for literals. */
+  static class HuffmanTable {
+    private static final int MAX_BITS = 11;
+    private int maxBits;
+    private byte[] symbols;
+    private byte[] lengths;
+
+    /** Read the Huffman tree description, return the position after it. */
+    int read(byte[] src, int ip, int end) throws IOException {
+      int[] weights = new int[256];
+      int nWeights;
+      int header = u8(src, ip++, end);
+      if (header < 128) { // FSE compressed weights
+        int wEnd = ip + header;
+        checkRange(ip, header, end);
+        short[] norm = new short[256];
+        int[] info = readNormalizedCounts(src, ip, wEnd, norm, 255, 6);
+        FseTable table = new FseTable(norm, info[1], info[0]);
+        BackwardBitReader br = new BackwardBitReader(src, info[2], wEnd);
+        int state1 = (int) br.read(table.accuracyLog);
+        int state2 = (int) br.read(table.accuracyLog);
+        nWeights = 0;
+        while (true) {
+          if (nWeights >= 255) {
+            throw new IOException("Invalid Zstandard Huffman weights");
+          }
+          weights[nWeights++] = table.symbol[state1];
+          state1 = table.base[state1] + (int) br.read(table.nbBits[state1]);
+          if (br.isOverflow()) {
+            weights[nWeights++] = table.symbol[state2];
+            break;
+          }
+          if (nWeights >= 255) {
+            throw new IOException("Invalid Zstandard Huffman weights");
+          }
+          weights[nWeights++] = table.symbol[state2];
+          state2 = table.base[state2] + (int) br.read(table.nbBits[state2]);
+          if (br.isOverflow()) {
+            weights[nWeights++] = table.symbol[state1];
+            break;
+          }
+        }
+        ip = wEnd;
+      } else { // direct representation, 4 bits each
+        nWeights = header - 127;
+        int nBytes = (nWeights + 1) / 2;
+        checkRange(ip, nBytes, end);
+        for (int i = 0; i < nWeights; i++) {
+          int b = src[ip + i / 2] & 0xFF;
+          weights[i] = (i % 2 == 0) ? b >>> 4 : b & 0xF;
+        }
+        ip += nBytes;
+      }
+
+      // the last weight is implied
+      long total = 0;
+      for (int i = 0; i < nWeights; i++) {
+        if (weights[i] > MAX_BITS) {
+          throw new IOException("Invalid Zstandard Huffman weight");
+        }
+        if (weights[i] > 0) {
+          total += 1L << (weights[i] - 1);
+        }
+      }
+      if (total == 0) {
+        throw new IOException("Invalid Zstandard Huffman weights");
+      }
+      maxBits = 64 - Long.numberOfLeadingZeros(total); // highbit + 1
+      long rest = (1L << maxBits) - total;
+      if (Long.bitCount(rest) != 1 || maxBits > MAX_BITS) {
+        throw new IOException("Invalid Zstandard Huffman weights");
+      }
+      weights[nWeights++] = 64 - Long.numberOfLeadingZeros(rest);
+
+      // fill the table, lower weights (longer codes) first
+      int[] rankStart = new int[MAX_BITS + 2];
+      int[] rankCount = new int[MAX_BITS + 2];
+      for (int i = 0; i < nWeights; i++) {
+        rankCount[weights[i]]++;
+      }
+      int next = 0;
+      for (int w = 1; w <= maxBits; w++) {
+        rankStart[w] = next;
+        next += rankCount[w] << (w - 1);
+      }
+      int tableSize = 1 << maxBits;
+      symbols = new byte[tableSize];
+      lengths = new byte[tableSize];
+      for (int s = 0; s < nWeights; s++) {
+        int w = weights[s];
+        if (w == 0) {
+          continue;
+        }
+        int len = 1 << (w - 1);
+        int start = rankStart[w];
+        for (int i = start; i < start + len; i++) {
+          symbols[i] = (byte) s;
+          lengths[i] = (byte) (maxBits + 1 - w);
+        }
+        rankStart[w] += len;
+      }
+      return ip;
+    }
+
+    void decodeStream(byte[] src, int start, int end, byte[] dst, int dstOff, int n) throws IOException {
+      BackwardBitReader br = new BackwardBitReader(src, start, end);
+      for (int i = 0; i < n; i++) {
+        int index = (int) br.peek(maxBits);
+        dst[dstOff + i] = symbols[index];
+        br.skip(lengths[index]);
+      }
+      if (!br.isFinished()) {
+        throw new IOException("Invalid Zstandard Huffman stream");
+      }
+    }
+  }
+
+  /** Little-endian bitstream read from the start, as used by FSE table descriptions. */
+  private static class ForwardBitReader {
+    private final byte[] src;
+    private final int start;
+    private final int end;
+    private long bitPos;
+
+    ForwardBitReader(byte[] src, int start, int end) {
+      this.src = src;
+      this.start = start;
+      this.end = end;
+    }
+
+    int peek(int n) {
+      int value = 0;
+      for (int i = 0; i < n; i++) {
+        long bit = bitPos + i;
+        int index = start + (int) (bit >>> 3);
+        if (index < end && ((src[index] >>> (bit & 7)) & 1) != 0) {
+          value |= 1 << i;
+        }
+      }
+      return value;
+    }
+
+    void skip(int n) throws IOException {
+      bitPos += n;
+      if (start + ((bitPos + 7) >>> 3) > end) {
+        throw new IOException("Zstandard FSE table description overflows its input");
+      }
+    }
+
+    int read(int n) throws IOException {
+      int value = peek(n);
+      skip(n);
+      return value;
+    }
+
+    int bytePosition() {
+      return start + (int) ((bitPos + 7) >>> 3);
+    }
+  }
+
+  /**
+   * Bitstream read backwards from the end, as used by FSE and Huffman coded streams.
+   * The highest set bit of the last byte marks the start of the stream.
+   * Reading past the beginning returns zero bits, and sets the overflow state.
+   */
+  static class BackwardBitReader {
+    private final byte[] src;
+    private final int start;
+    private long bitPos; // number of unread bits
+
+    BackwardBitReader(byte[] src, int start, int end) throws IOException {
+      if (end <= start) {
+        throw new IOException("Empty Zstandard bitstream");
+      }
+      int last = src[end - 1] & 0xFF;
+      if (last == 0) {
+        throw new IOException("Invalid Zstandard bitstream: missing end mark");
+      }
+      this.src = src;
+      this.start = start;
+      this.bitPos = (long) (end - 1 - start) * 8 + (31 - Integer.numberOfLeadingZeros(last));
+    }
+
+    /** Peek at the next n (<= 56) bits without consuming them. */
+    long peek(int n) {
+      if (n == 0) {
+        return 0;
+      }
+      long low = bitPos - n; // position of lowest bit wanted
+      if (low >= 0) {
+        return extract(low, n);
+      }
+      if (bitPos <= 0) {
+        return 0;
+      }
+      return extract(0, (int) bitPos) << -low;
+    }
+
+    private long extract(long low, int n) {
+      int first = (int) (low >>> 3);
+      int lastByte = (int) ((low + n - 1) >>> 3);
+      long word = 0;
+      for (int i = lastByte; i >= first; i--) {
+        word = (word << 8) | (src[start + i] & 0xFF);
+      }
+      return (word >>> (low & 7)) & ((1L << n) - 1);
+    }
+
+    void skip(int n) {
+      bitPos -= n;
+    }
+
+    long read(int n) {
+      long value = peek(n);
+      bitPos -= n;
+      return value;
+    }
+
+    boolean isOverflow() {
+      return bitPos < 0;
+    }
+
+    boolean isFinished() {
+      return bitPos == 0;
+    }
+  }
+
+  /////////////////////////////////////////////////////////////////////
+
+  private static int u8(byte[] src, int pos, int end) throws IOException {
+    if (pos >= end) {
+      throw new IOException("Truncated Zstandard input");
+    }
+    return src[pos] & 0xFF;
+  }
+
+  private static int readIntLE(byte[] src, int pos, int end) throws IOException {
+    checkRange(pos, 4, end);
+    return (src[pos] & 0xFF) | (src[pos + 1] & 0xFF) << 8 | (src[pos + 2] & 0xFF) << 16 | (src[pos + 3] & 0xFF) << 24;
+  }
+
+  private static void checkRange(int pos, int len, int end) throws IOException {
+    if (len < 0 || pos + len > end) {
+      throw new IOException("Truncated Zstandard input");
+    }
+  }
+
+  private static void checkOutput(int op, int len, int dstEnd) throws IOException {
+    if (len < 0 || op + len > dstEnd) {
+      throw new IOException("Zstandard output exceeds destination size");
+    }
+  }
+}
@@ -15,6 +15,11 @@ import ucar.nc2.ft.PointFeatureIterator;
  * with optional filtering and calculation of time range and bounding box.
  * <p>
  * Subclass must implement makeFeature() to turn the StructureData into a PointFeature.
+ * <p>
+ * The StructureDataIterator may be a cursor, eg from Structure.getCursorIterator(), which reuses one StructureData
+ * for every record. Then the StructureData of a PointFeature is only valid until the next call to next().
+ * The iterators in this library do not pass a cursor, because their PointFeatures keep the StructureData they were
+ * made from; a subclass whose makeFeature() copies what it needs out of sdata may.
  *
  * @author caron
  * @since Feb 29, 2008
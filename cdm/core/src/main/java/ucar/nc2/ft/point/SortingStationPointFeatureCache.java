@@ -1,9 +1,18 @@
 package ucar.nc2.ft.point;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.*;
+import javax.annotation.Nullable;
 import com.google.common.base.Preconditions;
+import com.google.common.io.Closeables;
 import ucar.nc2.constants.FeatureType;
 import ucar.nc2.ft.FeatureDatasetFactoryManager;
 import ucar.nc2.ft.FeatureDatasetPoint;
@@ -11,6 +20,13 @@ import ucar.nc2.ft.PointFeatureIterator;
 import ucar.nc2.units.DateUnit;
 
 /**
+ * Sorts StationPointFeatures, by station name unless another Comparator is given. Features that compare equal are
+ * kept in the order they were added.
+ * <p/>
+ * By default all the features are kept in memory. With {@link #setMemoryLimit}, when the features in memory reach the
+ * limit they are sorted and written to a temporary file, and the files are merged when iterating. At most 64 files
+ * are read at once, each through a 64 KB buffer; if there are more, they are first merged in groups into fewer,
+ * larger files. The temporary files are deleted by {@link #close}.
  *
  * @author cwardgar
  * @since 2014/08/21
@@ -18,11 +34,19 @@ import ucar.nc2.units.DateUnit;
 // This class ought to be a PointFeatureCollection, by extending PointCollectionImpl.
 // However, we do not have the timeUnit and altUnits that the constructor requires. Does it really need
 // that info? Can't it calculate it from one of its features? That interface may need to be re-thought.
-public class SortingStationPointFeatureCache {
+public class SortingStationPointFeatureCache implements Closeable {
   public static final Comparator<StationPointFeature> stationNameComparator =
       Comparator.comparing(pointFeat -> pointFeat.getStation().getName());
 
+  private static final int BUFFER_SIZE = 64 * 1024;
+  static final int MAX_MERGE_RUNS = 64; // merge fan-in, including the features in memory
+
   private final SortedMap<StationPointFeature, List<StationPointFeature>> inMemCache;
+  private int inMemCount;
+
+  private long maxBytesInMemory = -1; // no limit
+  private File tempDir;
+  private final List<File> runFiles = new ArrayList<>(); // the sorted runs written to disk, in the order written
 
   private volatile StationFeatureCopyFactory stationFeatCopyFactory;
 
@@ -45,13 +69,103 @@ public class SortingStationPointFeatureCache {
     }
   }
 
+  /**
+   * Limit the memory used by the features, so that more can be sorted than fit in memory. When the estimated size of
+   * the features in memory reaches maxBytes, they are written to a temporary file in sorted order. The
+   * size of a feature is estimated by {@link StationFeatureCopyFactory#getSizeInBytes}.
+   * Must be called before any features are added.
+   *
+   * @param maxBytes keep about this many bytes of features in memory, or -1 for no limit (the default).
+   * @param tempDir write the temporary files here, or null for the default temporary-file directory.
+   */
+  public void setMemoryLimit(long maxBytes, @Nullable File tempDir) {
+    Preconditions.checkState(inMemCount == 0 && runFiles.isEmpty(), "features have already been added");
+    this.maxBytesInMemory = maxBytes;
+    this.tempDir = tempDir;
+  }
+
   public void add(StationPointFeature feat) throws IOException {
     Preconditions.checkNotNull(feat, "feat == null");
-    StationPointFeature featCopy = getStationFeatureCopyFactory(feat).deepCopy(feat);
+    StationFeatureCopyFactory factory = getStationFeatureCopyFactory(feat);
+    StationPointFeature featCopy = factory.deepCopy(feat);
 
     List<StationPointFeature> bucket = inMemCache.computeIfAbsent(featCopy, k -> new LinkedList<>());
 
     bucket.add(featCopy);
+    inMemCount++;
+
+    if (maxBytesInMemory >= 0 && (long) inMemCount * factory.getSizeInBytes() >= maxBytesInMemory) {
+      writeRun(factory);
+    }
+  }
+
+  // Write the features in memory to a temporary file, in sorted order.
+  private void writeRun(StationFeatureCopyFactory factory) throws IOException {
+    File runFile = createRunFile();
+    runFiles.add(runFile);
+
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(runFile), BUFFER_SIZE))) {
+      out.writeInt(inMemCount);
+      for (List<StationPointFeature> bucket : inMemCache.values()) {
+        for (StationPointFeature feat : bucket) {
+          factory.write(feat, out);
+        }
+      }
+    }
+    inMemCache.clear();
+    inMemCount = 0;
+  }
+
+  private File createRunFile() throws IOException {
+    File runFile = File.createTempFile("stationSort", ".tmp", tempDir);
+    runFile.deleteOnExit();
+    return runFile;
+  }
+
+  // Merge each group of MAX_MERGE_RUNS consecutive runs into one run. Keeping the runs in order keeps features that
+  // compare equal in the order they were added.
+  private void mergePass() throws IOException {
+    List<File> merged = new ArrayList<>();
+    try {
+      for (int start = 0; start < runFiles.size(); start += MAX_MERGE_RUNS) {
+        List<File> group = runFiles.subList(start, Math.min(start + MAX_MERGE_RUNS, runFiles.size()));
+        merged.add(group.size() == 1 ? group.get(0) : mergeRuns(group));
+      }
+    } catch (IOException | RuntimeException e) {
+      for (File runFile : merged) {
+        if (!runFiles.contains(runFile)) {
+          delete(runFile);
+        }
+      }
+      throw e;
+    }
+
+    for (File runFile : runFiles) {
+      if (!merged.contains(runFile)) {
+        delete(runFile);
+      }
+    }
+    runFiles.clear();
+    runFiles.addAll(merged);
+  }
+
+  private File mergeRuns(List<File> group) throws IOException {
+    File runFile = createRunFile();
+    MergeIter mergeIter = new MergeIter(group, null);
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(runFile), BUFFER_SIZE))) {
+      out.writeInt(mergeIter.count);
+      while (mergeIter.hasNext()) {
+        stationFeatCopyFactory.write(mergeIter.next(), out);
+      }
+    } catch (IOException | RuntimeException e) {
+      delete(runFile);
+      throw e;
+    } finally {
+      mergeIter.close();
+    }
+    return runFile;
   }
 
   public void addAll(File datasetFile) throws IOException {
@@ -91,7 +205,41 @@ public class SortingStationPointFeatureCache {
 
   // TODO: Once this method is called, prohibit any further additions to cache.
   public PointFeatureIterator getPointFeatureIterator() {
-    return new PointIteratorAdapter(new Iter());
+    if (runFiles.isEmpty()) {
+      return new PointIteratorAdapter(new Iter());
+    }
+
+    try {
+      while (runFiles.size() >= MAX_MERGE_RUNS) { // leave room for the features in memory
+        mergePass();
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+
+    MergeIter mergeIter = new MergeIter(runFiles, new Iter());
+    return new PointIteratorAdapter(mergeIter) {
+      @Override
+      public void close() {
+        super.close();
+        mergeIter.close();
+      }
+    };
+  }
+
+  /** Delete the temporary files. */
+  @Override
+  public void close() {
+    for (File runFile : runFiles) {
+      delete(runFile);
+    }
+    runFiles.clear();
+  }
+
+  private static void delete(File runFile) {
+    if (!runFile.delete()) {
+      runFile.deleteOnExit();
+    }
   }
 
   private class Iter implements Iterator<StationPointFeature> {
@@ -130,4 +278,114 @@ public class SortingStationPointFeatureCache {
       throw new UnsupportedOperationException("Operation not supported by this iterator.");
     }
   }
+
+  // The features of a run file, in the order written.
+  private class RunIter implements Iterator<StationPointFeature> {
+    private final DataInputStream in;
+    private int remaining;
+
+    RunIter(File runFile) throws IOException {
+      this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(runFile), BUFFER_SIZE));
+      this.remaining = in.readInt();
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (remaining == 0) {
+        close();
+      }
+      return remaining > 0;
+    }
+
+    @Override
+    public StationPointFeature next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException("There are no more elements.");
+      }
+      try {
+        remaining--;
+        return stationFeatCopyFactory.read(in);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    void close() {
+      remaining = 0;
+      Closeables.closeQuietly(in);
+    }
+  }
+
+  // A k-way merge of run files, and optionally the features still in memory as the last run.
+  private class MergeIter implements Iterator<StationPointFeature> {
+    private final List<RunIter> runIters = new ArrayList<>();
+    private final PriorityQueue<Head> heads;
+    private int count; // number of features in the run files
+
+    MergeIter(List<File> files, @Nullable Iterator<StationPointFeature> last) {
+      Comparator<? super StationPointFeature> comp = inMemCache.comparator();
+      // Equal features are in the order added: within a run by the order written, between runs by the run order.
+      heads = new PriorityQueue<>(files.size() + 1, (h1, h2) -> {
+        int result = comp.compare(h1.feat, h2.feat);
+        return (result != 0) ? result : Integer.compare(h1.run, h2.run);
+      });
+
+      try {
+        for (File runFile : files) {
+          RunIter runIter = new RunIter(runFile);
+          runIters.add(runIter);
+          count = Math.addExact(count, runIter.remaining);
+        }
+      } catch (IOException e) {
+        close();
+        throw new RuntimeException(e);
+      }
+      for (int run = 0; run < runIters.size(); run++) {
+        advance(run, runIters.get(run));
+      }
+      if (last != null) {
+        advance(runIters.size(), last);
+      }
+    }
+
+    private void advance(int run, Iterator<StationPointFeature> iter) {
+      if (iter.hasNext()) {
+        heads.add(new Head(run, iter, iter.next()));
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return !heads.isEmpty();
+    }
+
+    @Override
+    public StationPointFeature next() {
+      Head head = heads.poll();
+      if (head == null) {
+        throw new NoSuchElementException("There are no more elements.");
+      }
+      advance(head.run, head.iter);
+      return head.feat;
+    }
+
+    void close() {
+      heads.clear();
+      for (RunIter runIter : runIters) {
+        runIter.close();
+      }
+    }
+  }
+
+  private static class Head {
+    final int run;
+    final Iterator<StationPointFeature> iter;
+    final StationPointFeature feat;
+
+    Head(int run, Iterator<StationPointFeature> iter, StationPointFeature feat) {
+      this.run = run;
+      this.iter = iter;
+      this.feat = feat;
+    }
+  }
 }
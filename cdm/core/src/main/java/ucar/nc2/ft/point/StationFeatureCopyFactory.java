@@ -5,13 +5,23 @@
 
 package ucar.nc2.ft.point;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import ucar.ma2.ArrayStructureBB;
 import ucar.ma2.StructureData;
+import ucar.ma2.StructureDataA;
 import ucar.ma2.StructureDataDeep;
 import ucar.ma2.StructureMembers;
-import ucar.nc2.ft.PointFeature;
+import ucar.nc2.ft.DsgFeatureCollection;
 import javax.annotation.Nonnull;
 
 /**
@@ -20,6 +30,7 @@ import javax.annotation.Nonnull;
  * for all copies.
  * So all StationPointFeature must have the same StructureMembers and DateUnit.
  * It will keep a hashmap of Stations, and reuse the Station object.
+ * Copies may be written to a stream and read back with {@link #write} and {@link #read}, so they can be kept on disk.
  *
  * @author caron
  * @since 6/20/2014
@@ -34,6 +45,11 @@ public class StationFeatureCopyFactory {
   private final StructureMembers sm;
   private final int sizeInBytes;
 
+  // the stations and collections of the copies written, so that a copy is written with their indexes
+  private final Map<Object, Integer> writtenIndex = new IdentityHashMap<>();
+  private final List<StationFeature> writtenStations = new ArrayList<>();
+  private final List<DsgFeatureCollection> writtenCollections = new ArrayList<>();
+
   public StationFeatureCopyFactory(StationPointFeature proto) throws IOException {
     stationMap = new HashMap<>();
     StructureData sdata = proto.getFeatureData();
@@ -66,20 +82,120 @@ public class StationFeatureCopyFactory {
       stationMap.put(s.getName(), sUse);
     }
     sUse.incrNobs();
-    StationPointFeatureCopy deep = new StationPointFeatureCopy(sUse, from);
-    deep.data = StructureDataDeep.copy(from.getFeatureData(), sm);
-    return deep;
+    // as StructureDataDeep.copy(), keeping the ArrayStructureBB for write()
+    ArrayStructureBB abb = StructureDataDeep.copyToArrayBB(from.getFeatureData(), sm, ByteOrder.BIG_ENDIAN);
+    return new StationPointFeatureCopy(sUse, from.getFeatureCollection(), from.getObservationTime(),
+        from.getNominalTime(), abb);
+  }
+
+  /**
+   * Write a copy made by this factory. The station and collection are written as an index into the ones this factory
+   * has written, the data as the bytes of its ByteBuffer, followed by the Strings on its heap.
+   *
+   * @param copy made by {@link #deepCopy} or {@link #read} of this factory
+   * @param out write to this stream
+   */
+  void write(StationPointFeature copy, DataOutputStream out) throws IOException {
+    StationPointFeatureCopy feat = (StationPointFeatureCopy) copy;
+    out.writeInt(writtenIndex(feat.station, writtenStations));
+    out.writeInt(writtenIndex(feat.getFeatureCollection(), writtenCollections));
+    out.writeDouble(feat.getObservationTime());
+    out.writeDouble(feat.getNominalTime());
+
+    ByteBuffer bb = feat.abb.getByteBuffer();
+    out.write(bb.array(), bb.arrayOffset(), sm.getStructureSize());
+    List<Object> heap = feat.abb.getHeap();
+    out.writeInt(heap == null ? 0 : heap.size());
+    if (heap != null) {
+      for (Object o : heap) {
+        if (o instanceof String[]) { // String array member
+          String[] ss = (String[]) o;
+          out.writeInt(ss.length);
+          for (String s : ss) {
+            writeString(s, out);
+          }
+        } else { // scalar String member
+          out.writeInt(-1);
+          writeString((String) o, out);
+        }
+      }
+    }
+  }
+
+  /**
+   * Read a copy written by {@link #write} of this factory.
+   *
+   * @param in read from this stream
+   * @return the copy
+   */
+  StationPointFeature read(DataInputStream in) throws IOException {
+    StationFeature station = writtenStations.get(in.readInt());
+    DsgFeatureCollection dsg = writtenCollections.get(in.readInt());
+    double obsTime = in.readDouble();
+    double nomTime = in.readDouble();
+
+    byte[] bytes = new byte[sm.getStructureSize()];
+    in.readFully(bytes);
+    ArrayStructureBB abb = new ArrayStructureBB(sm, new int[] {1}, ByteBuffer.wrap(bytes), 0);
+    int nheap = in.readInt();
+    for (int i = 0; i < nheap; i++) { // in the same order, so the heap indexes in the bytes are the same
+      int len = in.readInt();
+      if (len < 0) {
+        abb.addObjectToHeap(readString(in));
+      } else {
+        String[] ss = new String[len];
+        for (int j = 0; j < len; j++) {
+          ss[j] = readString(in);
+        }
+        abb.addObjectToHeap(ss);
+      }
+    }
+    return new StationPointFeatureCopy(station, dsg, obsTime, nomTime, abb);
+  }
+
+  private <T> int writtenIndex(T obj, List<T> written) {
+    Integer index = writtenIndex.get(obj);
+    if (index == null) {
+      index = written.size();
+      written.add(obj);
+      writtenIndex.put(obj, index);
+    }
+    return index;
+  }
+
+  // not writeUTF(), which is limited to 64K
+  private static void writeString(String s, DataOutputStream out) throws IOException {
+    if (s == null) {
+      out.writeInt(-1);
+    } else {
+      byte[] b = s.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(b.length);
+      out.write(b);
+    }
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    int len = in.readInt();
+    if (len < 0) {
+      return null;
+    }
+    byte[] b = new byte[len];
+    in.readFully(b);
+    return new String(b, StandardCharsets.UTF_8);
   }
 
   private static class StationPointFeatureCopy extends PointFeatureImpl implements StationPointFeature {
 
     final StationFeature station;
-    StructureData data;
+    final ArrayStructureBB abb;
+    final StructureData data;
 
-    StationPointFeatureCopy(StationFeature station, PointFeature pf) {
-      super(pf.getFeatureCollection(), station, pf.getObservationTime(), pf.getNominalTime(),
-          pf.getFeatureCollection().getTimeUnit());
+    StationPointFeatureCopy(StationFeature station, DsgFeatureCollection dsg, double obsTime, double nomTime,
+        ArrayStructureBB abb) {
+      super(dsg, station, obsTime, nomTime, dsg.getTimeUnit());
       this.station = station;
+      this.abb = abb;
+      this.data = new StructureDataA(abb, 0);
     }
 
     @Nonnull
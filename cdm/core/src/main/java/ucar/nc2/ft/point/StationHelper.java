@@ -15,6 +15,7 @@ import java.util.Map;
 /**
  * Helper class for Station Collections.
  * This assumes that calling getData( Station s) is cheap, ie that theres no cheaper filtering to do.
+ * Bounding box and nearest station queries use a spatial index of the stations, made on first use.
  * 
  * @author caron
  * @since Feb 5, 2008
@@ -22,6 +23,7 @@ import java.util.Map;
 public class StationHelper {
   private List<StationFeature> stations;
   private Map<String, StationFeature> stationHash;
+  private volatile StationIndex index; // made on first use, discarded when the stations change
   private static final boolean debug = false;
 
   public StationHelper() {
@@ -32,6 +34,7 @@ public class StationHelper {
   public void addStation(StationFeature s) {
     stations.add(s);
     stationHash.put(s.getName(), s);
+    index = null;
   }
 
   public void setStations(List<StationFeature> nstations) {
@@ -41,6 +44,15 @@ public class StationHelper {
       addStation(s);
   }
 
+  private StationIndex getIndex() {
+    StationIndex result = index;
+    if (result == null) { // two threads may both make it, which does no harm
+      result = new StationIndex(stations);
+      index = result;
+    }
+    return result;
+  }
+
   private LatLonRect rect;
 
   public LatLonRect getBoundingBox() {
@@ -86,26 +98,25 @@ public class StationHelper {
     if (boundingBox == null)
       return getStations();
 
-    List<Station> result = new ArrayList<>();
-    for (StationFeature s : stations) {
-      LatLonPoint latlonPt = LatLonPoint.create(s.getLatitude(), s.getLongitude());
-      if (boundingBox.contains(latlonPt))
-        result.add(s);
-    }
-    return result;
+    return new ArrayList<>(getIndex().getStations(boundingBox));
   }
 
   public List<StationFeature> getStationFeatures(LatLonRect boundingBox) {
     if (boundingBox == null)
       return stations;
 
-    List<StationFeature> result = new ArrayList<>();
-    for (StationFeature s : stations) {
-      LatLonPoint latlonPt = LatLonPoint.create(s.getLatitude(), s.getLongitude());
-      if (boundingBox.contains(latlonPt))
-        result.add(s);
-    }
-    return result;
+    return getIndex().getStations(boundingBox);
+  }
+
+  /**
+   * Find the stations nearest to a point, by great circle distance.
+   *
+   * @param point find stations near here
+   * @param n the number of stations wanted
+   * @return the n nearest stations, or all if there are fewer, nearest first
+   */
+  public List<StationFeature> getNearestStations(LatLonPoint point, int n) {
+    return getIndex().getNearestStations(point.getLatitude(), point.getLongitude(), n);
   }
 
   public StationFeature getStation(String name) {
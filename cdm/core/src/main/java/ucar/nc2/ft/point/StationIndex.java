@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.ft.point;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import ucar.unidata.geoloc.LatLonPoints;
+import ucar.unidata.geoloc.LatLonRect;
+
+/**
+ * An immutable spatial index of stations: a regular lat/lon grid with about one station per cell, kept as an array of
+ * station indexes sorted by cell, and the start of each cell in it. Longitudes are normalized to +/-180, and queries
+ * wrap around the dateline. Stations with a missing latitude or longitude are not in the grid; they are tested
+ * against each bounding box as before, and are never the nearest stations.
+ *
+ * @see StationHelper
+ */
+final class StationIndex {
+  private static final double EPS = 1.0e-9; // as LatLonRect.contains()
+  private static final int MAX_LON_CELLS = 3600;
+
+  private final StationFeature[] stations;
+  private final double[] lat;
+  private final double[] lon;
+
+  private final int nlat;
+  private final int nlon;
+  private final double latSize;
+  private final double lonSize;
+  private final int[] cellStart; // the stations of cell c are order[cellStart[c]] .. order[cellStart[c+1]-1]
+  private final int[] order; // station indexes, sorted by cell, and by station index within a cell
+  private final int[] missing; // stations with a missing latitude or longitude
+
+  StationIndex(List<StationFeature> stationList) {
+    int n = stationList.size();
+    stations = stationList.toArray(new StationFeature[0]);
+    lat = new double[n];
+    lon = new double[n];
+    for (int i = 0; i < n; i++) {
+      lat[i] = LatLonPoints.latNormal(stations[i].getLatitude());
+      lon[i] = LatLonPoints.lonNormal(stations[i].getLongitude());
+    }
+
+    // cells the same size in degrees of latitude and longitude
+    nlon = Math.max(1, Math.min(MAX_LON_CELLS, (int) Math.ceil(Math.sqrt(2.0 * n))));
+    nlat = Math.max(1, (nlon + 1) / 2);
+    latSize = 180.0 / nlat;
+    lonSize = 360.0 / nlon;
+
+    // counting sort of the stations by cell
+    int ncells = nlat * nlon;
+    int[] cell = new int[n];
+    cellStart = new int[ncells + 1];
+    int count = 0;
+    for (int i = 0; i < n; i++) {
+      if (Double.isNaN(lat[i]) || Double.isNaN(lon[i])) {
+        cell[i] = -1;
+      } else {
+        cell[i] = latRow(lat[i]) * nlon + lonCol(lon[i]);
+        cellStart[cell[i] + 1]++;
+        count++;
+      }
+    }
+    for (int c = 0; c < ncells; c++) {
+      cellStart[c + 1] += cellStart[c];
+    }
+    order = new int[count];
+    missing = new int[n - count];
+    int nmissing = 0;
+    int[] next = Arrays.copyOf(cellStart, ncells);
+    for (int i = 0; i < n; i++) {
+      if (cell[i] >= 0) {
+        order[next[cell[i]]++] = i;
+      } else {
+        missing[nmissing++] = i;
+      }
+    }
+  }
+
+  private int latRow(double latitude) {
+    return Math.max(0, Math.min(nlat - 1, (int) Math.floor((latitude + 90.0) / latSize)));
+  }
+
+  private int lonCol(double longitude) {
+    return Math.max(0, Math.min(nlon - 1, (int) Math.floor((longitude + 180.0) / lonSize)));
+  }
+
+  /**
+   * The stations in a bounding box, in their original order.
+   * The same as testing each station with LatLonRect.contains(), but only the stations in the cells that overlap the
+   * bounding box are tested.
+   */
+  List<StationFeature> getStations(LatLonRect bb) {
+    int row0 = latRow(bb.getLatMin() - EPS);
+    int row1 = latRow(bb.getLatMax() + EPS);
+
+    // ranges of columns, inclusive
+    int[] cols;
+    int west = lonCol(bb.getLowerLeftPoint().getLongitude());
+    int east = lonCol(bb.getUpperRightPoint().getLongitude());
+    if (bb.containsAllLongitude() || (bb.crossDateline() && east >= west)) {
+      cols = new int[] {0, nlon - 1};
+    } else if (bb.crossDateline()) {
+      cols = new int[] {west, nlon - 1, 0, east};
+    } else {
+      cols = new int[] {west, east};
+    }
+
+    // the cells of a row are next to each other in order[]
+    int max = 0;
+    for (int row = row0; row <= row1; row++) {
+      for (int r = 0; r < cols.length; r += 2) {
+        if (cols[r] <= cols[r + 1]) {
+          max += cellStart[row * nlon + cols[r + 1] + 1] - cellStart[row * nlon + cols[r]];
+        }
+      }
+    }
+
+    int[] found = new int[max + missing.length];
+    int nfound = 0;
+    for (int i : missing) {
+      if (bb.contains(lat[i], lon[i])) { // LatLonRect.contains() may be true for NaN
+        found[nfound++] = i;
+      }
+    }
+    for (int row = row0; row <= row1; row++) {
+      for (int r = 0; r < cols.length; r += 2) {
+        if (cols[r] > cols[r + 1]) {
+          continue;
+        }
+        for (int k = cellStart[row * nlon + cols[r]]; k < cellStart[row * nlon + cols[r + 1] + 1]; k++) {
+          int i = order[k];
+          if (bb.contains(lat[i], lon[i])) {
+            found[nfound++] = i;
+          }
+        }
+      }
+    }
+
+    Arrays.sort(found, 0, nfound);
+    List<StationFeature> result = new ArrayList<>(nfound);
+    for (int k = 0; k < nfound; k++) {
+      result.add(stations[found[k]]);
+    }
+    return result;
+  }
+
+  /**
+   * The n stations nearest to a point, by great circle distance, nearest first.
+   * Cells are searched in rings around the cell of the point, until the stations outside the cells searched so far
+   * cannot be nearer than the n-th nearest station found.
+   */
+  List<StationFeature> getNearestStations(double latitude, double longitude, int n) {
+    if (n <= 0 || order.length == 0 || Double.isNaN(latitude) || Double.isNaN(longitude)) {
+      return new ArrayList<>();
+    }
+    double lat0 = LatLonPoints.latNormal(latitude);
+    double lon0 = LatLonPoints.lonNormal(longitude);
+    double cosLat0 = Math.cos(Math.toRadians(lat0));
+    int row0 = latRow(lat0);
+    int col0 = lonCol(lon0);
+
+    // the nearest so far, farthest first
+    PriorityQueue<Candidate> nearest = new PriorityQueue<>(n + 1, Comparator.reverseOrder());
+
+    for (int k = 0;; k++) {
+      boolean allCols = 2 * k + 1 >= nlon;
+      for (int row = row0 - k; row <= row0 + k; row++) {
+        if (row < 0 || row >= nlat) {
+          continue;
+        }
+        if (Math.abs(row - row0) == k) { // a new row: all of its columns in the ring
+          if (allCols) {
+            addCells(row, 0, nlon - 1, lat0, lon0, cosLat0, nearest, n);
+          } else {
+            for (int d = -k; d <= k; d++) {
+              int col = Math.floorMod(col0 + d, nlon);
+              addCells(row, col, col, lat0, lon0, cosLat0, nearest, n);
+            }
+          }
+        } else { // a row searched before: the new columns at each end
+          if (k > 0 && 2 * (k - 1) + 1 < nlon) {
+            if (2 * k <= nlon) {
+              int col = Math.floorMod(col0 + k, nlon);
+              addCells(row, col, col, lat0, lon0, cosLat0, nearest, n);
+            }
+            if (2 * k + 1 <= nlon) {
+              int col = Math.floorMod(col0 - k, nlon);
+              addCells(row, col, col, lat0, lon0, cosLat0, nearest, n);
+            }
+          }
+        }
+      }
+
+      boolean allRows = row0 - k <= 0 && row0 + k >= nlat - 1;
+      if (allRows && allCols) {
+        break; // searched everything
+      }
+      if (nearest.size() == n && nearest.peek().dist <= outsideBound(k, lat0, lon0, cosLat0, row0, col0, allCols)) {
+        break;
+      }
+    }
+
+    Candidate[] result = nearest.toArray(new Candidate[0]);
+    Arrays.sort(result);
+    List<StationFeature> list = new ArrayList<>(result.length);
+    for (Candidate c : result) {
+      list.add(stations[c.index]);
+    }
+    return list;
+  }
+
+  private void addCells(int row, int colStart, int colEnd, double lat0, double lon0, double cosLat0,
+      PriorityQueue<Candidate> nearest, int n) {
+    for (int k = cellStart[row * nlon + colStart]; k < cellStart[row * nlon + colEnd + 1]; k++) {
+      int i = order[k];
+      Candidate c = new Candidate(i, angle(lat0, lon0, cosLat0, lat[i], lon[i]));
+      if (nearest.size() < n) {
+        nearest.add(c);
+      } else if (c.compareTo(nearest.peek()) < 0) {
+        nearest.poll();
+        nearest.add(c);
+      }
+    }
+  }
+
+  // great circle angle in radians, by the haversine formula
+  private static double angle(double lat0, double lon0, double cosLat0, double lat1, double lon1) {
+    double sinHalfLat = Math.sin(Math.toRadians(lat1 - lat0) / 2);
+    double sinHalfLon = Math.sin(Math.toRadians(lon1 - lon0) / 2);
+    double cosLat1 = Math.cos(Math.toRadians(lat1));
+    double h = sinHalfLat * sinHalfLat + cosLat0 * cosLat1 * sinHalfLon * sinHalfLon;
+    return 2 * Math.asin(Math.min(1.0, Math.sqrt(h)));
+  }
+
+  // a lower bound of the angle from the point to any station outside the cells searched in rings 0 to k
+  private double outsideBound(int k, double lat0, double lon0, double cosLat0, int row0, int col0, boolean allCols) {
+    double south = (row0 - k <= 0) ? -90.0 : (row0 - k) * latSize - 90.0;
+    double north = (row0 + k >= nlat - 1) ? 90.0 : (row0 + k + 1) * latSize - 90.0;
+
+    // stations in rows not searched are at least this far away in latitude alone
+    double bound = Double.MAX_VALUE;
+    if (south > -90.0) {
+      bound = Math.min(bound, Math.toRadians(lat0 - south));
+    }
+    if (north < 90.0) {
+      bound = Math.min(bound, Math.toRadians(north - lat0));
+    }
+
+    // stations in the rows searched, but in columns not searched
+    if (!allCols) {
+      double west = (col0 - k) * lonSize - 180.0;
+      double east = (col0 + k + 1) * lonSize - 180.0;
+      double dlon = Math.min(180.0, Math.min(lon0 - west, east - lon0));
+      // sin^2(d/2) >= cos(lat0) cos(lat1) sin^2(dlon/2), and cos(lat1) is smallest at the edges of the rows
+      double cosLat1 = Math.max(0.0, Math.min(Math.cos(Math.toRadians(south)), Math.cos(Math.toRadians(north))));
+      double sinHalfLon = Math.sin(Math.toRadians(dlon) / 2);
+      bound = Math.min(bound, 2 * Math.asin(Math.min(1.0, Math.sqrt(cosLat0 * cosLat1) * sinHalfLon)));
+    }
+    return bound;
+  }
+
+  /** A station and its distance from the point, ordered by distance, then by station index. */
+  private static final class Candidate implements Comparable<Candidate> {
+    final int index;
+    final double dist;
+
+    Candidate(int index, double dist) {
+      this.index = index;
+      this.dist = dist;
+    }
+
+    @Override
+    public int compareTo(Candidate o) {
+      int result = Double.compare(dist, o.dist);
+      return (result != 0) ? result : Integer.compare(index, o.index);
+    }
+  }
+}
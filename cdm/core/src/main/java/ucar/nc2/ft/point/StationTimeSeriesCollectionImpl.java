@@ -19,6 +19,7 @@ import ucar.nc2.ft.StationTimeSeriesFeatureCollection;
 import ucar.nc2.time.CalendarDateRange;
 import ucar.nc2.time.CalendarDateUnit;
 import ucar.nc2.util.IOIterator;
+import ucar.unidata.geoloc.LatLonPoint;
 import ucar.unidata.geoloc.LatLonRect;
 
 /**
@@ -83,6 +84,17 @@ public abstract class StationTimeSeriesCollectionImpl extends PointFeatureCCImpl
     return getStationHelper().getStationFeatures(boundingBox);
   }
 
+  /**
+   * Find the stations nearest to a point, by great circle distance.
+   *
+   * @param point find stations near here
+   * @param n the number of stations wanted
+   * @return the n nearest stations, or all if there are fewer, nearest first
+   */
+  public List<StationFeature> getNearestStationFeatures(LatLonPoint point, int n) {
+    return getStationHelper().getNearestStations(point, n);
+  }
+
   @Override
   public StationFeature findStationFeature(String name) {
     return getStationHelper().getStation(name);
@@ -0,0 +1,882 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2.internal.iosp.hdf5;
+
+import static ucar.nc2.internal.iosp.hdf5.H5iospWriter.UNDEFINED;
+
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.nc2.Attribute;
+import ucar.nc2.Dimension;
+import ucar.nc2.Group;
+import ucar.nc2.Variable;
+import ucar.nc2.constants.CDM;
+import ucar.unidata.io.RandomAccessFile;
+
+/**
+ * Writes the metadata of a netCDF-4 file for H5iospWriter: the superblock, object headers of the groups and datasets,
+ * the B-trees that index the chunks of chunked datasets, and a global heap for variable length attribute data.
+ * <p>
+ * Uses version 2 of the superblock and of object headers, with the attributes and links stored in the object headers
+ * (compact storage), as the netCDF-C library does for all but very large groups. Dimensions are HDF5 dimension scales,
+ * following the netCDF-4 conventions. The metadata is written at the end of the file each time, after all the data,
+ * and the superblock is then updated to point to it.
+ */
+class H5headerWriter {
+  private static final Logger logger = LoggerFactory.getLogger(H5headerWriter.class);
+
+  static final int SUPERBLOCK_SIZE = 48;
+  private static final byte[] FORMAT_SIGNATURE = {(byte) 0x89, 'H', 'D', 'F', '\r', '\n', 0x1a, '\n'};
+  private static final int BTREE_K = 32; // HDF5 default for chunk B-trees: nodes have up to 2K children
+  private static final int MAX_COMPACT = 8; // HDF5 default for the number of attributes or links in a header
+
+  // message types
+  private static final int DATASPACE = 1;
+  private static final int LINK_INFO = 2;
+  private static final int DATATYPE = 3;
+  private static final int FILL_VALUE = 5;
+  private static final int LINK = 6;
+  private static final int LAYOUT = 8;
+  private static final int GROUP_INFO = 10;
+  private static final int FILTER_PIPELINE = 11;
+  private static final int ATTRIBUTE = 12;
+  private static final int ATTRIBUTE_INFO = 21;
+  private static final int CONSTANT = 1; // message flag
+
+  // netCDF-4 conventions
+  private static final String DIMENSION_SCALE_CLASS = "DIMENSION_SCALE";
+  private static final String DIMENSION_WITHOUT_VARIABLE = "This is a netCDF dimension but not a netCDF variable.%10d";
+  private static final String NETCDF4_COORDINATES = "_Netcdf4Coordinates";
+  private static final String NETCDF4_DIMID = "_Netcdf4Dimid";
+  private static final String NETCDF4_STRICT = "_nc3_strict";
+  private static final String NETCDF4_NON_COORD = "_nc4_non_coord_";
+
+  // written by this class, or not at all
+  private static final Set<String> reservedAttributes = ImmutableSet.of(H5headerNew.HDF5_CLASS,
+      H5headerNew.HDF5_DIMENSION_LIST, H5headerNew.HDF5_DIMENSION_SCALE, H5headerNew.HDF5_DIMENSION_LABELS,
+      H5headerNew.HDF5_DIMENSION_NAME, H5headerNew.HDF5_REFERENCE_LIST, CDM.CHUNK_SIZES, CDM.COMPRESS,
+      CDM.NCPROPERTIES, CDM.ISNETCDF4, CDM.SUPERBLOCKVERSION, NETCDF4_COORDINATES, NETCDF4_DIMID, NETCDF4_STRICT,
+      H5iospWriter.FLETCHER32);
+
+  // datatype messages
+  private static final byte[] FLOAT_BIG_ENDIAN = bytes(0x11, 0x21, 0x1f, 0x00, 4, 0, 0, 0, 0, 0, 32, 0, 23, 8, 0, 23,
+      0x7f, 0, 0, 0);
+  private static final byte[] OBJECT_REFERENCE = bytes(0x17, 0, 0, 0, 8, 0, 0, 0);
+  private static final byte[] VLEN_STRING = bytes(0x19, 0x01, 0x01, 0x00, 16, 0, 0, 0, 0x10, 0, 0, 0, 1, 0, 0, 0, 0,
+      0, 8, 0);
+
+  private final H5iospWriter writer;
+  private final RandomAccessFile raf;
+  private final boolean isClassic;
+
+  // rebuilt each time the metadata is written
+  private final List<H5Object> objects = new ArrayList<>();
+  private final Map<String, H5Object> scales = new HashMap<>(); // by dimension key
+  private final Map<String, Integer> dimLengths = new HashMap<>(); // by dimension key
+  private final Map<H5iospWriter.VarWriter, Long> btrees = new HashMap<>();
+  private int nextDimid;
+
+  H5headerWriter(H5iospWriter writer, RandomAccessFile raf, boolean isClassic) {
+    this.writer = writer;
+    this.raf = raf;
+    this.isClassic = isClassic;
+  }
+
+  /**
+   * Write all of the metadata at the end of the file, then point the superblock at it.
+   * All chunks must have been written.
+   */
+  void write(Group root) throws IOException {
+    objects.clear();
+    scales.clear();
+    dimLengths.clear();
+    btrees.clear();
+    nextDimid = 0;
+
+    for (H5iospWriter.VarWriter vw : writer.getVarWriters()) {
+      btrees.put(vw, writeBTree(vw));
+      for (int i = 0; i < vw.extent.length; i++) {
+        Dimension dim = vw.v.getDimension(i);
+        String key = dimKey(vw.v.getParentGroup(), dim);
+        if (key != null) {
+          dimLengths.merge(key, dim.isUnlimited() ? vw.extent[i] : dim.getLength(), Math::max);
+        }
+      }
+    }
+    H5Object rootObject = addGroup("", root);
+    addDimensionLists();
+
+    // the size of each object header, and so its address, does not depend on the addresses in it
+    H5heapWriter sizing = new H5heapWriter(null, size -> 0);
+    long total = 0;
+    for (H5Object object : objects) {
+      object.size = encode(object, sizing).length;
+      total += object.size;
+    }
+    long address = writer.allocate(total);
+    for (H5Object object : objects) {
+      object.address = address;
+      address += object.size;
+    }
+
+    H5heapWriter heap = new H5heapWriter(raf, writer::allocate);
+    for (H5Object object : objects) {
+      byte[] header = encode(object, heap);
+      if (header.length != object.size) {
+        throw new IllegalStateException("object header of " + object.name + " changed size");
+      }
+      raf.seek(object.address);
+      raf.write(header);
+    }
+    heap.flush();
+    writeSuperblock(rootObject.address, writer.getEof());
+  }
+
+  private void writeSuperblock(long rootAddress, long eof) throws IOException {
+    ByteBuffer bb = ByteBuffer.allocate(SUPERBLOCK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    bb.put(FORMAT_SIGNATURE);
+    bb.put((byte) 2); // version
+    bb.put((byte) 8); // size of offsets
+    bb.put((byte) 8); // size of lengths
+    bb.put((byte) 0); // file consistency flags
+    bb.putLong(0); // base address
+    bb.putLong(UNDEFINED); // superblock extension
+    bb.putLong(eof);
+    bb.putLong(rootAddress);
+    bb.putInt(lookup3(bb.array(), 0, SUPERBLOCK_SIZE - 4));
+    raf.seek(0);
+    raf.write(bb.array());
+  }
+
+  ////////////////////////////////////////////////////////////////////////////////////////////////
+  // the objects: groups, variables, and dimension scales
+
+  /** A group or dataset to write an object header for */
+  private static class H5Object {
+    private final String name; // of the link from its group
+    @Nullable
+    private final Group group; // if a group
+    @Nullable
+    private final Variable v; // if a variable
+    @Nullable
+    private final Dimension dim; // if a dimension scale: a coordinate variable, or a dimension without one
+    private final String dimKey;
+    private int dimid = -1;
+    private final List<H5Object> children = new ArrayList<>(); // of a group, in creation order
+    private final List<H5Object> referencedBy = new ArrayList<>(); // REFERENCE_LIST of a dimension scale
+    private final List<Integer> referencedAs = new ArrayList<>(); // and the index of the dimension
+    private H5Object[] dimensionList; // DIMENSION_LIST of a variable, if all its dimensions are shared
+    private long address;
+    private int size;
+
+    H5Object(String name, @Nullable Group group, @Nullable Variable v, @Nullable Dimension dim,
+        @Nullable String dimKey) {
+      this.name = name;
+      this.group = group;
+      this.v = v;
+      this.dim = dim;
+      this.dimKey = dimKey;
+    }
+  }
+
+  /**
+   * Key of a shared dimension: the full name of the group that it is in, and its name.
+   *
+   * @return null if not shared
+   */
+  @Nullable
+  private static String dimKey(Group group, Dimension dim) {
+    if (!dim.isShared()) {
+      return null;
+    }
+    for (Group g = group; g != null; g = g.getParentGroup()) {
+      if (g.findDimensionLocal(dim.getShortName()) != null) {
+        return g.getFullName() + "/" + dim.getShortName();
+      }
+    }
+    return null;
+  }
+
+  private H5Object addGroup(String name, Group group) {
+    H5Object object = new H5Object(name, group, null, null, null);
+    objects.add(object);
+
+    // a 1D variable with the name of its dimension is the dimension scale; others get a scale of their own
+    Map<String, H5Object> coordinates = new HashMap<>();
+    for (Dimension dim : group.getDimensions()) {
+      String key = dimKey(group, dim);
+      dimLengths.merge(key, dim.getLength(), Math::max);
+      Variable coord = group.findVariableLocal(dim.getShortName());
+      H5Object scale;
+      if (coord != null && coord.getRank() == 1 && key.equals(dimKey(group, coord.getDimension(0)))) {
+        scale = new H5Object(dim.getShortName(), null, coord, dim, key);
+        coordinates.put(coord.getShortName(), scale);
+      } else {
+        scale = new H5Object(dim.getShortName(), null, null, dim, key);
+        object.children.add(scale);
+        objects.add(scale);
+      }
+      scale.dimid = nextDimid++;
+      scales.put(key, scale);
+    }
+
+    for (Variable v : group.getVariables()) {
+      H5Object child = coordinates.get(v.getShortName());
+      if (child == null) {
+        String vname = v.getShortName();
+        if (group.findDimensionLocal(vname) != null) {
+          vname = NETCDF4_NON_COORD + vname; // the name is taken by the dimension scale
+        }
+        child = new H5Object(vname, null, v, null, null);
+      }
+      object.children.add(child);
+      objects.add(child);
+    }
+
+    for (Group nested : group.getGroups()) {
+      object.children.add(addGroup(nested.getShortName(), nested));
+    }
+    return object;
+  }
+
+  /** Attach dimension scales to the variables that use them */
+  private void addDimensionLists() {
+    objects: for (H5Object object : objects) {
+      if (object.v == null || object.v.getRank() == 0) {
+        continue;
+      }
+      H5Object[] dimensionList = new H5Object[object.v.getRank()];
+      for (int i = 0; i < dimensionList.length; i++) {
+        String key = dimKey(object.v.getParentGroup(), object.v.getDimension(i));
+        dimensionList[i] = key == null ? null : scales.get(key);
+        if (dimensionList[i] == null) {
+          continue objects; // an anonymous dimension
+        }
+      }
+      object.dimensionList = dimensionList;
+      for (int i = 0; i < dimensionList.length; i++) {
+        if (dimensionList[i] != object) { // a scale is not attached to itself
+          dimensionList[i].referencedBy.add(object);
+          dimensionList[i].referencedAs.add(i);
+        }
+      }
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////////////////////////////
+  // object headers
+
+  /** A header message */
+  private static class Message {
+    private final int type;
+    private final int flags;
+    private final byte[] body;
+
+    Message(int type, int flags, byte[] body) {
+      this.type = type;
+      this.flags = flags;
+      this.body = body;
+    }
+  }
+
+  private byte[] encode(H5Object object, H5heapWriter heap) throws IOException {
+    List<Message> messages = new ArrayList<>();
+    List<byte[]> attributes = new ArrayList<>();
+    if (object.group != null) {
+      encodeGroup(object, messages, attributes, heap);
+    } else {
+      encodeDataset(object, messages, attributes, heap);
+    }
+    messages.add(new Message(ATTRIBUTE_INFO, 4, new Buf().put(0).put(1).putShort(attributes.size())
+        .putLong(UNDEFINED).putLong(UNDEFINED).toArray()));
+    for (byte[] attribute : attributes) {
+      if (attribute.length > 0xffff) {
+        throw new IOException("Attribute of " + object.name + " is too large for an HDF5 object header");
+      }
+      messages.add(new Message(ATTRIBUTE, 0, attribute));
+    }
+    return encodeHeader(messages, attributes.size());
+  }
+
+  /** Version 2 object header, with attribute creation order tracked */
+  private static byte[] encodeHeader(List<Message> messages, int nattributes) {
+    int size = 0;
+    for (Message message : messages) {
+      size += 6 + message.body.length;
+    }
+    boolean phaseChange = nattributes > MAX_COMPACT;
+    Buf buf = new Buf();
+    buf.put('O').put('H').put('D').put('R').put(2);
+    buf.put(0x02 | 0x04 | (phaseChange ? 0x10 : 0)); // 4 byte chunk size, creation order tracked
+    if (phaseChange) {
+      buf.putShort(nattributes).putShort(6); // keep all of the attributes compact
+    }
+    buf.putInt(size);
+    int creationOrder = 0;
+    for (Message message : messages) {
+      buf.put(message.type).putShort(message.body.length).put(message.flags);
+      buf.putShort(message.type == ATTRIBUTE ? creationOrder++ : 0);
+      buf.put(message.body);
+    }
+    byte[] header = buf.toArray();
+    return new Buf().put(header).putInt(lookup3(header, 0, header.length)).toArray();
+  }
+
+  private void encodeGroup(H5Object object, List<Message> messages, List<byte[]> attributes, H5heapWriter heap)
+      throws IOException {
+    int nlinks = object.children.size();
+    messages.add(new Message(LINK_INFO, 0,
+        new Buf().put(0).put(1).putLong(nlinks).putLong(UNDEFINED).putLong(UNDEFINED).toArray()));
+    Buf groupInfo = new Buf().put(0);
+    if (nlinks > MAX_COMPACT) {
+      groupInfo.put(1).putShort(Math.min(nlinks, 0xffff)).putShort(6); // keep all of the links compact
+    } else {
+      groupInfo.put(0);
+    }
+    messages.add(new Message(GROUP_INFO, CONSTANT, groupInfo.toArray()));
+
+    long creationOrder = 0;
+    for (H5Object child : object.children) {
+      byte[] name = child.name.getBytes(StandardCharsets.UTF_8);
+      boolean ascii = isAscii(name);
+      Buf link = new Buf().put(1);
+      link.put((name.length > 0xff ? 1 : 0) | 0x04 | (ascii ? 0 : 0x10));
+      link.putLong(creationOrder++);
+      if (!ascii) {
+        link.put(1); // UTF-8
+      }
+      if (name.length > 0xff) {
+        link.putShort(name.length);
+      } else {
+        link.put(name.length);
+      }
+      link.put(name).putLong(child.address);
+      messages.add(new Message(LINK, 0, link.toArray()));
+    }
+
+    if (object.group.isRoot() && isClassic) {
+      attributes.add(intAttribute(NETCDF4_STRICT, new int[] {1}, true));
+    }
+    addUserAttributes(writer.getAttributes(null, object.group), null, attributes, heap);
+  }
+
+  private void encodeDataset(H5Object object, List<Message> messages, List<byte[]> attributes, H5heapWriter heap)
+      throws IOException {
+    H5iospWriter.VarWriter vw = object.v == null ? null : writer.getVarWriter(object.v);
+    if (vw == null) {
+      encodeDimensionWithoutVariable(object, messages);
+    } else {
+      encodeVariable(object, vw, messages);
+    }
+
+    H5Object[] dimensionList = object.dimensionList;
+    if (dimensionList != null) {
+      int[] dimids = new int[dimensionList.length];
+      for (int i = 0; i < dimids.length; i++) {
+        dimids[i] = dimensionList[i].dimid;
+      }
+      attributes.add(intAttribute(NETCDF4_COORDINATES, dimids, false));
+    }
+
+    if (object.dim != null) {
+      attributes.add(stringAttribute(H5headerNew.HDF5_CLASS, DIMENSION_SCALE_CLASS));
+      String name = vw == null ? String.format(DIMENSION_WITHOUT_VARIABLE, dimLengths.get(object.dimKey))
+          : object.dim.getShortName();
+      attributes.add(stringAttribute(H5headerNew.HDF5_DIMENSION_NAME, name));
+      attributes.add(intAttribute(NETCDF4_DIMID, new int[] {object.dimid}, true));
+    }
+
+    if (vw != null) {
+      addUserAttributes(writer.getAttributes(vw.v, vw.v.getParentGroup()), vw, attributes, heap);
+    }
+
+    if (dimensionList != null && dimensionList[0] != object) {
+      // variable length sequences of one object reference to each dimension scale
+      Buf data = new Buf();
+      for (H5Object scale : dimensionList) {
+        H5heapWriter.HeapId id = heap.add(new Buf().putLong(scale.address).toArray());
+        data.putInt(1).putLong(id.address).putInt(id.index);
+      }
+      byte[] datatype = new Buf().put(0x19).put(0).put(0).put(0).putInt(16).put(OBJECT_REFERENCE).toArray();
+      attributes.add(attribute(H5headerNew.HDF5_DIMENSION_LIST, datatype, dataspace(dimensionList.length),
+          data.toArray()));
+    }
+
+    if (!object.referencedBy.isEmpty()) {
+      // compound of the dataset that uses the scale, and the index of its dimension
+      Buf data = new Buf();
+      for (int i = 0; i < object.referencedBy.size(); i++) {
+        data.putLong(object.referencedBy.get(i).address).putInt(object.referencedAs.get(i)).putInt(0);
+      }
+      Buf datatype = new Buf().put(0x36).put(2).put(0).put(0).putInt(16);
+      datatype.put("dataset".getBytes(StandardCharsets.US_ASCII)).put(0).put(0).put(OBJECT_REFERENCE);
+      datatype.put("dimension".getBytes(StandardCharsets.US_ASCII)).put(0).put(8).put(fixedPoint(4, true));
+      attributes.add(attribute(H5headerNew.HDF5_REFERENCE_LIST, datatype.toArray(),
+          dataspace(object.referencedBy.size()), data.toArray()));
+    }
+  }
+
+  /** A dataset that is only a dimension scale, without data */
+  private void encodeDimensionWithoutVariable(H5Object object, List<Message> messages) {
+    int length = dimLengths.get(object.dimKey);
+    boolean unlimited = object.dim.isUnlimited();
+    messages.add(new Message(DATASPACE, 0, dataspace(new int[] {length}, new boolean[] {unlimited})));
+    messages.add(new Message(DATATYPE, CONSTANT, FLOAT_BIG_ENDIAN));
+    messages.add(new Message(FILL_VALUE, CONSTANT, bytes(3, unlimited ? 0x0b : 0x0a)));
+    if (unlimited) {
+      messages.add(new Message(LAYOUT, 0, new Buf().put(3).put(2).put(2).putLong(UNDEFINED).putInt(1).putInt(4)
+          .toArray()));
+    } else {
+      messages.add(new Message(LAYOUT, 0, new Buf().put(3).put(1).putLong(UNDEFINED).putLong(4L * length)
+          .toArray()));
+    }
+  }
+
+  private void encodeVariable(H5Object object, H5iospWriter.VarWriter vw, List<Message> messages) {
+    int rank = vw.extent.length;
+    int[] shape = new int[rank];
+    boolean[] unlimited = new boolean[rank];
+    for (int i = 0; i < rank; i++) {
+      Dimension dim = vw.v.getDimension(i);
+      String key = dimKey(vw.v.getParentGroup(), dim);
+      unlimited[i] = dim.isUnlimited();
+      shape[i] = key != null ? dimLengths.get(key) : vw.extent[i];
+    }
+    messages.add(new Message(DATASPACE, 0, dataspace(shape, unlimited)));
+    messages.add(new Message(DATATYPE, CONSTANT, datatype(vw.dataType)));
+
+    boolean chunked = vw.chunks != null;
+    Buf fill = new Buf().put(3);
+    int allocation = chunked ? 3 : 2; // incremental or late
+    int writeTime = 2; // if set
+    if (vw.fillValue == null) {
+      fill.put(allocation | (writeTime << 2));
+    } else {
+      byte[] value = vw.getFillBytes();
+      fill.put(allocation | (writeTime << 2) | 0x20).putInt(value.length).put(value);
+    }
+    messages.add(new Message(FILL_VALUE, CONSTANT, fill.toArray()));
+
+    if (chunked) {
+      Buf layout = new Buf().put(3).put(2).put(rank + 1).putLong(btrees.get(vw));
+      for (int chunk : vw.chunks) {
+        layout.putInt(chunk);
+      }
+      messages.add(new Message(LAYOUT, 0, layout.putInt(vw.elementSize).toArray()));
+    } else {
+      long size = vw.v.getSize() * vw.elementSize;
+      messages.add(new Message(LAYOUT, 0, new Buf().put(3).put(1).putLong(vw.address).putLong(size).toArray()));
+    }
+
+    // in the order they are applied
+    List<int[]> filters = new ArrayList<>(); // id, flags, client values
+    if (vw.shuffle) {
+      filters.add(new int[] {2, 1, vw.elementSize});
+    }
+    if (vw.deflateLevel > 0) {
+      filters.add(new int[] {1, 1, vw.deflateLevel});
+    }
+    if (vw.fletcher32) {
+      filters.add(new int[] {3, 0});
+    }
+    if (!filters.isEmpty()) {
+      Buf pipeline = new Buf().put(2).put(filters.size());
+      for (int[] filter : filters) {
+        pipeline.putShort(filter[0]).putShort(filter[1]).putShort(filter.length - 2);
+        for (int i = 2; i < filter.length; i++) {
+          pipeline.putInt(filter[i]);
+        }
+      }
+      messages.add(new Message(FILTER_PIPELINE, CONSTANT, pipeline.toArray()));
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////////////////////////////
+  // attributes
+
+  private void addUserAttributes(Iterable<Attribute> atts, @Nullable H5iospWriter.VarWriter vw,
+      List<byte[]> attributes, H5heapWriter heap) throws IOException {
+    for (Attribute att : atts) {
+      String name = att.getShortName();
+      if (reservedAttributes.contains(name)) {
+        continue;
+      }
+      if (vw != null && name.equals(CDM.FILL_VALUE)) {
+        if (att.getLength() != 1) {
+          logger.warn("_FillValue length must be one on var = {}", vw.v.getFullName());
+          continue;
+        }
+        boolean charFill = att.getDataType() == DataType.STRING && vw.dataType == DataType.CHAR;
+        if (att.getDataType() != vw.dataType && !charFill) {
+          logger.warn("_FillValue type ({}) does not agree with variable '{}' type ({}).", att.getDataType(),
+              vw.v.getFullName(), vw.dataType);
+          continue;
+        }
+      }
+      // a char variable has a text _FillValue
+      boolean isText = vw != null && vw.dataType == DataType.CHAR && name.equals(CDM.FILL_VALUE);
+      attributes.add(userAttribute(att, isText, heap));
+    }
+  }
+
+  private byte[] userAttribute(Attribute att, boolean isText, H5heapWriter heap) throws IOException {
+    String name = att.getShortName();
+    DataType dataType = att.getDataType();
+    if (dataType == DataType.STRING && !isClassic && !isText) {
+      Buf data = new Buf();
+      for (int i = 0; i < att.getLength(); i++) {
+        String value = att.getStringValue(i);
+        if (value == null) {
+          data.putInt(0).putLong(0).putInt(0); // a null heap id
+        } else {
+          byte[] s = value.getBytes(StandardCharsets.UTF_8);
+          H5heapWriter.HeapId id = heap.add(s);
+          data.putInt(s.length).putLong(id.address).putInt(id.index);
+        }
+      }
+      return attribute(name, VLEN_STRING, dataspace(att.getLength()), data.toArray());
+    }
+    if (dataType == DataType.STRING || dataType == DataType.CHAR) {
+      StringBuilder text = new StringBuilder();
+      for (int i = 0; i < att.getLength(); i++) {
+        text.append(dataType == DataType.CHAR ? att.getValues().getChar(i) : att.getStringValue(i));
+      }
+      return stringAttribute(name, text.toString());
+    }
+    if (att.getLength() == 0) {
+      return attribute(name, datatype(dataType), bytes(2, 0, 0, 2), new byte[0]); // null dataspace
+    }
+    return attribute(name, datatype(dataType), dataspace(att.getLength()), H5iospWriter.toBytes(att.getValues()));
+  }
+
+  /** A text attribute: a fixed length, null terminated string */
+  private static byte[] stringAttribute(String name, String value) {
+    byte[] s = value.getBytes(StandardCharsets.UTF_8);
+    if (s.length == 0) {
+      s = new byte[] {0};
+    }
+    if (name.equals(H5headerNew.HDF5_CLASS) || name.equals(H5headerNew.HDF5_DIMENSION_NAME)) {
+      s = Arrays.copyOf(s, s.length + 1); // these include the null
+    }
+    byte[] datatype = new Buf().put(0x13).put(isAscii(s) ? 0 : 0x10).put(0).put(0).putInt(s.length).toArray();
+    return attribute(name, datatype, bytes(2, 0, 0, 0), s);
+  }
+
+  private static byte[] intAttribute(String name, int[] values, boolean scalar) {
+    Buf data = new Buf();
+    for (int value : values) {
+      data.putInt(value);
+    }
+    return attribute(name, fixedPoint(4, true), scalar ? bytes(2, 0, 0, 0) : dataspace(values.length),
+        data.toArray());
+  }
+
+  /** Version 3 attribute message */
+  private static byte[] attribute(String name, byte[] datatype, byte[] dataspace, byte[] data) {
+    byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+    Buf buf = new Buf().put(3).put(0).putShort(nameBytes.length + 1).putShort(datatype.length)
+        .putShort(dataspace.length).put(isAscii(nameBytes) ? 0 : 1);
+    return buf.put(nameBytes).put(0).put(datatype).put(dataspace).put(data).toArray();
+  }
+
+  ////////////////////////////////////////////////////////////////////////////////////////////////
+  // datatypes and dataspaces
+
+  /** Datatype message of an atomic type, little endian */
+  private static byte[] datatype(DataType dataType) {
+    switch (dataType) {
+      case FLOAT:
+        return bytes(0x11, 0x20, 0x1f, 0x00, 4, 0, 0, 0, 0, 0, 32, 0, 23, 8, 0, 23, 0x7f, 0, 0, 0);
+      case DOUBLE:
+        return bytes(0x11, 0x20, 0x3f, 0x00, 8, 0, 0, 0, 0, 0, 64, 0, 52, 11, 0, 52, 0xff, 0x03, 0, 0);
+      case CHAR:
+        return bytes(0x13, 0, 0, 0, 1, 0, 0, 0);
+      case STRING:
+        return VLEN_STRING;
+      default:
+        return fixedPoint(dataType.getSize(), !dataType.isUnsigned());
+    }
+  }
+
+  private static byte[] fixedPoint(int size, boolean signed) {
+    return new Buf().put(0x10).put(signed ? 0x08 : 0).put(0).put(0).putInt(size).putShort(0).putShort(8 * size)
+        .toArray();
+  }
+
+  /** Version 2 dataspace message, 1D */
+  private static byte[] dataspace(int length) {
+    return dataspace(new int[] {length}, new boolean[1]);
+  }
+
+  /** Version 2 dataspace message, with maximum dimensions */
+  private static byte[] dataspace(int[] shape, boolean[] unlimited) {
+    if (shape.length == 0) {
+      return bytes(2, 0, 0, 0); // scalar
+    }
+    Buf buf = new Buf().put(2).put(shape.length).put(1).put(1);
+    for (int length : shape) {
+      buf.putLong(length);
+    }
+    for (int i = 0; i < shape.length; i++) {
+      buf.putLong(unlimited[i] ? -1L : shape[i]);
+    }
+    return buf.toArray();
+  }
+
+  ////////////////////////////////////////////////////////////////////////////////////////////////
+  // chunk B-trees
+
+  /**
+   * Write a version 1 B-tree indexing the chunks of a variable, from the leaves up.
+   *
+   * @return the address of the root node, or UNDEFINED if there are no chunks
+   */
+  private long writeBTree(H5iospWriter.VarWriter vw) throws IOException {
+    if (vw.chunks == null || vw.stored.isEmpty()) {
+      return UNDEFINED;
+    }
+    int ndims = vw.chunks.length + 1;
+    int keySize = 8 + 8 * ndims;
+    int nodeSize = 24 + 2 * BTREE_K * 8 + (2 * BTREE_K + 1) * keySize;
+
+    List<BTreeNode> nodes = new ArrayList<>();
+    BTreeNode node = null;
+    long[] last = null;
+    for (Map.Entry<long[], H5iospWriter.StoredChunk> entry : vw.stored.entrySet()) {
+      if (node == null || node.children.size() == 2 * BTREE_K) {
+        if (node != null) {
+          node.keys.add(rightKey(last, vw));
+        }
+        node = new BTreeNode(0);
+        nodes.add(node);
+      }
+      node.keys.add(chunkKey(entry.getValue().size, entry.getKey()));
+      node.children.add(entry.getValue().address);
+      last = entry.getKey();
+    }
+    node.keys.add(rightKey(last, vw));
+
+    int level = 0;
+    while (true) {
+      for (BTreeNode n : nodes) {
+        n.address = writer.allocate(nodeSize);
+      }
+      for (int i = 0; i < nodes.size(); i++) {
+        BTreeNode n = nodes.get(i);
+        Buf buf = new Buf().put('T').put('R').put('E').put('E').put(1).put(n.level).putShort(n.children.size());
+        buf.putLong(i > 0 ? nodes.get(i - 1).address : UNDEFINED);
+        buf.putLong(i < nodes.size() - 1 ? nodes.get(i + 1).address : UNDEFINED);
+        for (int j = 0; j < n.children.size(); j++) {
+          buf.put(n.keys.get(j)).putLong(n.children.get(j));
+        }
+        buf.put(n.keys.get(n.children.size()));
+        raf.seek(n.address);
+        raf.write(Arrays.copyOf(buf.toArray(), nodeSize));
+      }
+      if (nodes.size() == 1) {
+        return nodes.get(0).address;
+      }
+
+      // each key of a parent is the first key of its child
+      level++;
+      List<BTreeNode> parents = new ArrayList<>();
+      BTreeNode parent = null;
+      for (BTreeNode child : nodes) {
+        if (parent == null || parent.children.size() == 2 * BTREE_K) {
+          if (parent != null) {
+            parent.keys.add(lastKey(parent));
+          }
+          parent = new BTreeNode(level);
+          parents.add(parent);
+        }
+        parent.keys.add(child.keys.get(0));
+        parent.children.add(child.address);
+        parent.lastChild = child;
+      }
+      parent.keys.add(lastKey(parent));
+      nodes = parents;
+    }
+  }
+
+  private static byte[] lastKey(BTreeNode parent) {
+    return parent.lastChild.keys.get(parent.lastChild.keys.size() - 1);
+  }
+
+  private static byte[] chunkKey(int size, long[] offsets) {
+    Buf key = new Buf().putInt(size).putInt(0); // no filters skipped
+    for (long offset : offsets) {
+      key.putLong(offset);
+    }
+    return key.toArray();
+  }
+
+  /** The key after the last chunk: just past it in every dimension */
+  private static byte[] rightKey(long[] last, H5iospWriter.VarWriter vw) {
+    long[] offsets = new long[last.length];
+    for (int i = 0; i < vw.chunks.length; i++) {
+      offsets[i] = last[i] + vw.chunks[i];
+    }
+    offsets[vw.chunks.length] = vw.elementSize;
+    return chunkKey(0, offsets);
+  }
+
+  private static class BTreeNode {
+    private final int level;
+    private final List<byte[]> keys = new ArrayList<>();
+    private final List<Long> children = new ArrayList<>();
+    private BTreeNode lastChild;
+    private long address;
+
+    BTreeNode(int level) {
+      this.level = level;
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////////////////////////////
+  // encoding
+
+  private static byte[] bytes(int... values) {
+    byte[] result = new byte[values.length];
+    for (int i = 0; i < values.length; i++) {
+      result[i] = (byte) values[i];
+    }
+    return result;
+  }
+
+  private static boolean isAscii(byte[] s) {
+    for (byte b : s) {
+      if (b < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** A growable little endian buffer */
+  private static class Buf {
+    private ByteBuffer bb = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+
+    private Buf ensure(int n) {
+      if (bb.remaining() < n) {
+        ByteBuffer bigger = ByteBuffer.allocate(Math.max(2 * bb.capacity(), bb.position() + n));
+        bigger.order(ByteOrder.LITTLE_ENDIAN).put(bb.array(), 0, bb.position());
+        bb = bigger;
+      }
+      return this;
+    }
+
+    Buf put(int b) {
+      ensure(1).bb.put((byte) b);
+      return this;
+    }
+
+    Buf put(byte[] b) {
+      ensure(b.length).bb.put(b);
+      return this;
+    }
+
+    Buf putShort(int v) {
+      ensure(2).bb.putShort((short) v);
+      return this;
+    }
+
+    Buf putInt(int v) {
+      ensure(4).bb.putInt(v);
+      return this;
+    }
+
+    Buf putLong(long v) {
+      ensure(8).bb.putLong(v);
+      return this;
+    }
+
+    byte[] toArray() {
+      return Arrays.copyOf(bb.array(), bb.position());
+    }
+  }
+
+  /**
+   * Bob Jenkins' lookup3 hash (hashlittle, with an initial value of 0), which HDF5 uses as the checksum of
+   * metadata.
+   */
+  static int lookup3(byte[] k, int offset, int length) {
+    int a = 0xdeadbeef + length;
+    int b = a;
+    int c = a;
+    int i = offset;
+    while (length > 12) {
+      a += getInt(k, i);
+      b += getInt(k, i + 4);
+      c += getInt(k, i + 8);
+      // mix
+      a -= c;
+      a ^= Integer.rotateLeft(c, 4);
+      c += b;
+      b -= a;
+      b ^= Integer.rotateLeft(a, 6);
+      a += c;
+      c -= b;
+      c ^= Integer.rotateLeft(b, 8);
+      b += a;
+      a -= c;
+      a ^= Integer.rotateLeft(c, 16);
+      c += b;
+      b -= a;
+      b ^= Integer.rotateLeft(a, 19);
+      a += c;
+      c -= b;
+      c ^= Integer.rotateLeft(b, 4);
+      b += a;
+      length -= 12;
+      i += 12;
+    }
+    if (length == 0) {
+      return c;
+    }
+    // the last block, of 1 to 12 bytes
+    int[] tail = new int[3];
+    for (int j = 0; j < length; j++) {
+      tail[j / 4] += (k[i + j] & 0xff) << (8 * (j % 4));
+    }
+    a += tail[0];
+    b += tail[1];
+    c += tail[2];
+    // final
+    c ^= b;
+    c -= Integer.rotateLeft(b, 14);
+    a ^= c;
+    a -= Integer.rotateLeft(c, 11);
+    b ^= a;
+    b -= Integer.rotateLeft(a, 25);
+    c ^= b;
+    c -= Integer.rotateLeft(b, 16);
+    a ^= c;
+    a -= Integer.rotateLeft(c, 4);
+    b ^= a;
+    b -= Integer.rotateLeft(a, 14);
+    c ^= b;
+    c -= Integer.rotateLeft(b, 24);
+    return c;
+  }
+
+  private static int getInt(byte[] k, int i) {
+    return (k[i] & 0xff) | (k[i + 1] & 0xff) << 8 | (k[i + 2] & 0xff) << 16 | (k[i + 3] & 0xff) << 24;
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2.internal.iosp.hdf5;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongUnaryOperator;
+import javax.annotation.Nullable;
+import ucar.unidata.io.RandomAccessFile;
+
+/**
+ * Writes HDF5 global heap collections, which hold the variable length data (strings and sequences) of datasets and
+ * attributes. Objects are added to the current collection until it is full; it is then written and a new one
+ * allocated. The current collection is written again whenever {@link #flush} is called.
+ */
+class H5heapWriter {
+  private static final int MIN_COLLECTION_SIZE = 4096; // HDF5 will not read smaller collections
+  private static final int MAX_COLLECTION_SIZE = 1024 * 1024; // unless a single object is bigger
+  private static final int MAX_OBJECTS = 65535; // object ids are 2 bytes
+  private static final int HEADER_SIZE = 16; // of the collection, and of each object
+
+  @Nullable
+  private final RandomAccessFile raf; // if null, nothing is written: used to compute the size of messages
+  private final LongUnaryOperator allocator; // returns the file address of a new block of the given size
+
+  private Collection current;
+  private int nextSize = MIN_COLLECTION_SIZE; // collections double in size, up to MAX_COLLECTION_SIZE
+
+  /**
+   * @param raf write collections to this file; if null, objects are only given ids.
+   * @param allocator returns the address of a new block of the file, of the given size
+   */
+  H5heapWriter(@Nullable RandomAccessFile raf, LongUnaryOperator allocator) {
+    this.raf = raf;
+    this.allocator = allocator;
+  }
+
+  /**
+   * Add an object to the heap.
+   *
+   * @return the global heap id of the object: the collection address and the object index
+   */
+  HeapId add(byte[] data) throws IOException {
+    long need = HEADER_SIZE + padded(data.length);
+    if (current == null || current.used + need > current.size || current.objects.size() >= MAX_OBJECTS) {
+      if (current != null) {
+        write(current);
+      }
+      long size = Math.max(nextSize, HEADER_SIZE + need);
+      current = new Collection(allocator.applyAsLong(size), size);
+      nextSize = Math.min(2 * nextSize, MAX_COLLECTION_SIZE);
+    }
+    current.objects.add(data);
+    current.used += need;
+    return new HeapId(current.address, current.objects.size());
+  }
+
+  /** Write the current collection */
+  void flush() throws IOException {
+    if (current != null) {
+      write(current);
+    }
+  }
+
+  /**
+   * Read an object that was added to this heap
+   *
+   * @param id the global heap id returned by {@link #add}
+   */
+  byte[] read(HeapId id) throws IOException {
+    if (current != null && id.address == current.address) {
+      return current.objects.get(id.index - 1);
+    }
+    if (raf == null) {
+      throw new IllegalStateException("nothing written");
+    }
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    long pos = id.address + HEADER_SIZE;
+    while (true) {
+      raf.seek(pos);
+      raf.readFully(header.array());
+      int index = header.getShort(0) & 0xffff;
+      long size = header.getLong(8);
+      if (index == 0) {
+        throw new IOException("No global heap object " + id.index + " in collection at " + id.address);
+      }
+      if (index == id.index) {
+        byte[] data = new byte[(int) size];
+        raf.readFully(data);
+        return data;
+      }
+      pos += HEADER_SIZE + padded(size);
+    }
+  }
+
+  private void write(Collection collection) throws IOException {
+    if (raf == null) {
+      return;
+    }
+    ByteBuffer bb = ByteBuffer.allocate((int) collection.size).order(ByteOrder.LITTLE_ENDIAN);
+    bb.put(new byte[] {'G', 'C', 'O', 'L', 1, 0, 0, 0});
+    bb.putLong(collection.size);
+    int index = 1;
+    for (byte[] data : collection.objects) {
+      bb.putShort((short) index++);
+      bb.putShort((short) 0); // reference count
+      bb.putInt(0); // reserved
+      bb.putLong(data.length);
+      bb.put(data);
+      bb.position(bb.position() + (int) (padded(data.length) - data.length));
+    }
+    // the free space is object 0, whose size includes its header
+    if (bb.remaining() >= HEADER_SIZE) {
+      long free = bb.remaining();
+      bb.putLong(0);
+      bb.putLong(free);
+    }
+    raf.seek(collection.address);
+    raf.write(bb.array());
+  }
+
+  private static long padded(long size) {
+    return (size + 7) & ~7L;
+  }
+
+  /** A global heap id */
+  static class HeapId {
+    final long address;
+    final int index;
+
+    HeapId(long address, int index) {
+      this.address = address;
+      this.index = index;
+    }
+  }
+
+  private static class Collection {
+    private final long address;
+    private final long size;
+    private final List<byte[]> objects = new ArrayList<>();
+    private long used = HEADER_SIZE;
+
+    Collection(long address, long size) {
+      this.address = address;
+      this.size = size;
+    }
+  }
+}
@@ -0,0 +1,652 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2.internal.iosp.hdf5;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.IndexIterator;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.MAMath;
+import ucar.ma2.Range;
+import ucar.ma2.Section;
+import ucar.ma2.StructureData;
+import ucar.nc2.Attribute;
+import ucar.nc2.Group;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import ucar.nc2.Structure;
+import ucar.nc2.Variable;
+import ucar.nc2.constants.CDM;
+import ucar.nc2.constants.DataFormatType;
+import ucar.nc2.filter.Filter;
+import ucar.nc2.filter.Filters;
+import ucar.nc2.filter.UnknownFilterException;
+import ucar.nc2.iosp.AbstractIOServiceProvider;
+import ucar.nc2.iosp.Layout;
+import ucar.nc2.iosp.LayoutRegular;
+import ucar.nc2.iosp.NetcdfFormatUtils;
+import ucar.nc2.util.CancelTask;
+import ucar.nc2.write.ChunkAccumulator;
+import ucar.nc2.write.Nc4Chunking;
+import ucar.nc2.write.Nc4ChunkingDefault;
+import ucar.nc2.write.NetcdfFileFormat;
+import ucar.unidata.io.RandomAccessFile;
+
+/**
+ * IOServiceProviderWriter for netCDF-4 files, written in pure Java without the netCDF-C library. Used by
+ * NetcdfFormatWriter for new netCDF-4 files when {@link ucar.nc2.write.NetcdfFormatWriter.Builder#setUsePureJava} is
+ * set.
+ * <p>
+ * Writes the netCDF-4 data model of groups, shared dimensions, and variables of the numeric, char and String types,
+ * in the way the netCDF-C library does, so that files can be read by both. Files with Structures, enums, opaque or
+ * variable length variables cannot be written; see {@link #canWrite}.
+ * <p>
+ * Chunk shapes, compression and shuffling come from an {@link Nc4Chunking}. A variable with the attribute
+ * {@link #FLETCHER32} = "true" also has a checksum stored with each chunk. Writes are collected into whole chunks; a
+ * chunk is compressed and written once all of it has been written, and partly written chunks are written (with fill
+ * values in the rest) on flush. Chunks that are all fill values are not written at all. By default chunks are
+ * compressed on the calling thread. If an Executor has been set with {@link ChunkAccumulator#setExecutor}, chunks are
+ * compressed concurrently on the Executor, while the calling thread writes the compressed chunks to the file in turn.
+ * <p>
+ * The metadata (object headers, chunk indexes and heaps) is written after the data, on flush and on close. Only new
+ * files can be written.
+ */
+@SuppressWarnings("deprecation") // IOServiceProviderWriter is what NetcdfFormatWriter writes through
+public class H5iospWriter extends AbstractIOServiceProvider implements ucar.nc2.iosp.IOServiceProviderWriter {
+  private static final Logger logger = LoggerFactory.getLogger(H5iospWriter.class);
+
+  /** Variable attribute: if "true", store a Fletcher32 checksum with each chunk, as netCDF-C's nc_def_var_fletcher32 */
+  public static final String FLETCHER32 = "_Fletcher32";
+
+  static final long UNDEFINED = -1L; // address of unallocated storage
+
+  /**
+   * Whether everything in a group and its nested groups can be written by this class: all variables and attributes
+   * must be numeric, char or String, and there must be no enum typedefs.
+   */
+  public static boolean canWrite(Group group) {
+    if (!group.getEnumTypedefs().isEmpty() || !canWrite(group.attributes())) {
+      return false;
+    }
+    for (Variable v : group.getVariables()) {
+      if (v instanceof Structure || !isAtomic(v.getDataType()) || !canWrite(v.attributes())) {
+        return false;
+      }
+    }
+    for (Group nested : group.getGroups()) {
+      if (!canWrite(nested)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean canWrite(Iterable<Attribute> atts) {
+    for (Attribute att : atts) {
+      if (!isAtomic(att.getDataType())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isAtomic(DataType dataType) {
+    return dataType.isNumeric() || dataType == DataType.CHAR || dataType == DataType.STRING;
+  }
+
+  private final boolean isClassic;
+  private final ChunkAccumulator.Pipeline<byte[]> pipeline = new ChunkAccumulator.Pipeline<>(); // compresses chunks
+
+  private Nc4Chunking chunker = new Nc4ChunkingDefault();
+  private boolean fill = true;
+  private long eof; // end of the allocated part of the file
+  private H5heapWriter dataHeap; // data of String variables
+  private H5headerWriter header;
+  private final Map<String, VarWriter> varWriters = new LinkedHashMap<>(); // by full variable name
+  private final Map<String, Map<String, Attribute>> updatedAttributes = new HashMap<>(); // by full name, "" for root
+  private boolean metadataChanged;
+  private NetcdfFile reader; // to read back what has been written
+
+  /**
+   * @param format one of the netCDF-4 formats
+   */
+  public H5iospWriter(NetcdfFileFormat format) {
+    if (!format.isNetcdf4Format()) {
+      throw new IllegalArgumentException("Not a netCDF-4 format: " + format);
+    }
+    this.isClassic = format == NetcdfFileFormat.NETCDF4_CLASSIC;
+  }
+
+  /**
+   * @param chunker chooses the chunk shapes and compression of the variables; if null, use the default.
+   */
+  public void setChunker(@Nullable Nc4Chunking chunker) {
+    if (chunker != null) {
+      this.chunker = chunker;
+    }
+  }
+
+  @Override
+  public boolean isValidFile(RandomAccessFile raf) {
+    return false; // only writes
+  }
+
+  @Override
+  public void open(RandomAccessFile raf, NetcdfFile ncfile, CancelTask cancelTask) throws IOException {
+    throw new IOException("Use H5iospNew to read netCDF-4 files");
+  }
+
+  @Override
+  public String getFileTypeId() {
+    return DataFormatType.NETCDF4.getDescription();
+  }
+
+  @Override
+  public String getFileTypeDescription() {
+    return "netCDF-4 file written in pure Java";
+  }
+
+  @Override
+  public void create(String filename, NetcdfFile ncfile, int extra, long preallocateSize, boolean largeFile)
+      throws IOException {
+    this.ncfile = ncfile;
+    this.location = filename;
+    if (!canWrite(ncfile.getRootGroup())) {
+      throw new IOException(filename + " has data types that can only be written with the netCDF-C library");
+    }
+
+    raf = new RandomAccessFile(filename, "rw");
+    raf.getRandomAccessFile().setLength(0);
+    eof = H5headerWriter.SUPERBLOCK_SIZE;
+    dataHeap = new H5heapWriter(raf, this::allocate);
+    header = new H5headerWriter(this, raf, isClassic);
+    addVariables(ncfile.getRootGroup());
+    writeMetadata();
+  }
+
+  private void addVariables(Group group) throws IOException {
+    for (Variable v : group.getVariables()) {
+      varWriters.put(v.getFullName(), new VarWriter(v));
+    }
+    for (Group nested : group.getGroups()) {
+      addVariables(nested);
+    }
+  }
+
+  @Override
+  public void openForWriting(RandomAccessFile raf, NetcdfFile ncfile, CancelTask cancelTask) throws IOException {
+    throw new IOException("Existing netCDF-4 files can only be written with the netCDF-C library");
+  }
+
+  @Override
+  public void setFill(boolean fill) {
+    this.fill = fill;
+  }
+
+  @Override
+  public void writeData(Variable v2, Section section, Array values) throws IOException, InvalidRangeException {
+    VarWriter vw = varWriters.get(v2.getFullName());
+    if (vw == null) {
+      throw new IllegalArgumentException(v2.getFullName() + " is not a variable of " + location);
+    }
+    vw.write(section, values);
+    metadataChanged = true;
+  }
+
+  @Override
+  public int appendStructureData(Structure s, StructureData sdata) {
+    throw new UnsupportedOperationException("Structures can only be written with the netCDF-C library");
+  }
+
+  @Override
+  public boolean rewriteHeader(boolean largeFile) {
+    return false; // netcdf3 only
+  }
+
+  @Override
+  public void updateAttribute(Variable v2, Attribute att) throws IOException {
+    String key = v2 == null ? "" : v2.getFullName();
+    updatedAttributes.computeIfAbsent(key, k -> new LinkedHashMap<>()).put(att.getShortName(), att);
+    metadataChanged = true;
+  }
+
+  /**
+   * Write all chunks that have been written to, then the metadata
+   */
+  @Override
+  public void flush() throws IOException {
+    if (raf == null) {
+      return;
+    }
+    closeReader(); // variables may have grown
+    for (VarWriter vw : varWriters.values()) {
+      vw.flush();
+    }
+    pipeline.awaitPending();
+    if (metadataChanged) {
+      writeMetadata();
+    }
+    raf.flush();
+  }
+
+  @Override
+  public Array readData(Variable v2, Section section) throws IOException, InvalidRangeException {
+    flush();
+    if (reader == null) {
+      reader = NetcdfFiles.open(location);
+    }
+    Variable v = reader.findVariable(NetcdfFiles.makeFullName(v2));
+    if (v == null) {
+      throw new IOException(v2.getFullName() + " was not written to " + location);
+    }
+    return v.read(section);
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      flush();
+    } finally {
+      closeReader();
+      super.close();
+    }
+  }
+
+  private void closeReader() throws IOException {
+    if (reader != null) {
+      reader.close();
+      reader = null;
+    }
+  }
+
+  private void writeMetadata() throws IOException {
+    dataHeap.flush();
+    header.write(ncfile.getRootGroup());
+    metadataChanged = false;
+  }
+
+  /** Reserve space at the end of the file */
+  long allocate(long size) {
+    long address = eof;
+    eof += size;
+    return address;
+  }
+
+  long getEof() {
+    return eof;
+  }
+
+  List<VarWriter> getVarWriters() {
+    return new ArrayList<>(varWriters.values());
+  }
+
+  VarWriter getVarWriter(Variable v) {
+    return varWriters.get(v.getFullName());
+  }
+
+  /** The attributes of a group or variable, as updated by {@link #updateAttribute} */
+  Iterable<Attribute> getAttributes(@Nullable Variable v, Group group) {
+    Map<String, Attribute> updates = updatedAttributes.get(v == null ? group.getFullName() : v.getFullName());
+    Iterable<Attribute> atts = v == null ? group.attributes() : v.attributes();
+    if (updates == null) {
+      return atts;
+    }
+    Map<String, Attribute> result = new LinkedHashMap<>();
+    atts.forEach(att -> result.put(att.getShortName(), att));
+    result.putAll(updates);
+    return result.values();
+  }
+
+  ////////////////////////////////////////////////////////////////////////////////////////////////
+  // chunks
+
+  /** Write a compressed chunk at the end of the file */
+  private void store(VarWriter vw, long[] offsets, @Nullable byte[] bytes) throws IOException {
+    if (bytes == null) {
+      return; // all fill values
+    }
+    long address = allocate(bytes.length);
+    raf.seek(address);
+    raf.write(bytes);
+    vw.stored.put(offsets, new StoredChunk(address, bytes.length));
+  }
+
+  /** Lexicographic order of chunk offsets, which is the order of the chunk index */
+  static int compareOffsets(long[] a, long[] b) {
+    for (int i = 0; i < a.length; i++) {
+      int c = Long.compare(a[i], b[i]);
+      if (c != 0) {
+        return c;
+      }
+    }
+    return 0;
+  }
+
+  /** A chunk in the file */
+  static class StoredChunk {
+    final long address;
+    final int size;
+
+    StoredChunk(long address, int size) {
+      this.address = address;
+      this.size = size;
+    }
+  }
+
+  /** Writes the data of one variable, and keeps what the header needs to describe its storage */
+  class VarWriter {
+    final Variable v;
+    final DataType dataType;
+    final int elementSize; // in the file
+    final int[] extent; // of the data written so far, which is larger than the shape of unlimited dimensions
+    @Nullable
+    final int[] chunks; // null if contiguous
+    final int deflateLevel;
+    final boolean shuffle;
+    final boolean fletcher32;
+    @Nullable
+    final Number fillValue; // null for Strings
+    long address = UNDEFINED; // of contiguous storage
+    final TreeMap<long[], StoredChunk> stored = new TreeMap<>(H5iospWriter::compareOffsets);
+
+    private final List<Filter> filters = new ArrayList<>(); // applied in order when writing a chunk
+    @Nullable
+    private final ChunkAccumulator buffers; // null if contiguous
+    private final Set<String> submitted = new HashSet<>(); // chunk keys that have been compressed
+    private byte[] fillBytes; // raw bytes of a chunk of fill values
+
+    VarWriter(Variable v) throws IOException {
+      this.v = v;
+      this.dataType = v.getDataType();
+      this.elementSize = dataType == DataType.STRING ? 16 : dataType == DataType.CHAR ? 1 : dataType.getSize();
+      this.extent = v.getShape();
+
+      int[] shape = v.getShape();
+      boolean chunked = v.isUnlimited() || (v.getRank() > 0 && chunker.isChunked(v));
+      for (int i = 0; i < shape.length; i++) {
+        if (shape[i] == 0 && !v.getDimension(i).isUnlimited()) {
+          chunked = false; // HDF5 chunks cannot be empty, nor larger than a fixed dimension
+        }
+      }
+      if (chunked) {
+        long[] computed = chunker.isChunked(v) ? chunker.computeChunking(v) : null;
+        this.chunks = new int[shape.length];
+        for (int i = 0; i < shape.length; i++) {
+          boolean unlimited = v.getDimension(i).isUnlimited();
+          long size = computed != null && i < computed.length ? computed[i] : unlimited ? 1 : shape[i];
+          if (!unlimited) {
+            size = Math.min(size, shape[i]);
+          }
+          this.chunks[i] = (int) Math.max(1, Math.min(size, Integer.MAX_VALUE));
+        }
+      } else {
+        this.chunks = null;
+      }
+
+      boolean filtered = chunked && dataType != DataType.STRING;
+      this.deflateLevel = filtered ? Math.max(0, chunker.getDeflateLevel(v)) : 0;
+      this.shuffle = deflateLevel > 0 && chunker.isShuffle(v) && elementSize > 1;
+      this.fletcher32 = filtered && v.attributes().findAttributeString(FLETCHER32, "").equalsIgnoreCase("true");
+      if (shuffle) {
+        filters.add(makeFilter(2, 1));
+      }
+      if (deflateLevel > 0) {
+        filters.add(makeFilter(1, deflateLevel));
+      }
+      if (fletcher32) {
+        filters.add(makeFilter(3, 0));
+      }
+
+      Attribute fillAtt = v.findAttribute(CDM.FILL_VALUE);
+      if (dataType == DataType.STRING) {
+        this.fillValue = null;
+      } else if (fillAtt != null && !fillAtt.isString() && fillAtt.getLength() == 1) {
+        this.fillValue = fillAtt.getNumericValue();
+      } else if (fillAtt != null && dataType == DataType.CHAR && !fillAtt.getStringValue().isEmpty()) {
+        this.fillValue = (byte) fillAtt.getStringValue().charAt(0);
+      } else {
+        this.fillValue = NetcdfFormatUtils.getFillValueDefault(dataType);
+      }
+
+      this.buffers = chunks == null ? null : new ChunkAccumulator(v, chunks) {
+        @Override
+        protected Array readChunk(int[] index) throws IOException {
+          return VarWriter.this.readChunk(index);
+        }
+
+        @Override
+        protected void store(int[] index, Array data) throws IOException {
+          submit(index, data);
+        }
+      };
+    }
+
+    private Filter makeFilter(int id, int value) throws IOException {
+      Map<String, Object> props = new HashMap<>();
+      props.put(Filters.Keys.ID, (short) id);
+      props.put(Filters.Keys.ELEM_SIZE, elementSize);
+      props.put("level", value);
+      try {
+        return Filters.getFilter(props);
+      } catch (UnknownFilterException e) {
+        throw new IOException(e.getMessage(), e);
+      }
+    }
+
+    /** Raw bytes of one fill value */
+    byte[] getFillBytes() {
+      return H5iospWriter.toBytes(readFillChunk(new int[0]));
+    }
+
+    void write(Section section, Array values) throws IOException, InvalidRangeException {
+      int rank = v.getRank();
+      for (int i = 0; i < rank; i++) {
+        Range range = section.getRange(i);
+        if (range.length() == 0) {
+          return;
+        }
+        extent[i] = Math.max(extent[i], range.last() + 1);
+      }
+      if (chunks == null) {
+        writeContiguous(section, values);
+      } else {
+        buffers.write(section, values);
+      }
+    }
+
+    /** Contiguous storage is allocated on the first write, and filled unless all of it is being written */
+    private void writeContiguous(Section section, Array values) throws IOException, InvalidRangeException {
+      long nelems = v.getSize();
+      if (address == UNDEFINED) {
+        address = allocate(nelems * elementSize);
+        if (fill && section.computeSize() < nelems && fillValue != null) {
+          byte[] fillValueBytes = getFillBytes();
+          byte[] buffer = new byte[(int) Math.min(nelems, 8192) * elementSize];
+          for (int pos = 0; pos < buffer.length; pos += elementSize) {
+            System.arraycopy(fillValueBytes, 0, buffer, pos, elementSize);
+          }
+          raf.seek(address);
+          for (long done = 0; done < nelems * elementSize; done += buffer.length) {
+            raf.write(buffer, 0, (int) Math.min(buffer.length, nelems * elementSize - done));
+          }
+        }
+      }
+
+      Array data = Array.factory(dataType, values.getShape());
+      MAMath.copy(data, values);
+      byte[] bytes = toBytes(data);
+      Layout layout = new LayoutRegular(address, elementSize, v.getShape(), section);
+      while (layout.hasNext()) {
+        Layout.Chunk chunk = layout.next();
+        raf.seek(chunk.getSrcPos());
+        raf.write(bytes, (int) chunk.getDestElem() * elementSize, chunk.getNelems() * elementSize);
+      }
+    }
+
+    /** File offsets of a chunk: the index of its first element, with a 0 for the element */
+    private long[] offsets(int[] index) {
+      long[] offsets = new long[index.length + 1];
+      for (int i = 0; i < index.length; i++) {
+        offsets[i] = (long) index[i] * chunks[i];
+      }
+      return offsets;
+    }
+
+    /** A new chunk of fill values, or the chunk already in the file if it is written to again */
+    private Array readChunk(int[] index) throws IOException {
+      if (submitted.contains(Arrays.toString(index))) {
+        pipeline.awaitPending();
+        StoredChunk chunk = stored.get(offsets(index));
+        if (chunk != null) {
+          byte[] bytes = new byte[chunk.size];
+          raf.seek(chunk.address);
+          raf.readFully(bytes);
+          for (int i = filters.size() - 1; i >= 0; i--) {
+            bytes = filters.get(i).decode(bytes);
+          }
+          return fromBytes(bytes);
+        }
+      }
+      return readFillChunk(chunks);
+    }
+
+    private Array readFillChunk(int[] shape) {
+      Array data = Array.factory(dataType, shape);
+      IndexIterator ii = data.getIndexIterator();
+      while (ii.hasNext()) {
+        if (fillValue == null) {
+          ii.setObjectNext("");
+        } else if (dataType.isFloatingPoint()) {
+          ii.setDoubleNext(fillValue.doubleValue());
+        } else if (dataType == DataType.CHAR) {
+          ii.setCharNext((char) (fillValue.byteValue() & 0xff));
+        } else {
+          ii.setLongNext(fillValue.longValue());
+        }
+      }
+      return data;
+    }
+
+    /** Compress and write a chunk, unless it has only fill values and was never written */
+    private void submit(int[] index, Array data) throws IOException {
+      boolean isNew = submitted.add(Arrays.toString(index));
+      Callable<byte[]> task;
+      if (dataType == DataType.STRING) {
+        byte[] bytes = toBytes(data); // the strings go in the heap, on this thread
+        task = () -> bytes;
+      } else {
+        if (fillBytes == null) {
+          fillBytes = toBytes(readFillChunk(chunks));
+        }
+        task = () -> {
+          byte[] bytes = toBytes(data);
+          if (isNew && Arrays.equals(bytes, fillBytes)) {
+            return null; // an unallocated chunk is read as fill values
+          }
+          for (Filter filter : filters) {
+            bytes = filter.encode(bytes);
+          }
+          return bytes;
+        };
+      }
+      long[] offsets = offsets(index);
+      pipeline.submit(task, bytes -> store(this, offsets, bytes));
+    }
+
+    /** Write the chunks that have been partly written */
+    void flush() throws IOException {
+      if (buffers != null) {
+        buffers.flush();
+      }
+    }
+
+    /** Little endian bytes of an array of the type of this variable, with Strings as global heap references */
+    private byte[] toBytes(Array data) throws IOException {
+      if (dataType != DataType.STRING) {
+        return H5iospWriter.toBytes(data);
+      }
+      ByteBuffer bb = ByteBuffer.allocate((int) data.getSize() * elementSize).order(ByteOrder.LITTLE_ENDIAN);
+      IndexIterator ii = data.getIndexIterator();
+      while (ii.hasNext()) {
+        Object value = ii.getObjectNext();
+        if (value == null) {
+          bb.position(bb.position() + elementSize); // a null heap id
+          continue;
+        }
+        byte[] s = value.toString().getBytes(StandardCharsets.UTF_8);
+        H5heapWriter.HeapId id = dataHeap.add(s);
+        bb.putInt(s.length);
+        bb.putLong(id.address);
+        bb.putInt(id.index);
+      }
+      return bb.array();
+    }
+
+    private Array fromBytes(byte[] bytes) throws IOException {
+      ByteBuffer bb = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+      if (dataType != DataType.STRING) {
+        return Array.factory(dataType, chunks, bb);
+      }
+      Array data = Array.factory(dataType, chunks);
+      IndexIterator ii = data.getIndexIterator();
+      while (ii.hasNext()) {
+        bb.getInt(); // length
+        long heapAddress = bb.getLong();
+        int heapIndex = bb.getInt();
+        if (heapAddress != 0) {
+          byte[] s = dataHeap.read(new H5heapWriter.HeapId(heapAddress, heapIndex));
+          ii.setObjectNext(new String(s, StandardCharsets.UTF_8));
+        }
+      }
+      return data;
+    }
+  }
+
+  /** Little endian bytes of a numeric or char array */
+  static byte[] toBytes(Array data) {
+    DataType dataType = data.getDataType();
+    int size = dataType == DataType.CHAR ? 1 : dataType.getSize();
+    ByteBuffer bb = ByteBuffer.allocate((int) data.getSize() * size);
+    bb.order(ByteOrder.LITTLE_ENDIAN);
+    IndexIterator ii = data.getIndexIterator();
+    Class<?> type = data.getElementType();
+    while (ii.hasNext()) {
+      if (type == double.class) {
+        bb.putDouble(ii.getDoubleNext());
+      } else if (type == float.class) {
+        bb.putFloat(ii.getFloatNext());
+      } else if (type == long.class) {
+        bb.putLong(ii.getLongNext());
+      } else if (type == int.class) {
+        bb.putInt(ii.getIntNext());
+      } else if (type == short.class) {
+        bb.putShort(ii.getShortNext());
+      } else if (type == char.class) {
+        bb.put((byte) ii.getCharNext());
+      } else {
+        bb.put(ii.getByteNext());
+      }
+    }
+    return bb.array();
+  }
+}
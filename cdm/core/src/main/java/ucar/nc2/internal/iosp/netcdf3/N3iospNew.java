@@ -5,6 +5,8 @@ import static ucar.nc2.NetcdfFile.IOSP_MESSAGE_GET_NETCDF_FILE_FORMAT;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
 import java.util.Formatter;
@@ -30,6 +32,7 @@ import ucar.nc2.iosp.LayoutRegularSegmented;
 import ucar.nc2.internal.iosp.netcdf3.N3headerNew.Vinfo;
 import ucar.nc2.util.CancelTask;
 import ucar.nc2.write.NetcdfFileFormat;
+import ucar.unidata.io.MMapRandomAccessFile;
 import ucar.unidata.io.RandomAccessFile;
 import javax.annotation.Nullable;
 
@@ -405,6 +408,17 @@ public class N3iospNew extends AbstractIOServiceProvider implements IOServicePro
           "Too large read: nrecs * recsize= " + (nrecs * header.recsize) + "bytes exceeds " + Integer.MAX_VALUE);
 
     members.setStructureSize((int) header.recsize);
+
+    // a contiguous range of records in a mapped file is used in place, without copying
+    if (raf instanceof MMapRandomAccessFile && recordRange.stride() == 1) {
+      long start = header.recStart + recordRange.first() * header.recsize;
+      int nbytes = (int) (nrecs * header.recsize);
+      if (start + nbytes <= raf.length()) {
+        ByteBuffer bb = ((MMapRandomAccessFile) raf).slice(start, nbytes).order(ByteOrder.BIG_ENDIAN);
+        return new ArrayStructureBB(members, new int[] {recordRange.length()}, bb, 0);
+      }
+    }
+
     ArrayStructureBB structureArray = new ArrayStructureBB(members, new int[] {recordRange.length()});
 
     // loop over records
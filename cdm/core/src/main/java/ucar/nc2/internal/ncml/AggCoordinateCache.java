@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2.internal.ncml;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.annotation.Nullable;
+import thredds.inventory.MFile;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.IndexIterator;
+
+/**
+ * The persistent cache of a joinExisting aggregation: the number of coordinates and the cached coordinate values of
+ * each nested dataset, in a compact binary file in the DiskCache2.
+ * Each entry is keyed by the dataset id, and by the length and last modified time of its file, so a changed dataset
+ * is rescanned without invalidating the rest of the cache.
+ * Public for use by ucar.nc2.ncml.AggregationExisting; not part of the API.
+ */
+public final class AggCoordinateCache {
+  private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(AggCoordinateCache.class);
+
+  private static final int MAGIC = 0x41474743; // "AGGC"
+  private static final int VERSION = 4; // the XML cache files were version 3
+  private static final long UNKNOWN = -1; // length and lastModified of a dataset that is not an MFile
+
+  /** The cached information of one nested dataset. */
+  public static class Entry {
+    private final String id;
+    private final long length;
+    private final long lastModified;
+    private final int ncoords;
+    private final Map<String, Array> values;
+
+    /**
+     * @param id the dataset id
+     * @param mfile the dataset's file, or null if it is not an MFile
+     * @param ncoords the number of coordinates along the aggregation dimension
+     * @param values the cached values of each CacheVar, by variable name
+     */
+    public Entry(String id, @Nullable MFile mfile, int ncoords, Map<String, Array> values) {
+      this(id, mfile == null ? UNKNOWN : mfile.getLength(), mfile == null ? UNKNOWN : mfile.getLastModified(), ncoords,
+          values);
+    }
+
+    private Entry(String id, long length, long lastModified, int ncoords, Map<String, Array> values) {
+      this.id = id;
+      this.length = length;
+      this.lastModified = lastModified;
+      this.ncoords = ncoords;
+      this.values = values;
+    }
+
+    public String getId() {
+      return id;
+    }
+
+    public int getNcoords() {
+      return ncoords;
+    }
+
+    public Map<String, Array> getValues() {
+      return Collections.unmodifiableMap(values);
+    }
+
+    /**
+     * Is this entry still valid for the dataset's file?
+     * Datasets that are not MFiles cannot be checked, and are assumed to be unchanged.
+     */
+    public boolean isCurrent(@Nullable MFile mfile) {
+      if (mfile == null || length == UNKNOWN) {
+        return true;
+      }
+      return mfile.getLength() == length && mfile.getLastModified() == lastModified;
+    }
+  }
+
+  /**
+   * Read the cache file.
+   *
+   * @param cacheFile the cache file
+   * @param type the aggregation type; entries written for a different type are not used
+   * @param dimName the aggregation dimension name; entries written for a different dimension are not used
+   * @return the entries by dataset id; empty if the file does not exist, is in an older format, or cannot be read.
+   */
+  public static Map<String, Entry> read(File cacheFile, String type, @Nullable String dimName) {
+    if (!cacheFile.exists()) {
+      return Collections.emptyMap();
+    }
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(cacheFile.toPath()), 64 * 1024))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        return Collections.emptyMap(); // dont read old cache files, recreate
+      }
+      if (!type.equals(in.readUTF()) || !String.valueOf(dimName).equals(in.readUTF())) {
+        return Collections.emptyMap();
+      }
+
+      int n = in.readInt();
+      Map<String, Entry> result = new HashMap<>(2 * n);
+      for (int i = 0; i < n; i++) {
+        String id = in.readUTF();
+        long length = in.readLong();
+        long lastModified = in.readLong();
+        int ncoords = in.readInt();
+        int nvars = in.readInt();
+        Map<String, Array> values = new LinkedHashMap<>();
+        for (int j = 0; j < nvars; j++) {
+          String varName = in.readUTF();
+          DataType dtype = DataType.getType(in.readUTF());
+          values.put(varName, readArray(in, dtype));
+        }
+        result.put(id, new Entry(id, length, lastModified, ncoords, values));
+      }
+      return result;
+
+    } catch (IOException | RuntimeException e) {
+      logger.warn("Cant read aggregation cache {}: {}", cacheFile.getPath(), e.getMessage());
+      return Collections.emptyMap();
+    }
+  }
+
+  /**
+   * Write the cache file. It is written to a temporary file which then replaces the cache file, so that readers never
+   * see a partly written cache.
+   *
+   * @param cacheFile the cache file
+   * @param type the aggregation type
+   * @param dimName the aggregation dimension name
+   * @param entries the entries of all the nested datasets
+   */
+  public static void write(File cacheFile, String type, @Nullable String dimName, Collection<Entry> entries)
+      throws IOException {
+    File dir = cacheFile.getAbsoluteFile().getParentFile();
+    if (!dir.exists() && !dir.mkdirs()) {
+      logger.error("Cant make cache directory= {}", cacheFile);
+    }
+
+    File tempFile = File.createTempFile(cacheFile.getName(), ".tmp", dir);
+    try {
+      try (DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile.toPath()), 64 * 1024))) {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(type);
+        out.writeUTF(String.valueOf(dimName));
+        out.writeInt(entries.size());
+        for (Entry entry : entries) {
+          out.writeUTF(entry.id);
+          out.writeLong(entry.length);
+          out.writeLong(entry.lastModified);
+          out.writeInt(entry.ncoords);
+          out.writeInt(entry.values.size());
+          for (Map.Entry<String, Array> value : entry.values.entrySet()) {
+            out.writeUTF(value.getKey());
+            out.writeUTF(value.getValue().getDataType().name());
+            writeArray(out, value.getValue());
+          }
+        }
+      }
+      Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tempFile.toPath());
+    }
+  }
+
+  private static void writeArray(DataOutputStream out, Array data) throws IOException {
+    out.writeInt((int) data.getSize());
+    Class<?> type = data.getDataType().getPrimitiveClassType();
+    IndexIterator iter = data.getIndexIterator(); // canonical order, data may be a section
+    while (iter.hasNext()) {
+      if (type == double.class) {
+        out.writeDouble(iter.getDoubleNext());
+      } else if (type == float.class) {
+        out.writeFloat(iter.getFloatNext());
+      } else if (type == long.class) {
+        out.writeLong(iter.getLongNext());
+      } else if (type == int.class) {
+        out.writeInt(iter.getIntNext());
+      } else if (type == short.class) {
+        out.writeShort(iter.getShortNext());
+      } else if (type == byte.class) {
+        out.writeByte(iter.getByteNext());
+      } else if (type == char.class) {
+        out.writeChar(iter.getCharNext());
+      } else {
+        out.writeUTF(String.valueOf(iter.getObjectNext()));
+      }
+    }
+  }
+
+  private static Array readArray(DataInputStream in, DataType dtype) throws IOException {
+    int n = in.readInt();
+    Array data = Array.factory(dtype, new int[] {n});
+    Class<?> type = dtype.getPrimitiveClassType();
+    for (int i = 0; i < n; i++) {
+      if (type == double.class) {
+        data.setDouble(i, in.readDouble());
+      } else if (type == float.class) {
+        data.setFloat(i, in.readFloat());
+      } else if (type == long.class) {
+        data.setLong(i, in.readLong());
+      } else if (type == int.class) {
+        data.setInt(i, in.readInt());
+      } else if (type == short.class) {
+        data.setShort(i, in.readShort());
+      } else if (type == byte.class) {
+        data.setByte(i, in.readByte());
+      } else if (type == char.class) {
+        data.setChar(i, in.readChar());
+      } else {
+        data.setObject(i, in.readUTF());
+      }
+    }
+    return data;
+  }
+}
@@ -6,22 +6,16 @@
 package ucar.nc2.internal.ncml;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
-import java.io.PrintWriter;
-import java.nio.channels.FileChannel;
-import java.nio.channels.FileLock;
-import java.nio.channels.OverlappingFileLockException;
-import java.nio.charset.StandardCharsets;
-import java.util.Date;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import org.jdom2.Element;
-import thredds.client.catalog.Catalog;
-import thredds.inventory.MFile;
+import java.util.Set;
+import java.util.stream.Collectors;
+import javax.annotation.Nullable;
 import ucar.ma2.Array;
 import ucar.ma2.DataType;
 import ucar.nc2.Attribute;
@@ -44,6 +38,8 @@ import ucar.nc2.util.CancelTask;
  * @author caron
  */
 class AggregationExisting extends AggregationOuter {
+  private Map<String, AggCoordinateCache.Entry> persisted; // the entries read from the cache file, by dataset id
+  private Set<String> persistedUsed; // the ids of the datasets whose entries were up to date
 
   AggregationExisting(NetcdfDataset.Builder ncd, String dimName, String recheckS) {
     super(ncd, dimName, Type.joinExisting, recheckS);
@@ -173,231 +169,118 @@ class AggregationExisting extends AggregationOuter {
    * recreate.
    */
   public void persistWrite() throws IOException {
-    if (diskCache2 == null) {
-      return;
-    }
-
-    String cacheName = getCacheName();
-    if (cacheName == null) {
-      return;
-    }
-    if (cacheName.startsWith("file:")) { // LOOK HACK
-      cacheName = cacheName.substring(5);
-    }
-    File cacheFile = diskCache2.getCacheFile(cacheName);
+    File cacheFile = getCacheFile();
     if (cacheFile == null) {
-      throw new IllegalStateException();
-    }
-
-    // only write out if something changed after the cache file was last written, or if the file has been deleted
-    if (!cacheDirty && cacheFile.exists()) {
       return;
     }
 
-    File dir = cacheFile.getParentFile();
-    if (!dir.exists()) {
-      if (!dir.mkdirs()) {
-        logger.error("Cant make cache directory= " + cacheFile);
-      }
+    // only write out if something changed since the cache file was read, or if the file has been deleted
+    if (cacheFile.exists() && (!cacheDirty || isPersistedCurrent())) {
+      return;
     }
 
-    // Get a file channel for the file
-    try (FileOutputStream fos = new FileOutputStream(cacheFile);
-        FileChannel channel = fos.getChannel();
-        PrintWriter out = new PrintWriter(new OutputStreamWriter(fos, StandardCharsets.UTF_8))) {
-
-      // Try acquiring the lock without blocking. This method returns
-      // null or throws an exception if the file is already locked.
-      FileLock lock;
-      try {
-        lock = channel.tryLock();
-      } catch (OverlappingFileLockException e) {
-        // File is already locked in this thread or virtual machine
-        return; // give up
-      }
-      if (lock == null) {
-        return;
-      }
-
-      out.print("<?xml version='1.0' encoding='UTF-8'?>\n");
-      out.print("<aggregation xmlns='http://www.unidata.ucar.edu/namespaces/netcdf/ncml-2.2' version='3' ");
-      out.print("type='" + type + "' ");
-      if (dimName != null) {
-        out.print("dimName='" + dimName + "' ");
-      }
-      if (datasetManager.getRecheck() != null) {
-        out.print("recheckEvery='" + datasetManager.getRecheck() + "' ");
+    List<AggCoordinateCache.Entry> entries = new ArrayList<>();
+    for (AggDataset dataset : getDatasets()) {
+      AggDatasetOuter dod = (AggDatasetOuter) dataset;
+      if (dod.getId() == null) {
+        logger.warn("id is null");
       }
-      out.print(">\n");
 
-      List<AggDataset> nestedDatasets = getDatasets();
-      for (AggDataset dataset : nestedDatasets) {
-        AggDatasetOuter dod = (AggDatasetOuter) dataset;
-        if (dod.getId() == null) {
-          logger.warn("id is null");
+      Map<String, Array> values = new LinkedHashMap<>();
+      for (CacheVar pv : cacheList) {
+        Array data = pv.getData(dod.getId());
+        if (data != null) {
+          values.put(pv.varName, data);
         }
-
-        out.print("  <netcdf id='" + dod.getId() + "' ");
-        out.print("ncoords='" + dod.getNcoords(null) + "' >\n");
-
-        for (CacheVar pv : cacheList) {
-          Array data = pv.getData(dod.getId());
-          if (data != null) {
-            out.print("    <cache varName='" + pv.varName + "' >");
-            while (data.hasNext()) {
-              out.printf("%s ", data.next());
-            }
-            out.print("</cache>\n");
-            if (logger.isDebugEnabled()) {
-              logger.debug(
-                  " wrote array = " + pv.varName + " nelems= " + data.getSize() + " for " + dataset.getLocation());
-            }
-          }
-        }
-        out.print("  </netcdf>\n");
-      }
-
-      out.print("</aggregation>\n");
-
-      long time = datasetManager.getLastScanned();
-      if (time == 0) {
-        time = System.currentTimeMillis(); // no scans (eg all static) will have a 0
       }
+      entries.add(new AggCoordinateCache.Entry(dod.getId(), dod.getMFile(), dod.getNcoords(null), values));
+    }
 
-      if (!cacheFile.setLastModified(time)) {
-        logger.warn("FAIL to set lastModified on {}", cacheFile.getPath());
-      }
-      cacheDirty = false;
+    AggCoordinateCache.write(cacheFile, type.toString(), dimName, entries);
+    persisted = entries.stream().collect(Collectors.toMap(AggCoordinateCache.Entry::getId, e -> e, (a, b) -> b));
+    persistedUsed = new HashSet<>(persisted.keySet());
+    cacheDirty = false;
 
-      if (logger.isDebugEnabled()) {
-        logger.debug("Aggregation persisted = " + cacheFile.getPath() + " lastModified= "
-            + new Date(datasetManager.getLastScanned()));
-      }
+    if (logger.isDebugEnabled()) {
+      logger.debug("Aggregation persisted = {} datasets = {}", cacheFile.getPath(), entries.size());
     }
   }
 
-  // read info from the persistent XML file, if it exists
+  // read info from the persistent cache file, if it exists. Only datasets that are new or have changed since the
+  // cache was written need to be opened.
   protected void persistRead() {
-    if (diskCache2 == null) {
-      return;
-    }
-
-    String cacheName = getCacheName();
-    if (cacheName == null) {
-      return;
-    }
-    if (cacheName.startsWith("file:")) // LOOK
-    {
-      cacheName = cacheName.substring(5);
-    }
-
-    File cacheFile = diskCache2.getCacheFile(cacheName);
+    File cacheFile = getCacheFile();
     if (cacheFile == null) {
-      throw new IllegalStateException();
-    }
-    if (!cacheFile.exists()) {
       return;
     }
-    long lastWritten = cacheFile.lastModified();
 
-    if (logger.isDebugEnabled()) {
-      logger.debug(" Try to Read cache {} " + cacheFile.getPath());
-    }
-
-    Element aggElem;
-    try {
-      aggElem = ucar.nc2.util.xml.Parse.readRootElement("file:" + cacheFile.getPath());
-    } catch (IOException e) {
-      if (debugCache) {
-        System.out.println(" No cache for " + cacheName + " - " + e.getMessage());
+    if (persisted == null) { // persistRead is called twice when building; read the file once
+      if (logger.isDebugEnabled()) {
+        logger.debug(" Try to Read cache {}", cacheFile.getPath());
       }
-      return;
-    }
-
-    String version = aggElem.getAttributeValue("version");
-    if (!"3".equals(version)) {
-      return; // dont read old cache files, recreate
-    }
-
-    // use a map to find datasets to avoid O(n**2) searching
-    Map<String, AggDataset> map = new HashMap<>();
-    for (AggDataset ds : getDatasets()) {
-      map.put(ds.getId(), ds);
+      persisted = AggCoordinateCache.read(cacheFile, type.toString(), dimName);
     }
 
-    List<Element> ncList = aggElem.getChildren("netcdf", Catalog.ncmlNS);
-    for (Element netcdfElemNested : ncList) {
-      String id = netcdfElemNested.getAttributeValue("id");
-      AggDatasetOuter dod = (AggDatasetOuter) map.get(id);
-
-      if (null == dod) {
-        // this should mean that the dataset has been deleted. so not a problem
-        if (logger.isDebugEnabled()) {
-          logger.debug(" have cache but no dataset= {}", id);
-        }
-        continue;
-      }
-      if (logger.isDebugEnabled()) {
-        logger.debug(" use cache for dataset= {}", id);
+    persistedUsed = new HashSet<>();
+    for (AggDataset dataset : getDatasets()) {
+      String id = dataset.getId();
+      AggCoordinateCache.Entry entry = persisted.get(id);
+      if (entry == null) {
+        continue; // a new dataset
       }
 
-      MFile mfile = dod.getMFile();
-      if (mfile != null && mfile.getLastModified() > lastWritten) { // skip datasets that have changed
+      AggDatasetOuter dod = (AggDatasetOuter) dataset;
+      if (!entry.isCurrent(dod.getMFile())) { // skip datasets that have changed
         if (logger.isDebugEnabled()) {
-          logger.debug(" dataset was changed= {}", mfile);
+          logger.debug(" dataset was changed= {}", id);
         }
         continue;
       }
+      persistedUsed.add(id);
 
       if (dod.ncoord == 0) {
-        String ncoordsS = netcdfElemNested.getAttributeValue("ncoords");
-        try {
-          dod.ncoord = Integer.parseInt(ncoordsS);
-          if (logger.isDebugEnabled()) {
-            logger.debug(" Read the cache; ncoords = {}", dod.ncoord);
-          }
-        } catch (NumberFormatException e) {
-          logger.error("bad ncoord attribute on dataset=" + id);
-        }
+        dod.ncoord = entry.getNcoords();
       }
 
-      // if (dod.coordValue != null) continue; // allow ncml to override
-
-      List<Element> cacheElemList = netcdfElemNested.getChildren("cache", Catalog.ncmlNS);
-      for (Element cacheElemNested : cacheElemList) {
-        String varName = cacheElemNested.getAttributeValue("varName");
-        CacheVar pv = findCacheVariable(varName);
+      for (Map.Entry<String, Array> value : entry.getValues().entrySet()) {
+        CacheVar pv = findCacheVariable(value.getKey());
         if (pv != null) {
-          String sdata = cacheElemNested.getText();
-          if (sdata.isEmpty()) {
-            continue;
-          }
-          if (logger.isDebugEnabled()) {
-            logger.debug(" read data for var = " + varName + " size= " + sdata.length());
-          }
-
-          // long start = System.nanoTime();
-          String[] vals = sdata.split(" ");
-
-          try {
-            Array data = Array.makeArray(pv.dtype, vals);
-            pv.putData(id, data);
-            countCacheUse++;
-
-          } catch (Exception e) {
-            logger.warn("Error reading cached data ", e);
-          }
-
+          pv.putData(id, value.getValue());
+          countCacheUse++;
         } else {
-          logger.warn("not a cache var=" + varName);
+          logger.warn("not a cache var=" + value.getKey());
         }
       }
     }
+  }
+
+  // the cache file has an entry for exactly the current datasets, and all of them were up to date
+  private boolean isPersistedCurrent() {
+    return persisted != null && persistedUsed != null && persistedUsed.size() == getDatasets().size()
+        && persisted.size() == getDatasets().size();
+  }
+
+  @Nullable
+  private File getCacheFile() {
+    if (diskCache2 == null) {
+      return null;
+    }
 
+    String cacheName = getCacheName();
+    if (cacheName == null) {
+      return null;
+    }
+    if (cacheName.startsWith("file:")) { // LOOK HACK
+      cacheName = cacheName.substring(5);
+    }
+    File cacheFile = diskCache2.getCacheFile(cacheName);
+    if (cacheFile == null) {
+      throw new IllegalStateException();
+    }
+    return cacheFile;
   }
 
-  // name to use in the DiskCache2 for the persistent XML info.
-  // Document root is aggregation
+  // name to use in the DiskCache2 for the persistent info.
 
   // has the name getCacheName()
   private String getCacheName() {
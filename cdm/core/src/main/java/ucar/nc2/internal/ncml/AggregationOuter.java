@@ -5,6 +5,7 @@
 package ucar.nc2.internal.ncml;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.Formatter;
@@ -16,6 +17,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
 import thredds.inventory.MFile;
 import ucar.ma2.Array;
 import ucar.ma2.DataType;
@@ -399,13 +401,14 @@ abstract class AggregationOuter extends Aggregation implements ProxyReader {
 
     List<Range> ranges = section.getRanges();
     Range joinRange = section.getRange(0);
-    List<Range> nestedSection = new ArrayList<>(ranges); // get copy
     List<Range> innerSection = ranges.subList(1, ranges.size());
+    long innerSize = new Section(innerSection).computeSize();
 
     if (debug)
       System.out.println("   agg wants range=" + mainv.getFullName() + "(" + joinRange + ")");
 
-    // LOOK: could multithread here
+    // find the nested datasets that overlap the section, and where their data goes in sectionData
+    List<SectionReader> readers = new ArrayList<>();
     List<AggDataset> nestedDatasets = getDatasets();
     for (AggDataset nested : nestedDatasets) {
       AggDatasetOuter dod = (AggDatasetOuter) nested;
@@ -413,22 +416,30 @@ abstract class AggregationOuter extends Aggregation implements ProxyReader {
       if (nestedJoinRange == null)
         continue;
 
-      Array varData;
+      List<Range> nestedSection;
       if ((type == Type.joinNew) || (type == Type.forecastModelRunCollection)) {
-        varData = dod.read(mainv, cancelTask, innerSection);
+        nestedSection = innerSection;
       } else {
+        nestedSection = new ArrayList<>(ranges); // get copy
         nestedSection.set(0, nestedJoinRange);
-        varData = dod.read(mainv, cancelTask, nestedSection);
       }
+      readers.add(new SectionReader(dod, mainv, nestedSection, cancelTask, dtype, sectionData, destPos));
+      destPos += (int) (nestedJoinRange.length() * innerSize);
+    }
 
-      if ((cancelTask != null) && cancelTask.isCancel())
-        return null;
-      varData = MAMath.convert(varData, dtype); // just in case it need to be converted
-
-      Array.arraycopy(varData, 0, sectionData, destPos, (int) varData.getSize());
-      destPos += varData.getSize();
+    if (executor != null && readers.size() > 1) {
+      readConcurrently(readers);
+    } else {
+      for (SectionReader reader : readers) {
+        reader.call();
+        if ((cancelTask != null) && cancelTask.isCancel())
+          break;
+      }
     }
 
+    if ((cancelTask != null) && cancelTask.isCancel())
+      return null;
+
     return sectionData;
   }
 
@@ -481,13 +492,19 @@ abstract class AggregationOuter extends Aggregation implements ProxyReader {
 
       try {
         int n = nestedDatasets.size();
+        Array[] results = new Array[n];
         for (int i = 0; i < n; ++i) {
           Result r = completionService.take().get();
-          if (r != null) {
-            r.data = MAMath.convert(r.data, dtype); // just in case it needs to be converted
-            int size = (int) r.data.getSize();
-            Array.arraycopy(r.data, 0, allData, size * r.index, size);
-          }
+          if (r != null)
+            results[r.index] = r.data;
+        }
+        // the nested datasets may have different lengths, so copy in order
+        for (Array data : results) {
+          if (data == null)
+            continue;
+          data = MAMath.convert(data, dtype); // just in case it needs to be converted
+          Array.arraycopy(data, 0, allData, destPos, (int) data.getSize());
+          destPos += data.getSize();
         }
       } catch (InterruptedException e) {
         Thread.currentThread().interrupt();
@@ -540,6 +557,73 @@ abstract class AggregationOuter extends Aggregation implements ProxyReader {
     }
   }
 
+  /** Read a section of one nested dataset, and copy it into its place in the aggregated section. */
+  private static class SectionReader implements Callable<Void> {
+    private final AggDatasetOuter dod;
+    private final Variable mainv;
+    private final List<Range> nestedSection;
+    private final CancelTask cancelTask;
+    private final DataType dtype;
+    private final Array sectionData;
+    private final int destPos;
+
+    SectionReader(AggDatasetOuter dod, Variable mainv, List<Range> nestedSection, CancelTask cancelTask, DataType dtype,
+        Array sectionData, int destPos) {
+      this.dod = dod;
+      this.mainv = mainv;
+      this.nestedSection = nestedSection;
+      this.cancelTask = cancelTask;
+      this.dtype = dtype;
+      this.sectionData = sectionData;
+      this.destPos = destPos;
+    }
+
+    public Void call() throws IOException, InvalidRangeException {
+      Array varData = dod.read(mainv, cancelTask, nestedSection);
+      if (varData == null || ((cancelTask != null) && cancelTask.isCancel()))
+        return null;
+      varData = MAMath.convert(varData, dtype); // just in case it need to be converted
+
+      // each reader copies into its own part of sectionData
+      Array.arraycopy(varData, 0, sectionData, destPos, (int) varData.getSize());
+      return null;
+    }
+  }
+
+  /** Run the readers on the executor, with at most maxPendingReads of them at a time. */
+  private static void readConcurrently(List<SectionReader> readers) throws IOException, InvalidRangeException {
+    CompletionService<Void> completionService = new ExecutorCompletionService<>(executor);
+    List<Future<Void>> futures = new ArrayList<>();
+    int submitted = 0;
+    try {
+      for (int done = 0; done < readers.size(); done++) {
+        while (submitted < readers.size() && submitted - done < maxPendingReads)
+          futures.add(completionService.submit(readers.get(submitted++)));
+        completionService.take().get();
+      }
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted reading aggregation");
+
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException)
+        throw (IOException) cause;
+      if (cause instanceof InvalidRangeException)
+        throw (InvalidRangeException) cause;
+      if (cause instanceof RuntimeException)
+        throw (RuntimeException) cause;
+      if (cause instanceof Error)
+        throw (Error) cause;
+      throw new IOException(cause);
+
+    } finally {
+      for (Future<Void> future : futures) // only those not yet run, if there was a failure
+        future.cancel(false);
+    }
+  }
+
   @Override
   protected AggDataset makeDataset(String cacheName, String location, String id, String ncoordS, String coordValueS,
       String sectionSpec, EnumSet<NetcdfDataset.Enhance> enhance, ucar.nc2.util.cache.FileFactory reader) {
@@ -4,7 +4,9 @@
  */
 package ucar.nc2.iosp;
 
+import com.google.common.annotations.VisibleForTesting;
 import java.nio.charset.StandardCharsets;
+import ucar.unidata.io.MMapRandomAccessFile;
 import ucar.unidata.io.RandomAccessFile;
 import ucar.unidata.io.PositioningDataInputStream;
 import ucar.ma2.*;
@@ -76,6 +78,16 @@ public class IospHelper {
     if (showLayoutTypes)
       System.out.println("***RAF LayoutType=" + layout.getClass().getName());
 
+    Class<?> primitiveType = dataType.getPrimitiveClassType();
+    if (raf instanceof MMapRandomAccessFile && (primitiveType == byte.class || primitiveType == short.class
+        || primitiveType == int.class || primitiveType == long.class || primitiveType == float.class
+        || primitiveType == double.class || dataType == DataType.CHAR || dataType == DataType.STRUCTURE)) {
+      readMapped((MMapRandomAccessFile) raf, layout, dataType, arr, byteOrder);
+      if (convertChar && dataType == DataType.CHAR)
+        return convertByteToChar((byte[]) arr);
+      return arr;
+    }
+
     if (dataType.getPrimitiveClassType() == byte.class || dataType == DataType.CHAR) {
       byte[] pa = (byte[]) arr;
       while (layout.hasNext()) {
@@ -168,6 +180,68 @@ public class IospHelper {
     throw new IllegalStateException("unknown type= " + dataType);
   }
 
+  // bulk copy each chunk straight out of the file mapping, instead of through the RandomAccessFile buffer
+  private static void readMapped(MMapRandomAccessFile raf, Layout layout, DataType dataType, Object arr,
+      int byteOrder) throws java.io.IOException {
+    readMapped(raf, layout, dataType, arr, byteOrder, Integer.MAX_VALUE);
+  }
+
+  // a chunk can be longer than the int length of a slice, so it is copied as pieces of at most maxCopyBytes
+  @VisibleForTesting
+  static void readMapped(MMapRandomAccessFile raf, Layout layout, DataType dataType, Object arr, int byteOrder,
+      int maxCopyBytes) throws java.io.IOException {
+    Class<?> primitiveType = dataType.getPrimitiveClassType();
+    int elemSize = (dataType == DataType.STRUCTURE) ? layout.getElemSize() : dataType.getSize();
+    int maxCopyElems = Math.max(1, maxCopyBytes / elemSize);
+    long length = raf.length();
+    raf.order(byteOrder);
+
+    while (layout.hasNext()) {
+      Layout.Chunk chunk = layout.next();
+      int dest = (int) chunk.getDestElem();
+      int nelems = chunk.getNelems();
+
+      if (chunk.getSrcPos() + (long) nelems * elemSize > length) {
+        // truncated file: the buffered reads know what to do
+        raf.seek(chunk.getSrcPos());
+        if (primitiveType == short.class)
+          raf.readShort((short[]) arr, dest, nelems);
+        else if (primitiveType == int.class)
+          raf.readInt((int[]) arr, dest, nelems);
+        else if (dataType == DataType.FLOAT)
+          raf.readFloat((float[]) arr, dest, nelems);
+        else if (dataType == DataType.DOUBLE)
+          raf.readDouble((double[]) arr, dest, nelems);
+        else if (primitiveType == long.class)
+          raf.readLong((long[]) arr, dest, nelems);
+        else
+          raf.readFully((byte[]) arr, dest * elemSize, nelems * elemSize);
+        continue;
+      }
+
+      long srcPos = chunk.getSrcPos();
+      while (nelems > 0) {
+        int n = Math.min(nelems, maxCopyElems);
+        ByteBuffer bb = raf.slice(srcPos, n * elemSize);
+        if (primitiveType == short.class)
+          bb.asShortBuffer().get((short[]) arr, dest, n);
+        else if (primitiveType == int.class)
+          bb.asIntBuffer().get((int[]) arr, dest, n);
+        else if (dataType == DataType.FLOAT)
+          bb.asFloatBuffer().get((float[]) arr, dest, n);
+        else if (dataType == DataType.DOUBLE)
+          bb.asDoubleBuffer().get((double[]) arr, dest, n);
+        else if (primitiveType == long.class)
+          bb.asLongBuffer().get((long[]) arr, dest, n);
+        else
+          bb.get((byte[]) arr, dest * elemSize, n * elemSize);
+        srcPos += (long) n * elemSize;
+        dest += n;
+        nelems -= n;
+      }
+    }
+  }
+
   /**
    * Read data subset from PositioningDataInputStream, create primitive array of size Layout.getTotalNelems.
    * Reading is controlled by the Layout object.
@@ -8,17 +8,57 @@ import ucar.ma2.InvalidRangeException;
 import ucar.ma2.Section;
 import java.io.IOException;
 import java.nio.*;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 /**
  * For datasets where the data are stored in chunks, and must be processed, eg compressed or filtered.
  * The data is read, processed, and placed in a ByteBuffer. Chunks have an offset into the ByteBuffer.
  * "Tiled" means that all chunks are assumed to be equal size.
  * Chunks do not necessarily cover the array, missing data is possible.
+ * <p>
+ * By default each chunk is read and processed on the calling thread. If an Executor has been set with
+ * {@link #setExecutor(Executor, int)}, chunks that implement {@link FilteredDataChunk} are read in order on the
+ * calling thread, and their processing is handed to the executor, with up to readAhead chunks in flight.
+ * Chunks that can be read concurrently (eg separate objects in a key-value store) are also read on the executor.
  *
  * @author caron
  * @since Jan 9, 2008
  */
 public class LayoutBBTiled implements LayoutBB {
+
+  // experimental multithreading of chunk processing
+  private static volatile Executor executor;
+  private static volatile int readAhead = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * Process (eg uncompress) chunks concurrently on the given Executor, reading at most
+   * Runtime.availableProcessors() chunks ahead of the consumer.
+   *
+   * @param exec process chunks on this Executor; if null, process chunks on the calling thread (the default).
+   */
+  public static void setExecutor(Executor exec) {
+    setExecutor(exec, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Process (eg uncompress) chunks concurrently on the given Executor.
+   * Reads from the underlying file happen in chunk order on the calling thread, unless the chunk is
+   * {@link FilteredDataChunk#isConcurrentReadSafe concurrent read safe}.
+   *
+   * @param exec process chunks on this Executor; if null, process chunks on the calling thread (the default).
+   * @param maxReadAhead maximum number of chunks that are read but not yet consumed; bounds the memory used.
+   */
+  public static void setExecutor(Executor exec, int maxReadAhead) {
+    if (maxReadAhead < 1)
+      throw new IllegalArgumentException("maxReadAhead must be > 0");
+    readAhead = maxReadAhead;
+    executor = exec;
+  }
+
   private Section want;
   private int[] chunkSize; // all chunks assumed to be the same size
   private int elemSize;
@@ -26,6 +66,10 @@ public class LayoutBBTiled implements LayoutBB {
   private DataChunkIterator chunkIterator; // iterate across chunks
   private IndexChunkerTiled index; // iterate within a chunk
 
+  private final Executor exec; // if not null, process chunks on this
+  private final int maxPending;
+  private final ArrayDeque<PendingChunk> pending = new ArrayDeque<>(); // chunks read ahead, in order
+
   // track the overall iteration
   private long totalNelems, totalNelemsDone; // total number of elemens
 
@@ -49,6 +93,9 @@ public class LayoutBBTiled implements LayoutBB {
 
     this.totalNelems = this.want.computeSize();
     this.totalNelemsDone = 0;
+
+    this.exec = executor;
+    this.maxPending = readAhead;
   }
 
   public long getTotalNelems() {
@@ -67,38 +114,14 @@ public class LayoutBBTiled implements LayoutBB {
 
     if ((index == null) || !index.hasNext()) { // get new data node
       try {
-        Section dataSection;
-        DataChunk dataChunk;
-
-        while (true) { // look for intersecting sections
-          if (!chunkIterator.hasNext()) {
-            next = null;
-            return false;
-          }
-
-          // get next dataChunk
-          try {
-            dataChunk = chunkIterator.next();
-          } catch (IOException e) {
-            e.printStackTrace();
-            next = null;
-            return false;
-          }
-
-          // make the dataSection for this chunk
-          dataSection = new Section(dataChunk.getOffset(), chunkSize);
-          if (debugIntersection)
-            System.out.println(" test intersecting: " + dataSection + " want: " + want);
-          if (dataSection.intersects(want)) // does it intersect ?
-            break;
+        PendingChunk pendingChunk = (exec == null) ? nextIntersectingChunk() : nextPendingChunk();
+        if (pendingChunk == null) {
+          next = null;
+          return false;
         }
 
-        if (debug)
-          System.out.println(
-              " found intersecting dataSection: " + dataSection + " intersect= " + dataSection.intersect(want));
-
-        index = new IndexChunkerTiled(dataSection, want); // new indexer into this chunk
-        next = new Chunk(dataChunk.getByteBuffer()); // this does the uncompression
+        index = new IndexChunkerTiled(pendingChunk.dataSection, want); // new indexer into this chunk
+        next = new Chunk(pendingChunk.getByteBuffer()); // this does the uncompression, or waits for it
 
       } catch (InvalidRangeException | IOException e) {
         throw new IllegalStateException(e);
@@ -116,6 +139,46 @@ public class LayoutBBTiled implements LayoutBB {
     return next;
   }
 
+  // find the next dataChunk that intersects the wanted section, return null when there are no more
+  private PendingChunk nextIntersectingChunk() throws InvalidRangeException {
+    while (true) { // look for intersecting sections
+      if (!chunkIterator.hasNext())
+        return null;
+
+      // get next dataChunk
+      DataChunk dataChunk;
+      try {
+        dataChunk = chunkIterator.next();
+      } catch (IOException e) {
+        e.printStackTrace();
+        return null;
+      }
+
+      // make the dataSection for this chunk
+      Section dataSection = new Section(dataChunk.getOffset(), chunkSize);
+      if (debugIntersection)
+        System.out.println(" test intersecting: " + dataSection + " want: " + want);
+      if (dataSection.intersects(want)) { // does it intersect ?
+        if (debug)
+          System.out.println(
+              " found intersecting dataSection: " + dataSection + " intersect= " + dataSection.intersect(want));
+        return new PendingChunk(dataChunk, dataSection);
+      }
+    }
+  }
+
+  // keep up to maxPending chunks read and queued for processing, return the oldest one
+  private PendingChunk nextPendingChunk() throws IOException, InvalidRangeException {
+    while (pending.size() < maxPending) {
+      PendingChunk pendingChunk = nextIntersectingChunk();
+      if (pendingChunk == null)
+        break;
+      pendingChunk.submit(exec); // reads on this thread
+      pending.add(pendingChunk);
+    }
+    return pending.poll();
+  }
+
   public String toString() {
     StringBuilder sbuff = new StringBuilder();
     sbuff.append("want=").append(want).append("; ");
@@ -148,6 +211,70 @@ public class LayoutBBTiled implements LayoutBB {
     ByteBuffer getByteBuffer() throws IOException;
   }
 
+  /**
+   * A data chunk whose raw bytes can be read separately from their processing. Used when an Executor has been set:
+   * readRawBytes() is called in chunk order on the calling thread, decode() may be called on any thread.
+   */
+  public interface FilteredDataChunk extends DataChunk {
+    /** Read the raw (eg compressed) bytes of this chunk. */
+    byte[] readRawBytes() throws IOException;
+
+    /** Process the raw bytes of this chunk, must be thread-safe. */
+    ByteBuffer decode(byte[] rawBytes) throws IOException;
+
+    /** If true, readRawBytes() is thread-safe, and may be called on any thread. */
+    default boolean isConcurrentReadSafe() {
+      return false;
+    }
+  }
+
+  // a dataChunk that intersects the wanted section, possibly being processed on another thread
+  private static class PendingChunk {
+    final DataChunk dataChunk;
+    final Section dataSection;
+    Future<ByteBuffer> future;
+
+    PendingChunk(DataChunk dataChunk, Section dataSection) {
+      this.dataChunk = dataChunk;
+      this.dataSection = dataSection;
+    }
+
+    void submit(Executor exec) throws IOException {
+      if (!(dataChunk instanceof FilteredDataChunk))
+        return; // will be read and processed on the calling thread
+      FilteredDataChunk filtered = (FilteredDataChunk) dataChunk;
+      FutureTask<ByteBuffer> task;
+      if (filtered.isConcurrentReadSafe()) {
+        task = new FutureTask<>(() -> filtered.decode(filtered.readRawBytes()));
+      } else {
+        byte[] raw = filtered.readRawBytes();
+        task = new FutureTask<>(() -> filtered.decode(raw));
+      }
+      exec.execute(task);
+      future = task;
+    }
+
+    ByteBuffer getByteBuffer() throws IOException {
+      if (future == null)
+        return dataChunk.getByteBuffer();
+      try {
+        return future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException(e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException)
+          throw (IOException) cause;
+        if (cause instanceof RuntimeException)
+          throw (RuntimeException) cause;
+        if (cause instanceof Error)
+          throw (Error) cause;
+        throw new IOException(cause);
+      }
+    }
+  }
+
   /**
    * A chunk of data that is contiguous in both the source and destination.
    * Everything is done in elements, not bytes.
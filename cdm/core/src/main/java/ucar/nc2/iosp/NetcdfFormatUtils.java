@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2.iosp;
+
+import javax.annotation.Nullable;
+import ucar.ma2.DataType;
+
+/** Constants and utilities shared by the netCDF file formats. */
+public class NetcdfFormatUtils {
+  // Default fill values, used unless _FillValue variable attribute is set.
+  public static final byte NC_FILL_BYTE = -127;
+  public static final char NC_FILL_CHAR = (char) 0;
+  public static final short NC_FILL_SHORT = (short) -32767;
+  public static final int NC_FILL_INT = -2147483647;
+  public static final float NC_FILL_FLOAT = 9.9692099683868690e+36f; /* near 15 * 2^119 */
+  public static final double NC_FILL_DOUBLE = 9.9692099683868690e+36;
+
+  public static final byte NC_FILL_UBYTE = (byte) 255;
+  public static final short NC_FILL_USHORT = (short) 65535;
+  public static final int NC_FILL_UINT = (int) 4294967295L;
+  public static final long NC_FILL_INT64 = -9223372036854775806L; // 0x8000000000000002. Only bits 63 and 1 set.
+
+  // 18446744073709551614ULL does not fit into a signed long, so this is the bit pattern it would have as unsigned.
+  public static final long NC_FILL_UINT64 = 0xfffffffffffffffeL;
+
+  public static final String NC_FILL_STRING = "";
+
+  /**
+   * The default fill value of the netCDF-C library for a data type.
+   *
+   * @param dtype the data type
+   * @return the fill value, with a char as a byte; null for non-numeric types other than CHAR
+   */
+  @Nullable
+  public static Number getFillValueDefault(DataType dtype) {
+    if ((dtype == DataType.BYTE) || (dtype == DataType.ENUM1))
+      return NC_FILL_BYTE;
+    if (dtype == DataType.UBYTE)
+      return NC_FILL_UBYTE;
+    if (dtype == DataType.CHAR)
+      return (byte) 0;
+    if ((dtype == DataType.SHORT) || (dtype == DataType.ENUM2))
+      return NC_FILL_SHORT;
+    if (dtype == DataType.USHORT)
+      return NC_FILL_USHORT;
+    if ((dtype == DataType.INT) || (dtype == DataType.ENUM4))
+      return NC_FILL_INT;
+    if (dtype == DataType.UINT)
+      return NC_FILL_UINT;
+    if (dtype == DataType.LONG)
+      return NC_FILL_INT64;
+    if (dtype == DataType.ULONG)
+      return NC_FILL_UINT64;
+    if (dtype == DataType.FLOAT)
+      return NC_FILL_FLOAT;
+    if (dtype == DataType.DOUBLE)
+      return NC_FILL_DOUBLE;
+    return null;
+  }
+
+  private NetcdfFormatUtils() {}
+}
@@ -159,7 +159,7 @@ public class H5tiledLayoutBB implements LayoutBB {
     }
   }
 
-  private class DataChunk implements ucar.nc2.iosp.LayoutBBTiled.DataChunk {
+  private class DataChunk implements LayoutBBTiled.FilteredDataChunk {
     // Copied from ArrayList.
     private static final int MAX_ARRAY_LEN = Integer.MAX_VALUE - 8;
 
@@ -199,12 +199,23 @@ public class H5tiledLayoutBB implements LayoutBB {
     }
 
     public ByteBuffer getByteBuffer() throws IOException {
+      return decode(readRawBytes());
+    }
+
+    public byte[] readRawBytes() throws IOException {
       try {
         // read the data
         byte[] data = new byte[delegate.size];
         raf.seek(delegate.filePos);
         raf.readFully(data);
+        return data;
+      } catch (OutOfMemoryError e) {
+        throw outOfMemory(e);
+      }
+    }
 
+    public ByteBuffer decode(byte[] data) throws IOException {
+      try {
         // apply filters backwards
         for (int i = filters.length - 1; i >= 0; i--) {
           H5header.Filter f = filters[i];
@@ -231,10 +242,7 @@ public class H5tiledLayoutBB implements LayoutBB {
         result.order(byteOrder);
         return result;
       } catch (OutOfMemoryError e) {
-        Error oom = new OutOfMemoryError("Ran out of memory trying to read HDF5 filtered chunk. Either increase the "
-            + "JVM's heap size (use the -Xmx switch) or reduce the size of the dataset's chunks (use nccopy -c).");
-        oom.initCause(e); // OutOfMemoryError lacks a constructor with a cause parameter.
-        throw oom;
+        throw outOfMemory(e);
       }
     }
 
@@ -328,6 +336,13 @@ public class H5tiledLayoutBB implements LayoutBB {
       return result;
     }
 
+    private Error outOfMemory(OutOfMemoryError e) {
+      Error oom = new OutOfMemoryError("Ran out of memory trying to read HDF5 filtered chunk. Either increase the "
+          + "JVM's heap size (use the -Xmx switch) or reduce the size of the dataset's chunks (use nccopy -c).");
+      oom.initCause(e); // OutOfMemoryError lacks a constructor with a cause parameter.
+      return oom;
+    }
+
     boolean isBitSet(int val, int bitno) {
       return ((val >>> bitno) & 1) != 0;
     }
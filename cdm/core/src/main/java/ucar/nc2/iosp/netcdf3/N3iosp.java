@@ -53,29 +53,7 @@ public abstract class N3iosp extends AbstractIOServiceProvider implements IOServ
   public static final String NC_FILL_STRING = "";
 
   public static Number getFillValueDefault(DataType dtype) {
-    if ((dtype == DataType.BYTE) || (dtype == DataType.ENUM1))
-      return N3iosp.NC_FILL_BYTE;
-    if (dtype == DataType.UBYTE)
-      return N3iosp.NC_FILL_UBYTE;
-    if (dtype == DataType.CHAR)
-      return (byte) 0;
-    if ((dtype == DataType.SHORT) || (dtype == DataType.ENUM2))
-      return N3iosp.NC_FILL_SHORT;
-    if (dtype == DataType.USHORT)
-      return N3iosp.NC_FILL_USHORT;
-    if ((dtype == DataType.INT) || (dtype == DataType.ENUM4))
-      return N3iosp.NC_FILL_INT;
-    if (dtype == DataType.UINT)
-      return N3iosp.NC_FILL_UINT;
-    if (dtype == DataType.LONG)
-      return N3iosp.NC_FILL_INT64;
-    if (dtype == DataType.ULONG)
-      return N3iosp.NC_FILL_UINT64;
-    if (dtype == DataType.FLOAT)
-      return N3iosp.NC_FILL_FLOAT;
-    if (dtype == DataType.DOUBLE)
-      return N3iosp.NC_FILL_DOUBLE;
-    return null;
+    return NetcdfFormatUtils.getFillValueDefault(dtype);
   }
 
   /*
@@ -115,11 +115,25 @@ public abstract class Aggregation implements AggregationIF {
 
   // experimental multithreading
   protected static Executor executor;
+  protected static int maxPendingReads = Runtime.getRuntime().availableProcessors();
 
   public static void setExecutor(Executor exec) {
     executor = exec;
   }
 
+  /**
+   * Read the nested datasets of outer dimension aggregations on the given Executor.
+   *
+   * @param exec read on this Executor; if null, read the nested datasets one at a time.
+   * @param maxPending maximum number of nested datasets one section read has in progress at the same time.
+   */
+  public static void setExecutor(Executor exec, int maxPending) {
+    if (maxPending < 1)
+      throw new IllegalArgumentException("maxPending must be > 0");
+    maxPendingReads = maxPending;
+    executor = exec;
+  }
+
   public static void setTypicalDatasetMode(String mode) {
     if (mode.equalsIgnoreCase("random"))
       typicalDatasetMode = TypicalDataset.RANDOM;
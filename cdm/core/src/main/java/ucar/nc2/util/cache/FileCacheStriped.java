@@ -0,0 +1,499 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.util.cache;
+
+import ucar.nc2.dataset.DatasetUrl;
+import ucar.nc2.time.CalendarDateFormatter;
+import ucar.nc2.util.CancelTask;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A FileCacheIF for heavily concurrent use, with the same limits and semantics as {@link FileCache}.
+ * <p/>
+ * Open files are pooled per hashKey. Acquiring and releasing a file never takes a lock shared with other keys:
+ * acquire pops an idle file from the key's lock-free pool and claims it with a compare-and-set, and release pushes
+ * it back. Only adding a new file to, or removing a file from, a key's pool synchronizes, and then only on that key's
+ * hash bin in a ConcurrentHashMap.
+ * <p/>
+ * When the number of open files goes over the soft limit, least recently used idle files are closed in a background
+ * thread, down to the minimum. As in FileCache, going over the hard limit (if > 0) does the eviction in the calling
+ * thread. Hit, miss and eviction counts are available from {@link #getHits()}, {@link #getMisses()} and
+ * {@link #getEvictions()}.
+ * <p/>
+ * Call {@link #shutdown()} when exiting the application to stop the background thread.
+ */
+@ThreadSafe
+public class FileCacheStriped implements FileCacheIF {
+  private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(FileCacheStriped.class);
+  private static final org.slf4j.Logger cacheLog = org.slf4j.LoggerFactory.getLogger("cacheLogger");
+
+  private static final int IDLE = 0, IN_USE = 1, CLOSED = 2;
+
+  // Shared by all instances. Access to it is limited to the following 2 synchronized methods.
+  private static ScheduledExecutorService exec;
+
+  /**
+   * You must call shutdown() to shut down the background thread in order to get a clean process shutdown.
+   */
+  public static synchronized void shutdown() {
+    if (exec != null) {
+      exec.shutdownNow();
+      cacheLog.info("FileCacheStriped.shutdown called");
+    }
+    exec = null;
+  }
+
+  private static synchronized ScheduledExecutorService getExecutor() {
+    if (exec == null) {
+      ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+        Thread t = new Thread(r, "FileCacheStriped");
+        t.setDaemon(true);
+        return t;
+      });
+      executor.setRemoveOnCancelPolicy(true);
+      exec = executor;
+    }
+    return exec;
+  }
+
+  /////////////////////////////////////////////////////////////////////////////////////////
+
+  private final String name;
+  private final int minElements, softLimit, hardLimit;
+  private final long period; // msecs
+
+  private final AtomicBoolean disabled = new AtomicBoolean(false);
+  private final AtomicBoolean evictionScheduled = new AtomicBoolean(false);
+
+  private final ConcurrentHashMap<Object, Pool> pools; // all open files with the same hashKey
+  private final ConcurrentHashMap<FileCacheable, Entry> files; // all open files in the cache
+  private final AtomicInteger nfiles = new AtomicInteger(); // files.size() is not constant time
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * Constructor.
+   *
+   * @param name of file cache
+   * @param minElementsInMemory keep this number in the cache
+   * @param softLimit schedule a background cleanup if it goes over this number.
+   * @param hardLimit if > 0, never allow more than this many elements. This causes a cleanup to be done in the calling
+   *        thread.
+   * @param period if > 0, do periodic cleanups every this number of seconds.
+   */
+  public FileCacheStriped(String name, int minElementsInMemory, int softLimit, int hardLimit, int period) {
+    this.name = name;
+    this.minElements = minElementsInMemory;
+    this.softLimit = softLimit;
+    this.hardLimit = hardLimit;
+    this.period = 1000L * period;
+
+    pools = new ConcurrentHashMap<>(2 * Math.max(softLimit, 16));
+    files = new ConcurrentHashMap<>(4 * Math.max(softLimit, 16));
+
+    if (period > 0) {
+      getExecutor().scheduleAtFixedRate(this::backgroundCleanup, this.period, this.period, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Disable the cache, and force release all files.
+   * You must still call shutdown() before exiting the application.
+   */
+  @Override
+  public void disable() {
+    disabled.set(true);
+    clearCache(true);
+  }
+
+  /**
+   * Enable the cache, with the current set of parameters.
+   */
+  @Override
+  public void enable() {
+    disabled.set(false);
+  }
+
+  @Override
+  public FileCacheable acquire(FileFactory factory, DatasetUrl durl) throws IOException {
+    return acquire(factory, durl.getTrueurl(), durl, -1, null, null);
+  }
+
+  /**
+   * Acquire a FileCacheable from the cache, and lock it so no one else can use it.
+   * If not already in cache, open it with the FileFactory, and put in cache.
+   * <p/>
+   * App should call FileCacheable.close when done, and the file is then released instead of closed.
+   *
+   * @param factory use this factory to open the file if not in the cache; may not be null
+   * @param hashKey unique key for this file. If null, the location will be used
+   * @param location file location, may also used as the cache name, will be passed to the NetcdfFileFactory
+   * @param buffer_size RandomAccessFile buffer size, if <= 0, use default size
+   * @param cancelTask user can cancel, ok to be null.
+   * @param spiObject passed to the factory if object needs to be recreated
+   * @return FileCacheable corresponding to location.
+   * @throws IOException on error
+   */
+  @Override
+  public FileCacheable acquire(FileFactory factory, Object hashKey, DatasetUrl location, int buffer_size,
+      CancelTask cancelTask, Object spiObject) throws IOException {
+    if (null == hashKey)
+      hashKey = location.getTrueurl();
+    if (null == hashKey)
+      throw new IllegalArgumentException();
+
+    FileCacheable ncfile = acquireCacheOnly(hashKey);
+    if (ncfile != null) {
+      hits.increment();
+      return ncfile;
+    }
+    misses.increment();
+
+    ncfile = factory.open(location, buffer_size, cancelTask, spiObject);
+    if (cacheLog.isDebugEnabled())
+      cacheLog.debug("FileCacheStriped " + name + " acquire " + hashKey + " " + ncfile.getLocation());
+
+    // user may have canceled
+    if ((cancelTask != null) && (cancelTask.isCancel())) {
+      ncfile.close();
+      return null;
+    }
+
+    if (disabled.get())
+      return ncfile;
+
+    Entry entry = new Entry(ncfile, hashKey);
+    files.put(ncfile, entry);
+    pools.compute(hashKey, (k, pool) -> {
+      if (pool == null)
+        pool = new Pool();
+      pool.all.add(entry);
+      return pool;
+    });
+    ncfile.setFileCache(this);
+    int count = nfiles.incrementAndGet();
+
+    if (hardLimit > 0 && count > hardLimit) {
+      evict(hardLimit);
+    } else if (softLimit > 0 && count > softLimit && evictionScheduled.compareAndSet(false, true)) {
+      getExecutor().execute(this::backgroundCleanup);
+    }
+
+    return ncfile;
+  }
+
+  /** Find an idle file in the cache and claim it, or return null. */
+  private FileCacheable acquireCacheOnly(Object hashKey) {
+    if (disabled.get())
+      return null;
+
+    Pool pool = pools.get(hashKey);
+    if (pool == null)
+      return null;
+
+    Entry want;
+    while ((want = pool.idle.pollFirst()) != null) {
+      if (!want.state.compareAndSet(IDLE, IN_USE))
+        continue; // being evicted
+
+      FileCacheable ncfile = want.ncfile;
+      if (ncfile.getLastModified() != want.lastModified) {
+        if (cacheLog.isDebugEnabled())
+          cacheLog.debug("FileCacheStriped " + name + ": acquire from cache " + hashKey + " " + ncfile.getLocation()
+              + " was changed; discard");
+        remove(want);
+        continue;
+      }
+
+      try {
+        ncfile.reacquire(); // rehydrate
+      } catch (IOException ioe) {
+        if (cacheLog.isDebugEnabled())
+          cacheLog.debug("FileCacheStriped " + name + " acquire from cache " + hashKey + " " + ncfile.getLocation()
+              + " failed: " + ioe.getMessage());
+        remove(want);
+        continue;
+      }
+      return ncfile;
+    }
+    return null;
+  }
+
+  /**
+   * Release the file. This unlocks it, updates its lastAccessed date.
+   * Normally applications need not call this, just close the file as usual.
+   *
+   * @param ncfile release this file.
+   * @return true if file was in cache, false if it was not
+   */
+  @Override
+  public boolean release(FileCacheable ncfile) throws IOException {
+    if (ncfile == null)
+      return false;
+
+    if (disabled.get()) {
+      ncfile.setFileCache(null); // prevent infinite loops
+      ncfile.close();
+      return false;
+    }
+
+    Entry entry = files.get(ncfile);
+    if (entry == null)
+      return false;
+
+    if (entry.state.get() != IN_USE) {
+      cacheLog.warn("FileCacheStriped " + name + " release " + ncfile.getLocation() + " not locked; hash= "
+          + ncfile.hashCode());
+      return true;
+    }
+    entry.lastAccessed = System.currentTimeMillis();
+    entry.countAccessed.incrementAndGet();
+
+    try {
+      ncfile.release();
+    } catch (IOException ioe) {
+      cacheLog.error("FileCacheStriped {} release failed on {} - will try to remove from cache. Failure due to:", name,
+          ncfile.getLocation(), ioe);
+      remove(entry);
+      return true;
+    }
+
+    if (entry.state.compareAndSet(IN_USE, IDLE)) {
+      Pool pool = pools.get(entry.hashKey);
+      if (pool != null && pool.all.contains(entry)) {
+        pool.idle.offerFirst(entry); // most recently used first
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Remove all instances of object from the cache, closing them even if they are in use.
+   *
+   * @param hashKey the object
+   */
+  @Override
+  public void eject(Object hashKey) {
+    if (disabled.get())
+      return;
+
+    Pool pool = pools.remove(hashKey);
+    if (pool == null)
+      return;
+    for (Entry entry : pool.all) {
+      if (entry.state.getAndSet(CLOSED) != CLOSED) {
+        close(entry);
+      }
+    }
+  }
+
+  /**
+   * Remove all cache entries.
+   *
+   * @param force if true, remove them even if they are currently in use.
+   */
+  @Override
+  public void clearCache(boolean force) {
+    int count = 0;
+    for (Entry entry : files.values()) {
+      if (force) {
+        int prev = entry.state.getAndSet(CLOSED);
+        if (prev == CLOSED)
+          continue;
+        if (prev == IN_USE)
+          cacheLog.warn("FileCacheStriped " + name + " force close locked file= " + entry);
+      } else if (!entry.state.compareAndSet(IDLE, CLOSED)) {
+        continue;
+      }
+      removeFromPool(entry);
+      close(entry);
+      count++;
+    }
+    if (cacheLog.isDebugEnabled())
+      cacheLog.debug("*FileCacheStriped " + name + " clearCache force= " + force + " deleted= " + count + " left="
+          + nfiles.get());
+  }
+
+  private void backgroundCleanup() {
+    try {
+      if (!disabled.get())
+        evict(softLimit);
+    } catch (Throwable t) {
+      log.error("FileCacheStriped " + name + " cleanup failed", t);
+    } finally {
+      evictionScheduled.set(false);
+    }
+  }
+
+  /**
+   * Close least recently used idle files, bringing the cache down to its minimum size. In use files are never closed.
+   * Normally this is done in a background thread; there is no need to call it.
+   *
+   * @param maxElements log a warning if the cache can't be brought under this size.
+   */
+  void evict(int maxElements) {
+    int size = nfiles.get();
+    if (size <= minElements)
+      return;
+
+    // freeze lastAccessed for sorting; it may change while we sort
+    List<Map.Entry<Long, Entry>> idle = new ArrayList<>();
+    for (Entry entry : files.values()) {
+      if (entry.state.get() == IDLE)
+        idle.add(new AbstractMap.SimpleImmutableEntry<>(entry.lastAccessed, entry));
+    }
+    idle.sort(Map.Entry.comparingByKey()); // oldest first
+
+    int need2delete = size - minElements;
+    int count = 0;
+    for (Map.Entry<Long, Entry> e : idle) {
+      if (count >= need2delete)
+        break;
+      Entry entry = e.getValue();
+      if (entry.state.compareAndSet(IDLE, CLOSED)) {
+        removeFromPool(entry);
+        close(entry);
+        evictions.increment();
+        count++;
+      }
+    }
+
+    if (size - count > maxElements) {
+      cacheLog.warn("FileCacheStriped " + name + " cleanup couldnt remove enough to keep under the maximum= "
+          + maxElements + " due to locked files; currently at = " + (size - count));
+    }
+    if (cacheLog.isDebugEnabled())
+      cacheLog.debug("FileCacheStriped {} cleanup had={} removed={}", name, size, count);
+  }
+
+  /** Remove a file that is in use by this thread. */
+  private void remove(Entry entry) {
+    entry.state.set(CLOSED);
+    removeFromPool(entry);
+    close(entry);
+  }
+
+  private void removeFromPool(Entry entry) {
+    pools.computeIfPresent(entry.hashKey, (k, pool) -> {
+      pool.all.remove(entry);
+      pool.idle.remove(entry);
+      return pool.all.isEmpty() ? null : pool;
+    });
+  }
+
+  private void close(Entry entry) {
+    if (files.remove(entry.ncfile) != null) {
+      nfiles.decrementAndGet();
+    }
+    try {
+      entry.ncfile.setFileCache(null); // unhook the caching
+      entry.ncfile.close();
+    } catch (IOException e) {
+      log.error("FileCacheStriped " + name + " close failed on " + entry.ncfile.getLocation(), e);
+    }
+  }
+
+  /** Number of acquires satisfied by a file already in the cache. */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /** Number of acquires that had to open the file. */
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /** Number of files closed to keep the cache size under its limits. */
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  /** Number of open files in the cache, in use or not. */
+  public int size() {
+    return nfiles.get();
+  }
+
+  @Override
+  public void resetTracking() {
+    hits.reset();
+    misses.reset();
+    evictions.reset();
+  }
+
+  @Override
+  public void showTracking(Formatter format) {
+    showStats(format);
+  }
+
+  @Override
+  public void showCache(Formatter format) {
+    List<Entry> all = new ArrayList<>(files.values());
+    all.sort(Comparator.comparingLong(e -> e.lastAccessed)); // oldest on top
+
+    format.format("%nFileCacheStriped %s (min=%d softLimit=%d hardLimit=%d scour=%d secs):%n", name, minElements,
+        softLimit, hardLimit, period / 1000);
+    format.format(" isLocked  accesses lastAccess                   location %n");
+    for (Entry entry : all) {
+      format.format("%8s %9d %s == %s %n", entry.state.get() == IN_USE, entry.countAccessed.get(),
+          CalendarDateFormatter.toDateTimeStringISO(entry.lastAccessed), entry.ncfile.getLocation());
+    }
+    showStats(format);
+  }
+
+  @Override
+  public List<String> showCache() {
+    List<Entry> all = new ArrayList<>(files.values());
+    all.sort(Comparator.comparingLong(e -> e.lastAccessed)); // oldest on top
+    List<String> result = new ArrayList<>(all.size());
+    for (Entry entry : all) {
+      result.add(entry.toString());
+    }
+    return result;
+  }
+
+  @Override
+  public void showStats(Formatter format) {
+    format.format("  hits= %d miss= %d evictions= %d nfiles= %d elems= %d%n", getHits(), getMisses(), getEvictions(),
+        nfiles.get(), pools.size());
+  }
+
+  /** The open files for one hashKey. */
+  private static class Pool {
+    final Set<Entry> all = ConcurrentHashMap.newKeySet();
+    final ConcurrentLinkedDeque<Entry> idle = new ConcurrentLinkedDeque<>();
+  }
+
+  private static class Entry {
+    final FileCacheable ncfile;
+    final Object hashKey;
+    final long lastModified;
+    final AtomicInteger state = new AtomicInteger(IN_USE);
+    final AtomicInteger countAccessed = new AtomicInteger();
+    volatile long lastAccessed = System.currentTimeMillis();
+
+    Entry(FileCacheable ncfile, Object hashKey) {
+      this.ncfile = ncfile;
+      this.hashKey = hashKey;
+      this.lastModified = ncfile.getLastModified();
+    }
+
+    public String toString() {
+      return (state.get() == IN_USE) + " " + countAccessed.get() + " "
+          + CalendarDateFormatter.toDateTimeStringISO(lastAccessed) + "   " + ncfile.getLocation();
+    }
+  }
+}
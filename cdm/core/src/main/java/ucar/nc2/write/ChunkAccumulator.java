@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2.write;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import javax.annotation.Nullable;
+import ucar.ma2.Array;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.MAMath;
+import ucar.ma2.Range;
+import ucar.ma2.Section;
+import ucar.nc2.Variable;
+
+/**
+ * Collects the values written to a chunked variable into whole chunks, for the IOServiceProviderWriters that store
+ * variables as chunks. A chunk is passed to {@link #store} once all of it that is inside the variable has been
+ * written; chunks that have been partly written are passed on {@link #flush}, with fill values in the rest.
+ * <p>
+ * The writers encode (eg compress) the chunks through a {@link Pipeline}. By default chunks are encoded on the calling
+ * thread. If an Executor has been set with {@link #setExecutor(Executor, int)}, chunks are encoded concurrently on the
+ * Executor, and the results are handed back to the writer in the order the chunks were submitted.
+ */
+public abstract class ChunkAccumulator {
+
+  // experimental multithreading of chunk compression
+  private static volatile Executor executor;
+  private static volatile int maxPendingChunks = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * Encode chunks concurrently on the given Executor, with at most Runtime.availableProcessors() chunks waiting to be
+   * written.
+   *
+   * @param exec encode chunks on this Executor; if null, encode chunks on the calling thread (the default).
+   */
+  public static void setExecutor(@Nullable Executor exec) {
+    setExecutor(exec, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Encode chunks concurrently on the given Executor.
+   * Affects writers created after this is called.
+   *
+   * @param exec encode chunks on this Executor; if null, encode chunks on the calling thread (the default).
+   * @param maxPending maximum number of chunks encoded but not yet written; bounds the memory used.
+   */
+  public static void setExecutor(@Nullable Executor exec, int maxPending) {
+    if (maxPending < 1)
+      throw new IllegalArgumentException("maxPending must be > 0");
+    maxPendingChunks = maxPending;
+    executor = exec;
+  }
+
+  private final Variable v;
+  private final int[] chunks;
+  private final Map<String, ChunkBuffer> buffers = new HashMap<>(); // by chunk index
+
+  /**
+   * @param v the variable being written
+   * @param chunks the chunk shape
+   */
+  protected ChunkAccumulator(Variable v, int[] chunks) {
+    this.v = v;
+    this.chunks = chunks;
+  }
+
+  /**
+   * The chunk to copy values into: a new chunk of fill values, or the stored chunk if it is written to again.
+   *
+   * @param index the chunk index, ie the index of its first element divided by the chunk shape
+   * @return an array with the chunk shape
+   */
+  protected abstract Array readChunk(int[] index) throws IOException;
+
+  /**
+   * Store a chunk that has been written to. The data is not changed after this is called.
+   *
+   * @param index the chunk index
+   * @param data the values of the chunk
+   */
+  protected abstract void store(int[] index, Array data) throws IOException;
+
+  /**
+   * Copy values into each chunk that the section intersects, storing the chunks that are then complete.
+   *
+   * @param section the section of the variable to write, not empty
+   * @param values the values, with the shape of the section
+   */
+  public void write(Section section, Array values) throws IOException, InvalidRangeException {
+    int rank = chunks.length;
+    int[] first = new int[rank];
+    int[] last = new int[rank];
+    for (int i = 0; i < rank; i++) {
+      Range range = section.getRange(i);
+      first[i] = range.first() / chunks[i];
+      last[i] = range.last() / chunks[i];
+    }
+
+    int[] index = first.clone();
+    while (true) {
+      writeChunk(index, section, values);
+      int i = rank - 1;
+      for (; i >= 0; i--) { // increment index from inner dimension outward
+        if (index[i] < last[i]) {
+          index[i]++;
+          break;
+        }
+        index[i] = first[i];
+      }
+      if (i < 0) {
+        break;
+      }
+    }
+  }
+
+  /** Store the chunks that have been partly written */
+  public void flush() throws IOException {
+    for (ChunkBuffer buffer : new ArrayList<>(buffers.values())) {
+      buffers.remove(Arrays.toString(buffer.index));
+      store(buffer.index, buffer.data);
+    }
+  }
+
+  private void writeChunk(int[] index, Section section, Array values) throws IOException, InvalidRangeException {
+    List<Range> from = new ArrayList<>(); // in values
+    List<Range> to = new ArrayList<>(); // in the chunk
+    long n = 1;
+    for (int i = 0; i < index.length; i++) {
+      Range range = section.getRange(i);
+      int stride = range.stride();
+      int chunkStart = index[i] * chunks[i];
+      int start = range.first();
+      if (start < chunkStart) { // first element of range in the chunk
+        start += (chunkStart - start + stride - 1) / stride * stride;
+      }
+      int end = Math.min(range.last(), chunkStart + chunks[i] - 1);
+      if (start > end) {
+        return; // strides over this chunk
+      }
+      end = start + (end - start) / stride * stride;
+      from.add(new Range((start - range.first()) / stride, (end - range.first()) / stride));
+      to.add(new Range(start - chunkStart, end - chunkStart, stride));
+      n *= (end - start) / stride + 1;
+    }
+
+    String key = Arrays.toString(index);
+    ChunkBuffer buffer = buffers.get(key);
+    if (buffer == null) {
+      buffer = new ChunkBuffer(index.clone(), readChunk(index), chunkSize(index));
+      buffers.put(key, buffer);
+    }
+    MAMath.copy(buffer.data.sectionNoReduce(to), values.sectionNoReduce(from));
+    buffer.nwritten += n;
+    if (buffer.nwritten >= buffer.size) {
+      buffers.remove(key);
+      store(buffer.index, buffer.data);
+    }
+  }
+
+  /** Number of elements of a chunk that are inside the variable */
+  private long chunkSize(int[] index) {
+    int[] shape = v.getShape();
+    long size = 1;
+    for (int i = 0; i < index.length; i++) {
+      int n = v.getDimension(i).isUnlimited() ? chunks[i] : Math.min(chunks[i], shape[i] - index[i] * chunks[i]);
+      size *= n > 0 ? n : chunks[i];
+    }
+    return size;
+  }
+
+  /** A chunk that is being written to */
+  private static class ChunkBuffer {
+    private final int[] index;
+    private final Array data;
+    private final long size; // number of elements of the chunk inside the variable
+    private long nwritten;
+
+    ChunkBuffer(int[] index, Array data, long size) {
+      this.index = index;
+      this.data = data;
+      this.size = size;
+    }
+  }
+
+  /** Receives the result of encoding a chunk, on the thread that submitted it */
+  public interface Sink<T> {
+    void accept(@Nullable T result) throws IOException;
+  }
+
+  /**
+   * Encodes chunks on the Executor set with {@link #setExecutor(Executor, int)} when the Pipeline was created, or on
+   * the calling thread if there is none. The results are passed to their Sink on the calling thread, in the order the
+   * chunks were submitted. Not thread safe; a writer has one Pipeline for all of its variables.
+   */
+  public static class Pipeline<T> {
+    private final Executor exec = executor; // if not null, encode chunks on this
+    private final int maxPending = maxPendingChunks;
+    private final ArrayDeque<Pending<T>> pending = new ArrayDeque<>(); // chunks being encoded, in order
+
+    /**
+     * Hand a chunk to the executor, first finishing the oldest pending chunk if there are too many.
+     *
+     * @param encode encodes the chunk; may run on another thread
+     * @param sink receives the result of encode, on this thread
+     */
+    public void submit(Callable<T> encode, Sink<T> sink) throws IOException {
+      Pending<T> chunk = new Pending<>(new FutureTask<>(encode), sink);
+      if (exec == null) {
+        chunk.task.run();
+        chunk.finish();
+        return;
+      }
+      while (pending.size() >= maxPending) {
+        pending.removeFirst().finish();
+      }
+      pending.addLast(chunk);
+      exec.execute(chunk.task);
+    }
+
+    /** Wait for all submitted chunks, passing their results to their Sinks */
+    public void awaitPending() throws IOException {
+      while (!pending.isEmpty()) {
+        pending.removeFirst().finish();
+      }
+    }
+  }
+
+  private static class Pending<T> {
+    private final FutureTask<T> task;
+    private final Sink<T> sink;
+
+    Pending(FutureTask<T> task, Sink<T> sink) {
+      this.task = task;
+      this.sink = sink;
+    }
+
+    void finish() throws IOException {
+      T result;
+      try {
+        result = task.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while encoding a chunk", e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        }
+        throw new IOException(cause);
+      }
+      sink.accept(result);
+    }
+  }
+}
@@ -32,11 +32,12 @@ public class Nccopy {
     String formatLegacy = null;
 
     @Parameter(names = {"-outf", "--outformat"}, description = "Output file format. Allowed values = "
-        + "[netcdf3, netcdf4, netcdf4_classic, netcdf3_64bit_offset,  ncstream] (See NetcdfFileFormat enum values)")
+        + "[netcdf3, netcdf4, netcdf4_classic, netcdf3_64bit_offset,  ncstream, zarr, zarr3] "
+        + "(See NetcdfFileFormat enum values)")
     NetcdfFileFormat format = NetcdfFileFormat.NETCDF3;
 
     @Parameter(names = {"-st", "--strategy"},
-        description = "Chunking strategy. Only used in NetCDF 4. Allowed values = [standard, grib, none]")
+        description = "Chunking strategy. Only used in NetCDF 4 and Zarr. Allowed values = [standard, grib, none]")
     Nc4Chunking.Strategy strategy = Nc4Chunking.Strategy.standard;
 
     @Parameter(names = {"-isLargeFile", "--isLargeFile"},
@@ -46,7 +47,7 @@ public class Nccopy {
     @Parameter(names = {"-useJna", "--useJna"}, description = "Use JNA/netCDF C library for writing.")
     boolean useJna;
 
-    @Parameter(names = {"-d", "--deflateLevel"}, description = "Compression level. Only used in NetCDF 4. "
+    @Parameter(names = {"-d", "--deflateLevel"}, description = "Compression level. Only used in NetCDF 4 and Zarr. "
         + "Allowed values = 0 (no compression, fast) to 9 (max compression, slow)")
     int deflateLevel = 5;
 
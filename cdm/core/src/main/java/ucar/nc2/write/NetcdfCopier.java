@@ -64,7 +64,7 @@ public class NetcdfCopier {
     this.extended = getOutputFormat().isExtendedModel();
 
     // Try to do some checking
-    if (!fileIn.getRootGroup().getGroups().isEmpty() && !extended) {
+    if (!fileIn.getRootGroup().getGroups().isEmpty() && !extended && !getOutputFormat().isZarrFormat()) {
       throw new IllegalStateException("Input file has nested groups: cannot write to format= " + getOutputFormat());
     }
   }
@@ -122,7 +122,10 @@ public enum NetcdfFileFormat {
   NETCDF4_CLASSIC(4, "netcdf-4 classic"), // psuedo format I think
   NETCDF3_64BIT_DATA(5, "netcdf-5"), // from PnetCDF project
 
-  NCSTREAM(42, "ncstream"); // No assigned version, not part of C library.
+  NCSTREAM(42, "ncstream"), // No assigned version, not part of C library.
+
+  ZARR(43, "zarr"), // Zarr v2 directory store, written by the cdm-zarr module. No assigned version.
+  ZARR3(44, "zarr v3"); // Zarr v3 directory store, written by the cdm-zarr module. No assigned version.
 
   private static final int MAGIC_NUMBER_LEN = 8;
   private static final long MAXHEADERPOS = 50000; // header's gotta be within this range
@@ -172,6 +175,11 @@ public enum NetcdfFileFormat {
     return isNetcdf4Format();
   }
 
+  /** Zarr stores, which have nested groups but not the rest of the extended model. */
+  public boolean isZarrFormat() {
+    return this == ZARR || this == ZARR3;
+  }
+
   public boolean isExtendedModel() {
     return this == NETCDF4 || this == NCSTREAM;
   }
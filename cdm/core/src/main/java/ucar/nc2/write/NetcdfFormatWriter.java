@@ -21,6 +21,7 @@ import ucar.ma2.InvalidRangeException;
 import ucar.ma2.Section;
 import ucar.ma2.StructureData;
 import ucar.nc2.*;
+import ucar.nc2.internal.iosp.hdf5.H5iospWriter;
 import ucar.nc2.internal.iosp.netcdf3.N3iospNew;
 import ucar.nc2.internal.iosp.netcdf3.N3iospWriter;
 import ucar.nc2.iosp.IOServiceProvider;
@@ -93,6 +94,7 @@ public class NetcdfFormatWriter implements Closeable {
     private long preallocateSize;
     private Nc4Chunking chunker;
     private boolean useJna;
+    private boolean usePureJava;
     private IOServiceProvider iosp;
 
     private Group.Builder rootGroup = Group.builder().setName("");
@@ -169,6 +171,16 @@ public class NetcdfFormatWriter implements Closeable {
       return this;
     }
 
+    /**
+     * Set if you want new netcdf4 files written in pure Java, without the netcdf c library. Default is false.
+     * Files with Structures, enums, opaque or variable length data are still written with the c library,
+     * as are existing netcdf4 files. Ignored if setUseJna(true).
+     */
+    public Builder setUsePureJava(boolean usePureJava) {
+      this.usePureJava = usePureJava;
+      return this;
+    }
+
     /** Add a global attribute */
     public Builder addAttribute(Attribute att) {
       if (!isNewFile && !useJna) {
@@ -310,7 +322,28 @@ public class NetcdfFormatWriter implements Closeable {
       existingRaf = null;
     }
 
-    if (useJna) {
+    if (format != null && format.isZarrFormat()) {
+      // pure Java, but in the cdm-zarr module
+      String className = "ucar.nc2.iosp.zarr.ZarrIospWriter";
+      IOServiceProviderWriter spi;
+      try {
+        Class iospClass = this.getClass().getClassLoader().loadClass(className);
+        Constructor<IOServiceProviderWriter> ctor = iospClass.getConstructor(NetcdfFileFormat.class);
+        spi = ctor.newInstance(format);
+
+        Method method = iospClass.getMethod("setChunker", Nc4Chunking.class);
+        method.invoke(spi, chunker);
+      } catch (Throwable e) {
+        throw new IllegalArgumentException(className + " is not available, add cdm-zarr err= " + e.getMessage());
+      }
+      spiw = spi;
+    } else if (format != null && format.isNetcdf4Format() && isNewFile && builder.usePureJava
+        && !builder.useJna && H5iospWriter.canWrite(rootGroup)) {
+      // pure Java
+      H5iospWriter h5writer = new H5iospWriter(format);
+      h5writer.setChunker(chunker);
+      spiw = h5writer;
+    } else if (useJna) {
       String className = "ucar.nc2.jni.netcdf.Nc4Iosp";
       IOServiceProviderWriter spi;
       try {
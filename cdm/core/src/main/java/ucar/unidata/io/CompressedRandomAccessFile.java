@@ -0,0 +1,549 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.unidata.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import javax.annotation.Nullable;
+import ucar.unidata.io.bzip2.BZip2ReadException;
+import ucar.unidata.io.bzip2.CBZip2InputStream;
+
+/**
+ * A read-only RandomAccessFile over the uncompressed contents of a gzip or bzip2 file, which is not uncompressed
+ * to disk. The first time the file is opened, it is uncompressed once to find seek points: the start of each bzip2
+ * block, and the start of a deflate block about every {@link #setSpan span} bytes of a gzip file, with the 32K of
+ * output before it. Reads then only uncompress the span between two seek points that contains the bytes.
+ * The seek points are kept in an index file until the length or last modified time of the compressed file changes.
+ * <p/>
+ * A zip file is read the same way, using its first entry, as NetcdfFiles does when no entry is named. The entry may be
+ * deflated, which is indexed like a gzip file, or stored, which is read in place.
+ * <p/>
+ * The location is the compressed file. The last two spans read are kept in memory, so sequential reads and reads
+ * that go back and forth between nearby positions uncompress each span once.
+ *
+ * @see ucar.nc2.NetcdfFiles#setCompressedSeekThreshold
+ */
+public class CompressedRandomAccessFile extends RandomAccessFile {
+  private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(CompressedRandomAccessFile.class);
+
+  public static final String INDEX_SUFFIX = ".czx";
+  private static final int MAGIC = 0x435a5849; // "CZXI"
+  private static final int VERSION = 1;
+
+  private static final byte GZIP = 1;
+  private static final byte BZIP2 = 2;
+  private static final byte ZIP = 3; // deflated zip entry
+  private static final byte ZIP_STORED = 4;
+
+  private static final int ZIP_LOCAL_HEADER = 0x04034b50;
+  private static final int ZIP_DATA_DESCRIPTOR = 8; // general purpose flag: the sizes follow the data
+  private static final int ZIP_STORED_METHOD = 0;
+  private static final int ZIP_DEFLATED_METHOD = 8;
+
+  private static int span = 4 * 1024 * 1024;
+
+  /**
+   * Set the least number of uncompressed bytes between the seek points of gzip files, for files indexed after this.
+   * Each seek point keeps 32K of uncompressed data (compressed, in the index), and a read uncompresses up to a span,
+   * so a smaller span gives faster random reads and a bigger index. bzip2 files have a seek point at every block.
+   * Stored zip entries have a seek point every span bytes, without a window.
+   *
+   * @param minSpan span in bytes, default 4 MB
+   */
+  public static void setSpan(int minSpan) {
+    span = minSpan;
+  }
+
+  /**
+   * Is this the name of a gzip, bzip2 or zip file, that can be opened by CompressedRandomAccessFile.
+   * Unix compress (.Z) files are LZW, which cannot be restarted in the middle of the file.
+   *
+   * @param location file name
+   * @return true if it ends with .gz, .gzip, .bz2 or .zip
+   */
+  public static boolean isCompressedName(String location) {
+    return location.endsWith(".gz") || location.endsWith(".gzip") || location.endsWith(".bz2")
+        || location.endsWith(".zip");
+  }
+
+  private RandomAccessFile compressed;
+  private final byte kind;
+  private final long dataLength;
+  private final int blockSize100k; // bzip2 only
+
+  // seek points
+  private final long[] start; // uncompressed position
+  private final long[] bitPosition; // compressed position, in bits
+  private final byte[][] window; // deflated window, gzip and deflated zip only
+  private final int[] windowLength;
+
+  // the last two spans read
+  private int spanIndex = -1;
+  private byte[] spanData;
+  private int prevSpanIndex = -1;
+  private byte[] prevSpanData;
+
+  private GzipBlockDecoder gzipDecoder;
+  private CBZip2InputStream bzipDecoder;
+
+  /**
+   * Open a gzip, bzip2 or zip file, read only.
+   *
+   * @param location the compressed file
+   * @param indexFile read the seek points from this file if it is up to date, else find them and write them to it.
+   *        If null, the seek points are found each time the file is opened.
+   * @param bufferSize size of the read buffer, or -1 for the default
+   * @throws IOException if the file is not gzip, bzip2 or zip, or on read error
+   */
+  public CompressedRandomAccessFile(String location, @Nullable File indexFile, int bufferSize) throws IOException {
+    super(bufferSize < 0 ? defaultBufferSize : bufferSize);
+    this.location = location;
+    this.compressed = new RandomAccessFile(location, "r", 64 * 1024);
+
+    try {
+      File file = new File(location);
+      Index index = (indexFile == null) ? null : Index.read(indexFile, file.length(), file.lastModified());
+      if (index == null) {
+        index = scan(compressed, file.length(), file.lastModified());
+        if (indexFile != null) {
+          try {
+            index.write(indexFile);
+          } catch (IOException e) {
+            logger.warn("Cant write compressed file index {}: {}", indexFile.getPath(), e.getMessage());
+          }
+        }
+      }
+      this.kind = index.kind;
+      this.dataLength = index.dataLength;
+      this.blockSize100k = index.blockSize100k;
+      this.start = index.start;
+      this.bitPosition = index.bitPosition;
+      this.window = index.window;
+      this.windowLength = index.windowLength;
+
+    } catch (IOException | RuntimeException e) {
+      compressed.close();
+      throw e;
+    }
+
+    if (debugLeaks)
+      openFiles.add(location);
+  }
+
+  @Override
+  public long length() {
+    return dataLength;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    super.close();
+    if (compressed != null) {
+      compressed.close();
+      compressed = null;
+      spanData = null;
+      prevSpanData = null;
+    }
+  }
+
+  /** The number of seek points in the file. */
+  public int getNumberOfSeekPoints() {
+    return start.length;
+  }
+
+  @Override
+  protected int read_(long pos, byte[] b, int offset, int len) throws IOException {
+    if (compressed == null || pos >= dataLength)
+      return -1;
+
+    int n = 0;
+    while (n < len && pos + n < dataLength) {
+      int index = findSpan(pos + n);
+      byte[] data = readSpan(index);
+      int spanPos = (int) (pos + n - start[index]);
+      int count = Math.min(len - n, data.length - spanPos);
+      System.arraycopy(data, spanPos, b, offset + n, count);
+      n += count;
+    }
+    return n;
+  }
+
+  @Override
+  public long readToByteChannel(WritableByteChannel dest, long offset, long nbytes) throws IOException {
+    byte[] buff = new byte[(int) Math.min(nbytes, 64 * 1024)];
+    long count = 0;
+    while (count < nbytes) {
+      int n = read_(offset + count, buff, 0, (int) Math.min(buff.length, nbytes - count));
+      if (n <= 0)
+        break;
+      ByteBuffer bb = ByteBuffer.wrap(buff, 0, n);
+      while (bb.hasRemaining()) {
+        dest.write(bb);
+      }
+      count += n;
+    }
+    return count;
+  }
+
+  private int findSpan(long pos) {
+    int index = Arrays.binarySearch(start, pos);
+    return (index >= 0) ? index : -index - 2;
+  }
+
+  private byte[] readSpan(int index) throws IOException {
+    if (index == spanIndex)
+      return spanData;
+    if (index == prevSpanIndex) {
+      swapSpans();
+      return spanData;
+    }
+
+    long end = (index + 1 < start.length) ? start[index + 1] : dataLength;
+    if (end - start[index] > Integer.MAX_VALUE - 8)
+      throw new IOException("Compressed span too large to read: " + location);
+    byte[] data = new byte[(int) (end - start[index])];
+    try {
+      if (kind == GZIP || kind == ZIP) {
+        readGzipSpan(index, data);
+      } else if (kind == ZIP_STORED) {
+        compressed.seek(bitPosition[index] >>> 3);
+        compressed.readFully(data);
+      } else {
+        readBzip2Span(index, data);
+      }
+    } catch (BZip2ReadException e) {
+      throw new IOException(e.getMessage() + " in " + location, e);
+    }
+
+    swapSpans();
+    spanIndex = index;
+    spanData = data;
+    return data;
+  }
+
+  private void swapSpans() {
+    int index = prevSpanIndex;
+    byte[] data = prevSpanData;
+    prevSpanIndex = spanIndex;
+    prevSpanData = spanData;
+    spanIndex = index;
+    spanData = data;
+  }
+
+  private void readGzipSpan(int index, byte[] data) throws IOException {
+    if (gzipDecoder == null)
+      gzipDecoder = (kind == ZIP) ? new GzipBlockDecoder(compressed, 0) : new GzipBlockDecoder(compressed);
+    gzipDecoder.restart(bitPosition[index], start[index], inflate(window[index], windowLength[index]));
+
+    int n = 0;
+    while (n < data.length && gzipDecoder.hasNextBlock()) {
+      gzipDecoder.decodeBlock();
+      int count = Math.min(data.length - n, gzipDecoder.getBlockEnd() - gzipDecoder.getBlockStart());
+      System.arraycopy(gzipDecoder.getBuffer(), gzipDecoder.getBlockStart(), data, n, count);
+      n += count;
+    }
+    if (n < data.length)
+      throw new IOException("Compressed file ends before its index: " + location);
+  }
+
+  private void readBzip2Span(int index, byte[] data) throws IOException {
+    if (bzipDecoder == null)
+      bzipDecoder = new CBZip2InputStream();
+    compressed.seek(bitPosition[index] >>> 3);
+    bzipDecoder.setStreamAtBlock(new RafInputStream(compressed), (int) (bitPosition[index] & 7), blockSize100k);
+    for (int n = 0; n < data.length; n++) {
+      int b = bzipDecoder.read();
+      if (b < 0)
+        throw new IOException("Compressed file ends before its index: " + location);
+      data[n] = (byte) b;
+    }
+  }
+
+  ///////////////////////////////////////////////////////////////////////////
+  // find the seek points
+
+  private static Index scan(RandomAccessFile raf, long length, long lastModified) throws IOException {
+    raf.seek(0);
+    int b1 = raf.read();
+    int b2 = raf.read();
+    if (b1 == 0x1f && b2 == 0x8b)
+      return scanGzip(raf, length, lastModified);
+    if (b1 == 'B' && b2 == 'Z') {
+      try {
+        return scanBzip2(raf, length, lastModified);
+      } catch (BZip2ReadException e) {
+        throw new IOException(e.getMessage() + " in " + raf.getLocation(), e);
+      }
+    }
+    if (b1 == 'P' && b2 == 'K')
+      return scanZip(raf, length, lastModified);
+    throw new IOException("Not a gzip, bzip2 or zip file: " + raf.getLocation());
+  }
+
+  private static Index scanGzip(RandomAccessFile raf, long length, long lastModified) throws IOException {
+    return scanDeflate(new Index(GZIP, length, lastModified), new GzipBlockDecoder(raf));
+  }
+
+  private static Index scanDeflate(Index index, GzipBlockDecoder decoder) throws IOException {
+    int minSpan = span;
+    long next = 0;
+    while (decoder.hasNextBlock()) {
+      if (decoder.getPosition() >= next) {
+        byte[] window = decoder.getWindow();
+        index.add(decoder.getPosition(), decoder.getBitPosition(), deflate(window), window.length);
+        next = decoder.getPosition() + minSpan;
+      }
+      decoder.decodeBlock();
+    }
+    index.finish(decoder.getPosition(), 0);
+    return index;
+  }
+
+  // the first entry of a zip file, from its local header
+  private static Index scanZip(RandomAccessFile raf, long length, long lastModified) throws IOException {
+    raf.seek(0);
+    byte[] header = new byte[30];
+    raf.readFully(header);
+    if (getInt(header, 0) != ZIP_LOCAL_HEADER)
+      throw new IOException("Not a zip file: " + raf.getLocation());
+    int flags = getShort(header, 6);
+    int method = getShort(header, 8);
+    long size = getInt(header, 22) & 0xffffffffL;
+    long dataStart = 30L + getShort(header, 26) + getShort(header, 28);
+
+    if (method == ZIP_DEFLATED_METHOD)
+      return scanDeflate(new Index(ZIP, length, lastModified), new GzipBlockDecoder(raf, dataStart));
+    if (method != ZIP_STORED_METHOD)
+      throw new IOException("Unknown zip compression method " + method + ": " + raf.getLocation());
+    if ((flags & ZIP_DATA_DESCRIPTOR) != 0 || size == 0xffffffffL)
+      throw new IOException("Size of stored zip entry is not in its local header: " + raf.getLocation());
+    if (dataStart + size > length)
+      throw new IOException("Zip file ends before its first entry: " + raf.getLocation());
+
+    Index index = new Index(ZIP_STORED, length, lastModified);
+    for (long pos = 0; pos < size; pos += span) {
+      index.add(pos, 8 * (dataStart + pos), null, 0);
+    }
+    index.finish(size, 0);
+    return index;
+  }
+
+  // zip headers are little endian
+  private static int getShort(byte[] b, int pos) {
+    return (b[pos] & 0xff) | (b[pos + 1] & 0xff) << 8;
+  }
+
+  private static int getInt(byte[] b, int pos) {
+    return getShort(b, pos) | getShort(b, pos + 2) << 16;
+  }
+
+  // the stream given to CBZip2InputStream starts after the "BZ" magic
+  private static Index scanBzip2(RandomAccessFile raf, long length, long lastModified) throws IOException {
+    Index index = new Index(BZIP2, length, lastModified);
+    raf.seek(2);
+    CBZip2InputStream decoder = new CBZip2InputStream(new RafInputStream(raf));
+    long block = decoder.getBlockPosition();
+    index.add(0, 16 + block, null, 0);
+    long pos = 0;
+    while (decoder.read() >= 0) {
+      pos++;
+      if (decoder.getBlockPosition() != block) {
+        block = decoder.getBlockPosition();
+        index.add(pos, 16 + block, null, 0);
+      }
+    }
+    index.finish(pos, decoder.getBlockSize100k());
+    return index;
+  }
+
+  private static byte[] deflate(byte[] data) {
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      deflater.setInput(data);
+      deflater.finish();
+      ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length / 2 + 64);
+      byte[] buff = new byte[8 * 1024];
+      while (!deflater.finished()) {
+        int n = deflater.deflate(buff);
+        bos.write(buff, 0, n);
+      }
+      return bos.toByteArray();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static byte[] inflate(byte[] data, int length) throws IOException {
+    byte[] result = new byte[length];
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(data);
+      int n = 0;
+      while (n < length) {
+        int count = inflater.inflate(result, n, length - n);
+        if (count == 0 && (inflater.finished() || inflater.needsInput()))
+          throw new IOException("Bad window in compressed file index");
+        n += count;
+      }
+      return result;
+    } catch (DataFormatException e) {
+      throw new IOException("Bad window in compressed file index", e);
+    } finally {
+      inflater.end();
+    }
+  }
+
+  /** The seek points of a compressed file. */
+  private static class Index {
+    final byte kind;
+    final long length;
+    final long lastModified;
+    long dataLength;
+    int blockSize100k;
+    int n;
+    long[] start = new long[100];
+    long[] bitPosition = new long[100];
+    byte[][] window = new byte[100][];
+    int[] windowLength = new int[100];
+
+    Index(byte kind, long length, long lastModified) {
+      this.kind = kind;
+      this.length = length;
+      this.lastModified = lastModified;
+    }
+
+    boolean hasWindows() {
+      return kind == GZIP || kind == ZIP;
+    }
+
+    void add(long pos, long bitPos, @Nullable byte[] deflatedWindow, int windowLen) {
+      if (n == start.length) {
+        int size = 2 * n;
+        start = Arrays.copyOf(start, size);
+        bitPosition = Arrays.copyOf(bitPosition, size);
+        window = Arrays.copyOf(window, size);
+        windowLength = Arrays.copyOf(windowLength, size);
+      }
+      start[n] = pos;
+      bitPosition[n] = bitPos;
+      window[n] = deflatedWindow;
+      windowLength[n] = windowLen;
+      n++;
+    }
+
+    void finish(long dataLength, int blockSize100k) {
+      this.dataLength = dataLength;
+      this.blockSize100k = blockSize100k;
+      while (n > 0 && start[n - 1] >= dataLength) {
+        n--; // the end of the stream is not a seek point
+      }
+      start = Arrays.copyOf(start, n);
+      bitPosition = Arrays.copyOf(bitPosition, n);
+      window = Arrays.copyOf(window, n);
+      windowLength = Arrays.copyOf(windowLength, n);
+    }
+
+    // null if the index file does not exist, is out of date, or cannot be read
+    @Nullable
+    static Index read(File indexFile, long length, long lastModified) {
+      if (!indexFile.exists())
+        return null;
+      try (DataInputStream in =
+          new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile.toPath()), 64 * 1024))) {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION)
+          return null;
+        if (in.readLong() != length || in.readLong() != lastModified)
+          return null; // the compressed file has changed
+
+        Index index = new Index(in.readByte(), length, lastModified);
+        long dataLength = in.readLong();
+        int blockSize100k = in.readInt();
+        int n = in.readInt();
+        for (int i = 0; i < n; i++) {
+          long pos = in.readLong();
+          long bitPos = in.readLong();
+          int windowLen = in.readInt();
+          byte[] deflatedWindow = null;
+          if (index.hasWindows()) {
+            deflatedWindow = new byte[in.readInt()];
+            in.readFully(deflatedWindow);
+          }
+          index.add(pos, bitPos, deflatedWindow, windowLen);
+        }
+        index.finish(dataLength, blockSize100k);
+        return index;
+
+      } catch (IOException | RuntimeException e) {
+        logger.warn("Cant read compressed file index {}: {}", indexFile.getPath(), e.getMessage());
+        return null;
+      }
+    }
+
+    // write to a temporary file which then replaces the index file, so that readers never see a partly written index
+    void write(File indexFile) throws IOException {
+      File dir = indexFile.getAbsoluteFile().getParentFile();
+      File tempFile = File.createTempFile(indexFile.getName(), ".tmp", dir);
+      try {
+        try (DataOutputStream out =
+            new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile.toPath()), 64 * 1024))) {
+          out.writeInt(MAGIC);
+          out.writeInt(VERSION);
+          out.writeLong(length);
+          out.writeLong(lastModified);
+          out.writeByte(kind);
+          out.writeLong(dataLength);
+          out.writeInt(blockSize100k);
+          out.writeInt(n);
+          for (int i = 0; i < n; i++) {
+            out.writeLong(start[i]);
+            out.writeLong(bitPosition[i]);
+            out.writeInt(windowLength[i]);
+            if (hasWindows()) {
+              out.writeInt(window[i].length);
+              out.write(window[i]);
+            }
+          }
+        }
+        Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(tempFile.toPath());
+      }
+    }
+  }
+
+  /** Reads the compressed file from its current position, for CBZip2InputStream. */
+  private static class RafInputStream extends InputStream {
+    private final RandomAccessFile raf;
+
+    RafInputStream(RandomAccessFile raf) {
+      this.raf = raf;
+    }
+
+    @Override
+    public int read() throws IOException {
+      return raf.read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      return raf.read(b, off, len);
+    }
+  }
+}
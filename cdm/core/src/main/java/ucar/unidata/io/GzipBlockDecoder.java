@@ -0,0 +1,451 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.unidata.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Decodes a gzip file one deflate block at a time (RFC 1951 and 1952), so that decoding can stop at a block
+ * and start again there later, from the bit position of the block and the 32K of output that came before it.
+ * java.util.zip.Inflater cannot start in the middle of a byte, which is where most blocks start, so this is a
+ * plain Java decoder, after zlib's puff.c. Concatenated gzip members are decoded as one stream. CRCs are not checked.
+ * A raw deflate stream, such as a zip file entry, can be decoded the same way.
+ *
+ * @see CompressedRandomAccessFile
+ */
+final class GzipBlockDecoder {
+  /** The largest distance back that a deflate block may copy from. */
+  static final int WINDOW = 32 * 1024;
+
+  private static final int MAX_BITS = 15;
+  private static final int FAST_BITS = 9;
+  private static final int FAST_MASK = (1 << FAST_BITS) - 1;
+
+  private static final int FEXTRA = 4;
+  private static final int FNAME = 8;
+  private static final int FCOMMENT = 16;
+  private static final int FHCRC = 2;
+
+  private static final short[] LENGTH_BASE = {3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51, 59,
+      67, 83, 99, 115, 131, 163, 195, 227, 258};
+  private static final short[] LENGTH_EXTRA =
+      {0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0};
+  private static final short[] DIST_BASE = {1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385, 513,
+      769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577};
+  private static final short[] DIST_EXTRA =
+      {0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13};
+  private static final short[] CODE_LENGTH_ORDER = {16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+
+  private static final Huffman FIXED_LENGTHS;
+  private static final Huffman FIXED_DISTANCES;
+
+  static {
+    short[] lengths = new short[288 + 30];
+    Arrays.fill(lengths, 0, 144, (short) 8);
+    Arrays.fill(lengths, 144, 256, (short) 9);
+    Arrays.fill(lengths, 256, 280, (short) 7);
+    Arrays.fill(lengths, 280, 288, (short) 8);
+    Arrays.fill(lengths, 288, 288 + 30, (short) 5);
+    try {
+      FIXED_LENGTHS = new Huffman(lengths, 0, 288);
+      FIXED_DISTANCES = new Huffman(lengths, 288, 30);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private final RandomAccessFile in;
+  private final boolean raw; // a deflate stream without gzip headers and trailers
+  private long bitBuf;
+  private int bitCount;
+
+  // the output of the last block, preceded by up to WINDOW bytes of earlier output
+  private byte[] out = new byte[4 * WINDOW];
+  private int blockStart;
+  private int outEnd;
+  private long position; // the uncompressed position of out[outEnd]
+
+  private boolean needHeader = true;
+  private boolean firstMember = true;
+  private boolean lastBlock;
+  private boolean done;
+
+  /** Decode from the start of a gzip file. */
+  GzipBlockDecoder(RandomAccessFile in) throws IOException {
+    this.in = in;
+    this.raw = false;
+    in.seek(0);
+  }
+
+  /**
+   * Decode a raw deflate stream, which ends with its last block.
+   *
+   * @param in the compressed file
+   * @param start position of the deflate stream in the compressed file, in bytes
+   */
+  GzipBlockDecoder(RandomAccessFile in, long start) throws IOException {
+    this.in = in;
+    this.raw = true;
+    in.seek(start);
+    needHeader = false;
+    firstMember = false;
+  }
+
+  /**
+   * Start decoding again at a block that was found earlier.
+   *
+   * @param bitPosition position of the block in the compressed file, in bits, from getBitPosition()
+   * @param position uncompressed position of the start of the block, from getPosition()
+   * @param window the output before the block, from getWindow()
+   */
+  void restart(long bitPosition, long position, byte[] window) throws IOException {
+    in.seek(bitPosition >>> 3);
+    bitBuf = 0;
+    bitCount = 0;
+    bits((int) (bitPosition & 7));
+    System.arraycopy(window, 0, out, 0, window.length);
+    blockStart = window.length;
+    outEnd = window.length;
+    this.position = position;
+    needHeader = false;
+    firstMember = false;
+    lastBlock = false;
+    done = false;
+  }
+
+  /**
+   * Move to the next block, reading the trailer of the gzip member that ends and the header of the one that starts.
+   * A raw deflate stream ends after its last block.
+   *
+   * @return false at the end of the file
+   */
+  boolean hasNextBlock() throws IOException {
+    if (done) {
+      return false;
+    }
+    if (lastBlock && raw) {
+      done = true;
+      return false;
+    }
+    if (lastBlock) {
+      bits(bitCount & 7); // the trailer is byte aligned
+      for (int i = 0; i < 4; i++) {
+        bits(16); // CRC32 and ISIZE
+      }
+      lastBlock = false;
+      needHeader = true;
+    }
+    if (needHeader) {
+      if (!readHeader()) {
+        done = true;
+        return false;
+      }
+      needHeader = false;
+      firstMember = false;
+    }
+    return true;
+  }
+
+  // false if there are no more members; anything after the last member is ignored, as gzip does
+  private boolean readHeader() throws IOException {
+    long remaining = in.length() - in.getFilePointer() + bitCount / 8;
+    if (remaining < 10 || bits(8) != 0x1f || bits(8) != 0x8b) {
+      if (firstMember) {
+        throw new IOException("Not a gzip file: " + in.getLocation());
+      }
+      return false;
+    }
+    if (bits(8) != 8) {
+      throw new IOException("Unknown gzip compression method: " + in.getLocation());
+    }
+    int flags = bits(8);
+    for (int i = 0; i < 3; i++) {
+      bits(16); // MTIME, XFL, OS
+    }
+    if ((flags & FEXTRA) != 0) {
+      int xlen = bits(16);
+      for (int i = 0; i < xlen; i++) {
+        bits(8);
+      }
+    }
+    if ((flags & FNAME) != 0) {
+      while (bits(8) != 0);
+    }
+    if ((flags & FCOMMENT) != 0) {
+      while (bits(8) != 0);
+    }
+    if ((flags & FHCRC) != 0) {
+      bits(16);
+    }
+    return true;
+  }
+
+  /** Decode the next block; call hasNextBlock() first. */
+  void decodeBlock() throws IOException {
+    // keep the last WINDOW bytes for the copies of the next block
+    if (outEnd > WINDOW) {
+      System.arraycopy(out, outEnd - WINDOW, out, 0, WINDOW);
+      outEnd = WINDOW;
+    }
+    blockStart = outEnd;
+
+    lastBlock = bits(1) == 1;
+    int type = bits(2);
+    switch (type) {
+      case 0:
+        stored();
+        break;
+      case 1:
+        codes(FIXED_LENGTHS, FIXED_DISTANCES);
+        break;
+      case 2:
+        dynamic();
+        break;
+      default:
+        throw new IOException("Invalid deflate block type in " + in.getLocation());
+    }
+    position += outEnd - blockStart;
+  }
+
+  /** The position in the compressed file of the next block, in bits. */
+  long getBitPosition() {
+    return 8 * in.getFilePointer() - bitCount;
+  }
+
+  /** The uncompressed position of the start of the next block. */
+  long getPosition() {
+    return position;
+  }
+
+  /** A copy of the output before the next block, up to WINDOW bytes. */
+  byte[] getWindow() {
+    return Arrays.copyOfRange(out, Math.max(0, outEnd - WINDOW), outEnd);
+  }
+
+  /** The output of the last block is in getBuffer(), from getBlockStart() to getBlockEnd(). */
+  byte[] getBuffer() {
+    return out;
+  }
+
+  int getBlockStart() {
+    return blockStart;
+  }
+
+  int getBlockEnd() {
+    return outEnd;
+  }
+
+  private void stored() throws IOException {
+    bits(bitCount & 7);
+    int len = bits(16);
+    int nlen = bits(16);
+    if (len != (~nlen & 0xffff)) {
+      throw new IOException("Invalid stored block length in " + in.getLocation());
+    }
+    ensureCapacity(len);
+    int n = 0;
+    while (n < len && bitCount > 0) { // the bytes already in the bit buffer
+      out[outEnd++] = (byte) bits(8);
+      n++;
+    }
+    in.readFully(out, outEnd, len - n);
+    outEnd += len - n;
+  }
+
+  private void dynamic() throws IOException {
+    int nlen = bits(5) + 257;
+    int ndist = bits(5) + 1;
+    int ncode = bits(4) + 4;
+    if (nlen > 286 || ndist > 30) {
+      throw new IOException("Invalid deflate code lengths in " + in.getLocation());
+    }
+
+    short[] lengths = new short[nlen + ndist];
+    short[] codeLengths = new short[19];
+    for (int i = 0; i < ncode; i++) {
+      codeLengths[CODE_LENGTH_ORDER[i]] = (short) bits(3);
+    }
+    Huffman lencode = new Huffman(codeLengths, 0, 19);
+
+    int index = 0;
+    while (index < nlen + ndist) {
+      int symbol = decode(lencode);
+      if (symbol < 16) {
+        lengths[index++] = (short) symbol;
+        continue;
+      }
+      short len = 0;
+      int repeat;
+      if (symbol == 16) {
+        if (index == 0) {
+          throw new IOException("Invalid deflate code length repeat in " + in.getLocation());
+        }
+        len = lengths[index - 1];
+        repeat = 3 + bits(2);
+      } else if (symbol == 17) {
+        repeat = 3 + bits(3);
+      } else {
+        repeat = 11 + bits(7);
+      }
+      if (index + repeat > nlen + ndist) {
+        throw new IOException("Too many deflate code lengths in " + in.getLocation());
+      }
+      Arrays.fill(lengths, index, index + repeat, len);
+      index += repeat;
+    }
+    if (lengths[256] == 0) {
+      throw new IOException("Deflate block has no end of block code in " + in.getLocation());
+    }
+
+    codes(new Huffman(lengths, 0, nlen), new Huffman(lengths, nlen, ndist));
+  }
+
+  private void codes(Huffman lencode, Huffman distcode) throws IOException {
+    while (true) {
+      int symbol = decode(lencode);
+      if (symbol < 256) {
+        ensureCapacity(1);
+        out[outEnd++] = (byte) symbol;
+
+      } else if (symbol == 256) {
+        return;
+
+      } else {
+        symbol -= 257;
+        if (symbol >= 29) {
+          throw new IOException("Invalid deflate length code in " + in.getLocation());
+        }
+        int len = LENGTH_BASE[symbol] + bits(LENGTH_EXTRA[symbol]);
+        symbol = decode(distcode);
+        if (symbol >= 30) {
+          throw new IOException("Invalid deflate distance code in " + in.getLocation());
+        }
+        int dist = DIST_BASE[symbol] + bits(DIST_EXTRA[symbol]);
+        if (dist > outEnd) {
+          throw new IOException("Deflate distance too far back in " + in.getLocation());
+        }
+
+        ensureCapacity(len);
+        int from = outEnd - dist;
+        if (dist >= len) {
+          System.arraycopy(out, from, out, outEnd, len);
+        } else { // the copy overlaps the bytes it makes
+          for (int i = 0; i < len; i++) {
+            out[outEnd + i] = out[from + i];
+          }
+        }
+        outEnd += len;
+      }
+    }
+  }
+
+  private void ensureCapacity(int n) {
+    if (outEnd + n > out.length) {
+      out = Arrays.copyOf(out, Math.max(2 * out.length, outEnd + n));
+    }
+  }
+
+  private int bits(int n) throws IOException {
+    while (bitCount < n) {
+      int b = in.read();
+      if (b < 0) {
+        throw new EOFException("Unexpected end of compressed data in " + in.getLocation());
+      }
+      bitBuf |= (long) b << bitCount;
+      bitCount += 8;
+    }
+    int result = (int) (bitBuf & ((1L << n) - 1));
+    bitBuf >>>= n;
+    bitCount -= n;
+    return result;
+  }
+
+  private int decode(Huffman h) throws IOException {
+    while (bitCount < FAST_BITS) {
+      int b = in.read();
+      if (b < 0) {
+        break; // the last code may be shorter than FAST_BITS
+      }
+      bitBuf |= (long) b << bitCount;
+      bitCount += 8;
+    }
+    int entry = h.fast[(int) (bitBuf & FAST_MASK)];
+    int len = entry >>> 16;
+    if (entry != 0 && len <= bitCount) {
+      bitBuf >>>= len;
+      bitCount -= len;
+      return entry & 0xffff;
+    }
+
+    // codes longer than FAST_BITS, one bit at a time
+    int code = 0;
+    int first = 0;
+    int index = 0;
+    for (len = 1; len <= MAX_BITS; len++) {
+      code |= bits(1);
+      int count = h.count[len];
+      if (code - count < first) {
+        return h.symbol[index + (code - first)];
+      }
+      index += count;
+      first += count;
+      first <<= 1;
+      code <<= 1;
+    }
+    throw new IOException("Invalid deflate Huffman code in " + in.getLocation());
+  }
+
+  /** A canonical Huffman code, with a table for the codes of up to FAST_BITS bits. */
+  private static final class Huffman {
+    final short[] count = new short[MAX_BITS + 1]; // number of codes of each length
+    final short[] symbol; // symbols ordered by code
+    final int[] fast = new int[1 << FAST_BITS]; // (length << 16 | symbol) by the next FAST_BITS bits, or 0
+
+    Huffman(short[] lengths, int offset, int n) throws IOException {
+      symbol = new short[n];
+      for (int i = 0; i < n; i++) {
+        count[lengths[offset + i]]++;
+      }
+      count[0] = 0;
+
+      int left = 1;
+      for (int len = 1; len <= MAX_BITS; len++) {
+        left <<= 1;
+        left -= count[len];
+        if (left < 0) {
+          throw new IOException("Over-subscribed deflate Huffman code");
+        }
+      }
+
+      int[] offs = new int[MAX_BITS + 1];
+      int[] nextCode = new int[MAX_BITS + 1];
+      int code = 0;
+      for (int len = 1; len <= MAX_BITS; len++) {
+        if (len < MAX_BITS) {
+          offs[len + 1] = offs[len] + count[len];
+        }
+        code = (code + count[len - 1]) << 1;
+        nextCode[len] = code;
+      }
+
+      for (int sym = 0; sym < n; sym++) {
+        int len = lengths[offset + sym];
+        if (len == 0) {
+          continue;
+        }
+        symbol[offs[len]++] = (short) sym;
+        int c = nextCode[len]++;
+        if (len <= FAST_BITS) {
+          int reversed = Integer.reverse(c) >>> (32 - len); // deflate sends codes starting with the high bit
+          for (int i = reversed; i < fast.length; i += 1 << len) {
+            fast[i] = (len << 16) | sym;
+          }
+        }
+      }
+    }
+  }
+}
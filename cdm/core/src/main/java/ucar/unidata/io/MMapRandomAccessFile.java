@@ -4,99 +4,165 @@
  */
 package ucar.unidata.io;
 
-import java.io.*;
-import java.nio.channels.FileChannel;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
 
 /**
- * Use NIO MappedByteBuffer to implement a RandomAccessFile.
- * Limited to 2G size. Not currently used - NOT UP TO DATE DO NOT USE
- * 
- * @deprecated not part of public API.
+ * A read-only RandomAccessFile that maps the whole file into memory with NIO MappedByteBuffers.
+ * Files larger than 2 GB are mapped as a sequence of segments; reads that cross a segment boundary are split.
+ * <p/>
+ * The usual buffered reads work unchanged, but fill the buffer with a memory copy instead of a system call.
+ * {@link #slice} gives direct access to the mapped bytes, which IospHelper uses to copy contiguous data
+ * straight into the result array.
+ * The mapping is released when the MappedByteBuffers are garbage collected, not when the file is closed.
+ *
+ * @see ucar.nc2.NetcdfFiles#setMemoryMapThreshold
  */
-@Deprecated
 public class MMapRandomAccessFile extends RandomAccessFile {
+  private static final long DEFAULT_SEGMENT_SIZE = 1L << 30;
 
-  private MappedByteBuffer source;
+  private final long segmentSize;
+  private final long fileLength;
+  private MappedByteBuffer[] segments;
 
   /**
-   * Constructor for in-memory "files"
-   * 
-   * @param location used as a name
-   * @param mode the open mode
+   * Map an existing file, read only.
+   *
+   * @param location the file name
    * @throws java.io.IOException on error
    */
-  public MMapRandomAccessFile(String location, String mode) throws IOException {
-    super(location, mode, 1);
-    FileChannel channel = file.getChannel();
-    source = channel.map(readonly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE, (long) 0,
-        channel.size());
-    // channel.close();
-
-    bufferStart = 0;
-    dataSize = (int) channel.size();
-    dataEnd = channel.size();
-    filePosition = 0;
-    buffer = null;
-    endOfFile = false;
+  public MMapRandomAccessFile(String location) throws IOException {
+    this(location, defaultBufferSize, DEFAULT_SEGMENT_SIZE);
   }
 
+  /**
+   * Map an existing file, read only.
+   *
+   * @param location the file name
+   * @param mode ignored, the file is always opened read only
+   * @throws java.io.IOException on error
+   * @deprecated use MMapRandomAccessFile(String)
+   */
+  @Deprecated
+  public MMapRandomAccessFile(String location, String mode) throws IOException {
+    this(location, defaultBufferSize, DEFAULT_SEGMENT_SIZE);
+  }
 
-  public void flush() {
-    if (bufferModified) {
-      source.force();
-      bufferModified = false;
+  MMapRandomAccessFile(String location, int bufferSize, long segmentSize) throws IOException {
+    super(location, "r", bufferSize);
+    this.segmentSize = segmentSize;
+    this.fileChannel = file.getChannel();
+    this.fileLength = fileChannel.size();
+
+    int nsegments = (int) ((fileLength + segmentSize - 1) / segmentSize);
+    segments = new MappedByteBuffer[nsegments];
+    try {
+      for (int i = 0; i < nsegments; i++) {
+        long start = i * segmentSize;
+        segments[i] = fileChannel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(segmentSize, fileLength - start));
+      }
+    } catch (IOException | RuntimeException e) {
+      segments = null;
+      super.close();
+      throw e;
     }
   }
 
+  @Override
   public long length() {
-    return dataEnd;
+    return fileLength;
   }
 
-  public void seek(long pos) {
-    filePosition = pos;
-    if (filePosition < dataEnd)
-      source.position((int) filePosition);
-    else
-      endOfFile = true;
+  @Override
+  public synchronized void close() throws IOException {
+    super.close();
+    if (file == null)
+      segments = null; // let the gc unmap
   }
 
-  public void unread() {
-    seek(filePosition - 1);
-  }
-
-  public int read() {
-    // If the file position is within the data, return the byte...
-    if (filePosition < dataEnd) {
-      filePosition++;
-      return source.get() & 0xff;
-
-    } else {
-      return -1;
+  /**
+   * Get the mapped bytes of part of the file, in the current byte order.
+   * The result is a read-only view of the mapping if the bytes are all in one segment, else a copy.
+   *
+   * @param pos start here in the file
+   * @param nbytes number of bytes
+   * @return ByteBuffer with position 0 and limit nbytes
+   * @throws EOFException if the bytes are not all in the file
+   */
+  public ByteBuffer slice(long pos, int nbytes) throws IOException {
+    if (segments == null)
+      throw new IOException("MMapRandomAccessFile is closed: " + location);
+    if (pos < 0 || nbytes < 0 || pos + nbytes > fileLength)
+      throw new EOFException(
+          String.format("Reading %s at %d bytes=%d past EOF=%d", location, pos, nbytes, fileLength));
+
+    ByteOrder order = bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+    int segno = (int) (pos / segmentSize);
+    int segpos = (int) (pos - segno * segmentSize);
+    if (segpos + nbytes <= segments[segno].capacity()) {
+      ByteBuffer view = segments[segno].duplicate();
+      view.position(segpos).limit(segpos + nbytes);
+      return view.slice().asReadOnlyBuffer().order(order);
     }
+
+    byte[] copy = new byte[nbytes];
+    copyTo(pos, copy, 0, nbytes);
+    return ByteBuffer.wrap(copy).order(order);
   }
 
-  public int readBytes(byte[] dst, int offset, int length) {
-    if (endOfFile)
+  @Override
+  protected int read_(long pos, byte[] b, int offset, int len) throws IOException {
+    if (segments == null)
       return -1;
 
-    length = (int) Math.min(length, dataEnd - filePosition);
-    if (length > 0) {
-      source.get(dst, offset, length);
-      filePosition += length;
+    int n = (pos >= fileLength) ? -1 : (int) Math.min(len, fileLength - pos);
+    if (n > 0)
+      copyTo(pos, b, offset, n);
+    if (extendMode && n < len) {
+      Arrays.fill(b, offset + Math.max(n, 0), offset + len, (byte) 0);
+      n = len;
     }
-    return length;
+    return n;
   }
 
-  public void write(int b) {
-    source.put((byte) b);
-    filePosition++;
-    bufferModified = true;
+  @Override
+  public long readToByteChannel(WritableByteChannel dest, long offset, long nbytes) throws IOException {
+    if (segments == null)
+      throw new IOException("MMapRandomAccessFile is closed: " + location);
+
+    long need = Math.max(0, Math.min(nbytes, fileLength - offset));
+    long count = 0;
+    while (count < need) {
+      int segno = (int) ((offset + count) / segmentSize);
+      int segpos = (int) (offset + count - segno * segmentSize);
+      ByteBuffer view = segments[segno].duplicate();
+      view.position(segpos).limit((int) Math.min(view.capacity(), segpos + need - count));
+      while (view.hasRemaining()) {
+        count += dest.write(view);
+      }
+    }
+    return count;
   }
 
-  public void writeBytes(byte[] dst, int offset, int length) {
-    source.put(dst, offset, length);
-    filePosition += length;
+  // copy from the mapping, which must contain pos to pos + len
+  private void copyTo(long pos, byte[] b, int offset, int len) {
+    while (len > 0) {
+      int segno = (int) (pos / segmentSize);
+      int segpos = (int) (pos - segno * segmentSize);
+      ByteBuffer view = segments[segno].duplicate();
+      int n = Math.min(len, view.capacity() - segpos);
+      view.position(segpos);
+      view.get(b, offset, n);
+      pos += n;
+      offset += n;
+      len -= n;
+    }
   }
 
 }
@@ -286,7 +286,7 @@ public class RandomAccessFile implements DataInput, DataOutput, FileCacheable, C
   /**
    * STUPID extendMode for truncated, yet valid files. old netcdf C library code allowed NOFILL to do this
    */
-  private boolean extendMode;
+  protected boolean extendMode;
 
   /**
    * Constructor, for subclasses
@@ -5,15 +5,21 @@
 
 package ucar.unidata.io;
 
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.WritableByteChannel;
 import java.time.Duration;
-import java.util.concurrent.ExecutionException;
-import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,11 +36,49 @@ public abstract class RemoteRandomAccessFile extends ucar.unidata.io.RandomAcces
   protected static final int defaultRemoteFileTimeout = 10 * 1000;
   // default cache time to live in milliseconds
   private static final long defaultReadCacheTimeToLive = 30 * 1000;
+  // default maximum number of cache blocks read with a single remote request
+  private static final int defaultMaxCacheBlocksPerRequest = 16;
+  // default number of cache blocks read ahead when reading sequentially
+  private static final int defaultReadAheadCacheBlocks = 4;
+
+  private static volatile Executor executor;
+  private static volatile int maxCacheBlocksPerRequest = defaultMaxCacheBlocksPerRequest;
+  private static volatile int readAheadCacheBlocks = defaultReadAheadCacheBlocks;
+
+  /**
+   * Make the remote requests for the read cache concurrently on the given Executor: when a read needs several
+   * runs of missing cache blocks, they are requested at the same time, and blocks read ahead of sequential access
+   * are requested in the background.
+   *
+   * @param exec make remote requests on this Executor; if null, make them on the calling thread (the default).
+   */
+  public static void setExecutor(Executor exec) {
+    executor = exec;
+  }
+
+  /**
+   * Set how the read cache makes remote requests.
+   *
+   * @param maxBlocksPerRequest maximum number of contiguous cache blocks read with one remote request.
+   * @param readAheadBlocks number of cache blocks to read ahead of sequential access, 0 to turn off read ahead.
+   */
+  public static void setReadCacheRequests(int maxBlocksPerRequest, int readAheadBlocks) {
+    if (maxBlocksPerRequest < 1)
+      throw new IllegalArgumentException("maxBlocksPerRequest must be > 0");
+    if (readAheadBlocks < 0)
+      throw new IllegalArgumentException("readAheadBlocks must be >= 0");
+    maxCacheBlocksPerRequest = maxBlocksPerRequest;
+    readAheadCacheBlocks = readAheadBlocks;
+  }
 
   protected final String url;
   private final boolean readCacheEnabled;
   private final int readCacheBlockSize;
-  private final LoadingCache<Long, byte[]> readCache;
+  private final Cache<Long, byte[]> readCache;
+  // cache blocks being read in the background, see prefetch()
+  private final Map<Long, CompletableFuture<byte[][]>> prefetching = new ConcurrentHashMap<>();
+  private long nextSequentialPos = -1; // a read starting here continues the previous one
+  private volatile boolean closed;
 
   protected RemoteRandomAccessFile(String url, int bufferSize, long maxRemoteCacheSize) {
     super(bufferSize);
@@ -63,17 +107,13 @@ public abstract class RemoteRandomAccessFile extends ucar.unidata.io.RandomAcces
     }
   }
 
-  private LoadingCache<Long, byte[]> initCache(long maximumNumberOfCacheBlocks, java.time.Duration timeToLive) {
+  private Cache<Long, byte[]> initCache(long maximumNumberOfCacheBlocks, java.time.Duration timeToLive) {
     CacheBuilder<Object, Object> cb =
         CacheBuilder.newBuilder().maximumSize(maximumNumberOfCacheBlocks).expireAfterWrite(timeToLive);
     if (debugAccess) {
       cb.recordStats();
     }
-    return cb.build(new CacheLoader<Long, byte[]>() {
-      public byte[] load(@Nonnull Long key) throws IOException {
-        return readRemoteCacheSizedChunk(key);
-      }
-    });
+    return cb.build();
   }
 
   /**
@@ -111,130 +151,193 @@ public abstract class RemoteRandomAccessFile extends ucar.unidata.io.RandomAcces
     // readCacheBlockSize. Each of these blocks are assigned a number (0 - N) starting from position 0 in the
     // remote file or object, and that number is used as the key of the cache.
     // Here, we compute the first and last cache block that we need to read from based on the desired position in the
-    // file and the length of read.
+    // file and the length of read, not reading past the end of the file.
+    int want = Math.toIntExact(Math.min(len, length() - pos));
+    if (want <= 0) {
+      return 0;
+    }
     long firstCacheBlockNumber = pos / readCacheBlockSize;
-    long lastCacheBlockNumber = (pos + len) / readCacheBlockSize;
+    long lastCacheBlockNumber = (pos + want - 1) / readCacheBlockSize;
+
+    boolean sequential = (pos == nextSequentialPos);
+    nextSequentialPos = pos + want;
+    byte[][] cacheBlocks = getCacheBlocks(firstCacheBlockNumber, lastCacheBlockNumber, sequential);
+
+    // Copy from the cache blocks into the destination buffer. Only the first block can start at an offset, and
+    // only the last one can be copied partially.
     int totalBytesRead = 0;
-    int currentOffsetIntoBuffer = offset;
+    int offsetIntoCacheBlock = Math.toIntExact(pos - firstCacheBlockNumber * readCacheBlockSize);
+    for (byte[] src : cacheBlocks) {
+      int sizeToCopy = Math.min(src.length - offsetIntoCacheBlock, want - totalBytesRead);
+      System.arraycopy(src, offsetIntoCacheBlock, buff, offset + totalBytesRead, sizeToCopy);
+      totalBytesRead += sizeToCopy;
+      offsetIntoCacheBlock = 0;
+    }
+    logger.debug("Read {} bytes from {} cache blocks", totalBytesRead, cacheBlocks.length);
+    return totalBytesRead;
+  }
 
-    // Read cacheBlock containing pos, and fill the buffer from the effective location of pos in the cache block
-    // up to the smaller of these three lengths: 1. bytes remaining in the cache block, 2. bytes remaining in the file,
-    // or 3. bytes remaining in the destination array.
-    totalBytesRead += readCacheBlockPartial(pos, buff, currentOffsetIntoBuffer, true);
-    currentOffsetIntoBuffer += totalBytesRead;
-    // If we have read everything we have been asked to read, skip the rest of the read logic.
-    // Otherwise, keep going.
-    if ((totalBytesRead < len) && (firstCacheBlockNumber != lastCacheBlockNumber)) {
-      // Now fill the buffer using whole cache blocks, up until the last cache block (as reading from the last cache
-      // block might be a partial read).
-      // LOOK: might benefit from concurrency? Need to see how often we end up inside this while statement.
-      // Initial testing shows this only happens for small readCacheBlockSize (which is equal to the read buffer size)
-      // when reading netCDF-4 files, but I think might depend on the specific IOSP in use.
-      long currentCacheBlockNumber = firstCacheBlockNumber + 1;
-      while (currentCacheBlockNumber < lastCacheBlockNumber) {
-        totalBytesRead += readCacheBlockFull(currentCacheBlockNumber, currentOffsetIntoBuffer, buff);
-        currentOffsetIntoBuffer += readCacheBlockSize;
-        currentCacheBlockNumber += 1;
+  /**
+   * Get cache blocks first through last, reading the missing ones from the remote file. Each contiguous run of
+   * missing blocks is read with a single remote request (of at most maxCacheBlocksPerRequest blocks), and
+   * if an Executor has been set, the requests are made concurrently. When the access is sequential, the next
+   * readAheadCacheBlocks blocks are kept available as well: missing ones are read as part of the last request if it
+   * ends at the last block and has room for them, the rest in the background if an Executor has been set.
+   */
+  private byte[][] getCacheBlocks(long first, long last, boolean sequential) throws IOException {
+    int maxBlocksPerRequest = maxCacheBlocksPerRequest;
+    int nblocks = Math.toIntExact(last - first + 1);
+    byte[][] result = new byte[nblocks][];
+    List<long[]> missingRuns = new ArrayList<>(); // {first block, number of blocks}
+    long[] run = null;
+    for (int i = 0; i < nblocks; i++) {
+      long cacheBlockNumber = first + i;
+      result[i] = getIfCachedOrPrefetched(cacheBlockNumber);
+      if (result[i] != null) {
+        run = null;
+      } else if (run != null && run[1] < maxBlocksPerRequest) {
+        run[1]++;
+      } else {
+        run = new long[] {cacheBlockNumber, 1};
+        missingRuns.add(run);
       }
-      logger.debug("Number of full cache block reads: {}", currentCacheBlockNumber - firstCacheBlockNumber - 1);
+    }
 
-      // If there are still bytes to read, read last cacheBlock from the start of the cache block to the
-      // smaller of these two lengths: 1. bytes remaining in the file, or 2. bytes remaining in the destination array.
-      if (totalBytesRead < len) {
-        totalBytesRead += readCacheBlockPartial(pos + totalBytesRead, buff, currentOffsetIntoBuffer, false);
+    long readAheadStart = sequential ? findReadAhead(last + 1) : -1;
+    int readAheadBlocks = readAheadStart < 0 ? 0 : countReadAhead(readAheadStart);
+    if (readAheadBlocks > 0 && run != null && readAheadStart == last + 1) {
+      // extend the last request as far as it can go, rather than making another one
+      int extend = (int) Math.min(readAheadBlocks, maxBlocksPerRequest - run[1]);
+      run[1] += extend;
+      readAheadStart += extend;
+      readAheadBlocks -= extend;
+    }
+
+    Executor exec = executor;
+    if (exec != null && missingRuns.size() > 1) {
+      List<CompletableFuture<byte[][]>> futures = new ArrayList<>();
+      for (long[] missing : missingRuns.subList(1, missingRuns.size())) {
+        futures.add(CompletableFuture.supplyAsync(() -> {
+          try {
+            return readCacheBlocks(missing[0], Math.toIntExact(missing[1]));
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        }, exec));
+      }
+      copyRun(missingRuns.get(0), readCacheBlocks(missingRuns.get(0)[0], Math.toIntExact(missingRuns.get(0)[1])),
+          first, result);
+      for (int i = 0; i < futures.size(); i++) {
+        copyRun(missingRuns.get(i + 1), join(futures.get(i)), first, result);
+      }
+    } else {
+      for (long[] missing : missingRuns) {
+        copyRun(missing, readCacheBlocks(missing[0], Math.toIntExact(missing[1])), first, result);
       }
     }
 
-    return totalBytesRead;
+    if (readAheadBlocks > 0 && exec != null) {
+      prefetch(readAheadStart, readAheadBlocks, exec);
+    }
+    return result;
   }
 
-  private int readCacheBlockPartial(long pos, byte[] buff, int positionInBuffer, boolean fillForward)
-      throws IOException {
-
-    long cacheBlockNumber = pos / readCacheBlockSize;
-
-    // read in the cache block
-    byte[] src;
-    try {
-      src = readCache.get(cacheBlockNumber);
-    } catch (ExecutionException ee) {
-      throw new IOException("Error obtaining data from the remote data read cache.", ee);
+  private byte[] getIfCachedOrPrefetched(long cacheBlockNumber) throws IOException {
+    byte[] cacheBlock = readCache.getIfPresent(cacheBlockNumber);
+    if (cacheBlock == null) {
+      CompletableFuture<byte[][]> pending = prefetching.get(cacheBlockNumber);
+      if (pending != null) {
+        try {
+          pending.join();
+        } catch (CompletionException e) {
+          logger.debug("Prefetch of cache block {} failed", cacheBlockNumber, e);
+        }
+        cacheBlock = readCache.getIfPresent(cacheBlockNumber);
+      }
     }
+    return cacheBlock;
+  }
 
-    // Careful - we are doing a partial read from the cache block. The pos in the file is some offset into the cache
-    // block, so let's start by calculating the pos of the first block
-    long posCacheBlockStart = cacheBlockNumber * readCacheBlockSize;
+  /** The first of the readAheadCacheBlocks blocks starting at start that is not available, or -1 if none. */
+  private long findReadAhead(long start) throws IOException {
+    long numberOfCacheBlocks = (length() + readCacheBlockSize - 1) / readCacheBlockSize;
+    for (long block = start; block < start + readAheadCacheBlocks && block < numberOfCacheBlocks; block++) {
+      if (!isAvailable(block)) {
+        return block;
+      }
+    }
+    return -1;
+  }
 
-    // Now, there are two possible cases. We either need to read from this position in the cache block to the end of
-    // the cache block (i.e. "fill buffer forward from the offset into the cache block"), or read from the beginning
-    // of the cache block up to the offset in the cache block (useful if reading last cache block in a series of cache
-    // blocks). Basically,the question is where do we start reading in the cache block, and what size read do we use?
-    int offsetIntoCacheBlock;
-    int sizeToCopy;
-    if (fillForward) {
-      // .....size to copy (assuming we will want to read until the end of the cache block)
-      // .....<-------->
-      // X ---|------- X
-      // ^____^
-      // ..|
-      // Offset Into Cache Block
-      offsetIntoCacheBlock = Math.toIntExact(pos - posCacheBlockStart);
-      sizeToCopy = readCacheBlockSize - offsetIntoCacheBlock;
-    } else {
-      // size to copy
-      // <---->
-      // X ---|------- X
-      // ^
-      // Offset Into Cache Block
-      offsetIntoCacheBlock = 0;
-      sizeToCopy = Math.toIntExact(pos - posCacheBlockStart);
+  /** How many blocks to read ahead from start: up to readAheadCacheBlocks that are not already available. */
+  private int countReadAhead(long start) throws IOException {
+    long numberOfCacheBlocks = (length() + readCacheBlockSize - 1) / readCacheBlockSize;
+    int count = 0;
+    while (count < readAheadCacheBlocks && start + count < numberOfCacheBlocks && !isAvailable(start + count)) {
+      count++;
     }
+    return count;
+  }
 
-    // We don't want to read past the end of the file, so let's check sizeToCopy against how much of the file
-    // is left to read
-    long toEof = length() - pos;
-    sizeToCopy = Math.toIntExact(Math.min(sizeToCopy, toEof));
+  private boolean isAvailable(long cacheBlockNumber) {
+    return readCache.getIfPresent(cacheBlockNumber) != null || prefetching.containsKey(cacheBlockNumber);
+  }
 
-    // Finally, check to make sure we are not reading more than buff will hold
-    sizeToCopy = Math.toIntExact(Math.min(sizeToCopy, buff.length - positionInBuffer));
+  private void prefetch(long start, int count, Executor exec) {
+    CompletableFuture<byte[][]> future = new CompletableFuture<>();
+    for (int i = 0; i < count; i++) {
+      prefetching.put(start + i, future);
+    }
+    exec.execute(() -> {
+      try {
+        future.complete(readCacheBlocks(start, count));
+      } catch (Throwable t) {
+        future.completeExceptionally(t);
+      } finally {
+        for (int i = 0; i < count; i++) {
+          prefetching.remove(start + i, future);
+        }
+      }
+    });
+  }
 
-    // Copy byte array fulfilling the request as obtained from the cache into the destination buffer
-    logger.debug("Requested {} bytes from the cache block (cache block size upper limit: {} bytes.)", sizeToCopy,
-        readCacheBlockSize);
-    logger.debug("Actual size of the cache block: {} bytes.", src.length);
-    logger.debug("Offset into cache block to begin copy: {} bytes.", offsetIntoCacheBlock);
-    logger.debug("Total size of the destination buffer: {} bytes.", buff.length);
-    logger.debug("Position in buffer to place the copy from the cache: {} bytes.", positionInBuffer);
-    logger.debug("Trying to fit {} bytes from the cache into {} bytes of the destination.",
-        src.length - offsetIntoCacheBlock, buff.length - positionInBuffer);
-    System.arraycopy(src, offsetIntoCacheBlock, buff, positionInBuffer, sizeToCopy);
-    return sizeToCopy;
+  private static void copyRun(long[] run, byte[][] cacheBlocks, long first, byte[][] result) {
+    int start = Math.toIntExact(run[0] - first);
+    int count = Math.min(cacheBlocks.length, result.length - start); // leave out blocks read ahead
+    System.arraycopy(cacheBlocks, 0, result, start, count);
   }
 
-  private int readCacheBlockFull(long cacheBlockNumber, int positionInBuffer, byte[] buff) throws IOException {
-    byte[] src;
+  private static byte[][] join(CompletableFuture<byte[][]> future) throws IOException {
     try {
-      src = readCache.get(cacheBlockNumber);
-    } catch (ExecutionException ee) {
-      throw new IOException("Error obtaining data from the remote data read cache.", ee);
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof UncheckedIOException) {
+        throw ((UncheckedIOException) e.getCause()).getCause();
+      }
+      throw new IOException("Error obtaining data from the remote data read cache.", e.getCause());
     }
-    System.arraycopy(src, 0, buff, positionInBuffer, readCacheBlockSize);
-    return readCacheBlockSize;
   }
 
   /**
-   * read a readCacheBlockSize chunk of the remote file
+   * Read count cache blocks starting at cacheBlockNumber with a single remote request, and add them to the cache.
    */
-  private byte[] readRemoteCacheSizedChunk(Long cacheBlockNumber) throws IOException {
+  private byte[][] readCacheBlocks(long cacheBlockNumber, int count) throws IOException {
     long position = cacheBlockNumber * readCacheBlockSize;
-    long toEOF = length() - position;
-    // if size to EOF less than readCacheBlockSize, just read to EOF
-    long bytesToRead = toEOF < readCacheBlockSize ? toEOF : readCacheBlockSize;
-    int bytes = Math.toIntExact(bytesToRead);
+    // if size to EOF less than the requested blocks, just read to EOF
+    int bytes = Math.toIntExact(Math.min((long) count * readCacheBlockSize, length() - position));
     byte[] buffer = new byte[bytes];
-
     readRemote(position, buffer, 0, bytes);
-    return buffer;
+
+    int nblocks = (bytes + readCacheBlockSize - 1) / readCacheBlockSize;
+    byte[][] cacheBlocks = new byte[nblocks][];
+    for (int i = 0; i < nblocks; i++) {
+      int from = i * readCacheBlockSize;
+      cacheBlocks[i] = Arrays.copyOfRange(buffer, from, Math.min(bytes, from + readCacheBlockSize));
+      if (!closed) {
+        readCache.put(cacheBlockNumber + i, cacheBlocks[i]);
+      }
+    }
+    return cacheBlocks;
   }
 
   @Override
@@ -250,6 +353,7 @@ public abstract class RemoteRandomAccessFile extends ucar.unidata.io.RandomAcces
 
   @Override
   public void close() throws IOException {
+    closed = true;
     closeRemote();
     super.close();
     // clean out the cache when closing the Remote Random Access File
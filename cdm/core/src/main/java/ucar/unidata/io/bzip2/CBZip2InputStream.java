@@ -107,6 +107,9 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
 
   private int bsBuff;
   private int bsLive;
+  private long bsBytesRead;
+  private long blockPosition;
+  private boolean partialStream;
   private CRC mCrc = new CRC();
 
   private boolean[] inUse = new boolean[256];
@@ -170,6 +173,52 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
    * by this object. This saves in memory allocation costs
    */
   public void setStream(InputStream zStream) {
+    resetState();
+    bsSetStream(zStream);
+    initialize();
+    if (!streamEnd) { // Handle if initialize does not detect valid bz2 stream
+      initBlock();
+      setupBlock();
+    }
+  }
+
+  /**
+   * Start decompressing at a block in the middle of a stream, for random access to the uncompressed bytes.
+   * Blocks are not byte aligned: the stream starts with the byte that contains the first bit of the block header.
+   * The CRC of the whole stream is not checked, since not all of it is read.
+   *
+   * @param zStream positioned at the byte containing the start of the block
+   * @param bitOffset the number of bits of the first byte that come before the block, 0-7
+   * @param blockSize100k the block size of the stream, from its header
+   * @see #getBlockPosition()
+   */
+  public void setStreamAtBlock(InputStream zStream, int bitOffset, int blockSize100k) {
+    resetState();
+    bsSetStream(zStream);
+    partialStream = true;
+    bsR(bitOffset);
+    setDecompressStructureSizes(blockSize100k);
+    initBlock();
+    if (!streamEnd) {
+      setupBlock();
+    }
+  }
+
+  /**
+   * The position of the block that is being decompressed, in bits from the start of the stream given to setStream().
+   * The position changes when the last byte of a block has been read, so the next block starts at the number of bytes
+   * read so far. At the end of the stream, it is the position of the end of stream marker.
+   */
+  public long getBlockPosition() {
+    return blockPosition;
+  }
+
+  /** The block size of the stream, in units of 100k; 1-9. */
+  public int getBlockSize100k() {
+    return blockSize100k;
+  }
+
+  private void resetState() {
     last = 0;
     origPtr = 0;
     blockSize100k = 0;
@@ -190,13 +239,8 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
     rTPos = 0;
     j2 = 0;
     z = 0;
-
-    bsSetStream(zStream);
-    initialize();
-    if (!streamEnd) { // Handle if initialize does not detect valid bz2 stream
-      initBlock();
-      setupBlock();
-    }
+    blockPosition = 0;
+    partialStream = false;
   }
 
 
@@ -249,6 +293,7 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
   private void initBlock() {
     char magic1, magic2, magic3, magic4;
     char magic5, magic6;
+    blockPosition = 8 * bsBytesRead - bsLive;
     magic1 = bsGetUChar();
     magic2 = bsGetUChar();
     magic3 = bsGetUChar();
@@ -291,7 +336,7 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
 
   private void complete() {
     storedCombinedCRC = bsGetInt32();
-    if (storedCombinedCRC != computedCombinedCRC) {
+    if (!partialStream && storedCombinedCRC != computedCombinedCRC) {
       // crcError();
       cadvise("CRC error: storedCombinedCRC != computedCombinedCRC");
     }
@@ -325,6 +370,7 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
     bsStream = f;
     bsLive = 0;
     bsBuff = 0;
+    bsBytesRead = 0;
   }
 
   private int bsR(int n) {
@@ -341,6 +387,7 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
       }
       bsBuff = (bsBuff << 8) | (zzi & 0xff);
       bsLive += 8;
+      bsBytesRead++;
     }
 
     v = (bsBuff >> (bsLive - n)) & ((1 << n) - 1);
@@ -555,6 +602,7 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
               }
               bsBuff = (bsBuff << 8) | (zzi & 0xff);
               bsLive += 8;
+              bsBytesRead++;
             }
           }
           zj = (bsBuff >> (bsLive - 1)) & 1;
@@ -608,6 +656,7 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
                     }
                     bsBuff = (bsBuff << 8) | (zzi & 0xff);
                     bsLive += 8;
+                    bsBytesRead++;
                   }
                 }
                 zj = (bsBuff >> (bsLive - 1)) & 1;
@@ -687,6 +736,7 @@ public class CBZip2InputStream extends InputStream implements BZip2Constants {
                   zzi = thech;
                   bsBuff = (bsBuff << 8) | (zzi & 0xff);
                   bsLive += 8;
+                  bsBytesRead++;
                 }
               }
               zj = (bsBuff >> (bsLive - 1)) & 1;
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.ma2;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import ucar.nc2.Structure;
+import ucar.nc2.write.NetcdfFormatWriter;
+
+/** Test {@link StructureDataCursor} and the cursor iterators. */
+public class TestStructureDataCursor {
+  private static final int NRECS = 37;
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @After
+  public void restoreDefault() {
+    NetcdfFiles.setMemoryMapThreshold(-1);
+  }
+
+  private static StructureMembers makeMembers() {
+    StructureMembers members = new StructureMembers("s");
+    members.addMember("id", "desc", "units", DataType.INT, new int[] {1});
+    members.addMember("temp", "desc", "units", DataType.DOUBLE, new int[] {1});
+    members.addMember("levels", "desc", "units", DataType.FLOAT, new int[] {3});
+    ArrayStructureBB.setOffsets(members);
+    return members;
+  }
+
+  private static void fill(ArrayStructureBB as) {
+    StructureMembers members = as.getStructureMembers();
+    for (int recno = 0; recno < as.getSize(); recno++) {
+      StructureDataDeep.copyToArrayBB(makeRecord(members, recno), as);
+    }
+  }
+
+  private static StructureData makeRecord(StructureMembers members, int recno) {
+    StructureDataW sdata = new StructureDataW(members);
+    sdata.setMemberData("id", Array.factory(DataType.INT, new int[] {1}, new int[] {recno}));
+    sdata.setMemberData("temp", Array.factory(DataType.DOUBLE, new int[] {1}, new double[] {recno / 10.0}));
+    sdata.setMemberData("levels", Array.factory(DataType.FLOAT, new int[] {3}, new float[] {recno, -recno, 2 * recno}));
+    return sdata;
+  }
+
+  private static List<String> values(StructureDataIterator iter) throws IOException {
+    List<String> result = new ArrayList<>();
+    try {
+      while (iter.hasNext()) {
+        StructureData sdata = iter.next();
+        result.add(sdata.getScalarInt("id") + " " + sdata.getScalarDouble("temp") + " "
+            + sdata.getArray("levels").toString().trim());
+      }
+    } finally {
+      iter.close();
+    }
+    return result;
+  }
+
+  @Test
+  public void testHeapAndDirect() throws IOException {
+    ArrayStructureBB heap = new ArrayStructureBB(makeMembers(), new int[] {NRECS});
+    ArrayStructureBB direct = ArrayStructureBB.allocateDirect(makeMembers(), new int[] {NRECS});
+    assertThat(direct.getByteBuffer().isDirect()).isTrue();
+    fill(heap);
+    fill(direct);
+
+    List<String> want = values(heap.getStructureDataIterator());
+    assertThat(want).hasSize(NRECS);
+    assertThat(values(heap.getCursorIterator())).isEqualTo(want);
+    assertThat(values(direct.getCursorIterator())).isEqualTo(want);
+    assertThat(values(direct.getStructureDataIterator())).isEqualTo(want);
+  }
+
+  @Test
+  public void testCursorIsReused() throws IOException {
+    ArrayStructureBB as = ArrayStructureBB.allocateDirect(makeMembers(), new int[] {NRECS});
+    fill(as);
+    StructureDataIterator iter = as.getCursorIterator();
+    StructureData first = iter.next();
+    assertThat(first).isInstanceOf(StructureDataCursor.class);
+    assertThat(first.getScalarInt("id")).isEqualTo(0);
+    StructureData second = iter.next();
+    assertThat(second).isSameInstanceAs(first);
+    assertThat(first.getScalarInt("id")).isEqualTo(1);
+    assertThat(iter.getCurrentRecno()).isEqualTo(1);
+
+    // a copy is kept when the cursor moves
+    StructureData copy = StructureDataDeep.copy(second, second.getStructureMembers());
+    iter.next();
+    assertThat(copy.getScalarInt("id")).isEqualTo(1);
+    assertThat(second.getScalarInt("id")).isEqualTo(2);
+  }
+
+  @Test
+  public void testMappedRecordStructure() throws IOException {
+    String filename = tempFolder.newFile("cursor.nc").getPath();
+    writeRecords(filename);
+
+    List<String> want;
+    try (NetcdfFile ncfile = NetcdfFiles.open(filename, -1, null, NetcdfFile.IOSP_MESSAGE_ADD_RECORD_STRUCTURE)) {
+      Structure record = (Structure) ncfile.findVariable("record");
+      assertThat((Object) record).isNotNull();
+      want = values(record.getStructureIterator(-1));
+      assertThat(want).hasSize(NRECS);
+      assertThat(values(record.getCursorIterator(-1))).isEqualTo(want);
+    }
+
+    NetcdfFiles.setMemoryMapThreshold(0);
+    try (NetcdfFile ncfile = NetcdfFiles.open(filename, -1, null, NetcdfFile.IOSP_MESSAGE_ADD_RECORD_STRUCTURE)) {
+      Structure record = (Structure) ncfile.findVariable("record");
+      // the records are read in place from the mapped file
+      ArrayStructure data = (ArrayStructure) record.read(new Section(new int[] {3}, new int[] {20}));
+      assertThat(((ArrayStructureBB) data).getByteBuffer().hasArray()).isFalse();
+      assertThat(data.getStructureData(0).getScalarInt("id")).isEqualTo(3);
+
+      // buffer less than a record, so several blocks are read
+      assertThat(values(record.getCursorIterator(1))).isEqualTo(want);
+      assertThat(values(record.getStructureIterator(1))).isEqualTo(want);
+    } catch (InvalidRangeException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static void writeRecords(String filename) throws IOException {
+    NetcdfFormatWriter.Builder writerb = NetcdfFormatWriter.createNewNetcdf3(filename).setFill(false);
+    writerb.addUnlimitedDimension("obs");
+    writerb.addDimension("level", 3);
+    writerb.addVariable("id", DataType.INT, "obs");
+    writerb.addVariable("temp", DataType.DOUBLE, "obs");
+    writerb.addVariable("levels", DataType.FLOAT, "obs level");
+
+    int[] id = new int[NRECS];
+    double[] temp = new double[NRECS];
+    float[] levels = new float[3 * NRECS];
+    for (int recno = 0; recno < NRECS; recno++) {
+      id[recno] = recno;
+      temp[recno] = recno / 10.0;
+      levels[3 * recno] = recno;
+      levels[3 * recno + 1] = -recno;
+      levels[3 * recno + 2] = 2 * recno;
+    }
+    try (NetcdfFormatWriter writer = writerb.build()) {
+      writer.write("id", Array.factory(DataType.INT, new int[] {NRECS}, id));
+      writer.write("temp", Array.factory(DataType.DOUBLE, new int[] {NRECS}, temp));
+      writer.write("levels", Array.factory(DataType.FLOAT, new int[] {NRECS, 3}, levels));
+    } catch (InvalidRangeException e) {
+      throw new IOException(e);
+    }
+  }
+}
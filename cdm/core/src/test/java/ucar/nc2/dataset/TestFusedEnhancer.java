@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.dataset;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.IndexIterator;
+import ucar.ma2.Section;
+import ucar.nc2.filter.ConvertMissing;
+import ucar.nc2.filter.Enhancement;
+import ucar.nc2.filter.ScaleOffset;
+import ucar.nc2.filter.UnsignedConversion;
+
+/** Compare {@link FusedEnhancer} with applying each Enhancement to each value in turn. */
+public class TestFusedEnhancer {
+  private static final int[] shape = {37, 1000}; // more than one block
+
+  private final Random random = new Random(42);
+
+  @Test
+  public void testUnsignedShortScaleOffset() throws Exception {
+    Array data = Array.factory(DataType.SHORT, shape);
+    IndexIterator iter = data.getIndexIterator();
+    while (iter.hasNext()) {
+      iter.setShortNext((short) random.nextInt());
+    }
+    UnsignedConversion unsigned = new UnsignedConversion(DataType.UINT, DataType.Signedness.UNSIGNED);
+    ScaleOffset scaleOffset = scaleOffset(DataType.FLOAT, 0.01, 5);
+    check(data, DataType.FLOAT, unsigned, null, scaleOffset, Collections.emptyList());
+    check(data.section(new Section("3:30:2,100:899").getRanges()), DataType.FLOAT, unsigned, null, scaleOffset,
+        Collections.emptyList());
+  }
+
+  @Test
+  public void testFloatMissing() throws Exception {
+    Array data = Array.factory(DataType.FLOAT, shape);
+    IndexIterator iter = data.getIndexIterator();
+    while (iter.hasNext()) {
+      float val = random.nextInt(300);
+      iter.setFloatNext(val == 7 ? Float.NaN : val);
+    }
+    ConvertMissing missing =
+        new ConvertMissing(true, true, true, true, true, 10, 250, true, 99, new double[] {100, 101, 1000});
+    check(data, DataType.FLOAT, null, missing, null, Collections.emptyList());
+    check(data, DataType.DOUBLE, null, missing, scaleOffset(DataType.DOUBLE, 2, -1), Collections.emptyList());
+  }
+
+  @Test
+  public void testOtherEnhancements() throws Exception {
+    Array data = Array.factory(DataType.INT, new int[] {100});
+    for (int i = 0; i < data.getSize(); i++) {
+      data.setInt(i, i - 50);
+    }
+    List<Enhancement> others = new ArrayList<>();
+    others.add(num -> num * num);
+    others.add(num -> num - 1);
+    check(data, DataType.INT, null, null, scaleOffset(DataType.INT, 0.5, 0), others);
+    check(data, DataType.DOUBLE, new UnsignedConversion(DataType.ULONG, DataType.Signedness.UNSIGNED), null, null,
+        others);
+  }
+
+  @Test
+  public void testEmpty() {
+    Array data = Array.factory(DataType.DOUBLE, new int[] {0});
+    Array result = new FusedEnhancer(null, null, null, Collections.emptyList()).convert(data, DataType.FLOAT);
+    assertThat(result.getSize()).isEqualTo(0);
+    assertThat(result.getDataType()).isEqualTo(DataType.FLOAT);
+  }
+
+  private static ScaleOffset scaleOffset(DataType type, double scaleFactor, double addOffset) {
+    Map<String, Object> props = new HashMap<>();
+    props.put(ScaleOffset.Keys.SCALE_KEY, 1 / scaleFactor);
+    props.put(ScaleOffset.Keys.OFFSET_KEY, addOffset);
+    props.put(ScaleOffset.Keys.DTYPE_KEY, type);
+    return new ScaleOffset(props);
+  }
+
+  private static void check(Array data, DataType outType, UnsignedConversion unsigned, ConvertMissing missing,
+      ScaleOffset scaleOffset, List<Enhancement> others) {
+    List<Enhancement> all = new ArrayList<>();
+    if (unsigned != null) {
+      all.add(unsigned);
+    }
+    if (missing != null) {
+      all.add(missing);
+    }
+    if (scaleOffset != null) {
+      all.add(scaleOffset);
+    }
+    all.addAll(others);
+
+    Array result = new FusedEnhancer(unsigned, missing, scaleOffset, others).convert(data, outType);
+    assertThat(result.getDataType()).isEqualTo(outType);
+    assertThat(result.getShape()).isEqualTo(data.getShape());
+
+    IndexIterator in = data.getIndexIterator();
+    IndexIterator out = result.getIndexIterator();
+    while (in.hasNext()) {
+      double want = in.getDoubleNext();
+      for (Enhancement e : all) {
+        want = e.convert(want);
+      }
+      Array expected = Array.factory(outType, new int[] {1});
+      expected.setObject(0, want);
+      assertThat(out.getObjectNext()).isEqualTo(expected.getObject(0));
+    }
+  }
+}
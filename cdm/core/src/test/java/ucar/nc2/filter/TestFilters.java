@@ -12,6 +12,7 @@ import ucar.unidata.io.RandomAccessFile;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
@@ -130,6 +131,55 @@ public class TestFilters {
     assertThat(out3).isEqualTo(decoded_data);
   }
 
+  @Test
+  public void testBloscDecode() throws IOException {
+    // test files were encoded with c-blosc 1.21
+    Filter filter = new Blosc(new HashMap<>());
+    for (String filename : new String[] {"blosc_blosclz", "blosc_lz4", "blosc_lz4hc_noshuffle", "blosc_zlib_bitshuffle",
+        "blosc_zstd"}) {
+      byte[] decoded = filter.decode(readAsByteArray(filename));
+      assertThat(decoded).isEqualTo(decoded_data);
+    }
+  }
+
+  @Test
+  public void testBloscEncodeDecode() throws IOException {
+    for (String cname : new String[] {"lz4", "zlib", "zstd"}) {
+      for (int shuffle = Blosc.NOSHUFFLE; shuffle <= Blosc.BITSHUFFLE; shuffle++) {
+        Map<String, Object> props = new HashMap<>();
+        props.put("id", "blosc");
+        props.put("cname", cname);
+        props.put("clevel", 5);
+        props.put("shuffle", shuffle);
+        props.put("blocksize", 10000);
+        props.put(Filters.Keys.ELEM_SIZE, 4);
+        Filter filter = new Blosc(props);
+        byte[] encoded = filter.encode(decoded_data);
+        assertThat(filter.decode(encoded)).isEqualTo(decoded_data);
+      }
+    }
+  }
+
+  @Test
+  public void testBloscFromHdf5ClientData() throws IOException, UnknownFilterException {
+    Map<String, Object> props = new HashMap<>();
+    props.put(Filters.Keys.ID, (short) 32001);
+    props.put(Filters.Keys.DATA, new int[] {2, 2, 4, 160000, 5, 1, 1});
+    Filter filter = Filters.getFilter(props);
+    assertThat(filter).isInstanceOf(Blosc.class);
+    assertThat(filter.decode(readAsByteArray("blosc_lz4"))).isEqualTo(decoded_data);
+  }
+
+  @Test(expected = IOException.class)
+  public void testBloscTruncated() throws IOException {
+    byte[] encoded = readAsByteArray("blosc_zstd");
+    byte[] truncated = new byte[encoded.length - 10];
+    System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+    // fix the compressed size in the header so only the block data is truncated
+    ByteBuffer.wrap(truncated).order(ByteOrder.LITTLE_ENDIAN).putInt(12, truncated.length);
+    new Blosc(new HashMap<>()).decode(truncated);
+  }
+
   private void testEncodeDecode(Filter filter, String filename) throws IOException {
     // test encode
     byte[] out = filter.encode(decoded_data);
@@ -156,4 +206,36 @@ public class TestFilters {
     assertThat(out).isEqualTo(expected);
   }
 
+  @Test
+  public void testCrc32c() {
+    // standard CRC-32C check value, stored little endian after the data
+    byte[] expected = "123456789".getBytes(StandardCharsets.UTF_8);
+    Checksum32 filter = new Checksum32(Checksum32.CType.CRC32C);
+    byte[] encoded = filter.encode(expected);
+    assertThat(ByteBuffer.wrap(encoded, expected.length, 4).order(ByteOrder.LITTLE_ENDIAN).getInt())
+        .isEqualTo(0xE3069283);
+    assertThat(filter.decode(encoded)).isEqualTo(expected);
+  }
+
+  @Test
+  public void testGzip() throws IOException {
+    Map<String, Object> props = new HashMap<>();
+    props.put("id", "gzip");
+    props.put("level", 5);
+    Filter filter = new Gzip(props);
+    byte[] encoded = filter.encode(decoded_data);
+    assertThat(encoded[0]).isEqualTo((byte) 0x1f); // gzip magic number
+    assertThat(filter.decode(encoded)).isEqualTo(decoded_data);
+  }
+
+  @Test
+  public void testZstd() throws IOException {
+    Map<String, Object> props = new HashMap<>();
+    props.put("id", "zstd");
+    props.put("level", 3);
+    Filter filter = new Zstd(props);
+    // written by libzstd at level 3, with a checksum: two compressed blocks
+    byte[] encoded = readAsByteArray("zstd");
+    assertThat(filter.decode(encoded)).isEqualTo(decoded_data);
+  }
 }
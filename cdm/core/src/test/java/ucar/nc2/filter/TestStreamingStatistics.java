@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2.filter;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
+import org.junit.Test;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.nc2.Attribute;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Variable;
+import ucar.nc2.internal.ncml.NcmlReader;
+
+public class TestStreamingStatistics {
+  private static final double TOLERANCE = 1.0E-9;
+
+  private static final String ncml = "<?xml version='1.0' encoding='UTF-8'?>\n"
+      + "<netcdf xmlns='http://www.unidata.ucar.edu/namespaces/netcdf/ncml-2.2' enhance='all'>\n"
+      + "  <dimension name='row' length='3'/>\n" + "  <dimension name='col' length='4'/>\n"
+      + "  <variable name='data' shape='row col' type='double'>\n"
+      + "    <values>1 2 3 4 NaN 6 7 8 9 10 11 12.5</values>\n" + "  </variable>\n"
+      + "  <variable name='standardized' shape='col' type='double'>\n"
+      + "    <attribute name='standardize' type='double' value='3.0 2.0'/>\n" + "    <values>1 3 5 7</values>\n"
+      + "  </variable>\n" + "  <variable name='normalized' shape='col' type='double'>\n"
+      + "    <attribute name='normalize' type='double' value='1.0 9.0'/>\n" + "    <values>1 3 5 9</values>\n"
+      + "  </variable>\n" + "</netcdf>";
+
+  @Test
+  public void testMatchesSummaryStatistics() {
+    Random random = new Random(17);
+    double[] values = new double[300_000]; // several parallel blocks
+    SummaryStatistics expected = new SummaryStatistics();
+    for (int i = 0; i < values.length; i++) {
+      values[i] = i % 1000 == 0 ? Double.NaN : 1000 + random.nextGaussian() * 50;
+      if (!Double.isNaN(values[i])) {
+        expected.addValue(values[i]);
+      }
+    }
+
+    StreamingStatistics stats = StreamingStatistics.compute(Array.makeFromJavaArray(values));
+    assertThat(stats.getCount()).isEqualTo(expected.getN());
+    assertThat(stats.getMean()).isWithin(TOLERANCE).of(expected.getMean());
+    assertThat(stats.getStandardDeviation()).isWithin(TOLERANCE).of(expected.getStandardDeviation());
+    assertThat(stats.getMin()).isEqualTo(expected.getMin());
+    assertThat(stats.getMax()).isEqualTo(expected.getMax());
+  }
+
+  @Test
+  public void testEmptyAndSingle() {
+    StreamingStatistics stats = StreamingStatistics.compute(Array.makeFromJavaArray(new double[] {Double.NaN}));
+    assertThat(stats.getCount()).isEqualTo(0);
+    assertThat(stats.getMean()).isNaN();
+    assertThat(stats.getStandardDeviation()).isNaN();
+
+    stats.add(4.0);
+    assertThat(stats.getMean()).isEqualTo(4.0);
+    assertThat(stats.getStandardDeviation()).isEqualTo(0.0);
+    assertThat(stats.getMin()).isEqualTo(4.0);
+    assertThat(stats.getMax()).isEqualTo(4.0);
+  }
+
+  @Test
+  public void testReadInChunks() throws IOException {
+    try (NetcdfFile ncfile = NcmlReader.readNcml(new StringReader(ncml), null, null).build()) {
+      Variable var = ncfile.findVariable("data");
+      StreamingStatistics whole = StreamingStatistics.compute(var.read());
+      // one value, less than a row, more than a row, and all of it at a time
+      for (long maxChunkBytes : new long[] {8, 24, 40, 1000}) {
+        StreamingStatistics chunked = StreamingStatistics.compute(var, maxChunkBytes);
+        assertThat(chunked.getCount()).isEqualTo(11);
+        assertThat(chunked.getMean()).isWithin(TOLERANCE).of(whole.getMean());
+        assertThat(chunked.getStandardDeviation()).isWithin(TOLERANCE).of(whole.getStandardDeviation());
+        assertThat(chunked.getMin()).isEqualTo(1.0);
+        assertThat(chunked.getMax()).isEqualTo(12.5);
+      }
+    }
+  }
+
+  @Test
+  public void testStatisticsFromAttributes() throws IOException {
+    try (NetcdfFile ncfile = NcmlReader.readNcml(new StringReader(ncml), null, null).build()) {
+      Array standardized = ncfile.findVariable("standardized").read();
+      assertThat((double[]) standardized.get1DJavaArray(DataType.DOUBLE)).usingTolerance(TOLERANCE)
+          .containsExactly(-1.0, 0.0, 1.0, 2.0).inOrder();
+
+      Array normalized = ncfile.findVariable("normalized").read();
+      assertThat((double[]) normalized.get1DJavaArray(DataType.DOUBLE)).usingTolerance(TOLERANCE)
+          .containsExactly(0.0, 0.25, 0.5, 1.0).inOrder();
+    }
+  }
+
+  @Test
+  public void testAttributeRoundTrip() {
+    Array data = Array.makeFromJavaArray(new double[] {2, 4, 4, 4, 5, 5, 7, 9});
+
+    Attribute standardize = Standardizer.createFromArray(data, DataType.DOUBLE).getAttribute();
+    assertThat(standardize.getShortName()).isEqualTo("standardize");
+    assertThat(standardize.getNumericValue(0).doubleValue()).isWithin(TOLERANCE).of(5.0);
+    assertThat(standardize.getNumericValue(1).doubleValue()).isWithin(TOLERANCE).of(Math.sqrt(32.0 / 7));
+
+    Attribute normalize = Normalizer.createFromArray(data, DataType.DOUBLE).getAttribute();
+    assertThat(normalize.getShortName()).isEqualTo("normalize");
+    assertThat(normalize.getNumericValue(0).doubleValue()).isEqualTo(2.0);
+    assertThat(normalize.getNumericValue(1).doubleValue()).isEqualTo(9.0);
+  }
+}
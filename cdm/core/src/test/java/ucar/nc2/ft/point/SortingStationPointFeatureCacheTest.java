@@ -12,7 +12,9 @@ import java.util.LinkedList;
 import java.util.List;
 import com.google.common.collect.Ordering;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ucar.ma2.DataType;
@@ -29,6 +31,9 @@ import ucar.nc2.time.CalendarDateUnit;
 public class SortingStationPointFeatureCacheTest {
   private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
   @Test
   public void test1() throws Exception {
     StructureMembers.Builder smb = StructureMembers.builder().setName("StationFeature");
@@ -119,4 +124,109 @@ public class SortingStationPointFeatureCacheTest {
       Assert.assertTrue(PointTestUtil.equals(pointIterExpected, pointIterActual));
     }
   }
+
+  @Test
+  public void test3Spilled() throws URISyntaxException, NoFactoryFoundException, IOException {
+    Comparator<StationPointFeature> longestStationNameFirst =
+        (o1, o2) -> -Integer.compare(o1.getStation().getName().length(), o2.getStation().getName().length());
+    File tempDir = tempFolder.newFolder();
+
+    try (SortingStationPointFeatureCache cache = new SortingStationPointFeatureCache(longestStationNameFirst);
+        FeatureDatasetPoint fdInput = PointTestUtil.openPointDataset("cacheTestInput1.ncml");
+        FeatureDatasetPoint fdExpected = PointTestUtil.openPointDataset("cacheTestExpected1.ncml")) {
+      cache.setMemoryLimit(1, tempDir); // every feature is written to its own run
+      cache.addAll(fdInput);
+      Assert.assertTrue(tempDir.list().length > 1);
+
+      PointFeatureIterator pointIterExpected =
+          new FlattenedDatasetPointCollection(fdExpected).getPointFeatureIterator();
+      PointFeatureIterator pointIterActual = cache.getPointFeatureIterator();
+      Assert.assertTrue(PointTestUtil.equals(pointIterExpected, pointIterActual));
+    }
+    Assert.assertEquals(0, tempDir.list().length);
+  }
+
+  @Test
+  public void testSpilledSameAsInMemory() throws Exception {
+    List<StationPointFeature> spfList = makeStationPointFeatures();
+    File tempDir = tempFolder.newFolder();
+    try (SortingStationPointFeatureCache spilled = new SortingStationPointFeatureCache()) {
+      spilled.setMemoryLimit(100 * new StationFeatureCopyFactory(spfList.get(0)).getSizeInBytes(), tempDir);
+      for (StationPointFeature stationPointFeat : spfList) {
+        spilled.add(stationPointFeat);
+      }
+      Assert.assertEquals(10, tempDir.list().length);
+
+      // twice, and closing the first before it is done
+      try (PointFeatureIterator iter = spilled.getPointFeatureIterator()) {
+        Assert.assertTrue(iter.hasNext());
+      }
+      assertSameAsInMemory(spfList, spilled);
+    }
+    Assert.assertEquals(0, tempDir.list().length);
+  }
+
+  @Test
+  public void testManyRunsMergedInPasses() throws Exception {
+    List<StationPointFeature> spfList = makeStationPointFeatures();
+    File tempDir = tempFolder.newFolder();
+    try (SortingStationPointFeatureCache spilled = new SortingStationPointFeatureCache()) {
+      spilled.setMemoryLimit(new StationFeatureCopyFactory(spfList.get(0)).getSizeInBytes(), tempDir);
+      for (StationPointFeature stationPointFeat : spfList) {
+        spilled.add(stationPointFeat); // every feature is written to its own run
+      }
+      Assert.assertEquals(spfList.size(), tempDir.list().length);
+
+      assertSameAsInMemory(spfList, spilled);
+      // 1000 runs were merged into 16 runs of 64
+      Assert.assertEquals(16, tempDir.list().length);
+
+      assertSameAsInMemory(spfList, spilled);
+    }
+    Assert.assertEquals(0, tempDir.list().length);
+  }
+
+  // many features with the same station, and a String member
+  private static List<StationPointFeature> makeStationPointFeatures() {
+    CalendarDateUnit timeUnit = CalendarDateUnit.of(null, "days since 1970-01-01");
+    DsgFeatureCollection dummyDsg = new SimplePointFeatureCC("dummy", timeUnit, "m", FeatureType.STATION);
+    List<StationFeature> stations = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      stations.add(new StationFeatureImpl("stn" + (i * 7) % 20, "desc", null, i, i, 0, 0, null));
+    }
+
+    List<StationPointFeature> spfList = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      StructureMembers.Builder smb = StructureMembers.builder().setName("StationPointFeature");
+      smb.addMemberScalar("obsTime", null, timeUnit.getUdUnit(), DataType.DOUBLE, i);
+      smb.addMemberString("remark", null, null, "remark " + i, 12);
+      StructureData featureData = new StructureDataFromMember(smb.build());
+      spfList.add(new SimpleStationPointFeature(dummyDsg, stations.get((i * 13) % stations.size()), i, i, timeUnit,
+          featureData));
+    }
+    return spfList;
+  }
+
+  private static void assertSameAsInMemory(List<StationPointFeature> spfList, SortingStationPointFeatureCache spilled)
+      throws Exception {
+    SortingStationPointFeatureCache inMemory = new SortingStationPointFeatureCache();
+    for (StationPointFeature stationPointFeat : spfList) {
+      inMemory.add(stationPointFeat);
+    }
+
+    List<String> remarks = new ArrayList<>();
+    try (PointFeatureIterator expected = inMemory.getPointFeatureIterator();
+        PointFeatureIterator actual = spilled.getPointFeatureIterator()) {
+      while (expected.hasNext()) {
+        Assert.assertTrue(actual.hasNext());
+        StationPointFeature want = (StationPointFeature) expected.next();
+        StationPointFeature got = (StationPointFeature) actual.next();
+        Assert.assertTrue(PointTestUtil.equals(want, got));
+        remarks.add(got.getFeatureData().getScalarString("remark"));
+      }
+      Assert.assertFalse(actual.hasNext());
+    }
+    Assert.assertEquals(spfList.size(), remarks.size());
+    Assert.assertEquals("remark 0", remarks.get(0)); // stn0, in the order added
+  }
 }
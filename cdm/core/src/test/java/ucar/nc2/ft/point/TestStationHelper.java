@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.ft.point;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.Test;
+import ucar.unidata.geoloc.LatLonPoint;
+import ucar.unidata.geoloc.LatLonPoints;
+import ucar.unidata.geoloc.LatLonRect;
+
+/** Test the spatial index of {@link StationHelper} against testing every station. */
+public class TestStationHelper {
+  private static final int NSTATIONS = 5000;
+
+  private static List<StationFeature> makeStations() {
+    Random random = new Random(42);
+    List<StationFeature> stations = new ArrayList<>();
+    for (int i = 0; i < NSTATIONS; i++) {
+      double lat;
+      double lon;
+      if (i % 2 == 0) { // clustered, as real networks are
+        lat = 30 + 20 * random.nextDouble();
+        lon = -120 + 40 * random.nextDouble();
+      } else {
+        lat = -90 + 180 * random.nextDouble();
+        lon = -180 + 360 * random.nextDouble();
+      }
+      stations.add(new StationFeatureImpl("stn" + i, "desc", null, lat, lon, 0, 0, null));
+    }
+    // on the edges, and near the dateline and poles, missing
+    stations.add(new StationFeatureImpl("east", "desc", null, 10, 180, 0, 0, null));
+    stations.add(new StationFeatureImpl("west", "desc", null, 10, -180, 0, 0, null));
+    stations.add(new StationFeatureImpl("wrapped", "desc", null, 10, 185, 0, 0, null));
+    stations.add(new StationFeatureImpl("north", "desc", null, 90, 0, 0, 0, null));
+    stations.add(new StationFeatureImpl("south", "desc", null, -89.99, 45, 0, 0, null));
+    stations.add(new StationFeatureImpl("missing", "desc", null, Double.NaN, Double.NaN, 0, 0, null));
+    return stations;
+  }
+
+  // the old way, testing every station
+  private static List<StationFeature> bruteForce(List<StationFeature> stations, LatLonRect bb) {
+    return stations.stream().filter(s -> bb.contains(LatLonPoint.create(s.getLatitude(), s.getLongitude())))
+        .collect(Collectors.toList());
+  }
+
+  private static double distance(LatLonPoint pt, StationFeature s) {
+    double lat0 = Math.toRadians(pt.getLatitude());
+    double lat1 = Math.toRadians(LatLonPoints.latNormal(s.getLatitude()));
+    double dlon = Math.toRadians(s.getLongitude() - pt.getLongitude());
+    double h =
+        Math.pow(Math.sin((lat1 - lat0) / 2), 2) + Math.cos(lat0) * Math.cos(lat1) * Math.pow(Math.sin(dlon / 2), 2);
+    return 2 * Math.asin(Math.min(1.0, Math.sqrt(h)));
+  }
+
+  @Test
+  public void testBoundingBox() {
+    List<StationFeature> stations = makeStations();
+    StationHelper helper = new StationHelper();
+    helper.setStations(stations);
+
+    List<LatLonRect> boxes = new ArrayList<>();
+    boxes.add(new LatLonRect(LatLonPoint.create(30, -110), 10, 20));
+    boxes.add(new LatLonRect(LatLonPoint.create(0, 170), 20, 20)); // crosses the dateline
+    boxes.add(new LatLonRect(LatLonPoint.create(0, -170), 20, -20)); // crosses the dateline the other way
+    boxes.add(new LatLonRect(LatLonPoint.create(-90, -180), 180, 360)); // everything
+    boxes.add(new LatLonRect(LatLonPoint.create(-10, 100), 30, 359)); // almost all longitudes
+    boxes.add(new LatLonRect(LatLonPoint.create(80, 0), 10, 10)); // the pole
+    boxes.add(new LatLonRect(LatLonPoint.create(10, 180), 0, 0)); // a point
+    Random random = new Random(17);
+    for (int i = 0; i < 200; i++) {
+      boxes.add(new LatLonRect(LatLonPoint.create(-90 + 180 * random.nextDouble(), -180 + 360 * random.nextDouble()),
+          60 * random.nextDouble(), 90 * random.nextDouble()));
+    }
+
+    for (LatLonRect bb : boxes) {
+      List<StationFeature> want = bruteForce(stations, bb);
+      assertThat(helper.getStationFeatures(bb)).containsExactlyElementsIn(want).inOrder();
+      assertThat(helper.getStations(bb)).containsExactlyElementsIn(want).inOrder();
+    }
+  }
+
+  @Test
+  public void testStationsChange() {
+    StationHelper helper = new StationHelper();
+    LatLonRect bb = new LatLonRect(LatLonPoint.create(0, 0), 10, 10);
+    assertThat(helper.getStationFeatures(bb)).isEmpty();
+    assertThat(helper.getNearestStations(LatLonPoint.create(0, 0), 3)).isEmpty();
+
+    StationFeature stn = new StationFeatureImpl("stn", "desc", null, 5, 5, 0, 0, null);
+    helper.addStation(stn);
+    assertThat(helper.getStationFeatures(bb)).containsExactly(stn);
+    assertThat(helper.getNearestStations(LatLonPoint.create(0, 0), 3)).containsExactly(stn);
+    assertThat(helper.subset(bb).getStationFeatures()).containsExactly(stn);
+  }
+
+  @Test
+  public void testNearest() {
+    List<StationFeature> stations = makeStations();
+    StationHelper helper = new StationHelper();
+    helper.setStations(stations);
+    List<StationFeature> located = stations.stream().filter(s -> !Double.isNaN(s.getLatitude()))
+        .collect(Collectors.toList());
+
+    List<LatLonPoint> points = new ArrayList<>();
+    points.add(LatLonPoint.create(40, -100)); // in the cluster
+    points.add(LatLonPoint.create(10, 179.9)); // near the dateline
+    points.add(LatLonPoint.create(89.9, -90)); // near the pole
+    points.add(LatLonPoint.create(-60, 0));
+    Random random = new Random(17);
+    for (int i = 0; i < 100; i++) {
+      points.add(LatLonPoint.create(-90 + 180 * random.nextDouble(), -180 + 360 * random.nextDouble()));
+    }
+
+    for (LatLonPoint pt : points) {
+      List<StationFeature> want = located.stream()
+          .sorted(Comparator.comparingDouble((StationFeature s) -> distance(pt, s))).collect(Collectors.toList());
+      for (int n : new int[] {1, 5, 50}) {
+        List<StationFeature> nearest = helper.getNearestStations(pt, n);
+        assertThat(nearest).hasSize(n);
+        for (int i = 0; i < n; i++) {
+          assertThat(distance(pt, nearest.get(i))).isWithin(1.0e-12).of(distance(pt, want.get(i)));
+        }
+      }
+    }
+    assertThat(helper.getNearestStations(LatLonPoint.create(0, 0), 2 * NSTATIONS)).hasSize(located.size());
+  }
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2.internal.iosp.hdf5;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.Array;
+import ucar.ma2.ArrayChar;
+import ucar.ma2.ArrayObject;
+import ucar.ma2.DataType;
+import ucar.ma2.Index;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.Attribute;
+import ucar.nc2.Dimension;
+import ucar.nc2.Group;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import ucar.nc2.Variable;
+import ucar.nc2.write.ChunkAccumulator;
+import ucar.nc2.write.Nc4Chunking;
+import ucar.nc2.write.NetcdfFileFormat;
+import ucar.nc2.write.NetcdfFormatWriter;
+import ucar.unidata.util.test.TestDir;
+
+/**
+ * Test writing netCDF-4 files in pure Java with NetcdfFormatWriter, and reading them back with H5iospNew
+ */
+public class TestH5iospWriter {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  /** 3 along each dimension, compressed and shuffled, for variables of more than one dimension */
+  private static final Nc4Chunking chunker = new Nc4Chunking() {
+    public boolean isChunked(Variable v) {
+      return v.getRank() > 1;
+    }
+
+    public long[] computeChunking(Variable v) {
+      long[] chunks = new long[v.getRank()];
+      Arrays.fill(chunks, 3);
+      return chunks;
+    }
+
+    public int getDeflateLevel(Variable v) {
+      return 1;
+    }
+
+    public boolean isShuffle(Variable v) {
+      return true;
+    }
+  };
+
+  @Test
+  public void testWrite() throws IOException, InvalidRangeException {
+    String location = write(NetcdfFileFormat.NETCDF4);
+    try (NetcdfFile ncfile = NetcdfFiles.open(location)) {
+      assertThat(ncfile.getFileTypeId()).isEqualTo("NetCDF-4");
+      assertThat(ncfile.getIosp()).isInstanceOf(H5iospNew.class);
+    }
+    check(location);
+  }
+
+  @Test
+  public void testWriteClassic() throws IOException, InvalidRangeException {
+    check(write(NetcdfFileFormat.NETCDF4_CLASSIC));
+  }
+
+  @Test
+  public void testWriteConcurrently() throws IOException, InvalidRangeException {
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      ChunkAccumulator.setExecutor(pool, 2);
+      check(write(NetcdfFileFormat.NETCDF4));
+    } finally {
+      ChunkAccumulator.setExecutor(null);
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testManyChunks() throws IOException, InvalidRangeException {
+    // enough chunks for a B-tree of more than one level
+    String location = tempFolder.newFile().getAbsolutePath();
+    NetcdfFormatWriter.Builder builder =
+        NetcdfFormatWriter.createNewNetcdf4(NetcdfFileFormat.NETCDF4, location, null).setUsePureJava(true);
+    builder.addUnlimitedDimension("time");
+    builder.addDimension("x", 2);
+    builder.addVariable("v", DataType.INT, "time x");
+    try (NetcdfFormatWriter writer = builder.build()) {
+      Variable v = writer.findVariable("v");
+      for (int t = 0; t < 5000; t++) {
+        writer.write(v, new int[] {t, 0}, Array.makeArray(DataType.INT, 2, 2 * t, 1).reshape(new int[] {1, 2}));
+      }
+    }
+    try (NetcdfFile ncfile = NetcdfFiles.open(location)) {
+      Variable v = ncfile.findVariable("v");
+      assertThat(v.getShape()).isEqualTo(new int[] {5000, 2});
+      assertThat(v.read().copyTo1DJavaArray()).isEqualTo(Array.makeArray(DataType.INT, 10000, 0, 1).getStorage());
+      assertThat(v.read("4321,1").getInt(0)).isEqualTo(8643);
+    }
+  }
+
+  @Test
+  public void testFlushAndRewrite() throws IOException, InvalidRangeException {
+    String location = tempFolder.newFile().getAbsolutePath();
+    NetcdfFormatWriter.Builder builder =
+        NetcdfFormatWriter.createNewNetcdf4(NetcdfFileFormat.NETCDF4, location, chunker).setUsePureJava(true);
+    builder.addDimension("y", 1);
+    builder.addDimension("x", 5);
+    builder.addVariable("v", DataType.INT, "y x");
+    try (NetcdfFormatWriter writer = builder.build()) {
+      Variable v = writer.findVariable("v");
+      writer.write(v, new int[] {0, 1}, Array.makeArray(DataType.INT, 3, 10, 1).reshape(new int[] {1, 3}));
+      writer.flush();
+      try (NetcdfFile ncfile = NetcdfFiles.open(location)) {
+        assertThat(ncfile.findVariable("v").read().copyTo1DJavaArray())
+            .isEqualTo(new int[] {-2147483647, 10, 11, 12, -2147483647});
+      }
+
+      // rewrite part of a written chunk
+      writer.write(v, new int[] {0, 2}, Array.makeArray(DataType.INT, 1, 20, 1).reshape(new int[] {1, 1}));
+    }
+    try (NetcdfFile ncfile = NetcdfFiles.open(location)) {
+      assertThat(ncfile.findVariable("v").read().copyTo1DJavaArray())
+          .isEqualTo(new int[] {-2147483647, 10, 20, 12, -2147483647});
+    }
+  }
+
+  @Test
+  public void testChecksum() throws IOException {
+    // superblock of a file written by the netCDF-C library
+    byte[] file = Files.readAllBytes(Paths.get(TestDir.cdmLocalTestDataDir, "hdf5/test_enum_type.nc"));
+    byte[] superblock = Arrays.copyOf(file, 48);
+    int checksum = ByteBuffer.wrap(superblock, 44, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+    assertThat(H5headerWriter.lookup3(superblock, 0, 44)).isEqualTo(checksum);
+  }
+
+  /**
+   * Write a file with a record variable, written a record at a time, and a nested group
+   */
+  private String write(NetcdfFileFormat format) throws IOException, InvalidRangeException {
+    boolean classic = format == NetcdfFileFormat.NETCDF4_CLASSIC;
+    String location = tempFolder.newFile().getAbsolutePath();
+    NetcdfFormatWriter.Builder builder =
+        NetcdfFormatWriter.createNewNetcdf4(format, location, chunker).setUsePureJava(true);
+    builder.addAttribute(new Attribute("title", "writer test"));
+    builder.addAttribute(Attribute.builder("levels").setValues(Arrays.asList(1, 2, 3), false).build());
+    builder.addUnlimitedDimension("time");
+    builder.addDimension("y", 4);
+    builder.addDimension("x", 5);
+    builder.addDimension("strlen", 6);
+    builder.addVariable("time", DataType.DOUBLE, "time").addAttribute(new Attribute("units", "days since 2000-01-01"));
+    builder.addVariable("data", DataType.FLOAT, "time y x").addAttribute(new Attribute("_FillValue", -99f))
+        .addAttribute(new Attribute("units", "K")).addAttribute(new Attribute(H5iospWriter.FLETCHER32, "true"));
+    builder.addVariable("counts", DataType.SHORT, "y x");
+    // a variable with the name of a dimension, that is not its coordinate variable
+    builder.addVariable("x", DataType.INT, "y");
+    builder.addVariable("names", DataType.CHAR, "y strlen");
+    if (!classic) {
+      builder.getRootGroup().addAttribute(Attribute.builder("keywords").setValues(Arrays.asList("a", "b"), false)
+          .build());
+      builder.addVariable("labels", DataType.STRING, "x");
+    }
+    Group.Builder nested = Group.builder().setName("nested").addAttribute(new Attribute("level", 2));
+    nested.addDimension(new Dimension("z", 7));
+    builder.getRootGroup().addGroup(nested);
+    nested.addVariable(Variable.builder().setName("z").setDataType(DataType.DOUBLE).setParentGroupBuilder(nested)
+        .setDimensionsByName("z"));
+    nested.addVariable(Variable.builder().setName("yz").setDataType(DataType.USHORT).setParentGroupBuilder(nested)
+        .setDimensionsByName("y z"));
+
+    try (NetcdfFormatWriter writer = builder.build()) {
+      Variable data = writer.findVariable("data");
+      Variable time = writer.findVariable("time");
+      for (int t = 0; t < 9; t++) {
+        Array record = Array.factory(DataType.FLOAT, new int[] {1, 4, 5});
+        Index index = record.getIndex();
+        for (int j = 0; j < 4; j++) {
+          for (int i = 0; i < 5; i++) {
+            record.setFloat(index.set(0, j, i), t < 4 ? value(t, j, i) : -99f);
+          }
+        }
+        writer.write(data, new int[] {t, 0, 0}, record);
+        writer.write(time, new int[] {t}, Array.makeArray(DataType.DOUBLE, 1, t, 0));
+      }
+
+      // in pieces
+      Variable counts = writer.findVariable("counts");
+      Array counts1 = Array.factory(DataType.SHORT, new int[] {4, 2});
+      Array counts2 = Array.factory(DataType.SHORT, new int[] {4, 3});
+      for (int j = 0; j < 4; j++) {
+        for (int i = 0; i < 5; i++) {
+          Array part = i < 2 ? counts1 : counts2;
+          part.setShort(part.getIndex().set(j, i < 2 ? i : i - 2), (short) (j * 5 + i));
+        }
+      }
+      writer.write(counts, new int[] {0, 2}, counts2);
+      writer.write(counts, new int[] {0, 0}, counts1);
+
+      writer.write(writer.findVariable("x"), Array.makeArray(DataType.INT, 4, 100, 1));
+      ArrayObject names = new ArrayObject(DataType.STRING, String.class, false, new int[] {4});
+      for (int j = 0; j < 4; j++) {
+        names.setObject(j, "name" + j);
+      }
+      writer.writeStringDataToChar(writer.findVariable("names"), names);
+      if (!classic) {
+        ArrayObject labels = new ArrayObject(DataType.STRING, String.class, false, new int[] {5});
+        for (int i = 0; i < 5; i++) {
+          labels.setObject(i, i == 2 ? "" : "label é" + i);
+        }
+        writer.write(writer.findVariable("labels"), labels);
+      }
+
+      writer.write(writer.findVariable("nested/z"), Array.makeArray(DataType.DOUBLE, 7, 0.5, 1));
+      Array yz = Array.factory(DataType.USHORT, new int[] {4, 7});
+      for (int k = 0; k < 28; k++) {
+        yz.setShort(k, (short) (65535 - k));
+      }
+      writer.write(writer.findVariable("nested/yz"), yz);
+    }
+    return location;
+  }
+
+  private static float value(int t, int j, int i) {
+    return t * 100 + j * 10 + i + 0.25f;
+  }
+
+  private static void check(String location) throws IOException, InvalidRangeException {
+    try (NetcdfFile ncfile = NetcdfFiles.open(location)) {
+      Group root = ncfile.getRootGroup();
+      assertThat(root.findAttributeString("title", "")).isEqualTo("writer test");
+      assertThat(root.findAttribute("levels").getLength()).isEqualTo(3);
+      assertThat(root.findAttribute("levels").getNumericValue(2).intValue()).isEqualTo(3);
+      assertThat(root.findDimension("time").isUnlimited()).isTrue();
+      assertThat(root.findDimension("time").getLength()).isEqualTo(9);
+      assertThat(root.findDimension("x").getLength()).isEqualTo(5);
+
+      Variable data = ncfile.findVariable("data");
+      assertThat(data.getDataType()).isEqualTo(DataType.FLOAT);
+      assertThat(data.getShape()).isEqualTo(new int[] {9, 4, 5});
+      assertThat(data.getDimension(1).getShortName()).isEqualTo("y");
+      assertThat(data.findAttributeString("units", "")).isEqualTo("K");
+      assertThat(data.findAttribute("_FillValue").getNumericValue().floatValue()).isEqualTo(-99f);
+      Array values = data.read();
+      Index index = values.getIndex();
+      for (int t = 0; t < 9; t++) {
+        for (int j = 0; j < 4; j++) {
+          for (int i = 0; i < 5; i++) {
+            float expected = t < 4 ? value(t, j, i) : -99f;
+            assertThat(values.getFloat(index.set(t, j, i))).isEqualTo(expected);
+          }
+        }
+      }
+      Array subset = data.read("1:3,1,0:4:2");
+      assertThat(subset.getFloat(subset.getIndex().set(1, 0, 2))).isEqualTo(value(2, 1, 4));
+      assertThat(ncfile.findVariable("time").read().getDouble(8)).isEqualTo(8.0);
+
+      Array counts = ncfile.findVariable("counts").read();
+      index = counts.getIndex();
+      for (int j = 0; j < 4; j++) {
+        for (int i = 0; i < 5; i++) {
+          assertThat(counts.getShort(index.set(j, i))).isEqualTo((short) (j * 5 + i));
+        }
+      }
+
+      Variable x = ncfile.findVariable("x");
+      assertThat(x.getShape()).isEqualTo(new int[] {4});
+      assertThat(x.getDimension(0).getShortName()).isEqualTo("y");
+      assertThat(x.read().getInt(3)).isEqualTo(103);
+
+      Variable names = ncfile.findVariable("names");
+      assertThat(names.getDataType()).isEqualTo(DataType.CHAR);
+      assertThat(((ArrayChar) names.read()).getString(3)).isEqualTo("name3");
+
+      Variable labels = ncfile.findVariable("labels");
+      if (labels != null) {
+        assertThat(labels.getDataType()).isEqualTo(DataType.STRING);
+        assertThat(labels.getDimension(0).getShortName()).isEqualTo("x");
+        Array labelValues = labels.read();
+        assertThat(labelValues.getObject(1)).isEqualTo("label é1");
+        assertThat(labelValues.getObject(2)).isEqualTo("");
+        assertThat(root.findAttribute("keywords").getStringValue(1)).isEqualTo("b");
+      }
+
+      Group nested = ncfile.findGroup("nested");
+      assertThat(nested.findAttribute("level").getNumericValue().intValue()).isEqualTo(2);
+      assertThat(ncfile.findVariable("nested/z").read().getDouble(6)).isEqualTo(6.5);
+      Variable yz = ncfile.findVariable("nested/yz");
+      assertThat(yz.getDataType()).isEqualTo(DataType.USHORT);
+      assertThat(yz.getDimension(0).getShortName()).isEqualTo("y");
+      assertThat(yz.getDimension(1).getShortName()).isEqualTo("z");
+      assertThat(yz.read().getInt(27) & 0xffff).isEqualTo(65535 - 27);
+    }
+  }
+}
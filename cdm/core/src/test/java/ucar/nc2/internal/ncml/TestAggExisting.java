@@ -7,6 +7,8 @@ package ucar.nc2.internal.ncml;
 import static com.google.common.truth.Truth.assertThat;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -64,6 +66,26 @@ public class TestAggExisting {
     ncfile.close();
   }
 
+  @Test
+  public void testNcmlDatasetConcurrently() throws IOException, InvalidRangeException {
+    String filename = "file:./" + TestNcmlRead.topDir + "aggExisting.xml";
+
+    ExecutorService pool = Executors.newFixedThreadPool(2);
+    int maxPendingReads = Aggregation.maxPendingReads;
+    try {
+      Aggregation.setExecutor(pool, 2);
+      try (NetcdfFile ncfile = NetcdfDatasets.openDataset(filename, true, null)) {
+        testReadData(ncfile);
+        testReadSlice(ncfile);
+        // a time series across all the nested datasets
+        testReadSlice(ncfile, new int[] {0, 0, 0}, new int[] {59, 1, 1});
+      }
+    } finally {
+      Aggregation.setExecutor(null, maxPendingReads);
+      pool.shutdown();
+    }
+  }
+
   @Test
   public void testNcmlDatasetNoProtocolInFilename() throws IOException, InvalidRangeException {
     String filename = "./" + TestNcmlRead.topDir + "aggExisting.xml";
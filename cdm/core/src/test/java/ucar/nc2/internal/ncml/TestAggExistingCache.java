@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.internal.ncml;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.Array;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Variable;
+import ucar.nc2.ncml.TestNcmlRead;
+import ucar.nc2.util.DiskCache2;
+
+/** Test the persistent cache of a joinExisting aggregation. */
+public class TestAggExistingCache {
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private File dataDir;
+  private File cacheDir;
+
+  @Before
+  public void setup() throws IOException {
+    dataDir = tempFolder.newFolder("data");
+    for (String name : new String[] {"jan.nc", "feb.nc"}) {
+      Files.copy(new File(TestNcmlRead.topDir + "nc/" + name).toPath(), new File(dataDir, name).toPath(),
+          StandardCopyOption.REPLACE_EXISTING);
+    }
+    cacheDir = tempFolder.newFolder("cache");
+    Aggregation.setPersistenceCache(new DiskCache2(cacheDir.getPath(), false, 0, 0));
+  }
+
+  @After
+  public void cleanup() {
+    Aggregation.setPersistenceCache(null);
+  }
+
+  private String ncml() {
+    return "<?xml version='1.0' encoding='UTF-8'?>\n"
+        + "<netcdf xmlns='http://www.unidata.ucar.edu/namespaces/netcdf/ncml-2.2'>\n"
+        + "  <aggregation dimName='time' type='joinExisting'>\n" + "    <scan location='" + dataDir.getPath()
+        + "' suffix='.nc' />\n" + "  </aggregation>\n" + "</netcdf>";
+  }
+
+  private Array openAndReadTime() throws IOException {
+    String location = "file:" + new File(tempFolder.getRoot(), "aggCache.ncml").getPath();
+    try (NetcdfFile ncfile = NcmlReader.readNcml(new StringReader(ncml()), location, null).build()) {
+      Variable time = ncfile.findVariable("time");
+      assertThat((Object) time).isNotNull();
+      assertThat(time.getSize()).isEqualTo(59);
+      return time.read();
+    }
+  }
+
+  @Test
+  public void testCacheIsUsed() throws IOException {
+    AggregationExisting.countCacheUse = 0;
+    Array first = openAndReadTime();
+    assertThat(AggregationExisting.countCacheUse).isEqualTo(0);
+
+    AggregationExisting.countCacheUse = 0;
+    Array second = openAndReadTime();
+    int allCached = AggregationExisting.countCacheUse;
+    assertThat(allCached).isGreaterThan(0);
+    assertThat(second.getSize()).isEqualTo(first.getSize());
+    for (int i = 0; i < first.getSize(); i++) {
+      assertThat(second.getDouble(i)).isEqualTo(first.getDouble(i));
+    }
+  }
+
+  @Test
+  public void testOnlyChangedDatasetsAreRescanned() throws IOException {
+    openAndReadTime();
+    AggregationExisting.countCacheUse = 0;
+    openAndReadTime();
+    int allCached = AggregationExisting.countCacheUse;
+
+    // a changed dataset is rescanned, the other still comes from the cache
+    File feb = new File(dataDir, "feb.nc");
+    assertThat(feb.setLastModified(feb.lastModified() + 60 * 1000)).isTrue();
+    AggregationExisting.countCacheUse = 0;
+    openAndReadTime();
+    assertThat(AggregationExisting.countCacheUse).isEqualTo(allCached / 2);
+
+    // the cache was updated with the rescanned dataset
+    AggregationExisting.countCacheUse = 0;
+    openAndReadTime();
+    assertThat(AggregationExisting.countCacheUse).isEqualTo(allCached);
+  }
+
+  @Test
+  public void testOldCacheFormatIsIgnored() throws IOException {
+    File cacheFile = new File(cacheDir, "old.xml");
+    Files.write(cacheFile.toPath(),
+        "<?xml version='1.0' encoding='UTF-8'?>\n<aggregation version='3' type='joinExisting' />\n".getBytes());
+    Map<String, AggCoordinateCache.Entry> entries = AggCoordinateCache.read(cacheFile, "joinExisting", "time");
+    assertThat(entries).isEmpty();
+  }
+}
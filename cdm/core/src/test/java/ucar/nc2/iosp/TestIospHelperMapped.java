@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.iosp;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.DataType;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.Section;
+import ucar.unidata.io.MMapRandomAccessFile;
+import ucar.unidata.io.RandomAccessFile;
+
+/** Test that IospHelper copies chunks longer than one slice out of a file mapping in pieces. */
+public class TestIospHelperMapped {
+  private static final int[] shape = {20, 300};
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Test
+  public void testChunkLongerThanSlice() throws IOException, InvalidRangeException {
+    int nelems = shape[0] * shape[1];
+    ByteBuffer bb = ByteBuffer.allocate(16 + 8 * nelems);
+    bb.position(16);
+    for (int i = 0; i < nelems; i++) {
+      bb.putDouble(i * 0.5);
+    }
+    File file = tempFolder.newFile();
+    Files.write(file.toPath(), bb.array());
+
+    for (DataType dataType : new DataType[] {DataType.DOUBLE, DataType.INT, DataType.SHORT, DataType.BYTE}) {
+      int elemSize = dataType.getSize();
+      int[] varShape = {shape[0], shape[1] * 8 / elemSize};
+      for (Section wanted : new Section[] {new Section(varShape), new Section("2:17,10:" + (varShape[1] - 11))}) {
+        // pieces of 1000 bytes, which do not divide the chunks, and of less than one element
+        for (int maxCopyBytes : new int[] {1000, 1}) {
+          Object expected;
+          try (RandomAccessFile raf = new RandomAccessFile(file.getPath(), "r")) {
+            expected = IospHelper.readDataFill(raf, new LayoutRegular(16, elemSize, varShape, wanted), dataType,
+                null, RandomAccessFile.BIG_ENDIAN);
+          }
+          Object actual = IospHelper.makePrimitiveArray((int) wanted.computeSize(), dataType);
+          try (MMapRandomAccessFile raf = new MMapRandomAccessFile(file.getPath())) {
+            IospHelper.readMapped(raf, new LayoutRegular(16, elemSize, varShape, wanted), dataType, actual,
+                RandomAccessFile.BIG_ENDIAN, maxCopyBytes);
+          }
+          assertThat(actual).isEqualTo(expected);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.iosp;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.Section;
+import ucar.nc2.filter.Deflate;
+import ucar.nc2.filter.Filter;
+
+/** Test {@link LayoutBBTiled}, with and without concurrent chunk processing. */
+public class TestLayoutBBTiled {
+  private static final int[] shape = {40, 30};
+  private static final int[] chunkShape = {10, 10};
+
+  private final Filter deflate = new Deflate(new HashMap<>());
+
+  @After
+  public void resetExecutor() {
+    LayoutBBTiled.setExecutor(null);
+  }
+
+  @Test
+  public void testSerial() throws Exception {
+    checkSection(new Section(shape));
+    checkSection(new Section("3:27,5:22"));
+  }
+
+  @Test
+  public void testConcurrent() throws Exception {
+    ExecutorService exec = Executors.newFixedThreadPool(4);
+    try {
+      LayoutBBTiled.setExecutor(exec, 3);
+      checkSection(new Section(shape));
+      checkSection(new Section("3:27,5:22"));
+      checkSection(new Section("0:39:7,11:12"));
+    } finally {
+      exec.shutdown();
+    }
+  }
+
+  @Test
+  public void testReadsInOrderOnCallingThread() throws Exception {
+    ExecutorService exec = Executors.newFixedThreadPool(4);
+    try {
+      LayoutBBTiled.setExecutor(exec, 2);
+      Thread caller = Thread.currentThread();
+      AtomicInteger lastRead = new AtomicInteger(-1);
+      List<DeflatedChunk> chunks = makeChunks();
+      for (DeflatedChunk chunk : chunks) {
+        chunk.onRead = () -> {
+          assertThat(Thread.currentThread()).isSameInstanceAs(caller);
+          assertThat(lastRead.getAndSet(chunk.order)).isEqualTo(chunk.order - 1);
+        };
+      }
+      read(chunks, new Section(shape));
+      assertThat(lastRead.get()).isEqualTo(chunks.size() - 1);
+    } finally {
+      exec.shutdown();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadReadAhead() {
+    LayoutBBTiled.setExecutor(Executors.newSingleThreadExecutor(), 0);
+  }
+
+  private void checkSection(Section want) throws IOException, InvalidRangeException {
+    int[] result = read(makeChunks(), want);
+    assertThat(result.length).isEqualTo((int) want.computeSize());
+
+    int count = 0;
+    for (int row : want.getRange(0)) {
+      for (int col : want.getRange(1)) {
+        assertThat(result[count++]).isEqualTo(value(row, col));
+      }
+    }
+  }
+
+  private int[] read(List<DeflatedChunk> chunks, Section want) {
+    Iterator<DeflatedChunk> iter = chunks.iterator();
+    LayoutBBTiled.DataChunkIterator chunkIterator = new LayoutBBTiled.DataChunkIterator() {
+      public boolean hasNext() {
+        return iter.hasNext();
+      }
+
+      public LayoutBBTiled.DataChunk next() {
+        return iter.next();
+      }
+    };
+
+    LayoutBBTiled layout = new LayoutBBTiled(chunkIterator, chunkShape, 4, want);
+    int[] result = new int[(int) layout.getTotalNelems()];
+    while (layout.hasNext()) {
+      LayoutBB.Chunk chunk = layout.next();
+      IntBuffer ib = chunk.getIntBuffer();
+      for (int i = 0; i < chunk.getNelems(); i++) {
+        result[(int) chunk.getDestElem() + i] = ib.get(chunk.getSrcElem() + i);
+      }
+    }
+    return result;
+  }
+
+  private List<DeflatedChunk> makeChunks() throws IOException {
+    List<DeflatedChunk> chunks = new ArrayList<>();
+    for (int row = 0; row < shape[0]; row += chunkShape[0]) {
+      for (int col = 0; col < shape[1]; col += chunkShape[1]) {
+        ByteBuffer bb = ByteBuffer.allocate(chunkShape[0] * chunkShape[1] * 4);
+        for (int i = 0; i < chunkShape[0]; i++) {
+          for (int j = 0; j < chunkShape[1]; j++) {
+            bb.putInt(value(row + i, col + j));
+          }
+        }
+        chunks.add(new DeflatedChunk(new int[] {row, col}, deflate.encode(bb.array()), chunks.size()));
+      }
+    }
+    return chunks;
+  }
+
+  private static int value(int row, int col) {
+    return row * 1000 + col;
+  }
+
+  private class DeflatedChunk implements LayoutBBTiled.FilteredDataChunk {
+    final int[] offset;
+    final byte[] compressed;
+    final int order;
+    Runnable onRead = () -> {
+    };
+
+    DeflatedChunk(int[] offset, byte[] compressed, int order) {
+      this.offset = offset;
+      this.compressed = compressed;
+      this.order = order;
+    }
+
+    public int[] getOffset() {
+      return offset;
+    }
+
+    public ByteBuffer getByteBuffer() throws IOException {
+      return decode(readRawBytes());
+    }
+
+    public byte[] readRawBytes() {
+      onRead.run();
+      return compressed;
+    }
+
+    public ByteBuffer decode(byte[] rawBytes) throws IOException {
+      return ByteBuffer.wrap(deflate.decode(rawBytes));
+    }
+  }
+}
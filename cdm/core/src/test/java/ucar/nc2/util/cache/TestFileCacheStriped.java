@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.util.cache;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.AfterClass;
+import org.junit.Test;
+import ucar.nc2.dataset.DatasetUrl;
+import ucar.nc2.util.CancelTask;
+
+/** Test {@link FileCacheStriped} */
+public class TestFileCacheStriped {
+  private final AtomicInteger opened = new AtomicInteger();
+  private final FileFactory factory = new FileFactory() {
+    public FileCacheable open(DatasetUrl location, int buffer_size, CancelTask cancelTask, Object iospMessage) {
+      opened.incrementAndGet();
+      return new MockFile(location.trueurl);
+    }
+  };
+
+  @AfterClass
+  public static void shutdown() {
+    FileCacheStriped.shutdown();
+  }
+
+  @Test
+  public void testAcquireRelease() throws IOException {
+    FileCacheStriped cache = new FileCacheStriped("test", 0, 100, -1, -1);
+    MockFile file1 = acquire(cache, "a");
+    MockFile file2 = acquire(cache, "a"); // first one is in use
+    assertThat(file2).isNotSameInstanceAs(file1);
+    assertThat(cache.getMisses()).isEqualTo(2);
+
+    file1.close();
+    assertThat(file1.closed).isFalse();
+    assertThat(file1.released).isEqualTo(1);
+    assertThat(acquire(cache, "a")).isSameInstanceAs(file1);
+    assertThat(file1.reacquired).isEqualTo(1);
+    assertThat(cache.getHits()).isEqualTo(1);
+    assertThat(cache.size()).isEqualTo(2);
+    assertThat(opened.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void testChangedFileIsReopened() throws IOException {
+    FileCacheStriped cache = new FileCacheStriped("test", 0, 100, -1, -1);
+    MockFile file = acquire(cache, "a");
+    file.close();
+    file.lastModified = 42;
+    MockFile again = acquire(cache, "a");
+    assertThat(again).isNotSameInstanceAs(file);
+    assertThat(file.closed).isTrue();
+    assertThat(cache.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void testHardLimitEvictsLeastRecentlyUsed() throws Exception {
+    FileCacheStriped cache = new FileCacheStriped("test", 2, 100, 3, -1);
+    List<MockFile> files = new ArrayList<>();
+    for (String key : new String[] {"a", "b", "c"}) {
+      MockFile file = acquire(cache, key);
+      files.add(file);
+      Thread.sleep(2); // distinct lastAccessed
+      file.close();
+    }
+    MockFile inUse = acquire(cache, "d"); // over the hard limit: evict down to 2, oldest first
+    assertThat(cache.size()).isEqualTo(2);
+    assertThat(cache.getEvictions()).isEqualTo(2);
+    assertThat(files.get(0).closed).isTrue();
+    assertThat(files.get(1).closed).isTrue();
+    assertThat(files.get(2).closed).isFalse();
+    assertThat(inUse.closed).isFalse();
+
+    // an in use file is never removed, unless forced
+    cache.clearCache(false);
+    assertThat(cache.size()).isEqualTo(1);
+    assertThat(inUse.closed).isFalse();
+  }
+
+  @Test
+  public void testEjectAndClear() throws IOException {
+    FileCacheStriped cache = new FileCacheStriped("test", 0, 100, -1, -1);
+    MockFile a1 = acquire(cache, "a");
+    MockFile a2 = acquire(cache, "a");
+    a2.close();
+    MockFile b = acquire(cache, "b");
+    MockFile c = acquire(cache, "c");
+    c.close();
+
+    cache.eject("a");
+    assertThat(a1.closed).isTrue();
+    assertThat(a2.closed).isTrue();
+    assertThat(cache.size()).isEqualTo(2);
+
+    cache.clearCache(false);
+    assertThat(c.closed).isTrue();
+    assertThat(b.closed).isFalse();
+    assertThat(cache.size()).isEqualTo(1);
+
+    cache.clearCache(true);
+    assertThat(b.closed).isTrue();
+    assertThat(cache.size()).isEqualTo(0);
+  }
+
+  @Test
+  public void testConcurrentAccess() throws Exception {
+    FileCacheStriped cache = new FileCacheStriped("test", 5, 10, -1, 1);
+    ExecutorService pool = Executors.newFixedThreadPool(16);
+    try {
+      List<Future<?>> results = new ArrayList<>();
+      for (int t = 0; t < 16; t++) {
+        int seed = t;
+        results.add(pool.submit(() -> {
+          Random random = new Random(seed);
+          for (int i = 0; i < 2000; i++) {
+            MockFile file = acquire(cache, "file" + random.nextInt(20));
+            assertThat(file.inUse.compareAndSet(false, true)).isTrue();
+            assertThat(file.closed).isFalse();
+            file.inUse.set(false);
+            file.close();
+          }
+          return null;
+        }));
+      }
+      for (Future<?> result : results) {
+        result.get(60, TimeUnit.SECONDS);
+      }
+    } finally {
+      pool.shutdown();
+    }
+    assertThat(cache.getHits() + cache.getMisses()).isEqualTo(16 * 2000);
+    assertThat(cache.getMisses()).isEqualTo(opened.get());
+
+    cache.clearCache(false);
+    assertThat(cache.size()).isEqualTo(0);
+  }
+
+  private MockFile acquire(FileCacheIF cache, String location) throws IOException {
+    return (MockFile) cache.acquire(factory, DatasetUrl.create(null, location));
+  }
+
+  private static class MockFile implements FileCacheable {
+    final String location;
+    final AtomicBoolean inUse = new AtomicBoolean();
+    volatile long lastModified;
+    volatile boolean closed;
+    volatile FileCacheIF cache;
+    int released, reacquired;
+
+    MockFile(String location) {
+      this.location = location;
+    }
+
+    public String getLocation() {
+      return location;
+    }
+
+    public synchronized void close() throws IOException {
+      if (cache != null && cache.release(this)) {
+        return;
+      }
+      closed = true;
+    }
+
+    public long getLastModified() {
+      return lastModified;
+    }
+
+    public void setFileCache(FileCacheIF fileCache) {
+      this.cache = fileCache;
+    }
+
+    public synchronized void release() {
+      released++;
+    }
+
+    public synchronized void reacquire() {
+      reacquired++;
+    }
+  }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.unidata.io;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Formatter;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import ucar.nc2.util.CompareNetcdf2;
+import ucar.nc2.util.DiskCache;
+import ucar.nc2.write.NetcdfFormatWriter;
+import ucar.unidata.util.test.TestDir;
+
+/** Test {@link CompressedRandomAccessFile} and reading compressed files in place with {@link NetcdfFiles} */
+public class TestCompressedRandomAccessFile {
+  private static final int SPAN = 64 * 1024;
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @After
+  public void restoreDefaults() {
+    CompressedRandomAccessFile.setSpan(4 * 1024 * 1024);
+    NetcdfFiles.setCompressedSeekThreshold(-1);
+  }
+
+  // random bytes, runs of repeated text, and zeros, so that there are stored, fixed and dynamic deflate blocks
+  private static byte[] makeData(int size) {
+    Random random = new Random(42);
+    ByteArrayOutputStream bos = new ByteArrayOutputStream(size);
+    while (bos.size() < size) {
+      int len = 1 + random.nextInt(50 * 1000);
+      switch (random.nextInt(3)) {
+        case 0:
+          byte[] bytes = new byte[len];
+          random.nextBytes(bytes);
+          bos.write(bytes, 0, len);
+          break;
+        case 1:
+          for (int i = 0; i < len / 20; i++) {
+            byte[] line = String.format("line %d %d%n", i, random.nextInt(100)).getBytes(StandardCharsets.UTF_8);
+            bos.write(line, 0, line.length);
+          }
+          break;
+        default:
+          bos.write(new byte[len], 0, len);
+      }
+    }
+    return Arrays.copyOf(bos.toByteArray(), size);
+  }
+
+  // several gzip members, with different compression levels
+  private File writeGzip(byte[] data, int nmembers) throws IOException {
+    File file = new File(tempFolder.getRoot(), "data.gz");
+    int size = data.length / nmembers;
+    try (OutputStream out = new FileOutputStream(file)) {
+      for (int i = 0; i < nmembers; i++) {
+        int level = (i == 1) ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION;
+        int end = (i == nmembers - 1) ? data.length : (i + 1) * size;
+        GZIPOutputStream gzip = new GZIPOutputStream(out) {
+          {
+            def.setLevel(level);
+          }
+
+          @Override
+          public void close() throws IOException {
+            finish(); // leave the file open for the next member
+          }
+        };
+        gzip.write(data, i * size, end - i * size);
+        gzip.close();
+      }
+    }
+    return file;
+  }
+
+  private File writeZip(byte[] data, int method) throws IOException {
+    File file = new File(tempFolder.getRoot(), "data.zip");
+    try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file))) {
+      ZipEntry entry = new ZipEntry("data");
+      entry.setMethod(method);
+      if (method == ZipEntry.STORED) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        entry.setSize(data.length);
+        entry.setCrc(crc.getValue());
+      }
+      zip.putNextEntry(entry);
+      zip.write(data);
+      zip.closeEntry();
+      zip.putNextEntry(new ZipEntry("other"));
+      zip.write(makeData(1000));
+      zip.closeEntry();
+    }
+    return file;
+  }
+
+  private static void checkReads(RandomAccessFile raf, byte[] data) throws IOException {
+    assertThat(raf.length()).isEqualTo(data.length);
+    assertThat(raf.readBytes(data.length)).isEqualTo(data);
+
+    Random random = new Random(17);
+    byte[] buff = new byte[3 * SPAN];
+    for (int i = 0; i < 300; i++) {
+      int pos = random.nextInt(data.length);
+      int len = Math.min(random.nextInt(buff.length), data.length - pos);
+      raf.seek(pos);
+      raf.readFully(buff, 0, len);
+      assertThat(Arrays.copyOfRange(buff, 0, len)).isEqualTo(Arrays.copyOfRange(data, pos, pos + len));
+    }
+    raf.seek(data.length);
+    assertThat(raf.read()).isEqualTo(-1);
+  }
+
+  @Test
+  public void testGzip() throws IOException {
+    CompressedRandomAccessFile.setSpan(SPAN);
+    byte[] data = makeData(3 * 1000 * 1000 + 17);
+    File file = writeGzip(data, 3);
+    File indexFile = new File(tempFolder.getRoot(), "data.gz" + CompressedRandomAccessFile.INDEX_SUFFIX);
+
+    try (CompressedRandomAccessFile raf = new CompressedRandomAccessFile(file.getPath(), indexFile, 1000)) {
+      assertThat(raf.getNumberOfSeekPoints()).isGreaterThan(10);
+      checkReads(raf, data);
+    }
+    assertThat(indexFile.exists()).isTrue();
+
+    // the index is used, not rewritten
+    long written = indexFile.lastModified() - 10000;
+    assertThat(indexFile.setLastModified(written)).isTrue();
+    try (CompressedRandomAccessFile raf = new CompressedRandomAccessFile(file.getPath(), indexFile, -1)) {
+      checkReads(raf, data);
+    }
+    assertThat(indexFile.lastModified()).isEqualTo(written);
+
+    // a changed file is indexed again
+    assertThat(file.setLastModified(file.lastModified() + 60 * 1000)).isTrue();
+    try (CompressedRandomAccessFile raf = new CompressedRandomAccessFile(file.getPath(), indexFile, -1)) {
+      checkReads(raf, data);
+    }
+    assertThat(indexFile.lastModified()).isNotEqualTo(written);
+  }
+
+  @Test
+  public void testBzip2() throws IOException {
+    // made with "bzip2 -1", which makes a block for each 100K
+    String filename = TestDir.cdmLocalTestDataDir + "compressed/lines.txt.bz2";
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 30000; i++) {
+      sb.append(String.format("line %04d of the test data%n", i / 300));
+    }
+    byte[] data = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+    try (CompressedRandomAccessFile raf = new CompressedRandomAccessFile(filename, null, 1000)) {
+      assertThat(raf.getNumberOfSeekPoints()).isAtLeast(8);
+      checkReads(raf, data);
+    }
+  }
+
+  @Test
+  public void testZip() throws IOException {
+    CompressedRandomAccessFile.setSpan(SPAN);
+    byte[] data = makeData(1000 * 1000 + 17);
+    File indexFile = new File(tempFolder.getRoot(), "data.zip" + CompressedRandomAccessFile.INDEX_SUFFIX);
+
+    File file = writeZip(data, ZipEntry.DEFLATED);
+    try (CompressedRandomAccessFile raf = new CompressedRandomAccessFile(file.getPath(), indexFile, 1000)) {
+      assertThat(raf.getNumberOfSeekPoints()).isGreaterThan(5);
+      checkReads(raf, data);
+    }
+    try (CompressedRandomAccessFile raf = new CompressedRandomAccessFile(file.getPath(), indexFile, 1000)) {
+      checkReads(raf, data);
+    }
+
+    file = writeZip(data, ZipEntry.STORED);
+    assertThat(file.setLastModified(file.lastModified() + 60 * 1000)).isTrue();
+    try (CompressedRandomAccessFile raf = new CompressedRandomAccessFile(file.getPath(), indexFile, 1000)) {
+      assertThat(raf.getNumberOfSeekPoints()).isEqualTo(data.length / SPAN + 1);
+      checkReads(raf, data);
+    }
+    try (CompressedRandomAccessFile raf = new CompressedRandomAccessFile(file.getPath(), indexFile, 1000)) {
+      checkReads(raf, data);
+    }
+  }
+
+  @Test
+  public void testNotCompressed() throws IOException {
+    File file = tempFolder.newFile("plain.gz");
+    Files.write(file.toPath(), makeData(1000));
+    try (CompressedRandomAccessFile raf = new CompressedRandomAccessFile(file.getPath(), null, -1)) {
+      throw new AssertionError("opened " + raf.getLocation());
+    } catch (IOException e) {
+      assertThat(e.getMessage()).contains("Not a gzip, bzip2 or zip file");
+    }
+  }
+
+  @Test
+  public void testNetcdfFiles() throws IOException, InvalidRangeException {
+    String filename = tempFolder.newFile("data.nc").getPath();
+    NetcdfFormatWriter.Builder writerb = NetcdfFormatWriter.createNewNetcdf3(filename).setFill(false);
+    writerb.addDimension("time", 100);
+    writerb.addDimension("x", 1000);
+    writerb.addVariable("temp", DataType.DOUBLE, "time x");
+    writerb.addVariable("id", DataType.INT, "time");
+    try (NetcdfFormatWriter writer = writerb.build()) {
+      writer.write("temp", Array.makeArray(DataType.DOUBLE, 100 * 1000, 0.0, 0.5).reshape(new int[] {100, 1000}));
+      writer.write("id", Array.makeArray(DataType.INT, 100, 7, 3));
+    }
+    String gzname = writeGzip(Files.readAllBytes(new File(filename).toPath()), 2).getPath();
+
+    NetcdfFiles.setCompressedSeekThreshold(0);
+    CompressedRandomAccessFile.setSpan(SPAN);
+    try (NetcdfFile ncfile = NetcdfFiles.open(filename); NetcdfFile compressed = NetcdfFiles.open(gzname)) {
+      Formatter f = new Formatter();
+      boolean ok = new CompareNetcdf2(f, false, false, true).compare(ncfile, compressed);
+      assertThat(ok).isTrue();
+    }
+    assertThat(DiskCache.getFileStandardPolicy(gzname + CompressedRandomAccessFile.INDEX_SUFFIX).exists()).isTrue();
+    assertThat(new File(tempFolder.getRoot(), "data").exists()).isFalse(); // not uncompressed to disk
+  }
+}
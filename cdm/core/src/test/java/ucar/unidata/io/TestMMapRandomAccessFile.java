@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.unidata.io;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Formatter;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.Array;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import ucar.nc2.Variable;
+import ucar.nc2.util.CompareNetcdf2;
+
+/** Test {@link MMapRandomAccessFile} and the memory mapped open mode of {@link NetcdfFiles} */
+public class TestMMapRandomAccessFile {
+  private static final int SEGMENT_SIZE = 1000;
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @After
+  public void restoreDefault() {
+    NetcdfFiles.setMemoryMapThreshold(-1);
+  }
+
+  @Test
+  public void testSegments() throws IOException {
+    byte[] data = new byte[10 * SEGMENT_SIZE + 123];
+    new Random(42).nextBytes(data);
+    File file = tempFolder.newFile();
+    Files.write(file.toPath(), data);
+
+    // small segments and buffer, so that reads cross the segment boundaries
+    try (MMapRandomAccessFile raf = new MMapRandomAccessFile(file.getPath(), 64, SEGMENT_SIZE)) {
+      assertThat(raf.length()).isEqualTo(data.length);
+
+      Random random = new Random(17);
+      byte[] buff = new byte[3 * SEGMENT_SIZE];
+      for (int i = 0; i < 1000; i++) {
+        int pos = random.nextInt(data.length);
+        int len = random.nextInt(buff.length);
+        raf.seek(pos);
+        int n = raf.read(buff, 0, len);
+        assertThat(n).isEqualTo(Math.min(len, data.length - pos));
+        assertThat(Arrays.copyOf(buff, n)).isEqualTo(Arrays.copyOfRange(data, pos, pos + n));
+      }
+
+      ByteBuffer littleEndian = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+      raf.order(RandomAccessFile.LITTLE_ENDIAN);
+      raf.seek(SEGMENT_SIZE - 2);
+      assertThat(raf.readInt()).isEqualTo(littleEndian.getInt(SEGMENT_SIZE - 2));
+      raf.seek(data.length);
+      assertThat(raf.read()).isEqualTo(-1);
+
+      // a view inside one segment, and a copy across segments
+      for (int pos : new int[] {10, SEGMENT_SIZE - 10, 5 * SEGMENT_SIZE, data.length - 100}) {
+        ByteBuffer bb = raf.slice(pos, 100);
+        assertThat(bb.getInt(8)).isEqualTo(littleEndian.getInt(pos + 8));
+        byte[] bytes = new byte[100];
+        bb.get(bytes);
+        assertThat(bytes).isEqualTo(Arrays.copyOfRange(data, pos, pos + 100));
+      }
+      assertThrows(EOFException.class, () -> raf.slice(data.length - 10, 20));
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      long n = raf.readToByteChannel(Channels.newChannel(out), 500, 5 * SEGMENT_SIZE);
+      assertThat(n).isEqualTo(5 * SEGMENT_SIZE);
+      assertThat(out.toByteArray()).isEqualTo(Arrays.copyOfRange(data, 500, 500 + 5 * SEGMENT_SIZE));
+
+      out.reset();
+      n = raf.readToByteChannel(Channels.newChannel(out), data.length - 10, 100);
+      assertThat(n).isEqualTo(10);
+    }
+  }
+
+  @Test
+  public void testOpenMapped() throws IOException, InvalidRangeException {
+    String[] filenames = {"src/test/data/example1.nc", "src/test/data/testWriteRecord.nc",
+        "src/test/data/longOffset.nc", "src/test/data/permuteTest.nc", "src/test/data/hdf5/test_atomic_types.nc",
+        "src/test/data/testCFGridWriter.nc4"};
+    for (String filename : filenames) {
+      try (NetcdfFile org = NetcdfFiles.open(filename)) {
+        NetcdfFiles.setMemoryMapThreshold(0);
+        try (NetcdfFile mapped = NetcdfFiles.open(filename)) {
+          assertThat(raf(mapped)).isInstanceOf(MMapRandomAccessFile.class);
+          assertThat(raf(org)).isNotInstanceOf(MMapRandomAccessFile.class);
+
+          Formatter f = new Formatter();
+          assertThat(new CompareNetcdf2(f, false, false, true).compare(org, mapped)).isTrue();
+
+          for (Variable v : org.getVariables()) {
+            if (v.getRank() > 0 && v.getShape(0) > 2) {
+              StringBuilder section = new StringBuilder("1:" + (v.getShape(0) - 1) + ":2");
+              for (int i = 1; i < v.getRank(); i++) {
+                section.append(",:");
+              }
+              Array expected = v.read(section.toString());
+              Array actual = mapped.findVariable(v.getFullName()).read(section.toString());
+              assertThat(actual.toString()).isEqualTo(expected.toString());
+            }
+          }
+        } finally {
+          NetcdfFiles.setMemoryMapThreshold(-1);
+        }
+      }
+    }
+
+    // files smaller than the threshold are not mapped
+    NetcdfFiles.setMemoryMapThreshold(1L << 40);
+    try (NetcdfFile ncfile = NetcdfFiles.open(filenames[0])) {
+      assertThat(raf(ncfile)).isNotInstanceOf(MMapRandomAccessFile.class);
+    }
+  }
+
+  private static Object raf(NetcdfFile ncfile) {
+    return ncfile.sendIospMessage(NetcdfFile.IOSP_MESSAGE_RANDOM_ACCESS_FILE);
+  }
+}
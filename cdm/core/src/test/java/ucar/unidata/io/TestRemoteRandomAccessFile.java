@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.unidata.io;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Test;
+
+/** Test the read cache of {@link RemoteRandomAccessFile} */
+public class TestRemoteRandomAccessFile {
+  private static final int BLOCK_SIZE = 1024;
+  private static final byte[] data = new byte[100_000]; // last cache block is partial
+
+  static {
+    new Random(42).nextBytes(data);
+  }
+
+  @After
+  public void restoreDefaults() {
+    RemoteRandomAccessFile.setExecutor(null);
+    RemoteRandomAccessFile.setReadCacheRequests(16, 4);
+  }
+
+  @Test
+  public void testCoalescedRequests() throws IOException {
+    RemoteRandomAccessFile.setReadCacheRequests(16, 0);
+    try (InMemoryRemoteFile raf = new InMemoryRemoteFile()) {
+      checkRead(raf, 0, 40 * BLOCK_SIZE);
+      assertThat(raf.requests).containsExactly("0-16", "16-32", "32-40").inOrder();
+
+      raf.requests.clear();
+      checkRead(raf, 50 * BLOCK_SIZE + 10, 100);
+      checkRead(raf, 45 * BLOCK_SIZE + 7, 10 * BLOCK_SIZE);
+      // block 50 is already in the cache
+      assertThat(raf.requests).containsExactly("50-51", "45-50", "51-56").inOrder();
+
+      raf.requests.clear();
+      checkRead(raf, 0, 40 * BLOCK_SIZE);
+      checkRead(raf, data.length - 500, 1000); // past the end of the file
+      assertThat(raf.requests).containsExactly("97-98");
+    }
+  }
+
+  @Test
+  public void testReadAhead() throws IOException {
+    try (InMemoryRemoteFile raf = new InMemoryRemoteFile()) {
+      readSequentially(raf);
+      // the first read is not known to be sequential, then the next 4 blocks are read with every miss
+      assertThat(raf.requests).hasSize(1 + 20);
+      assertThat(raf.requests.get(1)).isEqualTo("1-6");
+    }
+  }
+
+  @Test
+  public void testReadAheadWithinRequestLimit() throws IOException {
+    RemoteRandomAccessFile.setReadCacheRequests(4, 4);
+    try (InMemoryRemoteFile raf = new InMemoryRemoteFile()) {
+      checkRead(raf, 0, BLOCK_SIZE);
+      checkRead(raf, BLOCK_SIZE, 4 * BLOCK_SIZE);
+      checkRead(raf, 5 * BLOCK_SIZE, 2 * BLOCK_SIZE);
+      // a full request is not extended, and a partial one only up to 4 blocks
+      assertThat(raf.requests).containsExactly("0-1", "1-5", "5-9").inOrder();
+    }
+  }
+
+  @Test
+  public void testExecutor() throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      RemoteRandomAccessFile.setExecutor(pool);
+      try (InMemoryRemoteFile raf = new InMemoryRemoteFile()) {
+        readSequentially(raf);
+        // blocks are read ahead in the background, and none is requested twice
+        assertThat(raf.requests.size()).isAtMost(1 + 25);
+        assertThat(raf.overlapping).isFalse();
+      }
+
+      RemoteRandomAccessFile.setReadCacheRequests(4, 0);
+      try (InMemoryRemoteFile raf = new InMemoryRemoteFile()) {
+        checkRead(raf, 10 * BLOCK_SIZE, BLOCK_SIZE);
+        checkRead(raf, 0, 30 * BLOCK_SIZE);
+        // the runs of missing blocks are requested concurrently
+        assertThat(raf.requests).containsExactly("10-11", "0-4", "4-8", "8-10", "11-15", "15-19", "19-23",
+            "23-27", "27-30");
+        assertThat(raf.overlapping).isFalse();
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testRandomReads() throws IOException {
+    Random random = new Random(17);
+    try (InMemoryRemoteFile raf = new InMemoryRemoteFile()) {
+      byte[] buff = new byte[5000];
+      for (int i = 0; i < 1000; i++) {
+        int pos = random.nextInt(data.length);
+        int len = random.nextInt(buff.length);
+        raf.seek(pos);
+        int n = raf.read(buff, 0, len);
+        assertThat(n).isEqualTo(Math.min(len, data.length - pos));
+        assertThat(Arrays.copyOf(buff, n)).isEqualTo(Arrays.copyOfRange(data, pos, pos + n));
+      }
+    }
+  }
+
+  private static void readSequentially(RandomAccessFile raf) throws IOException {
+    byte[] result = new byte[data.length];
+    raf.seek(0);
+    for (int pos = 0; pos < data.length; pos += 100) {
+      raf.readFully(result, pos, Math.min(100, data.length - pos));
+    }
+    assertThat(result).isEqualTo(data);
+  }
+
+  private static void checkRead(InMemoryRemoteFile raf, int pos, int len) throws IOException {
+    byte[] buff = new byte[len + 10];
+    int n = raf.read_(pos, buff, 5, len);
+    assertThat(n).isEqualTo(Math.min(len, data.length - pos));
+    assertThat(Arrays.copyOfRange(buff, 5, 5 + n)).isEqualTo(Arrays.copyOfRange(data, pos, pos + n));
+    assertThat(buff[5 + n]).isEqualTo(0); // nothing past the requested length
+  }
+
+  /** A remote file that is an in memory array, and records the cache blocks in each remote request. */
+  private static class InMemoryRemoteFile extends RemoteRandomAccessFile {
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+    private final BitSet requested = new BitSet();
+    private volatile boolean overlapping;
+
+    InMemoryRemoteFile() {
+      super("memory:test", BLOCK_SIZE, 1024 * 1024);
+    }
+
+    @Override
+    public int readRemote(long pos, byte[] buff, int offset, int len) {
+      int n = (int) Math.min(len, data.length - pos);
+      System.arraycopy(data, (int) pos, buff, offset, n);
+      int first = (int) (pos / BLOCK_SIZE);
+      int end = (int) ((pos + n + BLOCK_SIZE - 1) / BLOCK_SIZE);
+      requests.add(first + "-" + end);
+      synchronized (requested) {
+        overlapping |= requested.get(first, end).cardinality() > 0;
+        requested.set(first, end);
+      }
+      return n;
+    }
+
+    @Override
+    public void closeRemote() {}
+
+    @Override
+    public long length() {
+      return data.length;
+    }
+  }
+}
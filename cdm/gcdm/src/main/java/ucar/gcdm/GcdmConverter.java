@@ -19,15 +19,20 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import ucar.gcdm.GcdmNetcdfProto.Data;
+import ucar.gcdm.GcdmNetcdfProto.DataResponse;
 import ucar.gcdm.GcdmNetcdfProto.StructureMemberProto;
 import ucar.ma2.Array;
 import ucar.ma2.ArrayObject;
 import ucar.ma2.ArraySequence;
 import ucar.ma2.ArrayStructure;
+import ucar.ma2.ArrayStructureMA;
 import ucar.ma2.ArrayStructureW;
 import ucar.ma2.DataType;
 import ucar.ma2.Index;
 import ucar.ma2.IndexIterator;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.MAMath;
+import ucar.ma2.Range;
 import ucar.ma2.Section;
 import ucar.ma2.StructureData;
 import ucar.ma2.StructureDataW;
@@ -38,6 +43,8 @@ import ucar.nc2.Attribute;
 import ucar.nc2.Dimension;
 import ucar.nc2.EnumTypedef;
 import ucar.nc2.Group;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.ParsedSectionSpec;
 import ucar.nc2.Sequence;
 import ucar.nc2.Structure;
 import ucar.nc2.Variable;
@@ -484,6 +491,50 @@ public class GcdmConverter {
     }
   }
 
+  /**
+   * Is this response a piece of one member of a Structure? The server sends the data of a Structure by member when
+   * its elements are too big for one message. Combine the pieces with {@link #decodeMemberData}.
+   *
+   * @param response a response to a data request for the variable
+   * @param variable the variable that was requested
+   */
+  public static boolean isMemberData(DataResponse response, Variable variable) {
+    return !response.getVarFullName().isEmpty() && !response.getVarFullName().equals(variable.getFullName());
+  }
+
+  /**
+   * Combine the pieces of member data sent for a Structure whose elements are too big for one message.
+   *
+   * @param ncfile the file that the Structure is in, to find the members named by the pieces
+   * @param structure the Structure that was requested
+   * @param sectionWanted the section of the Structure that was requested
+   * @param pieces the responses for which isMemberData() is true
+   * @return the data of the section wanted
+   */
+  public static ArrayStructureMA decodeMemberData(NetcdfFile ncfile, Structure structure, Section sectionWanted,
+      List<DataResponse> pieces) throws IOException {
+    final ArrayStructureMA result = ArrayStructureMA.factoryMA(structure, sectionWanted.getShape());
+    try {
+      for (DataResponse piece : pieces) {
+        final ParsedSectionSpec spec = ParsedSectionSpec.parseVariableSection(ncfile, piece.getVariableSpec());
+        // the structure ranges are relative to the section wanted
+        final List<Range> ranges = new ArrayList<>();
+        for (int i = 0; i < spec.section.getRank(); i++) {
+          final Range want = sectionWanted.getRange(i);
+          final Range got = spec.section.getRange(i);
+          final int first = (got.first() - want.first()) / want.stride();
+          ranges.add(new Range(first, first + got.length() - 1));
+        }
+        ranges.addAll(spec.child.section.getRanges());
+        final Array memberData = result.findMember(spec.child.v.getShortName()).getDataArray();
+        MAMath.copy(memberData.sectionNoReduce(ranges), decodeData(piece.getData()));
+      }
+    } catch (InvalidRangeException e) {
+      throw new IOException(e);
+    }
+    return result;
+  }
+
   private static int[] decodeShape(GcdmNetcdfProto.Data data) {
     final int[] shape = new int[data.getShapesCount()];
     for (int i = 0; i < shape.length; i++) {
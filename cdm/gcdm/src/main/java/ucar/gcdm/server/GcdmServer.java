@@ -5,12 +5,24 @@
 package ucar.gcdm.server;
 
 import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 import ucar.gcdm.GcdmGrpc.GcdmImplBase;
 import ucar.gcdm.GcdmNetcdfProto;
 import ucar.gcdm.GcdmNetcdfProto.DataRequest;
@@ -20,10 +32,12 @@ import ucar.gcdm.GcdmNetcdfProto.HeaderRequest;
 import ucar.gcdm.GcdmNetcdfProto.HeaderResponse;
 import ucar.gcdm.GcdmConverter;
 import ucar.ma2.Array;
+import ucar.ma2.ArrayStructure;
 import ucar.ma2.ArrayStructureW;
 import ucar.ma2.DataType;
 import ucar.ma2.Index;
 import ucar.ma2.InvalidRangeException;
+import ucar.ma2.Range;
 import ucar.ma2.Section;
 import ucar.ma2.StructureData;
 import ucar.ma2.StructureDataIterator;
@@ -31,8 +45,13 @@ import ucar.ma2.StructureMembers;
 import ucar.nc2.NetcdfFile;
 import ucar.nc2.ParsedSectionSpec;
 import ucar.nc2.Sequence;
+import ucar.nc2.Structure;
 import ucar.nc2.Variable;
+import ucar.nc2.dataset.DatasetUrl;
 import ucar.nc2.dataset.NetcdfDatasets;
+import ucar.nc2.util.cache.FileCache;
+import ucar.nc2.util.cache.FileCacheIF;
+import ucar.nc2.util.cache.FileFactory;
 import ucar.nc2.write.ChunkingIndex;
 
 /** Server that manages startup/shutdown of a gCDM Server. */
@@ -43,11 +62,18 @@ public class GcdmServer {
   public static final int MAX_MESSAGE = 50 * 1000 * 1000; // 50 Mb LOOK could be tuned
   private static final int SEQUENCE_CHUNK = 1000;
   private static final int PORT = 16111;
+  private static final int FILE_CACHE_MIN = 50;
+  private static final int FILE_CACHE_MAX = 100;
+  private static final int FILE_CACHE_PERIOD = 15 * 60; // secs
 
   private Server server;
+  private FileCacheIF fileCache;
+  private ExecutorService readExecutor;
 
   private void start() throws IOException {
-    server = ServerBuilder.forPort(PORT).addService(new GcdmImpl()).build().start();
+    fileCache = new FileCache("GcdmServer", FILE_CACHE_MIN, FILE_CACHE_MAX, -1, FILE_CACHE_PERIOD);
+    readExecutor = Executors.newCachedThreadPool();
+    server = ServerBuilder.forPort(PORT).addService(new GcdmImpl(fileCache, readExecutor)).build().start();
     Runtime.getRuntime().addShutdownHook(new Thread(() -> {
       // Use stderr here since the logger may have been reset by its JVM shutdown hook.
       System.err.println("*** shutting down gRPC server since JVM is shutting down");
@@ -67,6 +93,12 @@ public class GcdmServer {
     if (server != null) {
       server.shutdown().awaitTermination(30, TimeUnit.SECONDS);
     }
+    if (readExecutor != null) {
+      readExecutor.shutdownNow();
+    }
+    if (fileCache != null) {
+      fileCache.clearCache(true);
+    }
   }
 
   /** Await termination on the main thread since the grpc library uses daemon threads. */
@@ -83,12 +115,42 @@ public class GcdmServer {
     server.blockUntilShutdown();
   }
 
+  /**
+   * Datasets are acquired through a FileCacheIF, so repeated requests do not parse the header again. Data larger than
+   * MAX_MESSAGE is sent in chunks; the next chunk is read and encoded on the read executor while the current one is
+   * sent, as fast as the client's flow control allows.
+   */
   static class GcdmImpl extends GcdmImplBase {
+    private static final FileFactory fileFactory = NetcdfDatasets::openFile;
+
+    @Nullable
+    private final FileCacheIF fileCache;
+    @Nullable
+    private final Executor readExecutor;
+
+    /**
+     * @param fileCache acquire datasets through this cache; if null, open them on each request.
+     * @param readExecutor read the next chunk of data on this executor; if null, read chunks when they are sent.
+     */
+    GcdmImpl(@Nullable FileCacheIF fileCache, @Nullable Executor readExecutor) {
+      this.fileCache = fileCache;
+      this.readExecutor = readExecutor;
+    }
+
+    /** Close the returned NetcdfFile to release it back to the cache. */
+    private NetcdfFile acquire(String location) throws IOException {
+      DatasetUrl durl = DatasetUrl.findDatasetUrl(location);
+      if (fileCache == null) {
+        return NetcdfDatasets.openFile(durl, -1, null, null);
+      }
+      return (NetcdfFile) fileCache.acquire(fileFactory, durl);
+    }
+
     @Override
     public void getNetcdfHeader(HeaderRequest req, StreamObserver<HeaderResponse> responseObserver) {
       logger.info("GcdmServer getHeader " + req.getLocation());
       final HeaderResponse.Builder response = HeaderResponse.newBuilder();
-      try (NetcdfFile ncfile = NetcdfDatasets.openFile(req.getLocation(), null)) {
+      try (NetcdfFile ncfile = acquire(req.getLocation())) {
         final Header.Builder header = Header.newBuilder().setLocation(req.getLocation())
             .setRoot(GcdmConverter.encodeGroup(ncfile.getRootGroup(), 100).build());
         response.setHeader(header);
@@ -107,7 +169,7 @@ public class GcdmServer {
       final Stopwatch stopwatch = Stopwatch.createStarted();
       long size = -1;
 
-      try (NetcdfFile ncfile = NetcdfDatasets.openFile(req.getLocation(), null)) { // LOOK cache ncfile?
+      try (NetcdfFile ncfile = acquire(req.getLocation())) {
         final ParsedSectionSpec varSection = ParsedSectionSpec.parseVariableSection(ncfile, req.getVariableSpec());
         final Variable var = varSection.getVariable();
         if (var instanceof Sequence) {
@@ -139,30 +201,100 @@ public class GcdmServer {
       if (size > MAX_MESSAGE) {
         getDataInChunks(ncfile, varSection, responseObserver);
       } else {
-        getOneChunk(ncfile, varSection, responseObserver);
+        responseObserver.onNext(getOneChunk(ncfile, varSection));
       }
     }
 
-    // TODO this returns structure member data in one chunk no matter the size, see testDataChunkingForStructures
     private void getDataInChunks(NetcdfFile ncfile, ParsedSectionSpec varSection,
         StreamObserver<DataResponse> responseObserver) throws IOException, InvalidRangeException {
 
       final Variable var = varSection.getVariable();
       final Section section = varSection.getArraySection();
-      long maxChunkElems = MAX_MESSAGE / var.getElementSize();
+      final boolean byMember = var.getElementSize() > MAX_MESSAGE && canSendMembers(var);
+      final List<Section> chunks = chunk(section, MAX_MESSAGE / var.getElementSize());
+
+      final FlowControl flowControl = new FlowControl(responseObserver);
+      FutureTask<List<DataResponse>> next = readChunk(ncfile, var, chunks.get(0), byMember);
+      try {
+        for (int i = 0; i < chunks.size(); i++) {
+          final List<DataResponse> responses = getChunk(next);
+          // read the next chunk while this one is sent
+          next = (i + 1 < chunks.size()) ? readChunk(ncfile, var, chunks.get(i + 1), byMember) : null;
+          for (DataResponse response : responses) {
+            flowControl.awaitReady();
+            responseObserver.onNext(response);
+          }
+        }
+      } finally {
+        if (next != null) { // dont release the file while it is being read
+          next.cancel(false);
+          try {
+            next.get();
+          } catch (Exception e) {
+            // ignore
+          }
+        }
+      }
+    }
+
+    /** Divide a section into chunks of at most maxChunkElems elements, or one element if that is bigger. */
+    private static List<Section> chunk(Section section, long maxChunkElems) throws InvalidRangeException {
+      if (section.getRank() == 0) {
+        return Collections.singletonList(section);
+      }
+      final List<Section> chunks = new ArrayList<>();
       final ChunkingIndex index = new ChunkingIndex(section.getShape());
       while (index.currentElement() < index.getSize()) {
         final int[] chunkOrigin = index.getCurrentCounter();
-        final int[] chunkShape = index.computeChunkShape(maxChunkElems);
-        final Section chunkSection = new Section(chunkOrigin, chunkShape);
-        final ParsedSectionSpec spec = new ParsedSectionSpec(var, chunkSection);
-        getOneChunk(ncfile, spec, responseObserver);
+        final int[] chunkShape = index.computeChunkShape(Math.max(1, maxChunkElems));
+        chunks.add(subsection(section, chunkOrigin, chunkShape));
         index.setCurrentCounter(index.currentElement() + (int) Index.computeSize(chunkShape));
       }
+      return chunks;
     }
 
-    private void getOneChunk(NetcdfFile ncfile, ParsedSectionSpec varSection,
-        StreamObserver<DataResponse> responseObserver) throws IOException, InvalidRangeException {
+    /** The part of section with the given origin and shape, in the index space of the section. */
+    private static Section subsection(Section section, int[] origin, int[] shape) throws InvalidRangeException {
+      final Section.Builder builder = Section.builder();
+      for (int i = 0; i < shape.length; i++) {
+        final Range range = section.getRange(i);
+        final int first = range.element(origin[i]);
+        builder.appendRange(first, first + (shape[i] - 1) * range.stride(), range.stride());
+      }
+      return builder.build();
+    }
+
+    private FutureTask<List<DataResponse>> readChunk(NetcdfFile ncfile, Variable var, Section chunkSection,
+        boolean byMember) {
+      final FutureTask<List<DataResponse>> task = new FutureTask<>(() -> {
+        final ParsedSectionSpec spec = new ParsedSectionSpec(var, chunkSection);
+        return byMember ? getMemberChunks(ncfile, spec) : Collections.singletonList(getOneChunk(ncfile, spec));
+      });
+      if (readExecutor == null) {
+        task.run();
+      } else {
+        readExecutor.execute(task);
+      }
+      return task;
+    }
+
+    private static List<DataResponse> getChunk(FutureTask<List<DataResponse>> task)
+        throws IOException, InvalidRangeException {
+      try {
+        return task.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("interrupted reading " + e.getMessage());
+      } catch (ExecutionException e) {
+        Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+        Throwables.throwIfInstanceOf(e.getCause(), InvalidRangeException.class);
+        Throwables.throwIfUnchecked(e.getCause());
+        throw new IOException(e.getCause());
+      }
+    }
+
+    private DataResponse getOneChunk(NetcdfFile ncfile, ParsedSectionSpec varSection)
+        throws IOException, InvalidRangeException {
 
       final String spec = varSection.makeSectionSpecString();
       final Variable var = varSection.getVariable();
@@ -174,8 +306,58 @@ public class GcdmServer {
       final Array data = var.read(wantSection);
       response.setData(GcdmConverter.encodeData(data.getDataType(), data));
 
-      responseObserver.onNext(response.build());
-      logger.debug("Send one chunk {} size={} bytes", spec, data.getSize() * varSection.getVariable().getElementSize());
+      logger.debug("Read one chunk {} size={} bytes", spec, data.getSize() * varSection.getVariable().getElementSize());
+      return response.build();
+    }
+
+    /** Structure members can be sent separately if none are themselves Structures. */
+    private static boolean canSendMembers(Variable var) {
+      if (!(var instanceof Structure) || var instanceof Sequence) {
+        return false;
+      }
+      for (Variable member : ((Structure) var).getVariables()) {
+        if (member instanceof Structure || member.isVariableLength()) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * Read a section of a Structure whose elements are too big for one message, and send the data of each member in
+     * pieces. The var_full_name of each response is the member's full name, and its variable_spec is
+     * "structure(section).member(section)".
+     */
+    private List<DataResponse> getMemberChunks(NetcdfFile ncfile, ParsedSectionSpec varSection)
+        throws IOException, InvalidRangeException {
+      final Structure structure = (Structure) varSection.getVariable();
+      final Section structSection = varSection.getArraySection();
+      final ArrayStructure data = (ArrayStructure) structure.read(structSection);
+
+      final List<DataResponse> responses = new ArrayList<>();
+      for (Variable member : structure.getVariables()) {
+        final Array memberData = data.extractMemberArray(data.findMember(member.getShortName()));
+        final Section memberSection = member.getShapeAsSection();
+        final int structRank = structSection.getRank();
+        for (Section pieceSection : chunk(new Section(memberData.getShape()), MAX_MESSAGE / member.getElementSize())) {
+          final Array piece = memberData.sectionNoReduce(pieceSection.getRanges()).copy();
+
+          // the piece of the member data is split into its structure and member sections
+          final int[] origin = pieceSection.getOrigin();
+          final int[] shape = pieceSection.getShape();
+          final List<Range> ranges = new ArrayList<>();
+          ranges.addAll(subsection(structSection, Arrays.copyOf(origin, structRank), Arrays.copyOf(shape, structRank))
+              .getRanges());
+          ranges.addAll(subsection(memberSection, Arrays.copyOfRange(origin, structRank, origin.length),
+              Arrays.copyOfRange(shape, structRank, shape.length)).getRanges());
+
+          responses.add(DataResponse.newBuilder().setLocation(ncfile.getLocation())
+              .setVariableSpec(ParsedSectionSpec.makeSectionSpecString(member, ranges))
+              .setVarFullName(member.getFullName()).setData(GcdmConverter.encodeData(piece.getDataType(), piece))
+              .build());
+        }
+      }
+      return responses;
     }
 
     // TODO count >= SEQUENCE_CHUNK is not covered in tests
@@ -185,26 +367,68 @@ public class GcdmServer {
       final String spec = varSection.makeSectionSpecString();
       final Sequence seq = (Sequence) varSection.getVariable();
       final StructureMembers members = seq.makeStructureMembers();
+      final int chunkRows = Math.max(1, Math.min(SEQUENCE_CHUNK, MAX_MESSAGE / members.getStructureSize()));
+      final FlowControl flowControl = new FlowControl(responseObserver);
 
-      StructureData[] structureData = new StructureData[SEQUENCE_CHUNK];
-      int start = 0;
+      StructureData[] structureData = new StructureData[chunkRows];
+      long total = 0;
       int count = 0;
       StructureDataIterator it = seq.getStructureIterator();
       while (it.hasNext()) {
         structureData[count++] = it.next();
 
-        if (count >= SEQUENCE_CHUNK || !it.hasNext()) {
+        if (count >= chunkRows || !it.hasNext()) {
           final StructureData[] correctSizeArray = Arrays.copyOf(structureData, count);
           final ArrayStructureW arrayStructure = new ArrayStructureW(members, new int[] {count}, correctSizeArray);
           final DataResponse.Builder response = DataResponse.newBuilder().setLocation(ncfile.getLocation())
               .setVariableSpec(spec).setVarFullName(seq.getFullName());
           response.setData(GcdmConverter.encodeData(DataType.SEQUENCE, arrayStructure));
+          flowControl.awaitReady();
           responseObserver.onNext(response.build());
-          start = count;
+          total += count;
           count = 0;
         }
       }
-      return (long) (start + count) * members.getStructureSize();
+      return total * members.getStructureSize();
     }
   } // GcdmImpl
+
+  /** Blocks the sending thread until the client's flow control lets it send another message. */
+  private static class FlowControl implements Runnable {
+    private static final long CANCEL_POLL_MSECS = 1000;
+
+    @Nullable
+    private final ServerCallStreamObserver<?> observer;
+
+    FlowControl(StreamObserver<?> responseObserver) {
+      this.observer = (responseObserver instanceof ServerCallStreamObserver)
+          ? (ServerCallStreamObserver<?>) responseObserver
+          : null;
+      if (observer != null) {
+        observer.setOnReadyHandler(this);
+      }
+    }
+
+    @Override
+    public synchronized void run() {
+      notifyAll();
+    }
+
+    synchronized void awaitReady() throws IOException {
+      if (observer == null) {
+        return;
+      }
+      while (!observer.isReady()) {
+        if (observer.isCancelled()) {
+          throw new IOException("request was cancelled by the client");
+        }
+        try {
+          wait(CANCEL_POLL_MSECS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("interrupted waiting for the client");
+        }
+      }
+    }
+  }
 }
@@ -5,12 +5,12 @@
 package ucar.gcdm;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assume.assumeTrue;
 import static ucar.gcdm.TestUtils.*;
 import static ucar.gcdm.TestUtils.gcdmPrefix;
 
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
-import org.junit.Ignore;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
@@ -29,6 +29,7 @@ import ucar.ma2.StructureMembers;
 import ucar.ma2.StructureMembers.MemberBuilder;
 import ucar.nc2.Structure;
 import ucar.nc2.Variable;
+import ucar.nc2.jni.netcdf.Nc4Iosp;
 import ucar.nc2.write.NetcdfFileFormat;
 import ucar.nc2.write.NetcdfFormatWriter;
 import ucar.unidata.util.test.TestDir;
@@ -71,9 +72,10 @@ public class TestGcdmDataChunking {
     }
   }
 
-  @Ignore("Can lead to an out of memory exception because structure member data is not chunked")
   @Test
   public void testDataChunkingForStructures() throws IOException, InvalidRangeException {
+    // writing a Structure needs the netCDF-C library
+    assumeTrue("NetCDF-4 C library not present.", Nc4Iosp.isClibraryPresent());
     String structureName = "structureName";
     String memberName = "memberName";
     DataType dataType = DataType.INT;
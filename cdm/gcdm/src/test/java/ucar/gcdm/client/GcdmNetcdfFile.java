@@ -61,6 +61,7 @@ public class GcdmNetcdfFile extends NetcdfFile {
     final Stopwatch stopwatch = Stopwatch.createStarted();
 
     final List<Array> results = new ArrayList<>();
+    final List<DataResponse> memberPieces = new ArrayList<>();
     long size = 0;
     final DataRequest request = DataRequest.newBuilder().setLocation(this.path).setVariableSpec(spec).build();
     try {
@@ -71,6 +72,10 @@ public class GcdmNetcdfFile extends NetcdfFile {
         if (response.hasError()) {
           throw new IOException(response.getError().getMessage());
         }
+        if (GcdmConverter.isMemberData(response, variable)) {
+          memberPieces.add(response); // a piece of one member of a Structure
+          continue;
+        }
         final Array result = GcdmConverter.decodeData(response.getData());
         results.add(result);
         size += result.getSize() * variable.getElementSize();
@@ -91,7 +96,9 @@ public class GcdmNetcdfFile extends NetcdfFile {
     logger.debug(" ** received={} took={} rate={} MB/sec", size, stopwatch.stop(),
         ((double) size) / stopwatch.elapsed(TimeUnit.MICROSECONDS));
 
-    if (results.size() == 1) {
+    if (!memberPieces.isEmpty()) {
+      return GcdmConverter.decodeMemberData(this, (Structure) variable, sectionWanted, memberPieces);
+    } else if (results.size() == 1) {
       return results.get(0);
     } else {
       return Array.factoryCopy(variable.getDataType(), sectionWanted.getShape(), results);
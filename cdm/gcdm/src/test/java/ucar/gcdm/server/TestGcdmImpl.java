@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.gcdm.server;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import ucar.gcdm.GcdmConverter;
+import ucar.gcdm.GcdmNetcdfProto.DataRequest;
+import ucar.gcdm.GcdmNetcdfProto.DataResponse;
+import ucar.ma2.Array;
+import ucar.ma2.ArrayStructure;
+import ucar.ma2.ArrayStructureW;
+import ucar.ma2.DataType;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.Section;
+import ucar.ma2.StructureDataW;
+import ucar.ma2.StructureMembers;
+import ucar.nc2.Dimension;
+import ucar.nc2.Group;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.ParsedSectionSpec;
+import ucar.nc2.ProxyReader;
+import ucar.nc2.Structure;
+import ucar.nc2.Variable;
+import ucar.nc2.dataset.DatasetUrl;
+import ucar.nc2.util.CancelTask;
+import ucar.nc2.util.cache.FileCacheIF;
+import ucar.nc2.util.cache.FileFactory;
+
+/** Test the gCDM service in process, on datasets built in memory. */
+public class TestGcdmImpl {
+  private static final String location = "memory:structure";
+  private static final String structureName = "structureName";
+  private static final String memberName = "memberName";
+
+  @Test
+  public void testDataChunkingForStructures() throws IOException, InvalidRangeException {
+    Array expectedData = Array.makeArray(DataType.INT, 13_000_000, 0, 1);
+    NetcdfFile ncfile = makeNetcdfFileWithStructure(expectedData);
+    Structure structure = (Structure) ncfile.findVariable(structureName);
+    assertThat((Object) structure).isNotNull();
+    assertThat(structure.getElementSize()).isGreaterThan(GcdmServer.MAX_MESSAGE); // Data should be sent by member
+
+    FileCacheIF fileCache = mock(FileCacheIF.class);
+    when(fileCache.acquire(any(FileFactory.class), any(DatasetUrl.class))).thenReturn(ncfile);
+    GcdmServer.GcdmImpl gcdm = new GcdmServer.GcdmImpl(fileCache, null);
+
+    List<DataResponse> responses = new ArrayList<>();
+    String spec = ParsedSectionSpec.makeSectionSpecString(structure, structure.getShapeAsSection().getRanges());
+    gcdm.getNetcdfData(DataRequest.newBuilder().setLocation(location).setVariableSpec(spec).build(),
+        collect(responses));
+
+    assertThat(responses.size()).isGreaterThan(1);
+    for (DataResponse response : responses) {
+      assertThat(response.hasError()).isFalse();
+      assertThat(GcdmConverter.isMemberData(response, structure)).isTrue();
+    }
+
+    ArrayStructure arrayStructure =
+        GcdmConverter.decodeMemberData(ncfile, structure, structure.getShapeAsSection(), responses);
+    Array memberData = arrayStructure.extractMemberArray(arrayStructure.findMember(memberName));
+    assertThat(memberData.getSize()).isEqualTo(expectedData.getSize());
+    for (int i = 0; i < memberData.getSize(); i++) {
+      assertThat(memberData.getInt(i)).isEqualTo(expectedData.getInt(i));
+    }
+  }
+
+  // a Structure of one element, whose one member is the values
+  private static NetcdfFile makeNetcdfFileWithStructure(Array values) {
+    int[] shape = new int[] {(int) values.getSize()};
+    StructureMembers.Builder membersBuilder = StructureMembers.builder();
+    membersBuilder.addMember(memberName, "desc", "units", values.getDataType(), shape);
+    StructureDataW structureData = new StructureDataW(membersBuilder.build());
+    structureData.setMemberData(memberName, values);
+    ArrayStructure data = new ArrayStructureW(structureData);
+
+    Group.Builder root = Group.builder().setName("");
+    root.addDimension(new Dimension("structureDimension", 1));
+    root.addDimension(new Dimension("memberDimension", shape[0]));
+    Structure.Builder<?> structureBuilder = Structure.builder().setName(structureName)
+        .setParentGroupBuilder(root).setDimensionsByName("structureDimension").setProxyReader(new ProxyReader() {
+          @Override
+          public Array reallyRead(Variable client, CancelTask cancelTask) {
+            return data;
+          }
+
+          @Override
+          public Array reallyRead(Variable client, Section section, CancelTask cancelTask) {
+            return data;
+          }
+        });
+    structureBuilder.addMemberVariable(Variable.builder().setName(memberName).setDataType(values.getDataType())
+        .setParentGroupBuilder(root).setDimensionsByName("memberDimension"));
+    root.addVariable(structureBuilder);
+    return NetcdfFile.builder().setRootGroup(root).setLocation(location).build();
+  }
+
+  private static <T> StreamObserver<T> collect(List<T> responses) {
+    return new StreamObserver<T>() {
+      @Override
+      public void onNext(T response) {
+        responses.add(response);
+      }
+
+      @Override
+      public void onError(Throwable t) {
+        throw new AssertionError(t);
+      }
+
+      @Override
+      public void onCompleted() {}
+    };
+  }
+}
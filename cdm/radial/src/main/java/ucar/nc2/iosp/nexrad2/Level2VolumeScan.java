@@ -11,18 +11,31 @@ import ucar.unidata.io.RandomAccessFile;
 import ucar.unidata.io.bzip2.BZip2ReadException;
 import ucar.unidata.io.bzip2.CBZip2InputStream;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileLock;
 import java.nio.channels.OverlappingFileLockException;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import javax.annotation.Nullable;
 import static ucar.nc2.iosp.nexrad2.Level2Record.REFLECTIVITY_HIGH;
 import static ucar.nc2.iosp.nexrad2.Level2Record.VELOCITY_HIGH;
 
@@ -52,6 +65,36 @@ public class Level2VolumeScan {
   static final String AR2V0007 = "AR2V0007";
 
   private static org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(Level2VolumeScan.class);
+
+  // uncompressing
+  private static volatile boolean useDiskCache = true;
+  private static volatile Executor executor;
+  private static volatile int maxPendingBlocks = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * Write the uncompressed version of a compressed volume to the DiskCache, where later opens reuse it. This is the
+   * default. Otherwise each open uncompresses the volume into memory, and reads it from the uncompressed blocks.
+   *
+   * @param use use the DiskCache
+   */
+  public static void setUseDiskCache(boolean use) {
+    useDiskCache = use;
+  }
+
+  /**
+   * Uncompress the bzip2 blocks of a compressed volume on the given Executor. Each block is an independent bzip2
+   * stream, so blocks are uncompressed concurrently, and written out in file order as soon as they and all earlier
+   * blocks are done.
+   *
+   * @param exec uncompress on this Executor; if null, uncompress the blocks one at a time.
+   * @param maxPending maximum number of blocks that one volume has in progress at the same time; bounds the memory.
+   */
+  public static void setExecutor(@Nullable Executor exec, int maxPending) {
+    if (maxPending < 1)
+      throw new IllegalArgumentException("maxPending must be > 0");
+    maxPendingBlocks = maxPending;
+    executor = exec;
+  }
   ////////////////////////////////////////////////////////////////////////////////////
 
   // Data file
@@ -134,9 +177,13 @@ public class Level2VolumeScan {
       String BZ = raf.readString(2);
       if (BZ.equals("BZ")) {
         RandomAccessFile uraf = null;
-        File uncompressedFile = DiskCache.getFileStandardPolicy(raf.getLocation() + ".uncompress");
+        File uncompressedFile =
+            useDiskCache ? DiskCache.getFileStandardPolicy(raf.getLocation() + ".uncompress") : null;
+
+        if (uncompressedFile == null) {
+          uraf = uncompress(raf);
 
-        if (uncompressedFile.exists() && uncompressedFile.length() > 0) {
+        } else if (uncompressedFile.exists() && uncompressedFile.length() > 0) {
           // see if its locked - another thread is writing it
           try (FileInputStream fstream = new FileInputStream(uncompressedFile)) {
             // lock = fstream.getChannel().lock(0, 1, true); // wait till its unlocked
@@ -669,7 +716,7 @@ public class Level2VolumeScan {
    * @param ufilename write to this file
    * @throws IOException on read error
    */
-  private void uncompress(RandomAccessFile inputRaf, String ufilename) throws IOException {
+  static void uncompress(RandomAccessFile inputRaf, String ufilename) throws IOException {
 
     FileLock lock = null;
     boolean needsDelete = false;
@@ -700,12 +747,60 @@ public class Level2VolumeScan {
       }
       outputRaf.write(header);
 
+      uncompressBlocks(inputRaf, block -> {
+        outputRaf.write(block);
+        if (log.isDebugEnabled()) {
+          log.debug("  ouput ends at " + outputRaf.getFilePointer());
+        }
+      });
+    } catch (Throwable t) {
+      if (needsDelete) {
+        // dont leave bad files around
+        File ufile = new File(ufilename);
+        if (ufile.exists()) {
+          if (!ufile.delete())
+            log.warn("failed to delete bad uncompressed file (IOException)" + ufilename);
+        }
+      }
+      throw t;
+    } // try-with-resource
+  }
+
+  /**
+   * Uncompress the inputRaf into memory.
+   *
+   * @param inputRaf file to uncompress
+   * @return the equivalent uncompressed file, which reads from the uncompressed blocks
+   * @throws IOException on read error
+   */
+  static RandomAccessFile uncompress(RandomAccessFile inputRaf) throws IOException {
+    List<byte[]> blocks = new ArrayList<>();
+    byte[] header = new byte[Level2Record.FILE_HEADER_SIZE];
+    inputRaf.seek(0);
+    inputRaf.readFully(header);
+    blocks.add(header);
+    uncompressBlocks(inputRaf, blocks::add);
+    return new BlocksRandomAccessFile(inputRaf.getLocation(), blocks);
+  }
+
+  /** Receives the uncompressed blocks, in file order */
+  private interface BlockWriter {
+    void write(byte[] block) throws IOException;
+  }
+
+  /*
+   * Read the compressed blocks that follow the header, and uncompress them. With an executor, up to maxPendingBlocks
+   * blocks are uncompressed concurrently, and each block is written as soon as it and all earlier blocks are done.
+   */
+  private static void uncompressBlocks(RandomAccessFile inputRaf, BlockWriter out) throws IOException {
+    Executor exec = executor;
+    int maxPending = maxPendingBlocks;
+    Queue<CBZip2InputStream> decoders = new ConcurrentLinkedQueue<>(); // reused from block to block
+    ArrayDeque<FutureTask<byte[]>> pending = new ArrayDeque<>(); // blocks being uncompressed, in file order
+
+    try {
       boolean eof = false;
       int numCompBytes;
-      byte[] ubuff = new byte[40000];
-      byte[] obuff = new byte[40000];
-
-      CBZip2InputStream cbzip2 = new CBZip2InputStream();
       while (!eof) {
         try {
           numCompBytes = inputRaf.readInt();
@@ -721,9 +816,7 @@ public class Level2VolumeScan {
         }
 
         if (log.isDebugEnabled()) {
-          log.debug("reading compressed bytes " + numCompBytes + " input starts at " + inputRaf.getFilePointer()
-              + "; output starts at " + outputRaf.getFilePointer());
-
+          log.debug("reading compressed bytes " + numCompBytes + " input starts at " + inputRaf.getFilePointer());
         }
         /*
          * For some stupid reason, the last block seems to
@@ -740,44 +833,147 @@ public class Level2VolumeScan {
         }
         byte[] buf = new byte[numCompBytes];
         inputRaf.readFully(buf);
-        ByteArrayInputStream bis = new ByteArrayInputStream(buf, 2, numCompBytes - 2);
 
-        cbzip2.setStream(bis);
-        int total = 0;
-        int nread;
-        try {
-          while ((nread = cbzip2.read(ubuff)) != -1) {
-            if (total + nread > obuff.length) {
-              byte[] temp = obuff;
-              obuff = new byte[temp.length * 2];
-              System.arraycopy(temp, 0, obuff, 0, temp.length);
-            }
-            System.arraycopy(ubuff, 0, obuff, total, nread);
-            total += nread;
-          }
-          if (total >= 0) {
-            outputRaf.write(obuff, 0, total);
-          }
-        } catch (BZip2ReadException ioe) {
-          log.warn("Nexrad2IOSP.uncompress ", ioe);
+        BlockUncompressor uncompressor = new BlockUncompressor(buf, decoders);
+        if (exec == null) {
+          out.write(uncompressor.call());
+          continue;
         }
-        float nrecords = (float) (total / 2432.0);
-        if (log.isDebugEnabled()) {
-          log.debug("  unpacked " + total + " num bytes " + nrecords + " records; ouput ends at "
-              + outputRaf.getFilePointer());
+        while (pending.size() >= maxPending) {
+          out.write(await(pending.removeFirst(), inputRaf.getLocation()));
         }
+        FutureTask<byte[]> task = new FutureTask<>(uncompressor);
+        pending.addLast(task);
+        exec.execute(task);
       }
-    } catch (Throwable t) {
-      if (needsDelete) {
-        // dont leave bad files around
-        File ufile = new File(ufilename);
-        if (ufile.exists()) {
-          if (!ufile.delete())
-            log.warn("failed to delete bad uncompressed file (IOException)" + ufilename);
+
+      while (!pending.isEmpty()) {
+        out.write(await(pending.removeFirst(), inputRaf.getLocation()));
+      }
+
+    } finally {
+      for (FutureTask<byte[]> task : pending) // only those not yet done, if there was a failure
+        task.cancel(false);
+    }
+  }
+
+  private static byte[] await(FutureTask<byte[]> task, String location) throws IOException {
+    try {
+      return task.get();
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted uncompressing " + location);
+
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException)
+        throw (IOException) cause;
+      if (cause instanceof RuntimeException)
+        throw (RuntimeException) cause;
+      if (cause instanceof Error)
+        throw (Error) cause;
+      throw new IOException(cause);
+    }
+  }
+
+  // uncompresses one block, a bzip2 stream following 2 bytes
+  private static class BlockUncompressor implements Callable<byte[]> {
+    private final byte[] buf;
+    private final Queue<CBZip2InputStream> decoders;
+
+    BlockUncompressor(byte[] buf, Queue<CBZip2InputStream> decoders) {
+      this.buf = buf;
+      this.decoders = decoders;
+    }
+
+    @Override
+    public byte[] call() throws IOException {
+      CBZip2InputStream cbzip2 = decoders.poll();
+      if (cbzip2 == null) {
+        cbzip2 = new CBZip2InputStream();
+      }
+      byte[] result;
+      byte[] ubuff = new byte[40000];
+      cbzip2.setStream(new ByteArrayInputStream(buf, 2, buf.length - 2));
+      ByteArrayOutputStream obuff = new ByteArrayOutputStream(4 * buf.length);
+      try {
+        int nread;
+        while ((nread = cbzip2.read(ubuff)) != -1) {
+          obuff.write(ubuff, 0, nread);
         }
+        result = obuff.toByteArray();
+      } catch (BZip2ReadException ioe) {
+        log.warn("Nexrad2IOSP.uncompress ", ioe);
+        result = new byte[0];
+      } finally {
+        decoders.offer(cbzip2);
       }
-      throw t;
-    } // try-with-resource
+      if (log.isDebugEnabled()) {
+        log.debug("  unpacked " + result.length + " num bytes " + (result.length / 2432.0f) + " records");
+      }
+      return result;
+    }
+  }
+
+  /** A read only file held in memory as a list of blocks, so that the blocks need not be copied into one array */
+  private static class BlocksRandomAccessFile extends RandomAccessFile {
+    private final List<byte[]> blocks;
+    private final long[] starts; // file position of each block
+    private final long length;
+
+    BlocksRandomAccessFile(String location, List<byte[]> blocks) {
+      super(defaultBufferSize);
+      this.location = location;
+      this.blocks = blocks;
+      this.starts = new long[blocks.size()];
+      long pos = 0;
+      for (int i = 0; i < blocks.size(); i++) {
+        starts[i] = pos;
+        pos += blocks.get(i).length;
+      }
+      this.length = pos;
+    }
+
+    @Override
+    public long length() {
+      return length;
+    }
+
+    @Override
+    protected int read_(long pos, byte[] b, int offset, int len) {
+      if (pos >= length) {
+        return -1;
+      }
+      int i = Arrays.binarySearch(starts, pos);
+      if (i < 0) {
+        i = -i - 2; // the block that contains pos
+      }
+      int n = 0;
+      for (; n < len && i < blocks.size(); i++) {
+        byte[] block = blocks.get(i);
+        int from = (int) (pos + n - starts[i]);
+        int count = Math.min(len - n, block.length - from);
+        System.arraycopy(block, from, b, offset + n, count);
+        n += count;
+      }
+      return n;
+    }
+
+    @Override
+    public long readToByteChannel(WritableByteChannel dest, long offset, long nbytes) throws IOException {
+      byte[] buff = new byte[(int) Math.min(nbytes, 1 << 16)];
+      long done = 0;
+      while (done < nbytes) {
+        int n = read_(offset + done, buff, 0, (int) Math.min(buff.length, nbytes - done));
+        if (n <= 0) {
+          break;
+        }
+        dest.write(ByteBuffer.wrap(buff, 0, n));
+        done += n;
+      }
+      return done;
+    }
   }
 
   // check if compressed file seems ok
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.iosp.nexrad2;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Formatter;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import ucar.nc2.util.CompareNetcdf2;
+import ucar.unidata.io.RandomAccessFile;
+import ucar.unidata.util.test.TestDir;
+import ucar.unidata.util.test.category.NeedsCdmUnitTest;
+
+/** Compressed volumes uncompressed into memory, concurrently, must be the same as through the DiskCache. */
+public class TestNexrad2Uncompress {
+  // an AR2V header and 5 bzip2 blocks of 30000, 20000, 45000, 1000 and 37000 bytes, the last length negated
+  private static final String BLOCKS_FILE = TestDir.localTestDataDir + "nexrad2/blocks.ar2v";
+  private static final int[] BLOCK_SIZES = {30000, 20000, 45000, 1000, 37000};
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private ExecutorService pool;
+
+  @Before
+  public void setup() {
+    pool = Executors.newFixedThreadPool(4);
+  }
+
+  @After
+  public void restoreDefaults() {
+    Level2VolumeScan.setUseDiskCache(true);
+    Level2VolumeScan.setExecutor(null, Runtime.getRuntime().availableProcessors());
+    pool.shutdown();
+  }
+
+  @Test
+  public void testUncompressBlocks() throws IOException {
+    byte[] expected = expectedBlocks();
+    for (Executor exec : new Executor[] {null, pool}) {
+      Level2VolumeScan.setExecutor(exec, 2);
+
+      File ufile = tempFolder.newFile();
+      try (RandomAccessFile raf = new RandomAccessFile(BLOCKS_FILE, "r")) {
+        Level2VolumeScan.uncompress(raf, ufile.getPath());
+      }
+      assertThat(Files.readAllBytes(ufile.toPath())).isEqualTo(expected);
+
+      try (RandomAccessFile raf = new RandomAccessFile(BLOCKS_FILE, "r");
+          RandomAccessFile uraf = Level2VolumeScan.uncompress(raf)) {
+        assertThat(uraf.length()).isEqualTo(expected.length);
+        byte[] actual = new byte[expected.length];
+        uraf.seek(0);
+        uraf.readFully(actual);
+        assertThat(actual).isEqualTo(expected);
+
+        // reads that cross the block boundaries
+        ByteBuffer bb = ByteBuffer.wrap(expected);
+        uraf.order(RandomAccessFile.BIG_ENDIAN);
+        for (int pos = Level2Record.FILE_HEADER_SIZE - 2, i = 0; i < BLOCK_SIZES.length; pos += BLOCK_SIZES[i++]) {
+          uraf.seek(pos);
+          assertThat(uraf.readInt()).isEqualTo(bb.getInt(pos));
+        }
+        uraf.seek(expected.length);
+        assertThat(uraf.read()).isEqualTo(-1);
+      }
+    }
+  }
+
+  private static byte[] expectedBlocks() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (RandomAccessFile raf = new RandomAccessFile(BLOCKS_FILE, "r")) {
+      byte[] header = new byte[Level2Record.FILE_HEADER_SIZE];
+      raf.readFully(header);
+      out.write(header);
+    }
+    for (int i = 0; i < BLOCK_SIZES.length; i++) {
+      for (int j = 0; j < BLOCK_SIZES[i]; j++) {
+        out.write(i * 31 + j * 7 + j / 100);
+      }
+    }
+    return out.toByteArray();
+  }
+
+  @Test
+  @Category(NeedsCdmUnitTest.class)
+  public void testInMemory() throws IOException {
+    int count = TestDir.actOnAll(TestDir.cdmUnitTestDir + "formats/nexrad/newLevel2/testfiles",
+        new TestDir.FileFilterFromSuffixes(".bz2"), this::compare);
+    assertWithMessage("number of files").that(count).isGreaterThan(0);
+  }
+
+  private int compare(String filename) throws IOException {
+    try (NetcdfFile cached = NetcdfFiles.open(filename)) {
+      Level2VolumeScan.setUseDiskCache(false);
+      Level2VolumeScan.setExecutor(pool, 3);
+      try (NetcdfFile inMemory = NetcdfFiles.open(filename)) {
+        Formatter f = new Formatter();
+        boolean ok = new CompareNetcdf2(f, false, false, true).compare(cached, inMemory);
+        assertWithMessage(filename + "\n" + f).that(ok).isTrue();
+      } finally {
+        Level2VolumeScan.setUseDiskCache(true);
+        Level2VolumeScan.setExecutor(null, Runtime.getRuntime().availableProcessors());
+      }
+    }
+    return 1;
+  }
+}
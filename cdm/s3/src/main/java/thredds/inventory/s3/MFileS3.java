@@ -4,6 +4,7 @@
  */
 package thredds.inventory.s3;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URISyntaxException;
@@ -21,10 +22,8 @@ import software.amazon.awssdk.services.s3.model.HeadObjectRequest.Builder;
 import thredds.inventory.MFile;
 import thredds.inventory.MFileProvider;
 import ucar.nc2.util.IO;
-import ucar.unidata.io.RandomAccessFile;
 import ucar.unidata.io.s3.CdmS3Client;
 import ucar.unidata.io.s3.CdmS3Uri;
-import ucar.unidata.io.s3.S3RandomAccessFile;
 
 /**
  * Implements {@link thredds.inventory.MFile} for objects stored on AWS S3 compatible object stores.
@@ -342,30 +341,69 @@ public class MFileS3 implements MFile {
   }
 
   @Override
-  public ResponseInputStream<GetObjectResponse> getInputStream() {
+  public ResponseInputStream<GetObjectResponse> getInputStream() throws FileNotFoundException {
+    try {
+      return getObject(null);
+    } catch (NoSuchKeyException e) {
+      throw notFound(e);
+    }
+  }
+
+  private FileNotFoundException notFound(NoSuchKeyException e) {
+    FileNotFoundException notFound = new FileNotFoundException(cdmS3Uri.toString());
+    notFound.initCause(e);
+    return notFound;
+  }
+
+  @Nullable
+  private ResponseInputStream<GetObjectResponse> getObject(@Nullable String range) {
     S3Client client = getClient();
 
     if (client == null) {
       return null;
     }
 
-    GetObjectRequest getObjectRequest = GetObjectRequest.builder().bucket(cdmS3Uri.getBucket()).key(key).build();
-    return client.getObject(getObjectRequest);
+    GetObjectRequest.Builder getObjectRequest = GetObjectRequest.builder().bucket(cdmS3Uri.getBucket()).key(key);
+    if (range != null) {
+      getObjectRequest.range(range);
+    }
+    return client.getObject(getObjectRequest.build());
   }
 
   @Override
   public void writeToStream(OutputStream outputStream) throws IOException {
-    try (ResponseInputStream<GetObjectResponse> responseInputStream = getInputStream()) {
+    try (ResponseInputStream<GetObjectResponse> responseInputStream = getObject(null)) {
       IO.copy(responseInputStream, outputStream);
     }
   }
 
+  /**
+   * Write part of the object to an OutputStream, with a single ranged GET on the shared client.
+   *
+   * @param outputStream the OutputStream the bytes are written to
+   * @param offset the index of the first byte to write out
+   * @param maxBytes the maximum number of bytes to copy
+   * @throws FileNotFoundException if the object does not exist
+   */
   @Override
   public void writeToStream(OutputStream outputStream, long offset, long maxBytes) throws IOException {
-    final S3RandomAccessFile.Provider provider = new S3RandomAccessFile.Provider();
+    if (maxBytes <= 0) {
+      return;
+    }
 
-    try (RandomAccessFile randomAccessFile = provider.open(cdmS3Uri.toString())) {
-      IO.copyRafB(randomAccessFile, offset, maxBytes, outputStream);
+    final String range = "bytes=" + offset + "-" + (offset + maxBytes - 1);
+    try (ResponseInputStream<GetObjectResponse> responseInputStream = getObject(range)) {
+      if (responseInputStream == null) {
+        throw new IOException("Could not create a CdmS3Client for " + cdmS3Uri);
+      }
+      IO.copy(responseInputStream, outputStream);
+    } catch (NoSuchKeyException e) {
+      throw notFound(e);
+    } catch (S3Exception e) {
+      // 416 Range Not Satisfiable: the offset is at or past the end of the object, so there is nothing to write
+      if (e.statusCode() != 416) {
+        throw e;
+      }
     }
   }
 
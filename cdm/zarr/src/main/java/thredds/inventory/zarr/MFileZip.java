@@ -14,14 +14,13 @@ import thredds.inventory.MFile;
 import thredds.inventory.MFileProvider;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.file.*;
 import java.util.ArrayList;
+import java.util.Enumeration;
 import java.util.List;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
-import java.util.zip.ZipInputStream;
 import ucar.nc2.util.IO;
 import ucar.unidata.io.RandomAccessFile;
 
@@ -73,30 +72,22 @@ public class MFileZip implements MFile {
    */
   private List<ZipEntry> getEntries() {
     List<ZipEntry> entries = new ArrayList<>();
-    try {
-      ZipInputStream zipIn = new ZipInputStream(new FileInputStream(root.getName()));
-      ZipEntry entry = zipIn.getNextEntry();
-      while (entry != null) {
-        // skip entries outside or equal to our current path
-        Path entryPath = Paths.get(File.separator + entry.getName());
-        if (!entryPath.startsWith(relativePath) || entryPath.equals(relativePath)) {
-          // if equal, save as this.entry
-          if (entryPath.equals(relativePath)) {
-            this.entry = entry;
-          }
-          zipIn.closeEntry();
-          entry = zipIn.getNextEntry();
-          continue;
+    // the central directory is already read by ZipFile, no need to stream through the whole zip file
+    Enumeration<? extends ZipEntry> zipEntries = root.entries();
+    while (zipEntries.hasMoreElements()) {
+      ZipEntry entry = zipEntries.nextElement();
+      // skip entries outside or equal to our current path
+      Path entryPath = Paths.get(File.separator + entry.getName());
+      if (!entryPath.startsWith(relativePath) || entryPath.equals(relativePath)) {
+        // if equal, save as this.entry
+        if (entryPath.equals(relativePath)) {
+          this.entry = entry;
         }
-        if (!entry.isDirectory()) {
-          entries.add(entry);
-        }
-        zipIn.closeEntry();
-        entry = zipIn.getNextEntry();
+        continue;
+      }
+      if (!entry.isDirectory()) {
+        entries.add(entry);
       }
-      zipIn.close();
-    } catch (IOException ioe) {
-      logger.error(ioe.getMessage(), ioe);
     }
     return entries;
   }
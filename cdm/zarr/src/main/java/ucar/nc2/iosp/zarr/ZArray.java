@@ -3,12 +3,15 @@ package ucar.nc2.iosp.zarr;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.ObjectCodec;
 import com.fasterxml.jackson.core.TreeNode;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import ucar.ma2.DataType;
+import ucar.nc2.filter.Blosc;
 import ucar.nc2.filter.Filter;
 import ucar.nc2.filter.Filters;
 import ucar.nc2.filter.UnknownFilterException;
@@ -21,7 +24,7 @@ import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 /**
- * Java representation of .zarray metadata
+ * Java representation of .zarray metadata, or of the zarr.json metadata of a Zarr v3 array
  */
 @JsonDeserialize(using = ZArray.ZArrayDeserializer.class)
 public class ZArray {
@@ -56,6 +59,33 @@ public class ZArray {
     dTypeMap.put("u8", DataType.ULONG);
   }
 
+  // maps Zarr v3 data types to the equivalent .zarray dtype, without the byte order
+  private static Map<String, String> v3DataTypeMap;
+
+  static {
+    v3DataTypeMap = new HashMap<>();
+    v3DataTypeMap.put("bool", "b1");
+    v3DataTypeMap.put("int8", "i1");
+    v3DataTypeMap.put("uint8", "u1");
+    v3DataTypeMap.put("int16", "i2");
+    v3DataTypeMap.put("uint16", "u2");
+    v3DataTypeMap.put("int32", "i4");
+    v3DataTypeMap.put("uint32", "u4");
+    v3DataTypeMap.put("int64", "i8");
+    v3DataTypeMap.put("uint64", "u8");
+    v3DataTypeMap.put("float32", "f4");
+    v3DataTypeMap.put("float64", "f8");
+  }
+
+  // Zarr v3 bytes to bytes codecs, which map to CDM filters of the same name
+  private static final Set<String> V3_FILTER_CODECS =
+      Stream.of("gzip", "zstd", "blosc", "crc32c").collect(Collectors.toCollection(HashSet::new));
+
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+  private static final TypeReference<Map<String, Object>> BEAN_TYPE = new TypeReference<Map<String, Object>>() {};
+  private static final TypeReference<List<Map<String, Object>>> FILTERS_TYPE =
+      new TypeReference<List<Map<String, Object>>>() {};
+
   private static final Set<String> VALID_SEPARATORS =
       Stream.of(".", "/").collect(Collectors.toCollection(HashSet::new));
   public static final String DEFAULT_SEPARATOR = ".";
@@ -71,9 +101,18 @@ public class ZArray {
   private final Order order;
   private final List<Filter> filters;
   private final String separator;
+  private final String chunkKeyPrefix;
+  private final String[] dimensionNames;
+  private final Sharding sharding;
 
   public ZArray(int[] shape, int[] chunks, Object fill_value, String dtype, Filter compressor, String order,
       List<Filter> filters, String separator) throws ZarrFormatException {
+    this(shape, chunks, fill_value, dtype, compressor, order, filters, separator, "", null, null);
+  }
+
+  private ZArray(int[] shape, int[] chunks, Object fill_value, String dtype, Filter compressor, String order,
+      List<Filter> filters, String separator, String chunkKeyPrefix, String[] dimensionNames, Sharding sharding)
+      throws ZarrFormatException {
     this.shape = shape;
     this.chunks = chunks;
     this.fillValue = fill_value;
@@ -84,6 +123,9 @@ public class ZArray {
     this.filters = filters;
     this.order = parseOrder(order);
     this.separator = validateSeparator(separator);
+    this.chunkKeyPrefix = chunkKeyPrefix;
+    this.dimensionNames = dimensionNames;
+    this.sharding = sharding;
   }
 
   public int[] getShape() {
@@ -126,6 +168,267 @@ public class ZArray {
     return this.byteOrder;
   }
 
+  /**
+   * @return prefix of the chunk keys, before the chunk indices: "c" for the Zarr v3 default chunk key encoding,
+   *         otherwise empty
+   */
+  public String getChunkKeyPrefix() {
+    return this.chunkKeyPrefix;
+  }
+
+  /**
+   * @return dimension names of a Zarr v3 array, any of which may be null; null if there are none
+   */
+  public String[] getDimensionNames() {
+    return this.dimensionNames;
+  }
+
+  /**
+   * @return layout of the inner chunks if this is a sharded Zarr v3 array, in which case the chunks are shards;
+   *         otherwise null. The compressor, filters, byte order and order of a sharded array are those of its inner
+   *         chunks.
+   */
+  public Sharding getSharding() {
+    return this.sharding;
+  }
+
+  /**
+   * Layout of the inner chunks in each shard of an array, from the Zarr v3 "sharding_indexed" codec.
+   * Each shard ends (or starts) with an index of the offset and size of each inner chunk, as little endian
+   * unsigned 64 bit integers in C order, optionally followed by a CRC-32C checksum.
+   */
+  public static class Sharding {
+    private final int[] chunks;
+    private final boolean indexAtEnd;
+    private final boolean indexChecksum;
+
+    Sharding(int[] chunks, boolean indexAtEnd, boolean indexChecksum) {
+      this.chunks = chunks;
+      this.indexAtEnd = indexAtEnd;
+      this.indexChecksum = indexChecksum;
+    }
+
+    /**
+     * @return shape of the inner chunks
+     */
+    public int[] getChunks() {
+      return this.chunks;
+    }
+
+    public boolean isIndexAtEnd() {
+      return this.indexAtEnd;
+    }
+
+    /**
+     * @return true if the index is followed by a CRC-32C checksum
+     */
+    public boolean hasIndexChecksum() {
+      return this.indexChecksum;
+    }
+  }
+
+  /**
+   * Make a ZArray from the zarr.json metadata of a Zarr v3 array.
+   * The codecs are mapped onto the .zarray model: the "bytes" codec gives the byte order, a "transpose" to
+   * reverse order gives F order, and the bytes to bytes codecs become filters, applied in order when writing and so
+   * in reverse when reading.
+   *
+   * @param node zarr.json of an array
+   * @return ZArray
+   * @throws ZarrFormatException if the array uses a data type, chunk grid or codec that is not supported
+   */
+  public static ZArray fromV3(JsonNode node) throws ZarrFormatException {
+    int[] shape = toInts(node.path(ZarrKeys.SHAPE), ZarrKeys.SHAPE);
+
+    JsonNode grid = node.path(ZarrKeys.CHUNK_GRID);
+    if (!"regular".equals(grid.path(ZarrKeys.NAME).asText())) {
+      throw new ZarrFormatException(ZarrKeys.CHUNK_GRID, grid.toString());
+    }
+    int[] chunks = toInts(grid.path(ZarrKeys.CONFIGURATION).path("chunk_shape"), ZarrKeys.CHUNK_GRID);
+
+    JsonNode keyEncoding = node.path(ZarrKeys.CHUNK_KEY_ENCODING);
+    JsonNode separatorNode = keyEncoding.path(ZarrKeys.CONFIGURATION).path("separator");
+    final String separator;
+    final String chunkKeyPrefix;
+    switch (keyEncoding.path(ZarrKeys.NAME).asText("default")) {
+      case "default":
+        separator = separatorNode.asText("/");
+        chunkKeyPrefix = "c";
+        break;
+      case "v2":
+        separator = separatorNode.asText(DEFAULT_SEPARATOR);
+        chunkKeyPrefix = "";
+        break;
+      default:
+        throw new ZarrFormatException(ZarrKeys.CHUNK_KEY_ENCODING, keyEncoding.toString());
+    }
+
+    String dataType = node.path(ZarrKeys.DATA_TYPE).asText();
+    String dtype = v3DataTypeMap.get(dataType);
+    if (dtype == null) {
+      throw new ZarrFormatException(ZarrKeys.DATA_TYPE, dataType);
+    }
+
+    Codecs codecs = new Codecs(node.path(ZarrKeys.CODECS), shape.length, false);
+    if (codecs.sharding != null) {
+      int[] inner = codecs.sharding.getChunks();
+      for (int i = 0; i < chunks.length; i++) {
+        if (inner.length != chunks.length || inner[i] <= 0 || chunks[i] % inner[i] != 0) {
+          throw new ZarrFormatException("Inner chunks of a shard must evenly divide the shard");
+        }
+      }
+    }
+    // single byte types have no byte order
+    dtype = (dtype.endsWith("1") ? "|" : codecs.bigEndian ? ">" : "<") + dtype;
+
+    String[] dimensionNames = null;
+    JsonNode dimNamesNode = node.path(ZarrKeys.DIMENSION_NAMES);
+    if (dimNamesNode.isArray()) {
+      dimensionNames = new String[dimNamesNode.size()];
+      for (int i = 0; i < dimensionNames.length; i++) {
+        JsonNode name = dimNamesNode.get(i);
+        dimensionNames[i] = name.isNull() ? null : name.asText();
+      }
+    }
+
+    Filter compressor; // v3 has no separate compressor, the null filter
+    try {
+      compressor = Filters.getFilter(null);
+    } catch (UnknownFilterException ex) {
+      throw new ZarrFormatException(ex.getMessage());
+    }
+    return new ZArray(shape, chunks, parseV3FillValue(node.path(ZarrKeys.FILL_VALUE), dataType), dtype, compressor,
+        codecs.order.name(), codecs.filters, separator, chunkKeyPrefix, dimensionNames, codecs.sharding);
+  }
+
+  private static int[] toInts(JsonNode node, String field) throws ZarrFormatException {
+    if (!node.isArray()) {
+      throw new ZarrFormatException(field, node.toString());
+    }
+    return StreamSupport.stream(node.spliterator(), false).mapToInt(JsonNode::asInt).toArray();
+  }
+
+  private static Object parseV3FillValue(JsonNode node, String dataType) throws ZarrFormatException {
+    if (node.isBoolean()) {
+      return node.asBoolean() ? 1 : 0;
+    }
+    if (node.isTextual()) {
+      String text = node.asText();
+      if (text.startsWith("0x")) { // bit pattern of a floating point value
+        long bits = Long.parseUnsignedLong(text.substring(2), 16);
+        if ("float32".equals(dataType)) {
+          return Float.intBitsToFloat((int) bits);
+        } else if ("float64".equals(dataType)) {
+          return Double.longBitsToDouble(bits);
+        }
+        throw new ZarrFormatException(ZarrKeys.FILL_VALUE, text);
+      }
+      return text; // "NaN", "Infinity" or "-Infinity"
+    }
+    return parseFillValue(node);
+  }
+
+  private static Object parseFillValue(JsonNode fillValueNode) {
+    if (fillValueNode.isInt()) {
+      return fillValueNode.asInt();
+    } else if (fillValueNode.isLong()) {
+      return fillValueNode.longValue();
+    } else if (fillValueNode.isFloat()) {
+      return fillValueNode.floatValue();
+    } else if (fillValueNode.isNumber()) {
+      return fillValueNode.asDouble();
+    }
+    return fillValueNode.asText("");
+  }
+
+  /**
+   * A Zarr v3 codec pipeline
+   */
+  private static class Codecs {
+    private Order order = Order.C;
+    private boolean bigEndian;
+    private final List<Filter> filters = new ArrayList<>();
+    private Sharding sharding;
+
+    Codecs(JsonNode codecs, int rank, boolean inShard) throws ZarrFormatException {
+      if (!codecs.isArray()) {
+        throw new ZarrFormatException(ZarrKeys.CODECS, codecs.toString());
+      }
+      boolean serialized = false; // past the array to bytes codec
+      for (JsonNode codec : codecs) {
+        String name = codec.isTextual() ? codec.asText() : codec.path(ZarrKeys.NAME).asText();
+        JsonNode config = codec.path(ZarrKeys.CONFIGURATION);
+        if (name.equals("transpose") && !serialized && sharding == null) {
+          order = parseTranspose(config.path(ZarrKeys.ORDER), rank);
+        } else if (name.equals("bytes") && !serialized) {
+          bigEndian = "big".equals(config.path("endian").asText("little"));
+          serialized = true;
+        } else if (name.equals("sharding_indexed") && !serialized && !inShard && order == Order.C) {
+          // the inner chunks are what is decoded, the shard itself is only an index
+          Codecs inner = new Codecs(config.path(ZarrKeys.CODECS), rank, true);
+          order = inner.order;
+          bigEndian = inner.bigEndian;
+          filters.addAll(inner.filters);
+          sharding = new Sharding(toInts(config.path("chunk_shape"), "chunk_shape"),
+              !"start".equals(config.path("index_location").asText("end")),
+              hasIndexChecksum(config.path("index_codecs")));
+          serialized = true;
+        } else if (V3_FILTER_CODECS.contains(name) && serialized && sharding == null) {
+          filters.add(makeFilter(name, config));
+        } else if (codec.path("must_understand").asBoolean(true)) {
+          // unknown, out of place, or, after sharding, would need the whole shard to be read
+          throw new ZarrFormatException(ZarrKeys.CODECS, codec.toString());
+        }
+      }
+      if (!serialized) {
+        throw new ZarrFormatException(ZarrKeys.CODECS, codecs.toString());
+      }
+    }
+
+    private static Order parseTranspose(JsonNode node, int rank) throws ZarrFormatException {
+      int[] axes = toInts(node, "transpose");
+      boolean identity = axes.length == rank;
+      boolean reverse = axes.length == rank;
+      for (int i = 0; i < axes.length; i++) {
+        identity &= axes[i] == i;
+        reverse &= axes[i] == rank - i - 1;
+      }
+      if (identity) {
+        return Order.C;
+      } else if (reverse) {
+        return Order.F;
+      }
+      throw new ZarrFormatException("transpose", node.toString());
+    }
+
+    private static boolean hasIndexChecksum(JsonNode indexCodecs) throws ZarrFormatException {
+      Codecs codecs = new Codecs(indexCodecs, 1, true);
+      boolean checksum = codecs.filters.size() == 1 && codecs.filters.get(0).getName().equals("crc32c");
+      if (codecs.bigEndian || codecs.order != Order.C || !(codecs.filters.isEmpty() || checksum)) {
+        throw new ZarrFormatException("index_codecs", indexCodecs.toString());
+      }
+      return checksum;
+    }
+
+    private static Filter makeFilter(String name, JsonNode config) throws ZarrFormatException {
+      Map<String, Object> bean = new HashMap<>();
+      if (config.isObject()) {
+        bean.putAll(objectMapper.convertValue(config, BEAN_TYPE));
+      }
+      bean.put(Filters.Keys.NAME, name);
+      Object shuffle = bean.get(Blosc.Keys.SHUFFLE_KEY);
+      if (shuffle instanceof String) { // numcodecs uses the shuffle mode numbers
+        bean.put(Blosc.Keys.SHUFFLE_KEY, "bitshuffle".equals(shuffle) ? Blosc.BITSHUFFLE
+            : "shuffle".equals(shuffle) ? Blosc.SHUFFLE : Blosc.NOSHUFFLE);
+      }
+      try {
+        return Filters.getFilter(bean);
+      } catch (UnknownFilterException | RuntimeException ex) {
+        throw new ZarrFormatException(ZarrKeys.CODECS, name);
+      }
+    }
+  }
+
   private static DataType parseDataType(String dtype) throws ZarrFormatException {
     dtype = dtype.replace(">", "");
     dtype = dtype.replace("<", "");
@@ -164,6 +467,7 @@ public class ZArray {
   }
 
   static class ZArrayDeserializer extends StdDeserializer<ZArray> {
+    private static final long serialVersionUID = 1L;
 
     protected ZArrayDeserializer() {
       super(ZArray.class);
@@ -179,19 +483,7 @@ public class ZArray {
           .mapToInt(JsonNode::asInt).toArray();
       String dtype = ((JsonNode) root.path(ZarrKeys.DTYPE)).asText();
 
-      JsonNode fillValueNode = (JsonNode) root.path(ZarrKeys.FILL_VALUE);
-      final Object fill;
-      if (fillValueNode.isInt()) {
-        fill = fillValueNode.asInt();
-      } else if (fillValueNode.isLong()) {
-        fill = fillValueNode.longValue();
-      } else if (fillValueNode.isFloat()) {
-        fill = fillValueNode.floatValue();
-      } else if (fillValueNode.isNumber()) {
-        fill = fillValueNode.asDouble();
-      } else {
-        fill = fillValueNode.asText("");
-      }
+      final Object fill = parseFillValue((JsonNode) root.path(ZarrKeys.FILL_VALUE));
 
       String order = ((JsonNode) root.path(ZarrKeys.ORDER)).asText();
 
@@ -200,14 +492,14 @@ public class ZArray {
 
       // Filters and compressor
       try {
-        Map<String, Object> compBean = codec.readValue(root.path(ZarrKeys.COMPRESSOR).traverse(codec), HashMap.class);
+        Map<String, Object> compBean = codec.readValue(root.path(ZarrKeys.COMPRESSOR).traverse(codec), BEAN_TYPE);
 
         Filter compressor = Filters.getFilter(compBean);
 
         List<Filter> filters = new ArrayList<>();
 
-        Map<String, Object>[] filtersBean =
-            codec.readValue(root.path(ZarrKeys.FILTERS).traverse(codec), HashMap[].class);
+        List<Map<String, Object>> filtersBean =
+            codec.readValue(root.path(ZarrKeys.FILTERS).traverse(codec), FILTERS_TYPE);
 
         if (filtersBean != null) {
           for (Map<String, Object> bean : filtersBean) {
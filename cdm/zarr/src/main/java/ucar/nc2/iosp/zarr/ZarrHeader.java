@@ -5,17 +5,21 @@
 
 package ucar.nc2.iosp.zarr;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import ucar.ma2.ArrayObject;
 import ucar.nc2.Attribute;
 import ucar.nc2.Dimension;
 import ucar.nc2.Group;
 import ucar.nc2.Variable;
 import ucar.nc2.filter.Filter;
-import ucar.unidata.io.RandomAccessFile;
-import ucar.unidata.io.zarr.RandomAccessDirectory;
-import ucar.unidata.io.zarr.RandomAccessDirectoryItem;
+import ucar.unidata.io.zarr.ZarrStore;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,187 +27,184 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.nio.ByteOrder;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 /**
- * Class to read Zarr metadata from a RandomAccessDirectory and map it to a CDM Object
+ * Class to read Zarr v2 or v3 metadata from a ZarrStore and map it to a CDM Object.
+ * Only the metadata objects of groups and arrays are read, chunk keys are never listed.
  */
 public class ZarrHeader {
 
   private static final Logger logger = LoggerFactory.getLogger(ZarrHeader.class);
 
-  private final RandomAccessDirectory rootRaf;
+  // number of shard indexes cached for each sharded array
+  private static final int SHARD_INDEX_CACHE_SIZE = 256;
+
+  private final ZarrStore store;
   private final Group.Builder rootGroup;
   private final String rootLocation;
   private static final ObjectMapper objectMapper = new ObjectMapper();
+  private static final TypeReference<Map<String, Object>> ATTRIBUTES_TYPE =
+      new TypeReference<Map<String, Object>>() {};
 
-  public ZarrHeader(RandomAccessDirectory raf, Group.Builder rootGroup) {
-    this.rootRaf = raf;
+  public ZarrHeader(ZarrStore store, Group.Builder rootGroup) {
+    this.store = store;
     this.rootGroup = rootGroup;
-    this.rootLocation = ZarrUtils.trimLocation(this.rootRaf.getLocation());
+    this.rootLocation = ZarrUtils.trimLocation(store.getLocation());
   }
 
+  /**
+   * Create CDM object on 'rootGroup' from the ZarrStore
+   *
+   * @throws IOException
+   */
+  public void read() throws IOException {
+    byte[] rootBytes = store.read(ZarrKeys.ZARR_JSON);
+    if (rootBytes != null) {
+      readV3(rootBytes);
+      return;
+    }
+
+    // use consolidated metadata if there is any, so that nothing needs to be listed
+    ZarrStore metadata = ConsolidatedMetadata.read(store);
+    if (metadata == null) {
+      metadata = store;
+    }
+
+    this.rootGroup.setName(ZarrUtils.getObjectNameFromPath(this.rootLocation + '/' + ZarrKeys.ZGROUP));
+    List<Attribute> attrs = makeAttributes(metadata, "");
+    if (attrs != null) {
+      this.rootGroup.addAttributes(attrs);
+    }
+    readGroup(metadata, "", this.rootGroup);
+  }
 
   /**
-   * class used to delay the creation of a variable until other files related to the variable have been read
-   * i.e. check for attrs and missing chunks before instantiating Variable
+   * Add the arrays and groups directly below a group prefix
    */
-  private class DelayedVarMaker {
-    private RandomAccessDirectoryItem var;
-    private ZArray zarray;
-    private Map<Integer, Long> initializedChunks; // track any uninitialized chunks for var
-    private List<Attribute> attrs; // list of variable attributes
-    private long dataOffset; // byte position where data starts
-
-    void setAttrs(List<Attribute> attrs) {
-      this.attrs = attrs;
-    }
-
-    void setVar(RandomAccessDirectoryItem var) {
-      this.var = var;
-      this.attrs = null;
-      this.initializedChunks = new HashMap<>();
-      this.dataOffset = -1;
-      if (var != null) {
+  private void readGroup(ZarrStore metadata, String prefix, Group.Builder group) throws IOException {
+    List<String> names = new ArrayList<>(metadata.list(prefix));
+    Collections.sort(names); // standardize order
+    for (String name : names) {
+      if (name.startsWith(".")) {
+        continue; // metadata of this group
+      }
+      String path = ZarrStore.join(prefix, name);
+
+      byte[] zarrayBytes = metadata.read(path + '/' + ZarrKeys.ZARRAY);
+      if (zarrayBytes != null) { // variables
+        ZArray zarray;
         try {
-          // get RandomAccessFile for JSON parsing and read metadata
-          RandomAccessFile raf = var.getOrOpenRaf();
-          raf.seek(0); // reset in case file has previously been opened by another iosp
-          this.zarray = objectMapper.readValue(raf, ZArray.class);
+          zarray = objectMapper.readValue(zarrayBytes, ZArray.class);
         } catch (IOException | ClassCastException ex) {
           logger.error(new ZarrFormatException(ex.getMessage()).getMessage());
-          // skip var if metadata invalid
-          this.var = null;
+          continue; // skip var if metadata invalid
+        }
+        try {
+          makeVariable(path, group, zarray, makeAttributes(metadata, path));
+        } catch (ZarrFormatException ex) {
+          logger.error(ex.getMessage());
         }
-      }
-    }
 
-    /*
-     * check if attribute file belongs to current variable
-     */
-    boolean myAttrs(RandomAccessDirectoryItem attrs) {
-      if (var == null || attrs == null) {
-        return false;
+      } else if (metadata.read(path + '/' + ZarrKeys.ZGROUP) != null) { // groups
+        Group.Builder child = makeGroup(name, group, makeAttributes(metadata, path));
+        readGroup(metadata, path, child);
+
+      } else {
+        logger.debug("{} in {} is not a Zarr group or array", name, this.rootLocation);
       }
-      String attrPath = ZarrUtils.trimLocation(attrs.getLocation());
-      String varPath = ZarrUtils.trimLocation(var.getLocation());
-      // true if zarray and zattrs have same parent object
-      return ZarrUtils.getObjectNameFromPath(attrPath).equals(ZarrUtils.getObjectNameFromPath(varPath));
     }
+  }
 
-    void processItem(RandomAccessDirectoryItem item) {
-      if (var == null) {
-        return;
-      }
-      // get index of chunks
-      int index = getChunkIndex(item, this.zarray);
-      if (index < 0) { // not data files, skip rest of var
-        logger.error(new ZarrFormatException().getMessage());
-        this.var = null; // skip rest of var is unrecognized files found
-      }
-      this.initializedChunks.put(index, item.length());
-      // if data offset is uninitialized, set here
-      if (this.dataOffset < 0) {
-        this.dataOffset = item.startIndex();
-      }
+  /**
+   * Create the CDM objects of a Zarr v3 store, in which each group and array has a zarr.json object
+   */
+  private void readV3(byte[] rootBytes) throws IOException {
+    JsonNode root = objectMapper.readTree(rootBytes);
+    if (!"group".equals(root.path(ZarrKeys.NODE_TYPE).asText())) {
+      throw new IOException(ZarrKeys.ZARR_JSON + " in " + this.rootLocation + " is not the metadata of a Zarr group");
+    }
+    // use inline consolidated metadata if there is any, so that nothing needs to be listed
+    ZarrStore metadata = ConsolidatedMetadata.readV3(store, root);
+    if (metadata == null) {
+      metadata = store;
     }
 
-    void makeVar() {
-      if (var == null) {
-        return; // do nothing if no variable is in progress
-      }
-      try {
-        makeVariable(var, dataOffset, zarray, initializedChunks, attrs);
-      } catch (ZarrFormatException ex) {
-        logger.error(ex.getMessage());
-      }
-      var = null; // reset var
+    this.rootGroup.setName(ZarrUtils.getObjectNameFromPath(this.rootLocation + '/' + ZarrKeys.ZARR_JSON));
+    List<Attribute> attrs = makeAttributes(root.path(ZarrKeys.ATTRIBUTES));
+    if (attrs != null) {
+      this.rootGroup.addAttributes(attrs);
     }
+    readGroupV3(metadata, "", this.rootGroup);
   }
 
   /**
-   * Create CDM object on 'rootGroup' from RandomAccessFile
-   *
-   * @throws IOException
+   * Add the Zarr v3 arrays and groups directly below a group prefix
    */
-  public void read() throws IOException {
-    List<RandomAccessDirectoryItem> items = this.rootRaf.getFilesInPath(this.rootLocation);
-    DelayedVarMaker delayedVarMaker = new DelayedVarMaker();
-
-    List<Attribute> grp_attrs = null;
-
-    for (RandomAccessDirectoryItem item : items) {
-      String filepath = ZarrUtils.trimLocation(item.getLocation());
+  private void readGroupV3(ZarrStore metadata, String prefix, Group.Builder group) throws IOException {
+    List<String> names = new ArrayList<>(metadata.list(prefix));
+    Collections.sort(names); // standardize order
+    for (String name : names) {
+      if (name.equals(ZarrKeys.ZARR_JSON) || name.startsWith(".")) {
+        continue; // metadata of this group
+      }
+      String path = ZarrStore.join(prefix, name);
 
-      if (filepath.endsWith(ZarrKeys.ZATTRS)) { // attributes
-        List<Attribute> attrs = makeAttributes(item);
+      byte[] bytes = metadata.read(path + '/' + ZarrKeys.ZARR_JSON);
+      if (bytes == null) {
+        logger.debug("{} in {} is not a Zarr group or array", name, this.rootLocation);
+        continue;
+      }
+      JsonNode node;
+      try {
+        node = objectMapper.readTree(bytes);
+      } catch (IOException ex) {
+        logger.error(new ZarrFormatException(ex.getMessage()).getMessage());
+        continue; // skip object if metadata invalid
+      }
+      List<Attribute> attrs = makeAttributes(node.path(ZarrKeys.ATTRIBUTES));
 
-        // assign attrs to either variable or group
-        if (delayedVarMaker.myAttrs(item)) {
-          delayedVarMaker.setAttrs(attrs);
-        } else {
-          // if .zattrs file does not belong to current var, we are in a new object and need to finish variable build
-          delayedVarMaker.makeVar();
-          grp_attrs = attrs;
+      String nodeType = node.path(ZarrKeys.NODE_TYPE).asText();
+      if ("array".equals(nodeType)) { // variables
+        try {
+          makeVariable(path, group, ZArray.fromV3(node), attrs);
+        } catch (ZarrFormatException ex) {
+          logger.error(ex.getMessage());
         }
 
-      } else if (filepath.endsWith(ZarrKeys.ZMETADATA)) { // possible consolidated metadata in root group
-        logger.trace("encountered .zmetadata; not yet coded for");
-
-      } else if (filepath.endsWith(ZarrKeys.ZGROUP)) { // groups
-        // build any vars in progress
-        delayedVarMaker.makeVar();
-        makeGroup(item, grp_attrs); // .zattrs will always be processed before .zgroup, so we can make group immediately
-        grp_attrs = null; // reset
-
-      } else if (filepath.endsWith(ZarrKeys.ZARRAY)) { // variables
-        // build any vars in progress
-        delayedVarMaker.makeVar();
-        // set up variable to be created after processing the rest of the files in the folder
-        delayedVarMaker.setVar(item);
+      } else if ("group".equals(nodeType)) { // groups
+        Group.Builder child = makeGroup(name, group, attrs);
+        readGroupV3(metadata, path, child);
 
       } else {
-        delayedVarMaker.processItem(item);
+        logger.error(new ZarrFormatException(ZarrKeys.NODE_TYPE, nodeType).getMessage());
       }
     }
-    // finish making any vars in progress at end of file
-    delayedVarMaker.makeVar();
   }
 
-  private void makeGroup(RandomAccessDirectoryItem item, List<Attribute> attrs) {
+  private Group.Builder makeGroup(String name, Group.Builder parentGroup, List<Attribute> attrs) {
     // make new Group
     Group.Builder group = Group.builder();
-    String location = ZarrUtils.trimLocation(item.getLocation());
-    if (location.equals(this.rootLocation + '/' + ZarrKeys.ZGROUP)) {
-      group = this.rootGroup;
-    }
-    // set Group name
-    group.setName(ZarrUtils.getObjectNameFromPath(location));
+    group.setName(name);
 
     // add current attributes, if any exist
     if (attrs != null) {
       group.addAttributes(attrs);
     }
 
-    if (group != this.rootGroup) {
-      try {
-        // set parent group or throws if non-existent
-        Group.Builder parentGroup = findGroup(location);
-        group.setParentGroup(parentGroup);
-        parentGroup.addGroup(group);
-      } catch (ZarrFormatException ex) {
-        logger.error(ex.getMessage());
-      }
-    }
+    group.setParentGroup(parentGroup);
+    parentGroup.addGroup(group);
+    return group;
   }
 
-  private void makeVariable(RandomAccessDirectoryItem item, long dataOffset, ZArray zarray,
-      Map<Integer, Long> initializedChunks, List<Attribute> attrs) throws ZarrFormatException {
+  private void makeVariable(String path, Group.Builder parentGroup, ZArray zarray, List<Attribute> attrs)
+      throws ZarrFormatException {
     // make new Variable
     Variable.Builder<?> var = Variable.builder();
-    String location = ZarrUtils.trimLocation(item.getLocation());
 
     // set var name
-    String vname = ZarrUtils.getObjectNameFromPath(location);
+    String vname = path.substring(path.lastIndexOf('/') + 1);
     var.setName(vname);
     logger.trace("evaluating {}", vname);
 
@@ -212,10 +213,11 @@ public class ZarrHeader {
     // NOTE: The Nczarr spec allows for honoring or ignoring this attribute by specifying a mode.
     // See under "Client Parameters" on https://docs.unidata.ucar.edu/nug/current/nczarr_head.html
     // We do nothing to check how that's set.
-    String[] dimNames = null;
-    boolean hasNamedDimensions = false;
+    // Zarr v3 arrays may instead name their dimensions in their metadata.
+    String[] dimNames = zarray.getDimensionNames();
+    boolean hasNamedDimensions = dimNames != null && Arrays.stream(dimNames).allMatch(Objects::nonNull);
 
-    if (attrs != null) {
+    if (!hasNamedDimensions && attrs != null) {
 
       for (Attribute attr : attrs) {
         final String attrName = attr.getName();
@@ -241,9 +243,6 @@ public class ZarrHeader {
     // set variable datatype
     var.setDataType(zarray.getDataType());
 
-    // find variable's group or throw if non-existent.
-    final Group.Builder parentGroup = findGroup(location);
-
     // create and set dimensions
     // If hasNamedDimensions set above, we will want to share var's dimensions with the group.
     int[] shape = zarray.getShape();
@@ -291,7 +290,8 @@ public class ZarrHeader {
 
     // create VInfo
     VInfo vinfo = new VInfo(chunks, zarray.getFillValue(), zarray.getCompressor(), zarray.getByteOrder(),
-        zarray.getOrder(), zarray.getSeparator(), zarray.getFilters(), dataOffset, initializedChunks);
+        zarray.getOrder(), zarray.getSeparator(), zarray.getFilters(), path, zarray.getChunkKeyPrefix(),
+        zarray.getSharding());
     var.setSPobject(vinfo);
 
     // Include some info from .zarray file in attributes for display when showing variable detail.
@@ -313,29 +313,16 @@ public class ZarrHeader {
     parentGroup.addVariable(var);
   }
 
-  private List<Attribute> makeAttributes(RandomAccessDirectoryItem item) {
-    // get RandomAccessFile for JSON parsing
+  /**
+   * Read the attributes of a group or array, if it has any
+   */
+  private List<Attribute> makeAttributes(ZarrStore metadata, String path) {
     try {
-      RandomAccessFile raf = item.getOrOpenRaf();
-      // read attributes from file
-      raf.seek(0);
-      Map<String, Object> attrMap = objectMapper.readValue(raf, HashMap.class);
-
-      // create Attribute objects
-      List<Attribute> attrs = new ArrayList<>();
-      attrMap.keySet().forEach(key -> {
-        Attribute.Builder attr = Attribute.builder(key);
-        Object val = attrMap.get(key);
-        if (val instanceof Collection<?>) {
-          attr.setValues(Arrays.asList(((Collection) val).toArray()), false);
-        } else if (val instanceof Number) {
-          attr.setNumericValue((Number) val, false);
-        } else {
-          attr.setStringValue((String) val);
-        }
-        attrs.add(attr.build());
-      });
-      return attrs;
+      byte[] bytes = metadata.read(ZarrStore.join(path, ZarrKeys.ZATTRS));
+      if (bytes == null) {
+        return null;
+      }
+      return makeAttributes(objectMapper.readValue(bytes, ATTRIBUTES_TYPE));
     } catch (IOException ioe) {
       ZarrIosp.logger.error(new ZarrFormatException().getMessage());
     }
@@ -343,45 +330,125 @@ public class ZarrHeader {
   }
 
   /**
-   * Get chunk number from file name
+   * Make the attributes of a Zarr v3 group or array, from the attributes object of its metadata
    */
-  private static int getChunkIndex(RandomAccessDirectoryItem item, ZArray zarray) {
-    String fileName = ZarrUtils.getDataFileName(item.getLocation());
-    // return -1 if filename can't be resolved
-    if (fileName.isEmpty()) {
-      return -1;
+  private List<Attribute> makeAttributes(JsonNode node) {
+    if (!node.isObject()) {
+      return null;
     }
-
-    int nDims = zarray.getShape().length;
-    // verify is data file, else return -1
-    String pattern = String.format("([0-9]+%c){%d}[0-9]+", zarray.getSeparator().charAt(0), nDims - 1);
-    if (!fileName.matches(pattern)) {
-      return -1;
+    try {
+      return makeAttributes(objectMapper.convertValue(node, ATTRIBUTES_TYPE));
+    } catch (IllegalArgumentException ex) {
+      ZarrIosp.logger.error(new ZarrFormatException().getMessage());
     }
+    return null;
+  }
 
-    // split by dimension separator and convert to ints
-    String[] dims = fileName.split(String.format("\\%c", zarray.getSeparator().charAt(0)));
-    int[] subs = Arrays.stream(dims).mapToInt(dim -> Integer.parseInt(dim)).toArray();
-
-    // get number of chunks in each dimension
-    int[] nChunks = new int[nDims];
-    int[] shape = zarray.getShape();
-    int[] chunkSize = zarray.getChunks();
-    for (int i = 0; i < nDims; i++) {
-      nChunks[i] = (int) Math.ceil(shape[i] / chunkSize[i]);
-    }
-    return ZarrUtils.subscriptsToIndex(subs, nChunks);
+  private List<Attribute> makeAttributes(Map<String, Object> attrMap) {
+    // create Attribute objects
+    List<Attribute> attrs = new ArrayList<>();
+    attrMap.keySet().forEach(key -> {
+      Attribute.Builder attr = Attribute.builder(key);
+      Object val = attrMap.get(key);
+      if (val instanceof Collection<?>) {
+        attr.setValues(Arrays.asList(((Collection) val).toArray()), false);
+      } else if (val instanceof Number) {
+        attr.setNumericValue((Number) val, false);
+      } else {
+        // strings, or v3 booleans and objects as their text
+        attr.setStringValue(Objects.toString(val, null));
+      }
+      attrs.add(attr.build());
+    });
+    return attrs;
   }
 
   /**
-   * Find Group builder matching provided name
-   *
-   * @throws ZarrFormatException if group is not found
+   * The consolidated metadata of a store (the .zmetadata object), presented as a read-only store of the metadata
+   * objects it contains
    */
-  private Group.Builder findGroup(String location) throws ZarrFormatException {
-    // set Group parent
-    String groupName = ZarrUtils.getParentGroupNameFromPath(location, this.rootLocation);
-    return this.rootGroup.findGroupNested(groupName).orElseThrow(ZarrFormatException::new);
+  private static class ConsolidatedMetadata implements ZarrStore {
+    private final String location;
+    private final Map<String, JsonNode> metadata;
+
+    private ConsolidatedMetadata(String location, Map<String, JsonNode> metadata) {
+      this.location = location;
+      this.metadata = metadata;
+    }
+
+    /**
+     * @return consolidated metadata of the store, or null if there is none or it cannot be read
+     */
+    static ConsolidatedMetadata read(ZarrStore store) throws IOException {
+      byte[] bytes = store.read(ZarrKeys.ZMETADATA);
+      if (bytes == null) {
+        return null;
+      }
+      try {
+        JsonNode node = objectMapper.readTree(bytes).get("metadata");
+        if (node == null || !node.isObject()) {
+          throw new ZarrFormatException("no metadata object in " + ZarrKeys.ZMETADATA);
+        }
+        Map<String, JsonNode> metadata = new HashMap<>();
+        node.fields().forEachRemaining(entry -> metadata.put(entry.getKey(), entry.getValue()));
+        return new ConsolidatedMetadata(store.getLocation(), metadata);
+      } catch (IOException | ZarrFormatException ex) {
+        logger.warn("Ignoring {} in {}: {}", ZarrKeys.ZMETADATA, store.getLocation(), ex.getMessage());
+        return null;
+      }
+    }
+
+    /**
+     * @return the inline consolidated metadata of a Zarr v3 store, with each array or group metadata under the key
+     *         of its zarr.json object, or null if there is none or it cannot be read
+     */
+    static ConsolidatedMetadata readV3(ZarrStore store, JsonNode root) {
+      JsonNode consolidated = root.path(ZarrKeys.CONSOLIDATED_METADATA);
+      if (consolidated.isMissingNode() || consolidated.isNull()) {
+        return null;
+      }
+      JsonNode node = consolidated.path("metadata");
+      if (!"inline".equals(consolidated.path("kind").asText()) || !node.isObject()) {
+        logger.warn("Ignoring {} in {}", ZarrKeys.CONSOLIDATED_METADATA, store.getLocation());
+        return null;
+      }
+      Map<String, JsonNode> metadata = new HashMap<>();
+      node.fields()
+          .forEachRemaining(entry -> metadata.put(entry.getKey() + '/' + ZarrKeys.ZARR_JSON, entry.getValue()));
+      return new ConsolidatedMetadata(store.getLocation(), metadata);
+    }
+
+    @Override
+    public String getLocation() {
+      return location;
+    }
+
+    @Override
+    public byte[] read(String key) throws IOException {
+      JsonNode node = metadata.get(key);
+      return node == null ? null : objectMapper.writeValueAsBytes(node);
+    }
+
+    @Override
+    public List<String> list(String prefix) {
+      String path = prefix.isEmpty() ? "" : prefix + '/';
+      Set<String> names = new HashSet<>();
+      for (String key : metadata.keySet()) {
+        if (key.startsWith(path)) {
+          int end = key.indexOf('/', path.length());
+          names.add(end < 0 ? key.substring(path.length()) : key.substring(path.length(), end));
+        }
+      }
+      return new ArrayList<>(names);
+    }
+
+    @Override
+    public long getLastModified(String key) {
+      return 0;
+    }
+
+    @Override
+    public void close() {} // NO-OP
   }
 
   /**
@@ -395,11 +462,13 @@ public class ZarrHeader {
     private final ZArray.Order order;
     private final String separator;
     private final List<Filter> filters;
-    private final long offset;
-    private final Map<Integer, Long> initializedChunks;
+    private final String key;
+    private final String chunkKeyPrefix;
+    private final ZArray.Sharding sharding;
+    private final Cache<String, long[]> shardIndexes; // by shard key
 
     VInfo(int[] chunks, Object fillValue, Filter compressor, ByteOrder byteOrder, ZArray.Order order, String separator,
-        List<Filter> filters, long offset, Map<Integer, Long> initializedChunks) {
+        List<Filter> filters, String key, String chunkKeyPrefix, ZArray.Sharding sharding) {
       this.chunks = chunks;
       this.fillValue = fillValue;
       this.byteOrder = byteOrder;
@@ -407,8 +476,11 @@ public class ZarrHeader {
       this.order = order;
       this.separator = separator;
       this.filters = filters;
-      this.offset = offset;
-      this.initializedChunks = initializedChunks;
+      this.key = key;
+      this.chunkKeyPrefix = chunkKeyPrefix;
+      this.sharding = sharding;
+      this.shardIndexes =
+          sharding == null ? null : CacheBuilder.newBuilder().maximumSize(SHARD_INDEX_CACHE_SIZE).build();
     }
 
     public int[] getChunks() {
@@ -439,12 +511,42 @@ public class ZarrHeader {
       return this.filters;
     }
 
-    public long getOffset() {
-      return this.offset;
+    /**
+     * @return key of the array in the store, the prefix of its chunk keys
+     */
+    public String getKey() {
+      return this.key;
+    }
+
+    /**
+     * @return prefix of the chunk keys before the chunk indices, eg "c" for Zarr v3; may be empty
+     */
+    public String getChunkKeyPrefix() {
+      return this.chunkKeyPrefix;
+    }
+
+    /**
+     * @return layout of the inner chunks of a sharded array, in which case the chunks are shards; otherwise null
+     */
+    public ZArray.Sharding getSharding() {
+      return this.sharding;
     }
 
-    public Map<Integer, Long> getInitializedChunks() {
-      return this.initializedChunks;
+    /**
+     * Get the index of a shard, which is only read if it is not already cached.
+     * Many reads of small sections of a sharded array then need one request each, for the inner chunk.
+     *
+     * @param key key of the shard
+     * @param reader reads the index
+     * @return offset and size of each inner chunk
+     */
+    long[] getShardIndex(String key, Callable<long[]> reader) throws IOException {
+      try {
+        return shardIndexes.get(key, reader);
+      } catch (ExecutionException | UncheckedExecutionException ex) {
+        Throwables.propagateIfPossible(ex.getCause(), IOException.class);
+        throw new IOException(ex.getCause());
+      }
     }
 
   }
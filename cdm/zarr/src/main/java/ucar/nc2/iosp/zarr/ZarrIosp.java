@@ -16,7 +16,7 @@ import ucar.nc2.Variable;
 import ucar.nc2.iosp.*;
 import ucar.nc2.util.CancelTask;
 import ucar.unidata.io.RandomAccessFile;
-import ucar.unidata.io.zarr.RandomAccessDirectory;
+import ucar.unidata.io.zarr.ZarrStore;
 
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
@@ -29,9 +29,10 @@ public class ZarrIosp extends AbstractIOServiceProvider {
   static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
   private static final String fileTypeId = "Zarr";
-  private static final String fileTypeDescription = "Zarr v2 formatted dataset";
+  private static final String fileTypeDescription = "Zarr v2 or v3 formatted dataset";
 
   private ZarrHeader header;
+  private ZarrStore store;
 
   @Override
   public boolean isValidFile(RandomAccessFile raf) {
@@ -66,7 +67,8 @@ public class ZarrIosp extends AbstractIOServiceProvider {
   @Override
   public void build(RandomAccessFile raf, Group.Builder rootGroup, CancelTask cancelTask) throws IOException {
     super.open(raf, null, cancelTask);
-    header = new ZarrHeader((RandomAccessDirectory) raf, rootGroup);
+    store = ZarrStore.open(raf.getLocation());
+    header = new ZarrHeader(store, rootGroup);
     header.read(); // build CDM from Zarr
   }
 
@@ -74,7 +76,7 @@ public class ZarrIosp extends AbstractIOServiceProvider {
   public void buildFinish(NetcdfFile ncfile) {} // NO-OP
 
   @Override
-  public Array readData(Variable v2, Section section) {
+  public Array readData(Variable v2, Section section) throws IOException {
     // find variable in RAF
     ZarrHeader.VInfo vinfo = (ZarrHeader.VInfo) v2.getSPobject();
     DataType dataType = v2.getDataType();
@@ -83,20 +85,26 @@ public class ZarrIosp extends AbstractIOServiceProvider {
     Object fillValue = getFillValue(vinfo, dataType);
 
     // create layout object
-    Layout layout = new ZarrLayoutBB(v2, section, this.raf);
+    if (store == null) {
+      reacquire();
+    }
+    Layout layout = new ZarrLayoutBB(v2, section, this.store);
     Object data = IospHelper.readDataFill((LayoutBB) layout, dataType, fillValue);
 
-    Array array = Array.factory(dataType, section.getShape(), data);
     if (vinfo.getOrder() == ZArray.Order.F) {
+      // data is in the transposed shape
       int n = v2.getDimensions().size();
+      int[] shape = section.getShape();
+      int[] transposed = new int[n];
       int[] dims = new int[n];
       for (int i = 0; i < n; i++) {
         dims[i] = n - i - 1;
+        transposed[i] = shape[n - i - 1];
       }
-      array = array.permute(dims);
+      return Array.factory(dataType, transposed, data).permute(dims);
     }
 
-    return array;
+    return Array.factory(dataType, section.getShape(), data);
   }
 
   private Object getFillValue(ZarrHeader.VInfo vinfo, DataType dataType) {
@@ -150,15 +158,47 @@ public class ZarrIosp extends AbstractIOServiceProvider {
     return fillValue;
   }
 
+  @Override
+  public void close() throws IOException {
+    super.close();
+    closeStore();
+  }
+
+  @Override
+  public void release() throws IOException {
+    super.release();
+    closeStore();
+  }
+
+  @Override
+  public void reacquire() throws IOException {
+    super.reacquire();
+    store = ZarrStore.open(location);
+  }
+
+  private void closeStore() throws IOException {
+    if (store != null) {
+      store.close();
+    }
+    store = null;
+  }
+
+  /**
+   * The last modified time of the store metadata, so that listing the chunks is not needed
+   */
   @Override
   public long getLastModified() {
-    if (raf == null) {
+    if (store == null) {
       try {
         reacquire();
       } catch (IOException e) {
         return 0;
       }
     }
-    return raf.getLastModified();
+    long lastModified = store.getLastModified("");
+    for (String key : new String[] {ZarrKeys.ZMETADATA, ZarrKeys.ZGROUP, ZarrKeys.ZATTRS, ZarrKeys.ZARR_JSON}) {
+      lastModified = Math.max(lastModified, store.getLastModified(key));
+    }
+    return lastModified;
   }
 }
@@ -0,0 +1,652 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2.iosp.zarr;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.IndexIterator;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.Range;
+import ucar.ma2.Section;
+import ucar.ma2.StructureData;
+import ucar.nc2.Attribute;
+import ucar.nc2.AttributeContainer;
+import ucar.nc2.Dimension;
+import ucar.nc2.Group;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import ucar.nc2.Structure;
+import ucar.nc2.Variable;
+import ucar.nc2.constants.CDM;
+import ucar.nc2.filter.Filter;
+import ucar.nc2.filter.Filters;
+import ucar.nc2.filter.UnknownFilterException;
+import ucar.nc2.iosp.AbstractIOServiceProvider;
+import ucar.nc2.iosp.NetcdfFormatUtils;
+import ucar.nc2.util.CancelTask;
+import ucar.nc2.write.ChunkAccumulator;
+import ucar.nc2.write.Nc4Chunking;
+import ucar.nc2.write.Nc4ChunkingDefault;
+import ucar.nc2.write.NetcdfFileFormat;
+import ucar.unidata.io.RandomAccessFile;
+import ucar.unidata.io.zarr.DirectoryStore;
+import ucar.unidata.io.zarr.ZarrStore;
+
+/**
+ * IOServiceProviderWriter for Zarr v2 or v3 stores in a local directory, used by NetcdfFormatWriter for
+ * {@link NetcdfFileFormat#ZARR} and {@link NetcdfFileFormat#ZARR3}.
+ * <p>
+ * Chunk shapes, compression and shuffling come from an {@link Nc4Chunking}, as for netCDF-4. Writes are collected into
+ * whole chunks; a chunk is compressed and stored once all of it has been written, and partly written chunks are
+ * stored (with fill values in the rest) on flush. Chunks that are all fill values are not stored at all.
+ * By default chunks are compressed and stored on the calling thread. If an Executor has been set with
+ * {@link ChunkAccumulator#setExecutor}, that is done concurrently on the Executor.
+ * <p>
+ * Only new stores can be written. Variables must be numeric, or char for Zarr v2; other variables are skipped with a
+ * warning, and writes to them are ignored. Zarr v3 stores do not use shuffling. The metadata of all groups and arrays
+ * is also consolidated, into .zmetadata for v2 or the root zarr.json for v3, so that readers need not list the store.
+ */
+@SuppressWarnings("deprecation") // IOServiceProviderWriter is what NetcdfFormatWriter writes through
+public class ZarrIospWriter extends AbstractIOServiceProvider implements ucar.nc2.iosp.IOServiceProviderWriter {
+  private static final Logger logger = LoggerFactory.getLogger(ZarrIospWriter.class);
+
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  private static final String fileTypeId = "Zarr";
+  private static final String fileTypeDescription = "Zarr v2 or v3 formatted dataset";
+
+  private final int zarrFormat;
+  private final ChunkAccumulator.Pipeline<Void> pipeline = new ChunkAccumulator.Pipeline<>(); // stores chunks
+
+  private Nc4Chunking chunker = new Nc4ChunkingDefault();
+  private ZarrStore store;
+  private final Map<String, ObjectNode> metadata = new LinkedHashMap<>(); // metadata objects, by key
+  private final Map<String, ArrayWriter> arrays = new HashMap<>(); // by full variable name
+  private NetcdfFile reader; // to read back what has been written
+
+  /**
+   * @param format {@link NetcdfFileFormat#ZARR} for Zarr v2, or {@link NetcdfFileFormat#ZARR3} for Zarr v3
+   */
+  public ZarrIospWriter(NetcdfFileFormat format) {
+    if (!format.isZarrFormat()) {
+      throw new IllegalArgumentException("Not a Zarr format: " + format);
+    }
+    this.zarrFormat = format == NetcdfFileFormat.ZARR3 ? 3 : 2;
+  }
+
+  /**
+   * @param chunker chooses the chunk shapes and compression of the arrays; if null, use the default.
+   */
+  public void setChunker(@Nullable Nc4Chunking chunker) {
+    if (chunker != null) {
+      this.chunker = chunker;
+    }
+  }
+
+  @Override
+  public boolean isValidFile(RandomAccessFile raf) {
+    return false; // only writes
+  }
+
+  @Override
+  public void open(RandomAccessFile raf, NetcdfFile ncfile, CancelTask cancelTask) throws IOException {
+    throw new IOException("Use ZarrIosp to read Zarr stores");
+  }
+
+  @Override
+  public String getFileTypeId() {
+    return fileTypeId;
+  }
+
+  @Override
+  public String getFileTypeDescription() {
+    return fileTypeDescription;
+  }
+
+  @Override
+  public void create(String filename, NetcdfFile ncfile, int extra, long preallocateSize, boolean largeFile)
+      throws IOException {
+    this.ncfile = ncfile;
+    this.location = filename;
+
+    File dir = new File(filename);
+    String[] existing = dir.list();
+    if (dir.isFile() || (existing != null && existing.length > 0)) {
+      throw new IOException(filename + " already exists; Zarr stores can only be written to a new directory");
+    }
+    if (!dir.mkdirs() && !dir.isDirectory()) {
+      throw new IOException("Cannot create directory " + filename);
+    }
+    this.store = new DirectoryStore(filename);
+
+    addGroup(ncfile.getRootGroup(), "");
+    writeMetadata();
+  }
+
+  @Override
+  public void openForWriting(RandomAccessFile raf, NetcdfFile ncfile, CancelTask cancelTask) throws IOException {
+    throw new IOException("Existing Zarr stores cannot be opened for writing");
+  }
+
+  @Override
+  public void setFill(boolean fill) {} // unwritten chunks are always read as the fill value
+
+  @Override
+  public void writeData(Variable v2, Section section, Array values) throws IOException, InvalidRangeException {
+    ArrayWriter array = arrays.get(v2.getFullName());
+    if (array == null) {
+      logger.debug("Ignoring data for {}, which is not written to {}", v2.getFullName(), location);
+      return;
+    }
+    array.write(section, values);
+  }
+
+  @Override
+  public int appendStructureData(Structure s, StructureData sdata) {
+    throw new UnsupportedOperationException("Structures cannot be written to Zarr");
+  }
+
+  @Override
+  public boolean rewriteHeader(boolean largeFile) {
+    return false; // netcdf3 only
+  }
+
+  @Override
+  public void updateAttribute(Variable v2, Attribute att) throws IOException {
+    String path = v2 == null ? "" : pathOf(v2.getParentGroup(), v2.getShortName());
+    ObjectNode attrs;
+    if (zarrFormat == 3) {
+      attrs = metadata.get(ZarrStore.join(path, ZarrKeys.ZARR_JSON)).withObject("/" + ZarrKeys.ATTRIBUTES);
+    } else {
+      attrs = metadata.computeIfAbsent(ZarrStore.join(path, ZarrKeys.ZATTRS), k -> objectMapper.createObjectNode());
+    }
+    attrs.set(att.getShortName(), toJson(att));
+    writeMetadata();
+  }
+
+  /**
+   * Store all chunks that have been written to, then the metadata
+   */
+  @Override
+  public void flush() throws IOException {
+    if (store == null) {
+      return;
+    }
+    closeReader(); // arrays may have grown
+    for (ArrayWriter array : arrays.values()) {
+      array.flush();
+    }
+    pipeline.awaitPending();
+    writeMetadata();
+  }
+
+  @Override
+  public Array readData(Variable v2, Section section) throws IOException, InvalidRangeException {
+    flush();
+    if (reader == null) {
+      reader = NetcdfFiles.open(location);
+    }
+    Variable v = reader.findVariable(NetcdfFiles.makeFullName(v2));
+    if (v == null) {
+      throw new IOException(v2.getFullName() + " was not written to " + location);
+    }
+    return v.read(section);
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      flush();
+    } finally {
+      closeReader();
+      if (store != null) {
+        store.close();
+        store = null;
+      }
+      super.close();
+    }
+  }
+
+  private void closeReader() throws IOException {
+    if (reader != null) {
+      reader.close();
+      reader = null;
+    }
+  }
+
+  ////////////////////////////////////////////////////////////////////////////////////////////////
+  // metadata
+
+  private static String pathOf(Group group, String name) {
+    StringBuilder path = new StringBuilder(name);
+    for (Group g = group; g != null && !g.isRoot(); g = g.getParentGroup()) {
+      path.insert(0, g.getShortName() + '/');
+    }
+    return path.toString();
+  }
+
+  private void addGroup(Group group, String path) throws IOException {
+    ObjectNode attrs = makeAttributes(group.attributes());
+    if (zarrFormat == 3) {
+      ObjectNode node = objectMapper.createObjectNode();
+      node.put(ZarrKeys.ZARR_FORMAT, 3);
+      node.put(ZarrKeys.NODE_TYPE, "group");
+      node.set(ZarrKeys.ATTRIBUTES, attrs);
+      metadata.put(ZarrStore.join(path, ZarrKeys.ZARR_JSON), node);
+    } else {
+      metadata.put(ZarrStore.join(path, ZarrKeys.ZGROUP), objectMapper.createObjectNode().put(ZarrKeys.ZARR_FORMAT, 2));
+      if (attrs.size() > 0) {
+        metadata.put(ZarrStore.join(path, ZarrKeys.ZATTRS), attrs);
+      }
+    }
+
+    for (Variable v : group.getVariables()) {
+      String dtype = zarrDataType(v.getDataType());
+      if (dtype == null || v instanceof Structure) {
+        logger.warn("Skipping {}: {} data cannot be written to Zarr v{}", v.getFullName(), v.getDataType(), zarrFormat);
+        continue;
+      }
+      ArrayWriter array = new ArrayWriter(v, ZarrStore.join(path, v.getShortName()), dtype);
+      arrays.put(v.getFullName(), array);
+    }
+    for (Group nested : group.getGroups()) {
+      addGroup(nested, ZarrStore.join(path, nested.getShortName()));
+    }
+  }
+
+  /**
+   * @return Zarr v2 dtype or v3 data_type of a CDM data type, or null if it cannot be written
+   */
+  @Nullable
+  private String zarrDataType(DataType dataType) {
+    boolean v3 = zarrFormat == 3;
+    switch (dataType) {
+      case CHAR:
+        return v3 ? null : "|S1";
+      case BYTE:
+        return v3 ? "int8" : "|i1";
+      case UBYTE:
+        return v3 ? "uint8" : "|u1";
+      case SHORT:
+        return v3 ? "int16" : "<i2";
+      case USHORT:
+        return v3 ? "uint16" : "<u2";
+      case INT:
+        return v3 ? "int32" : "<i4";
+      case UINT:
+        return v3 ? "uint32" : "<u4";
+      case LONG:
+        return v3 ? "int64" : "<i8";
+      case ULONG:
+        return v3 ? "uint64" : "<u8";
+      case FLOAT:
+        return v3 ? "float32" : "<f4";
+      case DOUBLE:
+        return v3 ? "float64" : "<f8";
+      default:
+        return null;
+    }
+  }
+
+  private static ObjectNode makeAttributes(AttributeContainer attributes) {
+    ObjectNode node = objectMapper.createObjectNode();
+    for (Attribute att : attributes) {
+      node.set(att.getShortName(), toJson(att));
+    }
+    return node;
+  }
+
+  private static JsonNode toJson(Attribute att) {
+    if (att.getLength() == 1) {
+      return att.isString() ? TextNode.valueOf(att.getStringValue()) : toJson(attributeValue(att, 0));
+    }
+    ArrayNode values = objectMapper.createArrayNode();
+    for (int i = 0; i < att.getLength(); i++) {
+      values.add(att.isString() ? TextNode.valueOf((String) att.getValue(i)) : toJson(attributeValue(att, i)));
+    }
+    return values;
+  }
+
+  private static Number attributeValue(Attribute att, int i) {
+    Number value = att.getNumericValue(i);
+    return att.getDataType().isUnsigned() ? DataType.widenNumberIfNegative(value) : value;
+  }
+
+  /**
+   * Numbers as JSON, with floating point NaN and infinities as "NaN", "Infinity" and "-Infinity", as Zarr uses
+   */
+  private static JsonNode toJson(@Nullable Number value) {
+    if (value == null) {
+      return NullNode.getInstance();
+    }
+    if ((value instanceof Double || value instanceof Float)
+        && (Double.isNaN(value.doubleValue()) || Double.isInfinite(value.doubleValue()))) {
+      return TextNode.valueOf(Double.toString(value.doubleValue()));
+    }
+    return objectMapper.valueToTree(value);
+  }
+
+  private static ArrayNode toJson(int[] values) {
+    ArrayNode node = objectMapper.createArrayNode();
+    for (int value : values) {
+      node.add(value);
+    }
+    return node;
+  }
+
+  /**
+   * Store all the metadata objects, and the consolidated metadata
+   */
+  private void writeMetadata() throws IOException {
+    for (ArrayWriter array : arrays.values()) {
+      array.updateShape();
+    }
+    for (Map.Entry<String, ObjectNode> entry : metadata.entrySet()) {
+      if (zarrFormat == 3 && entry.getKey().equals(ZarrKeys.ZARR_JSON)) {
+        continue; // root, with the consolidated metadata
+      }
+      store.write(entry.getKey(), objectMapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(entry.getValue()));
+    }
+
+    ObjectNode consolidated = objectMapper.createObjectNode();
+    if (zarrFormat == 3) {
+      for (Map.Entry<String, ObjectNode> entry : metadata.entrySet()) {
+        String key = entry.getKey();
+        if (!key.equals(ZarrKeys.ZARR_JSON)) {
+          consolidated.set(key.substring(0, key.length() - ZarrKeys.ZARR_JSON.length() - 1), entry.getValue());
+        }
+      }
+      ObjectNode root = metadata.get(ZarrKeys.ZARR_JSON).deepCopy();
+      ObjectNode inline = root.putObject(ZarrKeys.CONSOLIDATED_METADATA);
+      inline.put("kind", "inline");
+      inline.put("must_understand", false);
+      inline.set("metadata", consolidated);
+      store.write(ZarrKeys.ZARR_JSON, objectMapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(root));
+    } else {
+      metadata.forEach(consolidated::set);
+      ObjectNode zmetadata = objectMapper.createObjectNode();
+      zmetadata.set("metadata", consolidated);
+      zmetadata.put("zarr_consolidated_format", 1);
+      store.write(ZarrKeys.ZMETADATA, objectMapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(zmetadata));
+    }
+  }
+
+  /** Writes the chunks and metadata of one variable */
+  private class ArrayWriter {
+    private final Variable v;
+    private final String key;
+    private final DataType dataType;
+    private final int[] chunks;
+    private final int[] extent; // of the data written so far, which is larger than the shape of unlimited dimensions
+    private final Number fillValue;
+    private final List<Filter> codecs = new ArrayList<>(); // applied in order when storing a chunk
+    private final ObjectNode node; // .zarray, or zarr.json for v3
+
+    private final ChunkAccumulator buffers;
+    private final Set<String> submitted = new HashSet<>(); // chunk keys that have been handed to the executor
+    private final Set<String> stored = ConcurrentHashMap.newKeySet(); // chunk keys that are in the store
+    private byte[] fillBytes; // raw bytes of a chunk of fill values
+
+    ArrayWriter(Variable v, String key, String dtype) throws IOException {
+      this.v = v;
+      this.key = key;
+      this.dataType = v.getDataType();
+      this.extent = v.getShape();
+
+      int[] shape = v.getShape();
+      long[] computed = chunker.isChunked(v) ? chunker.computeChunking(v) : null;
+      this.chunks = new int[shape.length];
+      for (int i = 0; i < shape.length; i++) {
+        long size = computed != null && i < computed.length ? computed[i] : shape[i];
+        this.chunks[i] = (int) Math.max(1, Math.min(size, Integer.MAX_VALUE));
+      }
+
+      Attribute fillAtt = v.findAttribute(CDM.FILL_VALUE);
+      if (dataType == DataType.CHAR) {
+        this.fillValue = null;
+      } else if (fillAtt != null && !fillAtt.isString()) {
+        this.fillValue = attributeValue(fillAtt, 0);
+      } else {
+        this.fillValue = NetcdfFormatUtils.getFillValueDefault(dataType);
+      }
+
+      this.buffers = new ChunkAccumulator(v, chunks) {
+        @Override
+        protected Array readChunk(int[] index) throws IOException {
+          return ArrayWriter.this.readChunk(chunkKey(index));
+        }
+
+        @Override
+        protected void store(int[] index, Array data) throws IOException {
+          ArrayWriter.this.store(chunkKey(index), data);
+        }
+      };
+
+      // codecs, as in the metadata
+      int deflateLevel = chunker.getDeflateLevel(v);
+      ObjectNode compressor = null;
+      ArrayNode filters = null;
+      if (deflateLevel > 0) {
+        if (zarrFormat == 2 && chunker.isShuffle(v) && dataType.getSize() > 1) {
+          ObjectNode shuffle = objectMapper.createObjectNode();
+          shuffle.put(Filters.Keys.NAME, "shuffle");
+          shuffle.put(Filters.Keys.ELEM_SIZE, dataType.getSize());
+          filters = objectMapper.createArrayNode().add(shuffle);
+          codecs.add(makeFilter(shuffle));
+        }
+        compressor = objectMapper.createObjectNode();
+        compressor.put(Filters.Keys.NAME, zarrFormat == 3 ? "gzip" : "zlib");
+        compressor.put("level", deflateLevel);
+        codecs.add(makeFilter(compressor));
+      }
+
+      this.node = objectMapper.createObjectNode();
+      node.put(ZarrKeys.ZARR_FORMAT, zarrFormat);
+      List<String> dimNames = new ArrayList<>();
+      for (Dimension dim : v.getDimensions()) {
+        if (dim.isShared()) {
+          dimNames.add(dim.getShortName());
+        }
+      }
+      boolean namedDimensions = dimNames.size() == shape.length && !dimNames.isEmpty();
+      ObjectNode attrs = makeAttributes(v.attributes());
+
+      if (zarrFormat == 3) {
+        node.put(ZarrKeys.NODE_TYPE, "array");
+        node.set(ZarrKeys.SHAPE, toJson(shape));
+        node.put(ZarrKeys.DATA_TYPE, dtype);
+        ObjectNode grid = node.putObject(ZarrKeys.CHUNK_GRID);
+        grid.put(ZarrKeys.NAME, "regular");
+        grid.putObject(ZarrKeys.CONFIGURATION).set("chunk_shape", toJson(chunks));
+        ObjectNode keyEncoding = node.putObject(ZarrKeys.CHUNK_KEY_ENCODING);
+        keyEncoding.put(ZarrKeys.NAME, "default");
+        keyEncoding.putObject(ZarrKeys.CONFIGURATION).put("separator", "/");
+        node.set(ZarrKeys.FILL_VALUE, toJson(fillValue == null ? (Number) 0 : fillValue));
+        ArrayNode codecsNode = node.putArray(ZarrKeys.CODECS);
+        ObjectNode bytes = codecsNode.addObject();
+        bytes.put(ZarrKeys.NAME, "bytes");
+        bytes.putObject(ZarrKeys.CONFIGURATION).put("endian", "little");
+        if (compressor != null) {
+          ObjectNode gzip = codecsNode.addObject();
+          gzip.put(ZarrKeys.NAME, "gzip");
+          gzip.putObject(ZarrKeys.CONFIGURATION).put("level", deflateLevel);
+        }
+        node.set(ZarrKeys.ATTRIBUTES, attrs);
+        if (namedDimensions) {
+          ArrayNode names = node.putArray(ZarrKeys.DIMENSION_NAMES);
+          dimNames.forEach(names::add);
+        }
+        metadata.put(ZarrStore.join(key, ZarrKeys.ZARR_JSON), node);
+
+      } else {
+        node.set(ZarrKeys.SHAPE, toJson(shape));
+        node.set(ZarrKeys.CHUNKS, toJson(chunks));
+        node.put(ZarrKeys.DTYPE, dtype);
+        node.set(ZarrKeys.COMPRESSOR, compressor == null ? NullNode.getInstance() : compressor);
+        node.set(ZarrKeys.FILL_VALUE, toJson(fillValue));
+        node.put(ZarrKeys.ORDER, "C");
+        node.set(ZarrKeys.FILTERS, filters == null ? NullNode.getInstance() : filters);
+        node.put(ZarrKeys.DIMENSION_SEPARATOR, ZArray.DEFAULT_SEPARATOR);
+        metadata.put(ZarrStore.join(key, ZarrKeys.ZARRAY), node);
+        if (namedDimensions) {
+          // xarray convention
+          ArrayNode names = attrs.putArray("_ARRAY_DIMENSIONS");
+          dimNames.forEach(names::add);
+        }
+        if (attrs.size() > 0) {
+          metadata.put(ZarrStore.join(key, ZarrKeys.ZATTRS), attrs);
+        }
+      }
+    }
+
+    private Filter makeFilter(ObjectNode bean) throws IOException {
+      try {
+        return Filters.getFilter(objectMapper.convertValue(bean, new TypeReference<Map<String, Object>>() {}));
+      } catch (UnknownFilterException e) {
+        throw new IOException(e.getMessage(), e);
+      }
+    }
+
+    /** Unlimited dimensions grow to the extent of the data written */
+    void updateShape() {
+      node.set(ZarrKeys.SHAPE, toJson(extent));
+    }
+
+    String chunkKey(int[] index) {
+      StringBuilder chunkKey = new StringBuilder(key).append('/');
+      String separator = zarrFormat == 3 ? "/" : ZArray.DEFAULT_SEPARATOR;
+      if (zarrFormat == 3) {
+        chunkKey.append('c');
+      } else if (index.length == 0) {
+        chunkKey.append('0'); // a scalar has one chunk
+      }
+      for (int i = 0; i < index.length; i++) {
+        if (i > 0 || zarrFormat == 3) {
+          chunkKey.append(separator);
+        }
+        chunkKey.append(index[i]);
+      }
+      return chunkKey.toString();
+    }
+
+    /** Copy values into the chunks, storing the chunks that are then complete */
+    void write(Section section, Array values) throws IOException, InvalidRangeException {
+      for (int i = 0; i < chunks.length; i++) {
+        Range range = section.getRange(i);
+        if (range.length() == 0) {
+          return;
+        }
+        extent[i] = Math.max(extent[i], range.last() + 1);
+      }
+      buffers.write(section, values);
+    }
+
+    /** A new chunk of fill values, or the chunk already in the store if it is written to again */
+    private Array readChunk(String chunkKey) throws IOException {
+      if (submitted.contains(chunkKey)) {
+        pipeline.awaitPending();
+        byte[] bytes = stored.contains(chunkKey) ? store.read(chunkKey) : null;
+        if (bytes != null) {
+          for (int i = codecs.size() - 1; i >= 0; i--) {
+            bytes = codecs.get(i).decode(bytes);
+          }
+          return Array.factory(dataType, chunks, ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN));
+        }
+      }
+      return readFillChunk();
+    }
+
+    private Array readFillChunk() {
+      Array data = Array.factory(dataType, chunks);
+      if (fillValue != null) {
+        IndexIterator ii = data.getIndexIterator();
+        boolean floating = dataType.isFloatingPoint();
+        while (ii.hasNext()) {
+          if (floating) {
+            ii.setDoubleNext(fillValue.doubleValue());
+          } else {
+            ii.setLongNext(fillValue.longValue());
+          }
+        }
+      }
+      return data;
+    }
+
+    /** Compress and store a chunk, unless it has only fill values and was never stored */
+    private void store(String chunkKey, Array data) throws IOException {
+      if (fillBytes == null) {
+        fillBytes = toBytes(readFillChunk());
+      }
+      submitted.add(chunkKey);
+      pipeline.submit(() -> {
+        byte[] bytes = toBytes(data);
+        if (!stored.contains(chunkKey) && Arrays.equals(bytes, fillBytes)) {
+          return null; // an uninitialized chunk is read as fill values
+        }
+        for (Filter codec : codecs) {
+          bytes = codec.encode(bytes);
+        }
+        store.write(chunkKey, bytes);
+        stored.add(chunkKey);
+        return null;
+      }, result -> {});
+    }
+
+    /** Store the chunks that have been partly written */
+    void flush() throws IOException {
+      buffers.flush();
+    }
+  }
+
+  /** Little endian bytes of an array */
+  private static byte[] toBytes(Array data) {
+    ByteBuffer bb = ByteBuffer.allocate((int) data.getSize() * data.getDataType().getSize());
+    bb.order(ByteOrder.LITTLE_ENDIAN);
+    IndexIterator ii = data.getIndexIterator();
+    Class<?> type = data.getElementType();
+    while (ii.hasNext()) {
+      if (type == double.class) {
+        bb.putDouble(ii.getDoubleNext());
+      } else if (type == float.class) {
+        bb.putFloat(ii.getFloatNext());
+      } else if (type == long.class) {
+        bb.putLong(ii.getLongNext());
+      } else if (type == int.class) {
+        bb.putInt(ii.getIntNext());
+      } else if (type == short.class) {
+        bb.putShort(ii.getShortNext());
+      } else if (type == char.class) {
+        bb.put((byte) ii.getCharNext());
+      } else {
+        bb.put(ii.getByteNext());
+      }
+    }
+    return bb.array();
+  }
+}
@@ -2,61 +2,79 @@ package ucar.nc2.iosp.zarr;
 
 import ucar.ma2.Range;
 import ucar.ma2.Section;
-import ucar.nc2.Dimension;
 import ucar.nc2.Variable;
+import ucar.nc2.filter.Checksum32;
 import ucar.nc2.filter.Filter;
 import ucar.nc2.iosp.LayoutBB;
 import ucar.nc2.iosp.LayoutBBTiled;
-import ucar.unidata.io.RandomAccessFile;
+import ucar.unidata.io.zarr.ZarrStore;
 
 import java.io.IOException;
 import java.nio.*;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 /**
- * A tiled layout for Zarr formats that accommodates uncompressing and filtering data before returning
+ * A tiled layout for Zarr formats that accommodates uncompressing and filtering data before returning.
+ * Each chunk is read from the store by its key; a missing key is an uninitialized chunk.
+ * Only the chunks that intersect the wanted section are visited.
+ * <p>
+ * For a sharded Zarr v3 array the chunks are the inner chunks of the shards. The index of each shard is read once
+ * and cached, after which only the byte range of each wanted inner chunk is read from the shard.
  */
 public class ZarrLayoutBB implements LayoutBB {
 
+  private static final Checksum32 indexChecksum = new Checksum32(Checksum32.CType.CRC32C);
+  private static final long MISSING = -1; // offset and size of a missing inner chunk, 2^64 - 1 unsigned
+
   private LayoutBBTiled delegate;
 
-  private RandomAccessFile raf;
+  private ZarrStore store;
+  private final ZarrHeader.VInfo vinfo;
   private ByteOrder byteOrder;
-  private final long varOffset; // start of variable data in raf
+  private final String varKey; // key of variable, the prefix of its chunk keys
+  private final String chunkKeyPrefix; // before the chunk indices in a chunk key
+  private final String separator; // separates the chunk indices in a chunk key
+  private final ZArray.Sharding sharding; // null unless sharded
   private final Section want;
 
   private int[] chunkSize; // number of elements per chunks
   private int elemSize; // size of elements in bytes
-  private int nChunks[]; // number of chunks per dimension
-  private int totalNChunks; // total number of chunks
+  private int[] firstChunk; // first chunk intersecting the wanted section, per dimension
+  private int[] lastChunk; // last chunk intersecting the wanted section, per dimension
+  private int[] chunksPerShard; // number of inner chunks per shard, per dimension
   private boolean F_order = false; // F order storage?
-  private Map<Integer, Long> initializedChunks; // set of chunks that exist as files and their compressed size
   private Filter compressor;
   private List<Filter> filters;
 
-  public ZarrLayoutBB(Variable v2, Section wantSection, RandomAccessFile raf) {
+  public ZarrLayoutBB(Variable v2, Section wantSection, ZarrStore store) {
     // var data info
-    this.raf = raf;
-    ZarrHeader.VInfo vinfo = (ZarrHeader.VInfo) v2.getSPobject();
+    this.store = store;
+    this.vinfo = (ZarrHeader.VInfo) v2.getSPobject();
     this.byteOrder = vinfo.getByteOrder();
-    this.varOffset = vinfo.getOffset();
+    this.varKey = vinfo.getKey();
+    this.chunkKeyPrefix = vinfo.getChunkKeyPrefix();
+    this.separator = vinfo.getSeparator();
     this.compressor = vinfo.getCompressor();
     this.filters = vinfo.getFilters();
-
+    this.sharding = vinfo.getSharding();
 
     // fill in chunk info
-    this.chunkSize = vinfo.getChunks();
+    this.chunkSize = sharding == null ? vinfo.getChunks() : sharding.getChunks();
     int ndims = this.chunkSize.length;
-    this.initializedChunks = vinfo.getInitializedChunks();
-    this.nChunks = new int[ndims];
-    this.totalNChunks = 1;
+    if (sharding != null) {
+      this.chunksPerShard = new int[ndims];
+      for (int i = 0; i < ndims; i++) {
+        this.chunksPerShard[i] = vinfo.getChunks()[i] / this.chunkSize[i];
+      }
+    }
+    this.firstChunk = new int[ndims];
+    this.lastChunk = new int[ndims];
     for (int i = 0; i < ndims; i++) {
-      Dimension dim = v2.getDimension(i);
-      // round up nchunks if not evenly divisible by chunk size
-      this.nChunks[i] = (int) Math.ceil(dim.getLength() / this.chunkSize[i]);
-      this.totalNChunks *= nChunks[i];
+      Range range = wantSection.getRange(i);
+      this.firstChunk[i] = range.first() / this.chunkSize[i];
+      // an empty range has no chunks
+      this.lastChunk[i] = range.length() == 0 ? this.firstChunk[i] - 1 : range.last() / this.chunkSize[i];
     }
 
     // transpose wantsSection and chunk shape if F order
@@ -105,53 +123,109 @@ public class ZarrLayoutBB implements LayoutBB {
   private class DataChunkIterator implements LayoutBBTiled.DataChunkIterator {
 
     private int[] currChunk; // current chunk in subscript coords
-    private int chunkNum; // current chunk as flat index
-    private long currOffset; // byte position of current chunk
-
+    private boolean done;
 
     DataChunkIterator() {
-      this.currChunk = new int[chunkSize.length];
-      this.chunkNum = 0;
-      this.currOffset = varOffset; // start at start of variable data
+      this.currChunk = firstChunk.clone();
+      for (int i = 0; i < firstChunk.length; i++) {
+        this.done |= lastChunk[i] < firstChunk[i];
+      }
     }
 
     public boolean hasNext() {
-      return this.chunkNum < totalNChunks;
+      return !this.done;
     }
 
     public LayoutBBTiled.DataChunk next() {
-      DataChunk chunk = new ZarrLayoutBB.DataChunk(this.currChunk, this.chunkNum, this.currOffset);
+      DataChunk chunk = new ZarrLayoutBB.DataChunk(this.currChunk);
       incrementChunk();
       return chunk;
     }
 
     private void incrementChunk() {
-      // increment index from inner dimension outward
-      int i = this.currChunk.length - 1;
-      while (this.currChunk[i] + 1 >= nChunks[i] && i > 0) {
-        this.currChunk[i] = 0;
-        i--;
+      // increment index from inner dimension outward, within the wanted chunks
+      for (int i = this.currChunk.length - 1; i >= 0; i--) {
+        if (this.currChunk[i] < lastChunk[i]) {
+          this.currChunk[i]++;
+          return;
+        }
+        this.currChunk[i] = firstChunk[i];
       }
-      this.currChunk[i]++;
-      this.currOffset += initializedChunks.getOrDefault(this.chunkNum, (long) 0);
-      this.chunkNum = ZarrUtils.subscriptsToIndex(this.currChunk, nChunks);
+      this.done = true;
     }
   }
 
-  private class DataChunk implements LayoutBBTiled.DataChunk {
+  /**
+   * Key of a chunk, or of a shard, in the store
+   */
+  private String chunkKey(int[] index) {
+    StringBuilder key = new StringBuilder(varKey).append('/').append(chunkKeyPrefix);
+    if (index.length == 0 && chunkKeyPrefix.isEmpty()) {
+      return key.append('0').toString(); // a scalar has one chunk
+    }
+    for (int i = 0; i < index.length; i++) {
+      if (i > 0 || !chunkKeyPrefix.isEmpty()) {
+        key.append(separator);
+      }
+      key.append(index[i]);
+    }
+    return key.toString();
+  }
+
+  /**
+   * Read the index of a shard
+   *
+   * @return offset and size of each inner chunk, in C order; empty if the shard does not exist
+   */
+  private long[] readShardIndex(String shardKey) throws IOException {
+    int nInner = 1;
+    for (int n : chunksPerShard) {
+      nInner *= n;
+    }
+    int size = 16 * nInner + (sharding.hasIndexChecksum() ? 4 : 0);
+    byte[] bytes = store.read(shardKey, sharding.isIndexAtEnd() ? -size : 0, size);
+    if (bytes == null) {
+      return new long[0];
+    }
+    if (sharding.hasIndexChecksum()) {
+      try {
+        bytes = indexChecksum.decode(bytes);
+      } catch (RuntimeException ex) {
+        throw new IOException("Invalid index of shard " + shardKey + " in " + store.getLocation(), ex);
+      }
+    }
+    ByteBuffer bb = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    long[] index = new long[2 * nInner];
+    for (int i = 0; i < index.length; i++) {
+      index[i] = bb.getLong();
+    }
+    return index;
+  }
+
+  private class DataChunk implements LayoutBBTiled.FilteredDataChunk {
 
     private int[] offset; // start indices of chunk in elements
-    private long rafOffset; // start position of chunk in bytes
-    private int chunkNum;
+    private String key; // key of chunk, or of its shard, in the store
+    private int inner; // index of the chunk in its shard, in C order
 
-    DataChunk(int[] index, int chunkNum, long rafOffset) {
-      this.rafOffset = rafOffset;
+    DataChunk(int[] index) {
       this.offset = new int[index.length];
       for (int i = 0; i < index.length; i++) {
         int j = F_order ? index.length - i - 1 : i;
         this.offset[i] = index[j] * chunkSize[i];
       }
-      this.chunkNum = chunkNum;
+      if (sharding == null) {
+        this.key = chunkKey(index);
+      } else {
+        int[] shard = new int[index.length];
+        int[] innerIndex = new int[index.length];
+        for (int i = 0; i < index.length; i++) {
+          shard[i] = index[i] / chunksPerShard[i];
+          innerIndex[i] = index[i] % chunksPerShard[i];
+        }
+        this.key = chunkKey(shard);
+        this.inner = ZarrUtils.subscriptsToIndex(innerIndex, chunksPerShard);
+      }
     }
 
     public int[] getOffset() {
@@ -159,21 +233,37 @@ public class ZarrLayoutBB implements LayoutBB {
     }
 
     public ByteBuffer getByteBuffer() throws IOException {
-      // read the data
-      byte[] data;
-      // if chunk does not exist as file, return empty buffer
-      long dataLength = initializedChunks.getOrDefault(chunkNum, (long) 0);
-      if (dataLength == 0) {
-        ByteBuffer result = ByteBuffer.wrap(new byte[0]);
+      return decode(readRawBytes());
+    }
+
+    public byte[] readRawBytes() throws IOException {
+      // if chunk does not exist in the store, return empty array
+      if (sharding == null) {
+        byte[] data = store.read(this.key);
+        return data == null ? new byte[0] : data;
+      }
+      long[] index = vinfo.getShardIndex(this.key, () -> readShardIndex(this.key));
+      if (index.length == 0 || (index[2 * inner] == MISSING && index[2 * inner + 1] == MISSING)) {
+        return new byte[0];
+      }
+      // only the bytes of this inner chunk
+      byte[] data = store.read(this.key, index[2 * inner], (int) index[2 * inner + 1]);
+      return data == null ? new byte[0] : data;
+    }
+
+    @Override
+    public boolean isConcurrentReadSafe() {
+      return true; // stores are thread-safe, and each chunk is a separate object or byte range
+    }
+
+    public ByteBuffer decode(byte[] data) throws IOException {
+      // chunk does not exist as file, return empty buffer
+      if (data.length == 0) {
+        ByteBuffer result = ByteBuffer.wrap(data);
         result.order(byteOrder);
         return result;
       }
 
-      data = new byte[(int) dataLength];
-      raf.seek(this.rafOffset);
-      // raf.read(data, 0, (int)dataLength);
-      raf.readFully(data);
-
       // apply compressor
       data = compressor.decode(data);
       // apply filters in reverse order
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.unidata.io.zarr;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * A Zarr store in a local directory, with each key a file path relative to the directory.
+ */
+public class DirectoryStore implements ZarrStore {
+
+  private final File root;
+
+  public DirectoryStore(String location) throws IOException {
+    this.root = new File(location);
+    if (!root.isDirectory()) {
+      throw new IOException(location + " is not a directory");
+    }
+  }
+
+  @Override
+  public String getLocation() {
+    return root.getPath();
+  }
+
+  @Nullable
+  @Override
+  public byte[] read(String key) throws IOException {
+    File file = new File(root, key);
+    try {
+      return file.isFile() ? Files.readAllBytes(file.toPath()) : null;
+    } catch (NoSuchFileException e) {
+      return null; // removed since checked
+    }
+  }
+
+  @Nullable
+  @Override
+  public byte[] read(String key, long offset, int nbytes) throws IOException {
+    File file = new File(root, key);
+    if (!file.isFile()) {
+      return null;
+    }
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      long start = offset < 0 ? raf.length() + offset : offset;
+      if (start < 0 || start + nbytes > raf.length()) {
+        throw new EOFException(String.format("Reading %s at %d bytes=%d past EOF=%d", file, start, nbytes,
+            raf.length()));
+      }
+      byte[] data = new byte[nbytes];
+      raf.seek(start);
+      raf.readFully(data);
+      return data;
+    }
+  }
+
+  @Override
+  public void write(String key, byte[] data) throws IOException {
+    Path path = new File(root, key).toPath();
+    Files.createDirectories(path.getParent());
+    Files.write(path, data);
+  }
+
+  @Override
+  public List<String> list(String prefix) {
+    String[] names = new File(root, prefix).list();
+    return names == null ? Collections.emptyList() : Arrays.asList(names);
+  }
+
+  @Override
+  public long getLastModified(String key) {
+    return new File(root, key).lastModified();
+  }
+
+  @Override
+  public void close() {} // NO-OP
+}
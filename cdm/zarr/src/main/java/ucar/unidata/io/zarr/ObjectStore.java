@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.unidata.io.zarr;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import javax.annotation.Nullable;
+import thredds.inventory.CollectionConfig;
+import thredds.inventory.MController;
+import thredds.inventory.MControllers;
+import thredds.inventory.MFile;
+import ucar.nc2.util.IO;
+
+/**
+ * A Zarr store whose objects are reached through {@link MFile#getChild}, eg an S3 bucket prefix.
+ * Each key is resolved to its own object, and only the prefixes of groups are ever listed. Objects are read with a
+ * single request each: a missing object, eg an uninitialized chunk, is found by the read failing with a
+ * FileNotFoundException (as MFile.getInputStream declares), not by asking first.
+ */
+public class ObjectStore implements ZarrStore {
+
+  private final MFile root;
+
+  public ObjectStore(MFile root) {
+    this.root = root;
+  }
+
+  @Override
+  public String getLocation() {
+    return root.getPath();
+  }
+
+  @Nullable
+  @Override
+  public byte[] read(String key) throws IOException {
+    MFile mfile = root.getChild(key);
+    if (mfile == null) {
+      return null;
+    }
+    // a missing object fails the GET
+    try (InputStream in = mfile.getInputStream()) {
+      return in == null ? null : IO.readContentsToByteArray(in);
+    } catch (FileNotFoundException | NoSuchFileException e) {
+      return null;
+    }
+  }
+
+  @Nullable
+  @Override
+  public byte[] read(String key, long offset, int nbytes) throws IOException {
+    MFile mfile = root.getChild(key);
+    if (mfile == null) {
+      return null;
+    }
+    long start = offset;
+    if (offset < 0) { // only reads from the end, eg of a shard index, need the length of the object
+      if (!mfile.exists()) {
+        return null;
+      }
+      start = mfile.getLength() + offset;
+    }
+    if (start < 0) {
+      throw new EOFException(String.format("Reading %s at %d bytes=%d before start", key, start, nbytes));
+    }
+    // a ranged read, eg an HTTP range request for S3
+    ByteArrayOutputStream out = new ByteArrayOutputStream(nbytes);
+    try {
+      mfile.writeToStream(out, start, nbytes);
+    } catch (FileNotFoundException | NoSuchFileException e) {
+      return null;
+    }
+    if (out.size() < nbytes) {
+      throw new EOFException(String.format("Reading %s at %d bytes=%d past end=%d", key, start, nbytes,
+          start + out.size()));
+    }
+    return out.toByteArray();
+  }
+
+  @Override
+  public List<String> list(String prefix) throws IOException {
+    MFile dir = prefix.isEmpty() ? root : root.getChild(prefix + "/");
+    if (dir == null) {
+      return new ArrayList<>();
+    }
+    MController controller = MControllers.create(dir.getPath());
+    CollectionConfig cc = new CollectionConfig("children", dir.getPath(), false, null, null);
+    Set<String> names = new LinkedHashSet<>();
+    addNames(controller.getInventoryTop(cc, false), names);
+    addNames(controller.getSubdirs(cc, false), names);
+    return new ArrayList<>(names);
+  }
+
+  private static void addNames(Iterator<MFile> mfiles, Set<String> names) {
+    if (mfiles == null) {
+      return;
+    }
+    while (mfiles.hasNext()) {
+      names.add(mfiles.next().getName());
+    }
+  }
+
+  @Override
+  public long getLastModified(String key) {
+    MFile mfile = key.isEmpty() ? root : root.getChild(key);
+    // object store "directories" are only key prefixes, without a modification time
+    if (mfile == null || mfile.isDirectory() || !mfile.exists()) {
+      return 0;
+    }
+    return mfile.getLastModified();
+  }
+
+  @Override
+  public void close() {} // NO-OP
+}
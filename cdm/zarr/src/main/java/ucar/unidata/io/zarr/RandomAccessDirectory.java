@@ -19,13 +19,14 @@ import java.util.*;
 /**
  * This class allows a directory structure to be read in memory as a single file.
  * RandomAccessDirectory implemented a tree structure with files as leaves.
- * It is read-only - writes should use the leaf RandomAccessFile write methods
+ * It is read-only - writes should use the leaf RandomAccessFile write methods.
+ * The directory is not listed until its contents are first needed.
  */
 public class RandomAccessDirectory extends ucar.unidata.io.RandomAccessFile implements FileCacheable, Closeable {
 
   private static final Logger logger = LoggerFactory.getLogger(RandomAccessDirectory.class);
 
-  protected List<RandomAccessDirectoryItem> children; // all files within the store
+  protected List<RandomAccessDirectoryItem> children; // all files within the store, null until listed
 
   private RandomAccessFile currentFile; // file currently containing the file pointer
 
@@ -47,22 +48,34 @@ public class RandomAccessDirectory extends ucar.unidata.io.RandomAccessFile impl
     this.bufferSize = bufferSize;
     this.location = location.replace("\\", DELIMITER); // standardize path
     this.readonly = true; // RandomAccessDirectory does not support writes
+  }
 
+  /**
+   * List the files in the directory, the first time this is called
+   *
+   * @return all files within the store
+   */
+  protected synchronized List<RandomAccessDirectoryItem> getChildren() {
+    if (this.children != null) {
+      return this.children;
+    }
     // build children list
-    this.children = new ArrayList<>();
+    List<RandomAccessDirectoryItem> children = new ArrayList<>();
     MController controller = MControllers.create(location);
     CollectionConfig cc = new CollectionConfig("children", location, false, null, null);
-    List<MFile> files = sortIterator(controller.getInventoryAll(cc, false)); // standardize order
-    if (files == null) {
-      return;
-    }
-    long index = 0; // track file position in directory
-    for (MFile mfile : files) {
-      long length = mfile.getLength();
-      this.children.add(new VirtualRandomAccessFile(mfile.getPath().replace("\\", DELIMITER), index, length,
-          mfile.getLastModified(), this.bufferSize));
-      index += length;
+    Iterator<MFile> inventory = controller.getInventoryAll(cc, false);
+    if (inventory != null) {
+      List<MFile> files = sortIterator(inventory); // standardize order
+      long index = 0; // track file position in directory
+      for (MFile mfile : files) {
+        long length = mfile.getLength();
+        children.add(new VirtualRandomAccessFile(mfile.getPath().replace("\\", DELIMITER), index, length,
+            mfile.getLastModified(), this.bufferSize));
+        index += length;
+      }
     }
+    this.children = children;
+    return children;
   }
 
   /**
@@ -88,7 +101,7 @@ public class RandomAccessDirectory extends ucar.unidata.io.RandomAccessFile impl
    */
   public RandomAccessDirectoryItem getFileAtPos(int pos) {
     long tempPos = 0;
-    for (RandomAccessDirectoryItem item : this.children) {
+    for (RandomAccessDirectoryItem item : getChildren()) {
       long rafLength = item.length();
       if (tempPos + rafLength > pos) {
         return item;
@@ -110,7 +123,7 @@ public class RandomAccessDirectory extends ucar.unidata.io.RandomAccessFile impl
     path = path.replace("\\", DELIMITER);
 
     List<RandomAccessDirectoryItem> files = new ArrayList<>();
-    for (RandomAccessDirectoryItem item : this.children) {
+    for (RandomAccessDirectoryItem item : getChildren()) {
       String location = item.getLocation();
       if (location.contains(path)) {
         files.add(item);
@@ -128,7 +141,7 @@ public class RandomAccessDirectory extends ucar.unidata.io.RandomAccessFile impl
    */
   protected void setFileToPos(long pos) throws IOException {
     long tempPos = 0;
-    for (RandomAccessDirectoryItem item : this.children) {
+    for (RandomAccessDirectoryItem item : getChildren()) {
       long rafLength = item.length();
       if (tempPos + rafLength > pos) {
         this.currentFile = item.getOrOpenRaf();
@@ -144,6 +157,9 @@ public class RandomAccessDirectory extends ucar.unidata.io.RandomAccessFile impl
 
   @Override
   public synchronized void close() throws IOException {
+    if (this.children == null) {
+      return; // nothing opened
+    }
     for (RandomAccessDirectoryItem item : this.children) {
       RandomAccessFile raf = item.getRaf();
       if (raf != null) {
@@ -154,7 +170,7 @@ public class RandomAccessDirectory extends ucar.unidata.io.RandomAccessFile impl
 
   @Override
   public long getLastModified() {
-    return children.stream().mapToLong(RandomAccessDirectoryItem::getLastModified).max().orElse(-1);
+    return getChildren().stream().mapToLong(RandomAccessDirectoryItem::getLastModified).max().orElse(-1);
   }
 
   @Override
@@ -164,7 +180,7 @@ public class RandomAccessDirectory extends ucar.unidata.io.RandomAccessFile impl
 
   @Override
   public long length() {
-    return children.stream().mapToLong(RandomAccessDirectoryItem::length).sum();
+    return getChildren().stream().mapToLong(RandomAccessDirectoryItem::length).sum();
   }
 
   @Override
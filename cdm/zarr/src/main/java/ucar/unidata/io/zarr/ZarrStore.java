@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.unidata.io.zarr;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import javax.annotation.Nullable;
+import thredds.inventory.MFile;
+import thredds.inventory.MFiles;
+import ucar.nc2.NetcdfFiles;
+
+/**
+ * A Zarr store: a mapping from keys to objects, such as "group/array/.zarray" or "group/array/0.0".
+ * Keys are resolved directly to files, zip entries or remote objects, so nothing is listed or opened until it is
+ * asked for, and the cost of opening a store does not depend on the number of chunks in it.
+ * Implementations must be safe to read from several threads at once.
+ */
+public interface ZarrStore extends Closeable {
+
+  /**
+   * @return location of the store
+   */
+  String getLocation();
+
+  /**
+   * Read the whole object stored under a key.
+   *
+   * @param key "/" separated path relative to the store root
+   * @return object contents, or null if there is no such key
+   */
+  @Nullable
+  byte[] read(String key) throws IOException;
+
+  /**
+   * Read part of the object stored under a key.
+   *
+   * @param key "/" separated path relative to the store root
+   * @param offset start of the bytes in the object; if negative, counted back from the end of the object
+   * @param nbytes number of bytes
+   * @return the bytes, or null if there is no such key
+   * @throws java.io.EOFException if the bytes are not all in the object
+   */
+  @Nullable
+  default byte[] read(String key, long offset, int nbytes) throws IOException {
+    byte[] data = read(key);
+    if (data == null) {
+      return null;
+    }
+    return slice(data, offset < 0 ? data.length + offset : offset, nbytes);
+  }
+
+  /**
+   * Store an object under a key, replacing any object already there.
+   * Must be safe to call from several threads at once for different keys.
+   *
+   * @param key "/" separated path relative to the store root
+   * @param data object contents
+   * @throws IOException if the object cannot be stored, or the store is read-only (the default)
+   */
+  default void write(String key, byte[] data) throws IOException {
+    throw new IOException(getLocation() + " is read-only");
+  }
+
+  /**
+   * Names of the objects and "directories" directly below a prefix, in no particular order.
+   *
+   * @param prefix "/" separated path relative to the store root, empty for the root
+   * @return child names, without the prefix; empty if there are none
+   */
+  List<String> list(String prefix) throws IOException;
+
+  /**
+   * @param key "/" separated path relative to the store root, empty for the root
+   * @return last modified time (in ms) of the object under key, or 0 if unknown
+   */
+  long getLastModified(String key);
+
+  /**
+   * Open the store at a location: a local directory, a zip file (optionally followed by a path inside the zip file),
+   * or any location that an {@link MFile} can be created for, eg an S3 prefix.
+   *
+   * @param location store location
+   * @return ZarrStore
+   */
+  static ZarrStore open(String location) throws IOException {
+    String path = NetcdfFiles.canonicalizeUriString(location);
+    if (ZipStore.isZipStore(path)) {
+      return new ZipStore(path);
+    }
+    if (new File(path).isDirectory()) {
+      return new DirectoryStore(path);
+    }
+    return new ObjectStore(MFiles.create(location));
+  }
+
+  /**
+   * Copy part of an object
+   */
+  static byte[] slice(byte[] data, long offset, int nbytes) throws EOFException {
+    if (offset < 0 || offset + nbytes > data.length) {
+      throw new EOFException(String.format("Reading %d bytes at %d past end of object of %d bytes", nbytes, offset,
+          data.length));
+    }
+    return Arrays.copyOfRange(data, (int) offset, (int) offset + nbytes);
+  }
+
+  /**
+   * Join "/" separated key components, ignoring empty components.
+   */
+  static String join(String prefix, String name) {
+    if (prefix.isEmpty()) {
+      return name;
+    }
+    return prefix.endsWith("/") ? prefix + name : prefix + "/" + name;
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.unidata.io.zarr;
+
+import com.google.common.io.ByteStreams;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.annotation.Nullable;
+import ucar.nc2.util.IO;
+
+/**
+ * A Zarr store in a zip file, with each key the name of a zip entry.
+ * The store may be a directory inside the zip file, eg "data.zip/store.zarr".
+ * Entries are read directly from the zip file, without unzipping the store.
+ */
+public class ZipStore implements ZarrStore {
+
+  private static final String ext = ".zip";
+
+  private final String location;
+  private final ZipFile zipFile;
+  private final String root; // path of the store inside the zip file, empty if the store is the whole zip file
+
+  public ZipStore(String location) throws IOException {
+    int split = location.toLowerCase(Locale.ROOT).indexOf(ext);
+    if (split < 0) {
+      throw new IOException(location + " is not a zip file");
+    }
+    split += ext.length();
+    this.location = location;
+    this.zipFile = new ZipFile(location.substring(0, split));
+    this.root = trim(location.substring(split));
+  }
+
+  /**
+   * @return true if location is a zip file, or a path inside a zip file
+   */
+  public static boolean isZipStore(String location) {
+    int split = location.toLowerCase(Locale.ROOT).indexOf(ext);
+    if (split < 0) {
+      return false;
+    }
+    split += ext.length();
+    return (split == location.length() || location.charAt(split) == '/')
+        && new File(location.substring(0, split)).isFile();
+  }
+
+  @Override
+  public String getLocation() {
+    return location;
+  }
+
+  @Nullable
+  @Override
+  public byte[] read(String key) throws IOException {
+    ZipEntry entry = zipFile.getEntry(ZarrStore.join(root, key));
+    if (entry == null || entry.isDirectory()) {
+      return null;
+    }
+    try (InputStream in = zipFile.getInputStream(entry)) {
+      return IO.readContentsToByteArray(in);
+    }
+  }
+
+  @Nullable
+  @Override
+  public byte[] read(String key, long offset, int nbytes) throws IOException {
+    ZipEntry entry = zipFile.getEntry(ZarrStore.join(root, key));
+    if (entry == null || entry.isDirectory()) {
+      return null;
+    }
+    long size = entry.getSize();
+    if (size < 0) {
+      return ZarrStore.super.read(key, offset, nbytes); // size unknown, read it all
+    }
+    long start = offset < 0 ? size + offset : offset;
+    if (start < 0 || start + nbytes > size) {
+      throw new EOFException(String.format("Reading %s at %d bytes=%d past end=%d", key, start, nbytes, size));
+    }
+    // skip to the start, without inflating past the end of the range
+    try (InputStream in = zipFile.getInputStream(entry)) {
+      ByteStreams.skipFully(in, start);
+      byte[] data = new byte[nbytes];
+      ByteStreams.readFully(in, data);
+      return data;
+    }
+  }
+
+  @Override
+  public List<String> list(String prefix) {
+    String path = trim(ZarrStore.join(root, prefix));
+    if (!path.isEmpty()) {
+      path += "/";
+    }
+    // the central directory is held in memory by ZipFile, so this does not read the zip file
+    Set<String> names = new LinkedHashSet<>();
+    Enumeration<? extends ZipEntry> entries = zipFile.entries();
+    while (entries.hasMoreElements()) {
+      String name = entries.nextElement().getName();
+      if (name.startsWith(path) && name.length() > path.length()) {
+        int end = name.indexOf('/', path.length());
+        names.add(end < 0 ? name.substring(path.length()) : name.substring(path.length(), end));
+      }
+    }
+    return new ArrayList<>(names);
+  }
+
+  @Override
+  public long getLastModified(String key) {
+    String name = ZarrStore.join(root, key);
+    if (name.isEmpty()) {
+      return new File(zipFile.getName()).lastModified();
+    }
+    ZipEntry entry = zipFile.getEntry(name);
+    return entry == null ? 0 : Math.max(entry.getTime(), 0);
+  }
+
+  @Override
+  public void close() throws IOException {
+    zipFile.close();
+  }
+
+  private static String trim(String path) {
+    while (path.startsWith("/")) {
+      path = path.substring(1);
+    }
+    while (path.endsWith("/")) {
+      path = path.substring(0, path.length() - 1);
+    }
+    return path;
+  }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2.iosp.zarr;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.Index;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.Section;
+import ucar.nc2.Attribute;
+import ucar.nc2.Dimension;
+import ucar.nc2.Group;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import ucar.nc2.Variable;
+import ucar.nc2.write.ChunkAccumulator;
+import ucar.nc2.write.Nc4Chunking;
+import ucar.nc2.write.NetcdfFormatWriter;
+import ucar.nc2.write.NetcdfFileFormat;
+
+/**
+ * Test writing Zarr v2 and v3 stores with NetcdfFormatWriter
+ */
+public class TestZarrIospWriter {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  /** 3 along each dimension, compressed and shuffled */
+  private static final Nc4Chunking chunker = new Nc4Chunking() {
+    public boolean isChunked(Variable v) {
+      return true;
+    }
+
+    public long[] computeChunking(Variable v) {
+      long[] chunks = new long[v.getRank()];
+      Arrays.fill(chunks, 3);
+      return chunks;
+    }
+
+    public int getDeflateLevel(Variable v) {
+      return 1;
+    }
+
+    public boolean isShuffle(Variable v) {
+      return true;
+    }
+  };
+
+  @Test
+  public void testWriteV2() throws IOException, InvalidRangeException {
+    String location = write(NetcdfFileFormat.ZARR);
+    assertThat(new File(location, ".zmetadata").isFile()).isTrue();
+    assertThat(new File(location, "data/0.0.0").isFile()).isTrue();
+    check(location);
+  }
+
+  @Test
+  public void testWriteV3() throws IOException, InvalidRangeException {
+    String location = write(NetcdfFileFormat.ZARR3);
+    assertThat(new File(location, "data/zarr.json").isFile()).isTrue();
+    assertThat(new File(location, "data/c/0/0/0").isFile()).isTrue();
+    check(location);
+  }
+
+  @Test
+  public void testWriteConcurrently() throws IOException, InvalidRangeException {
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      ChunkAccumulator.setExecutor(pool, 2);
+      check(write(NetcdfFileFormat.ZARR));
+      check(write(NetcdfFileFormat.ZARR3));
+    } finally {
+      ChunkAccumulator.setExecutor(null);
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testFillChunksNotStored() throws IOException, InvalidRangeException {
+    String location = write(NetcdfFileFormat.ZARR);
+    // the last three records are all fill
+    assertThat(new File(location, "data/1.0.0").isFile()).isTrue();
+    assertThat(new File(location, "data/2.0.0").isFile()).isFalse();
+  }
+
+  @Test
+  public void testFlushAndRewrite() throws IOException, InvalidRangeException {
+    String location = tempFolder.newFolder().getAbsolutePath() + "/test.zarr";
+    NetcdfFormatWriter.Builder builder =
+        NetcdfFormatWriter.builder().setFormat(NetcdfFileFormat.ZARR).setLocation(location).setChunker(chunker);
+    builder.addDimension("x", 5);
+    builder.addVariable("v", DataType.INT, "x");
+    try (NetcdfFormatWriter writer = builder.build()) {
+      Variable v = writer.findVariable("v");
+      writer.write(v, new int[] {1}, Array.makeArray(DataType.INT, 3, 10, 1));
+      writer.flush();
+      try (NetcdfFile ncfile = NetcdfFiles.open(location)) {
+        assertThat(ncfile.findVariable("v").read().copyTo1DJavaArray())
+            .isEqualTo(new int[] {-2147483647, 10, 11, 12, -2147483647});
+      }
+
+      // rewrite part of a stored chunk
+      writer.write(v, new int[] {2}, Array.makeArray(DataType.INT, 1, 20, 1));
+    }
+    try (NetcdfFile ncfile = NetcdfFiles.open(location)) {
+      assertThat(ncfile.findVariable("v").read().copyTo1DJavaArray())
+          .isEqualTo(new int[] {-2147483647, 10, 20, 12, -2147483647});
+    }
+  }
+
+  @Test
+  public void testUpdateAttributeAndReadBack() throws IOException, InvalidRangeException {
+    for (NetcdfFileFormat format : new NetcdfFileFormat[] {NetcdfFileFormat.ZARR, NetcdfFileFormat.ZARR3}) {
+      String location = tempFolder.newFolder().getAbsolutePath() + "/test.zarr";
+      Group.Builder root = Group.builder().addDimension(Dimension.builder("x", 3).build());
+      Group.Builder nested = Group.builder().setName("nested").setParentGroup(root);
+      nested.addVariable(Variable.builder().setName("v").setDataType(DataType.INT).setParentGroupBuilder(nested)
+          .setDimensionsByName("x"));
+      root.addGroup(nested);
+      NetcdfFile ncout = NetcdfFile.builder().setRootGroup(root).setLocation(location).build();
+
+      ZarrIospWriter iosp = new ZarrIospWriter(format);
+      try {
+        iosp.setChunker(chunker);
+        iosp.create(location, ncout, 0, 0, false);
+        Variable v = ncout.findVariable("nested/v");
+        iosp.writeData(v, new Section(new int[] {3}), Array.makeArray(DataType.INT, 3, 1, 1));
+        iosp.updateAttribute(v, new Attribute("units", "m"));
+        assertThat(iosp.readData(v, new Section(new int[] {1}, new int[] {2})).copyTo1DJavaArray())
+            .isEqualTo(new int[] {2, 3});
+      } finally {
+        iosp.close();
+      }
+      try (NetcdfFile ncfile = NetcdfFiles.open(location)) {
+        assertThat(ncfile.findVariable("nested/v").findAttributeString("units", null)).isEqualTo("m");
+      }
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testExistingStore() throws IOException, InvalidRangeException {
+    String location = write(NetcdfFileFormat.ZARR);
+    NetcdfFormatWriter.builder().setFormat(NetcdfFileFormat.ZARR).setLocation(location).build();
+  }
+
+  /**
+   * Write a store with a record variable, written a record at a time, and a nested group
+   */
+  private String write(NetcdfFileFormat format) throws IOException, InvalidRangeException {
+    String location = tempFolder.newFolder().getAbsolutePath() + "/test.zarr";
+    NetcdfFormatWriter.Builder builder =
+        NetcdfFormatWriter.builder().setFormat(format).setLocation(location).setChunker(chunker);
+    builder.addAttribute(new Attribute("title", "writer test"));
+    builder.addUnlimitedDimension("time");
+    builder.addDimension("y", 4);
+    builder.addDimension("x", 5);
+    builder.addVariable("data", DataType.FLOAT, "time y x").addAttribute(new Attribute("_FillValue", -99f))
+        .addAttribute(new Attribute("units", "K"));
+    builder.addVariable("counts", DataType.USHORT, "y x");
+    Group.Builder nested = Group.builder().setName("nested").addAttribute(new Attribute("level", 2));
+    nested.addDimension(new Dimension("z", 7));
+    nested.addVariable(Variable.builder().setName("z").setDataType(DataType.DOUBLE)
+        .setParentGroupBuilder(nested).setDimensionsByName("z"));
+    builder.getRootGroup().addGroup(nested);
+
+    try (NetcdfFormatWriter writer = builder.build()) {
+      Variable data = writer.findVariable("data");
+      for (int t = 0; t < 9; t++) {
+        Array record = Array.factory(DataType.FLOAT, new int[] {1, 4, 5});
+        Index index = record.getIndex();
+        for (int j = 0; j < 4; j++) {
+          for (int i = 0; i < 5; i++) {
+            record.setFloat(index.set(0, j, i), t < 4 ? value(t, j, i) : -99f);
+          }
+        }
+        writer.write(data, new int[] {t, 0, 0}, record);
+      }
+
+      // in pieces that do not line up with chunks
+      Variable counts = writer.findVariable("counts");
+      Array counts1 = Array.factory(DataType.USHORT, new int[] {4, 2});
+      Array counts2 = Array.factory(DataType.USHORT, new int[] {4, 3});
+      for (int j = 0; j < 4; j++) {
+        for (int i = 0; i < 5; i++) {
+          Array part = i < 2 ? counts1 : counts2;
+          part.setShort(part.getIndex().set(j, i < 2 ? i : i - 2), (short) (65535 - j * 5 - i));
+        }
+      }
+      writer.write(counts, new int[] {0, 2}, counts2);
+      writer.write(counts, new int[] {0, 0}, counts1);
+
+      writer.write(writer.findVariable("nested/z"), Array.makeArray(DataType.DOUBLE, 7, 0.5, 1));
+    }
+    return location;
+  }
+
+  private static float value(int t, int j, int i) {
+    return t * 100 + j * 10 + i + 0.25f;
+  }
+
+  private static void check(String location) throws IOException, InvalidRangeException {
+    try (NetcdfFile ncfile = NetcdfFiles.open(location)) {
+      assertThat(ncfile.getRootGroup().findAttributeString("title", "")).isEqualTo("writer test");
+
+      Variable data = ncfile.findVariable("data");
+      assertThat(data.getDataType()).isEqualTo(DataType.FLOAT);
+      assertThat(data.getShape()).isEqualTo(new int[] {9, 4, 5});
+      assertThat(data.getDimension(1).getShortName()).isEqualTo("y");
+      assertThat(data.findAttributeString("units", "")).isEqualTo("K");
+      Array values = data.read();
+      Index index = values.getIndex();
+      for (int t = 0; t < 9; t++) {
+        for (int j = 0; j < 4; j++) {
+          for (int i = 0; i < 5; i++) {
+            float expected = t < 4 ? value(t, j, i) : -99f;
+            assertThat(values.getFloat(index.set(t, j, i))).isEqualTo(expected);
+          }
+        }
+      }
+      Array subset = data.read("1:3,1,0:4:2");
+      assertThat(subset.getFloat(subset.getIndex().set(1, 0, 2))).isEqualTo(value(2, 1, 4));
+
+      Array counts = ncfile.findVariable("counts").read();
+      assertThat(counts.getDataType()).isEqualTo(DataType.USHORT);
+      index = counts.getIndex();
+      for (int j = 0; j < 4; j++) {
+        for (int i = 0; i < 5; i++) {
+          assertThat(counts.getInt(index.set(j, i)) & 0xffff).isEqualTo(65535 - j * 5 - i);
+        }
+      }
+
+      Group nested = ncfile.findGroup("nested");
+      assertThat(nested.findAttribute("level").getNumericValue().intValue()).isEqualTo(2);
+      assertThat(ncfile.findVariable("nested/z").read().getDouble(6)).isEqualTo(6.5);
+    }
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2.iosp.zarr;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
+import org.junit.Test;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.Index;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.Section;
+import ucar.nc2.Group;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import ucar.nc2.Variable;
+import ucar.nc2.iosp.IospHelper;
+import ucar.unidata.io.zarr.ZarrStore;
+
+/**
+ * Test reading Zarr v3 stores, including sharded arrays
+ */
+public class TestZarrV3 {
+
+  private static final String V3_STORE_URI = ZarrTestsCommon.LOCAL_TEST_DATA_PATH + "zarr_v3_test_data.zarr";
+
+  @Test
+  public void testMetadata() throws IOException {
+    try (NetcdfFile ncfile = NetcdfFiles.open(V3_STORE_URI)) {
+      assertThat(ncfile.getFileTypeDescription()).contains("v3");
+      assertThat(ncfile.getRootGroup().findAttributeString("title", "")).isEqualTo("Zarr v3 test data");
+
+      Group group = ncfile.findGroup("group");
+      assertThat(group).isNotNull();
+      assertThat(group.findAttributeString("group_attr", "")).isEqualTo("foo");
+      assertThat(group.findDimension("y")).isNotNull();
+      assertThat(group.findDimension("x")).isNotNull();
+
+      Variable plain = ncfile.findVariable("group/plain");
+      assertThat(plain.getDataType()).isEqualTo(DataType.INT);
+      assertThat(plain.getDimension(0).getShortName()).isEqualTo("y");
+      assertThat(plain.getDimension(1).getShortName()).isEqualTo("x");
+      assertThat(plain.findAttributeString("units", "")).isEqualTo("m");
+      assertThat(ncfile.findVariable("group/transposed").getDataType()).isEqualTo(DataType.DOUBLE);
+      assertThat(ncfile.findVariable("sharded").getDataType()).isEqualTo(DataType.SHORT);
+    }
+  }
+
+  @Test
+  public void testChunkKeysAndCodecs() throws IOException {
+    try (NetcdfFile ncfile = NetcdfFiles.open(V3_STORE_URI)) {
+      // "c/i/j" keys and gzip, with one missing chunk
+      Array plain = ncfile.findVariable("group/plain").read();
+      Index index = plain.getIndex();
+      for (int i = 0; i < 20; i++) {
+        for (int j = 0; j < 20; j++) {
+          int expected = i >= 10 && j >= 10 ? -1 : i * 20 + j;
+          assertThat(plain.getInt(index.set(i, j))).isEqualTo(expected);
+        }
+      }
+
+      // "i.j" keys, zstd, and transposed (F order) chunks
+      Array transposed = ncfile.findVariable("group/transposed").read();
+      index = transposed.getIndex();
+      for (int i = 0; i < 40; i++) {
+        for (int j = 0; j < 60; j++) {
+          assertThat(transposed.getDouble(index.set(i, j))).isEqualTo(i * 60 + j + 0.5);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testSharded() throws IOException, InvalidRangeException {
+    try (NetcdfFile ncfile = NetcdfFiles.open(V3_STORE_URI)) {
+      Variable sharded = ncfile.findVariable("sharded");
+      Array data = sharded.read();
+      Index index = data.getIndex();
+      for (int i = 0; i < 20; i++) {
+        for (int j = 0; j < 20; j++) {
+          assertThat(data.getShort(index.set(i, j))).isEqualTo(expectedSharded(i, j));
+        }
+      }
+
+      // strided section across shards and missing inner chunks
+      Section section = new Section("2:17:3,1:19:4");
+      Array subset = sharded.read(section);
+      index = subset.getIndex();
+      for (int i = 0; i < section.getShape(0); i++) {
+        for (int j = 0; j < section.getShape(1); j++) {
+          assertThat(subset.getShort(index.set(i, j))).isEqualTo(expectedSharded(2 + 3 * i, 1 + 4 * j));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testShardIndexIsCached() throws IOException, InvalidRangeException {
+    try (NetcdfFile ncfile = NetcdfFiles.open(V3_STORE_URI);
+        CountingStore store = new CountingStore(ZarrStore.open(V3_STORE_URI))) {
+      Variable sharded = ncfile.findVariable("sharded");
+
+      // two inner chunks of the same shard
+      read(sharded, new Section("0:4,0:4"), store);
+      assertThat(store.reads).containsExactly("sharded/c/0/0@-68", "sharded/c/0/0@range").inOrder();
+      store.reads.clear();
+      read(sharded, new Section("0:4,5:9"), store);
+      assertThat(store.reads).containsExactly("sharded/c/0/0@range");
+      store.reads.clear();
+
+      // a missing shard is only looked for once
+      read(sharded, new Section("10:19,10:19"), store);
+      read(sharded, new Section("12,12"), store);
+      assertThat(store.reads).containsExactly("sharded/c/1/1@-68");
+    }
+  }
+
+  private static short expectedSharded(int i, int j) {
+    boolean missingInner = i >= 5 && i < 10 && j >= 10 && j < 15;
+    boolean missingShard = i >= 10 && j >= 10;
+    return (short) (missingInner || missingShard ? 7 : i * 20 + j);
+  }
+
+  private static void read(Variable v, Section section, ZarrStore store) throws IOException {
+    IospHelper.readDataFill(new ZarrLayoutBB(v, section, store), v.getDataType(), (short) 7);
+  }
+
+  /**
+   * Records the reads of a store: the key, and the offset for a range read of an index
+   */
+  private static class CountingStore implements ZarrStore {
+    private final ZarrStore store;
+    private final List<String> reads = new ArrayList<>();
+
+    CountingStore(ZarrStore store) {
+      this.store = store;
+    }
+
+    @Override
+    public String getLocation() {
+      return store.getLocation();
+    }
+
+    @Nullable
+    @Override
+    public byte[] read(String key) throws IOException {
+      reads.add(key);
+      return store.read(key);
+    }
+
+    @Nullable
+    @Override
+    public byte[] read(String key, long offset, int nbytes) throws IOException {
+      reads.add(key + "@" + (offset < 0 ? Long.toString(offset) : "range"));
+      return store.read(key, offset, nbytes);
+    }
+
+    @Override
+    public List<String> list(String prefix) throws IOException {
+      return store.list(prefix);
+    }
+
+    @Override
+    public long getLastModified(String key) {
+      return store.getLastModified(key);
+    }
+
+    @Override
+    public void close() throws IOException {
+      store.close();
+    }
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package unidata.io.zarr;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+import static org.junit.Assert.assertThrows;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Formatter;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import thredds.filesystem.MFileOS;
+import ucar.ma2.Array;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import ucar.nc2.Variable;
+import ucar.nc2.iosp.LayoutBBTiled;
+import ucar.nc2.iosp.zarr.ZarrTestsCommon;
+import ucar.nc2.util.CompareNetcdf2;
+import ucar.unidata.io.zarr.DirectoryStore;
+import ucar.unidata.io.zarr.ObjectStore;
+import ucar.unidata.io.zarr.ZarrStore;
+import ucar.unidata.io.zarr.ZipStore;
+
+public class TestZarrStore {
+
+  private static final String DIRECTORY_STORE_URI = ZarrTestsCommon.LOCAL_TEST_DATA_PATH + "zarr_test_data.zarr";
+  private static final String ZIP_STORE_URI = ZarrTestsCommon.LOCAL_TEST_DATA_PATH + "zarr_test_data.zip";
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @After
+  public void serial() {
+    LayoutBBTiled.setExecutor(null);
+  }
+
+  @Test
+  public void testKeys() throws IOException {
+    byte[] chunk = Files.readAllBytes(Paths.get(DIRECTORY_STORE_URI, "group_with_attrs/F_order_array/0.0"));
+    byte[] nestedChunk = Files.readAllBytes(Paths.get(DIRECTORY_STORE_URI, "group_with_attrs/nested/0/0"));
+
+    for (String location : new String[] {DIRECTORY_STORE_URI, ZIP_STORE_URI}) {
+      try (ZarrStore store = ZarrStore.open(location)) {
+        assertThat(store).isInstanceOf(location.endsWith(".zip") ? ZipStore.class : DirectoryStore.class);
+
+        assertThat(store.read(".zgroup")).isNotNull();
+        assertThat(store.read("group_with_attrs/F_order_array/0.0")).isEqualTo(chunk);
+        assertThat(store.read("group_with_attrs/nested/0/0")).isEqualTo(nestedChunk);
+        // uninitialized chunk, and directories are not objects
+        assertThat(store.read("group_with_attrs/uninitialized/0.0")).isNull();
+        assertThat(store.read("group_with_attrs")).isNull();
+
+        assertThat(store.list("")).containsExactly(".zgroup", "group_with_attrs", "group_with_dims");
+        assertThat(store.list("group_with_attrs")).containsAtLeast(".zattrs", ".zgroup", "F_order_array", "nested");
+        assertThat(store.list("group_with_attrs/nested")).containsAtLeast(".zarray", "0");
+        assertThat(store.list("no_such_group")).isEmpty();
+
+        assertThat(store.getLastModified("")).isGreaterThan(0L);
+        assertThat(store.getLastModified(".zgroup")).isGreaterThan(0L);
+      }
+    }
+  }
+
+  @Test
+  public void testObjectStore() throws IOException {
+    byte[] chunk = Files.readAllBytes(Paths.get(DIRECTORY_STORE_URI, "group_with_attrs/F_order_array/0.0"));
+
+    // an object store of local files, so missing keys are found the same way as on S3: by the read failing
+    try (ZarrStore store = new ObjectStore(new MFileOS(DIRECTORY_STORE_URI))) {
+      assertThat(store.read("group_with_attrs/F_order_array/0.0")).isEqualTo(chunk);
+      assertThat(store.read("group_with_attrs/uninitialized/0.0")).isNull();
+
+      assertThat(store.read("group_with_attrs/F_order_array/0.0", 4, 8)).isEqualTo(Arrays.copyOfRange(chunk, 4, 12));
+      assertThat(store.read("group_with_attrs/F_order_array/0.0", -8, 8))
+          .isEqualTo(Arrays.copyOfRange(chunk, chunk.length - 8, chunk.length));
+      assertThat(store.read("group_with_attrs/uninitialized/0.0", 0, 8)).isNull();
+      assertThat(store.read("group_with_attrs/uninitialized/0.0", -8, 8)).isNull();
+      assertThrows(EOFException.class, () -> store.read("group_with_attrs/F_order_array/0.0", chunk.length - 4, 8));
+      assertThrows(EOFException.class, () -> store.read("group_with_attrs/F_order_array/0.0", -chunk.length - 1, 8));
+    }
+  }
+
+  @Test
+  public void testConsolidatedMetadata() throws IOException {
+    Path copy = tempFolder.newFolder("consolidated", "zarr_test_data.zarr").toPath();
+    Path original = Paths.get(DIRECTORY_STORE_URI);
+    ObjectMapper mapper = new ObjectMapper();
+    ObjectNode metadata = mapper.createObjectNode();
+    try (Stream<Path> files = Files.walk(original)) {
+      for (Path file : (Iterable<Path>) files::iterator) {
+        Path target = copy.resolve(original.relativize(file).toString());
+        if (Files.isDirectory(file)) {
+          Files.createDirectories(target);
+          continue;
+        }
+        Files.copy(file, target);
+        String name = file.getFileName().toString();
+        if (name.startsWith(".z")) {
+          metadata.set(original.relativize(file).toString().replace(File.separatorChar, '/'),
+              mapper.readTree(file.toFile()));
+        }
+      }
+    }
+    ObjectNode zmetadata = mapper.createObjectNode();
+    zmetadata.set("metadata", metadata);
+    zmetadata.put("zarr_consolidated_format", 1);
+    mapper.writeValue(copy.resolve(".zmetadata").toFile(), zmetadata);
+    // only the consolidated metadata says that this is a group
+    Files.delete(copy.resolve("group_with_dims/.zgroup"));
+
+    try (NetcdfFile expected = NetcdfFiles.open(DIRECTORY_STORE_URI);
+        NetcdfFile actual = NetcdfFiles.open(copy.toString())) {
+      assertThat(actual.findGroup("group_with_dims")).isNotNull();
+      Formatter f = new Formatter();
+      boolean ok = new CompareNetcdf2(f, false, false, true).compare(expected, actual);
+      assertWithMessage(f.toString()).that(ok).isTrue();
+    }
+  }
+
+  @Test
+  public void testConcurrentChunkReads() throws IOException {
+    for (String location : new String[] {DIRECTORY_STORE_URI, ZIP_STORE_URI}) {
+      try (NetcdfFile expected = NetcdfFiles.open(location)) {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+          LayoutBBTiled.setExecutor(pool, 8);
+          try (NetcdfFile actual = NetcdfFiles.open(location)) {
+            for (Variable v : expected.getVariables()) {
+              Array data = actual.findVariable(v.getFullName()).read();
+              assertThat(data.toString()).isEqualTo(v.read().toString());
+            }
+          }
+        } finally {
+          LayoutBBTiled.setExecutor(null);
+          pool.shutdown();
+        }
+      }
+    }
+  }
+}
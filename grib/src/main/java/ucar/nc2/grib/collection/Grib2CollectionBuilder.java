@@ -8,7 +8,6 @@ package ucar.nc2.grib.collection;
 import javax.annotation.Nonnull;
 import thredds.featurecollection.FeatureCollectionConfig;
 import thredds.featurecollection.TimeUnitConverter;
-import thredds.inventory.CollectionUpdateType;
 import thredds.inventory.MCollection;
 import thredds.inventory.MFile;
 import ucar.nc2.grib.GribIndex;
@@ -27,7 +26,6 @@ import ucar.nc2.grib.grib2.table.Grib2Tables;
 import ucar.nc2.time.CalendarDate;
 import ucar.nc2.time.CalendarDateRange;
 import ucar.nc2.time.CalendarPeriod;
-import ucar.nc2.util.CloseableIterator;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
@@ -76,72 +74,49 @@ class Grib2CollectionBuilder extends GribCollectionBuilder {
 
     logger.debug(" dcm={}", dcm);
 
+    List<GribIndex> indexes = readFileIndexes(allFiles);
+    if (indexes == null)
+      return new ArrayList<>(); // empty
+
     // place each record into its group
     int totalRecords = 0;
-    try (CloseableIterator<MFile> iter = dcm.getFileIterator()) { // not sorted
-      if (iter == null)
-        return new ArrayList<>(); // empty
-
-      while (iter.hasNext()) {
-        MFile mfile = iter.next();
-        Grib2Index index;
-
-        try {
-          if (Grib.debugGbxIndexOnly) {
-            index = (Grib2Index) GribIndex.open(false, mfile);
-          } else {
-            // this is where gbx9 files get recreated
-            index =
-                (Grib2Index) GribIndex.readOrCreateIndexFromSingleFile(false, mfile, CollectionUpdateType.test, logger);
-          }
-          allFiles.add(mfile); // add on success
-
-        } catch (IOException ioe) {
-          logger.error("Grib2CollectionBuilder " + name + " : reading/Creating gbx9 index for file " + mfile.getPath()
-              + " failed", ioe);
-          continue;
+    for (GribIndex gribIndex : indexes) {
+      Grib2Index index = (Grib2Index) gribIndex;
+      int n = index.getNRecords();
+      totalRecords += n;
+
+      for (Grib2Record gr : index.getRecords()) { // we are using entire Grib2Record - memory limitations
+        if (this.cust == null) {
+          this.cust = Grib2Tables.factory(gr);
         }
-        if (index == null) {
-          logger.error("Grib2CollectionBuilder " + name + " : reading/Creating gbx9 index for file " + mfile.getPath()
-              + " failed");
-          continue;
+        if (filterIntervals(gr, gribConfig.intvFilter)) {
+          statsAll.filter++;
+          continue; // skip
         }
-        int n = index.getNRecords();
-        totalRecords += n;
-
-        for (Grib2Record gr : index.getRecords()) { // we are using entire Grib2Record - memory limitations
-          if (this.cust == null) {
-            this.cust = Grib2Tables.factory(gr);
-          }
-          if (filterIntervals(gr, gribConfig.intvFilter)) {
-            statsAll.filter++;
-            continue; // skip
-          }
-
-          gr.setFile(fileno); // each record tracks which file it belongs to
-          Grib2Gds gds = gr.getGDS(); // use GDS to group records
-          int hashCode = gribConfig.convertGdsHash(gds.hashCode()); // allow external config to muck with gdsHash. Why?
-                                                                    // because of error in encoding and we need exact
-                                                                    // hash matching
-          if (0 == hashCode)
-            continue; // skip this group
-          // GdsHashObject gdsHashObject = new GdsHashObject(gr.getGDS(), hashCode);
-
-          CalendarDate runtimeDate = gr.getReferenceDate();
-          long runtime = singleRuntime ? runtimeDate.getMillis() : 0; // separate Groups for each runtime, if
-                                                                      // singleRuntime is true
-          GroupAndRuntime gar = new GroupAndRuntime(hashCode, runtime);
-          Grib2CollectionWriter.Group g = gdsMap.get(gar);
-          if (g == null) {
-            g = new Grib2CollectionWriter.Group(gr.getGDSsection(), hashCode, runtimeDate);
-            gdsMap.put(gar, g);
-          }
-          g.records.add(gr);
-          g.runtimes.add(runtimeDate.getMillis());
+
+        gr.setFile(fileno); // each record tracks which file it belongs to
+        Grib2Gds gds = gr.getGDS(); // use GDS to group records
+        int hashCode = gribConfig.convertGdsHash(gds.hashCode()); // allow external config to muck with gdsHash. Why?
+                                                                  // because of error in encoding and we need exact
+                                                                  // hash matching
+        if (0 == hashCode)
+          continue; // skip this group
+        // GdsHashObject gdsHashObject = new GdsHashObject(gr.getGDS(), hashCode);
+
+        CalendarDate runtimeDate = gr.getReferenceDate();
+        long runtime = singleRuntime ? runtimeDate.getMillis() : 0; // separate Groups for each runtime, if
+                                                                    // singleRuntime is true
+        GroupAndRuntime gar = new GroupAndRuntime(hashCode, runtime);
+        Grib2CollectionWriter.Group g = gdsMap.get(gar);
+        if (g == null) {
+          g = new Grib2CollectionWriter.Group(gr.getGDSsection(), hashCode, runtimeDate);
+          gdsMap.put(gar, g);
         }
-        fileno++;
-        statsAll.recordsTotal += index.getRecords().size();
+        g.records.add(gr);
+        g.runtimes.add(runtimeDate.getMillis());
       }
+      fileno++;
+      statsAll.recordsTotal += index.getRecords().size();
     }
 
     if (totalRecords == 0) {
@@ -31,13 +31,19 @@ import ucar.unidata.util.StringUtil2;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Formatter;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Utilities for creating GRIB CDM index (ncx) files, both collections and partitions.
@@ -97,6 +103,136 @@ public class GribCdmIndex implements IndexReader {
       gribCollectionCache.clearCache(true);
   }
 
+  // build indexes serially when null
+  private static ForkJoinPool indexBuildPool;
+
+  /**
+   * Build indexes in parallel on this pool: the gbx9 index of each file in a collection, and the ncx4 index of each
+   * partition in a partition collection. The results are merged in the same order as a serial build, so the indexes
+   * written are the same.
+   *
+   * @param pool use this pool, or null to build serially (the default).
+   */
+  public static void setIndexBuildPool(@Nullable ForkJoinPool pool) {
+    indexBuildPool = pool;
+  }
+
+  interface IndexTask<T, R> {
+    R call(T item) throws IOException;
+  }
+
+  /**
+   * Call the task on each item, on the index build pool if there is one.
+   *
+   * @return the results, in the order of the items
+   */
+  static <T, R> List<R> invokeAll(List<T> items, IndexTask<T, R> task) throws IOException {
+    List<R> results = new ArrayList<>(items.size());
+    ForkJoinPool pool = indexBuildPool;
+    if (pool == null || items.size() < 2) {
+      for (T item : items)
+        results.add(task.call(item));
+      return results;
+    }
+
+    boolean inPool = ForkJoinTask.getPool() == pool; // a partition of partitions
+    List<ForkJoinTask<R>> tasks = new ArrayList<>(items.size());
+    for (T item : items) {
+      ForkJoinTask<R> forkJoinTask = ForkJoinTask.adapt(() -> {
+        try {
+          return task.call(item);
+        } catch (IOException ioe) {
+          throw new UncheckedIOException(ioe);
+        }
+      });
+      tasks.add(inPool ? forkJoinTask.fork() : pool.submit(forkJoinTask));
+    }
+
+    try {
+      for (ForkJoinTask<R> forkJoinTask : tasks)
+        results.add(forkJoinTask.get());
+    } catch (InterruptedException e) {
+      tasks.forEach(t -> t.cancel(false));
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted building indexes");
+    } catch (ExecutionException e) {
+      tasks.forEach(t -> t.cancel(false));
+      for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+        if (cause instanceof UncheckedIOException)
+          throw ((UncheckedIOException) cause).getCause();
+      }
+      if (e.getCause() instanceof RuntimeException)
+        throw (RuntimeException) e.getCause();
+      if (e.getCause() instanceof Error)
+        throw (Error) e.getCause();
+      throw new IOException(e.getCause());
+    }
+    return results;
+  }
+
+  interface ChildUpdater {
+    boolean update(MCollection part, Formatter errlog) throws IOException;
+  }
+
+  private static class ChildResult {
+    final boolean changed;
+    final String errlog;
+
+    ChildResult(boolean changed, String errlog) {
+      this.changed = changed;
+      this.errlog = errlog;
+    }
+  }
+
+  /**
+   * Update the collection index of each child of a partition, on the index build pool if there is one.
+   * A child that fails is removed from the partition, and the error logs are appended in the order of the children.
+   *
+   * @return true if any child index was changed
+   */
+  private static boolean updateChildren(PartitionManager partition, Iterable<MCollection> children,
+      ChildUpdater updater, Formatter errlog, Logger logger) throws IOException {
+    List<MCollection> parts = new ArrayList<>();
+    children.forEach(parts::add);
+
+    long start = System.currentTimeMillis();
+    AtomicInteger done = new AtomicInteger();
+    List<ChildResult> results = invokeAll(parts, part -> {
+      Formatter partErrlog = new Formatter();
+      try {
+        boolean changed = updater.update(part, partErrlog);
+        return new ChildResult(changed, partErrlog.toString());
+
+      } catch (IllegalStateException t) {
+        logger.warn("Error making partition {} '{}'", part.getRoot(), t.getMessage());
+
+      } catch (Throwable t) {
+        logger.error("Error making partition " + part.getRoot(), t);
+
+      } finally {
+        logger.debug("GribCdmIndex {}: {}/{} partitions updated", partition.getRoot(), done.incrementAndGet(),
+            parts.size());
+      }
+      return null;
+    });
+
+    boolean anyChange = false;
+    for (int i = 0; i < parts.size(); i++) {
+      ChildResult result = results.get(i);
+      if (result == null) {
+        partition.removePartition(parts.get(i)); // keep on truckin; can happen if directory is empty
+        continue;
+      }
+      anyChange |= result.changed;
+      errlog.format("%s", result.errlog);
+    }
+
+    long took = System.currentTimeMillis() - start;
+    logger.info("GribCdmIndex {}: updated {} partitions in {} msecs ({} msecs per partition)", partition.getRoot(),
+        parts.size(), took, parts.isEmpty() ? 0 : took / parts.size());
+    return anyChange;
+  }
+
   /////////////////////////////////////////////////////////////////////////////////////////////////
 
   public static File getTopIndexFileFromConfig(FeatureCollectionConfig config) {
@@ -394,17 +530,9 @@ public class GribCdmIndex implements IndexReader {
     long start = System.currentTimeMillis();
     Formatter errlog = new Formatter();
 
-    for (MCollection part : tp.makePartitions(updateType)) {
-      try {
-        updateGribCollection(isGrib1, part, updateType, FeatureCollectionConfig.PartitionType.timePeriod, logger,
-            errlog);
-
-      } catch (Throwable t) {
-        logger.warn("Error making partition " + part.getRoot(), t);
-        tp.removePartition(part); // keep on truckin; can happen if directory is empty
-      }
-    } // loop over component grib collections
-
+    // update the component grib collections
+    updateChildren(tp, tp.makePartitions(updateType), (part, partErrlog) -> updateGribCollection(isGrib1, part,
+        updateType, FeatureCollectionConfig.PartitionType.timePeriod, logger, partErrlog), errlog, logger);
 
     try {
       boolean changed = updatePartition(isGrib1, tp, updateType, logger, errlog);
@@ -467,25 +595,16 @@ public class GribCdmIndex implements IndexReader {
 
     // check the children partitions first
     if (updateType != CollectionUpdateType.testIndexOnly) { // skip children on testIndexOnly
-      for (MCollection part : dpart.makePartitions(updateType)) {
+      updateChildren(dpart, dpart.makePartitions(updateType), (part, partErrlog) -> {
         part.putAuxInfo(FeatureCollectionConfig.AUX_CONFIG, config);
-        try {
-          if (part instanceof DirectoryPartition) { // LOOK if child partition fails, the parent partition doesnt know
-                                                    // that - suckage
-            updateDirectoryCollectionRecurse(isGrib1, (DirectoryPartition) part, config, updateType, logger);
-          } else {
-            Path partPath = Paths.get(part.getRoot());
-            updateLeafCollection(isGrib1, config, updateType, false, logger, partPath); // LOOK why not using part ??
-          }
-        } catch (IllegalStateException t) {
-          logger.warn("Error making partition {} '{}'", part.getRoot(), t.getMessage());
-          dpart.removePartition(part); // keep on truckin; can happen if directory is empty
-
-        } catch (Throwable t) {
-          logger.error("Error making partition " + part.getRoot(), t);
-          dpart.removePartition(part);
+        if (part instanceof DirectoryPartition) { // LOOK if child partition fails, the parent partition doesnt know
+                                                  // that - suckage
+          return updateDirectoryCollectionRecurse(isGrib1, (DirectoryPartition) part, config, updateType, logger);
+        } else {
+          Path partPath = Paths.get(part.getRoot());
+          return updateLeafCollection(isGrib1, config, updateType, false, logger, partPath); // LOOK why not using part
         }
-      } // loop over partitions
+      }, new Formatter(), logger);
     }
 
     try {
@@ -567,29 +686,16 @@ public class GribCdmIndex implements IndexReader {
           (isGrib1 ? GribCollectionType.Partition1 : GribCollectionType.Partition2), logger))
         return false;
 
-      AtomicBoolean anyChange = new AtomicBoolean(false); // just need a mutable boolean we can declare final
-
       // redo the children here
       if (updateType != CollectionUpdateType.testIndexOnly) { // skip children on testIndexOnly
+        List<MCollection> parts = new ArrayList<>();
         partition.iterateOverMFileCollection(mfile -> {
           MCollection part = new CollectionSingleFile(mfile, logger);
           part.putAuxInfo(FeatureCollectionConfig.AUX_CONFIG, config);
-
-          try {
-            boolean changed = updateGribCollection(isGrib1, part, updateType,
-                FeatureCollectionConfig.PartitionType.file, logger, errlog);
-            if (changed)
-              anyChange.set(true);
-
-          } catch (IllegalStateException t) {
-            logger.warn("Error making partition {} '{}'", part.getRoot(), t.getMessage());
-            partition.removePartition(part); // keep on truckin; can happen if directory is empty
-
-          } catch (Throwable t) {
-            logger.error("Error making partition " + part.getRoot(), t);
-            partition.removePartition(part);
-          }
+          parts.add(part);
         });
+        updateChildren(partition, parts, (part, partErrlog) -> updateGribCollection(isGrib1, part, updateType,
+            FeatureCollectionConfig.PartitionType.file, logger, partErrlog), errlog, logger);
       }
 
       // LOOK what if theres only one file?
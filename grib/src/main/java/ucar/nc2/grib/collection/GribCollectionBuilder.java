@@ -5,6 +5,7 @@
 
 package ucar.nc2.grib.collection;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
 import thredds.featurecollection.FeatureCollectionConfig;
 import thredds.inventory.CollectionManager;
@@ -26,6 +27,7 @@ import ucar.unidata.util.StringUtil2;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Superclass to build indexes for collections of Grib files.
@@ -110,6 +112,74 @@ abstract class GribCollectionBuilder {
     return false;
   }
 
+  /**
+   * Read or create the gbx9 index of each file in the collection, in parallel if there is an index build pool, see
+   * {@link GribCdmIndex#setIndexBuildPool}. A file whose index fails is logged and left out.
+   *
+   * @param allFiles the files that have an index are added to this, in the order of the collection's file iterator
+   * @return the index of each file in allFiles, or null if the collection has no files
+   */
+  @Nullable
+  protected List<GribIndex> readFileIndexes(List<MFile> allFiles) throws IOException {
+    String builderName = getClass().getSimpleName();
+    List<MFile> mfiles = new ArrayList<>();
+    try (CloseableIterator<MFile> iter = dcm.getFileIterator()) { // not sorted
+      if (iter == null)
+        return null;
+      while (iter.hasNext())
+        mfiles.add(iter.next());
+    }
+
+    long start = System.currentTimeMillis();
+    AtomicInteger done = new AtomicInteger();
+    int progressStep = Math.max(1, mfiles.size() / 10);
+    List<GribIndex> indexes = GribCdmIndex.invokeAll(mfiles, mfile -> {
+      try {
+        GribIndex index;
+        if (Grib.debugGbxIndexOnly) {
+          index = GribIndex.open(isGrib1, mfile);
+        } else {
+          // this is where gbx9 files get recreated
+          index = GribIndex.readOrCreateIndexFromSingleFile(isGrib1, mfile, CollectionUpdateType.test, logger);
+        }
+        if (index == null)
+          logger.error(builderName + " " + name + " : reading/Creating gbx9 index for file " + mfile.getPath()
+              + " failed");
+        return index;
+
+      } catch (IOException ioe) {
+        logger.error(
+            builderName + " " + name + " : reading/Creating gbx9 index for file " + mfile.getPath() + " failed", ioe);
+        return null;
+
+      } finally {
+        int count = done.incrementAndGet();
+        if (count % progressStep == 0)
+          logger.debug("{} {}: {}/{} files indexed", builderName, name, count, mfiles.size());
+      }
+    });
+
+    List<GribIndex> result = new ArrayList<>(mfiles.size());
+    long nrecords = 0;
+    long nbytes = 0;
+    for (int i = 0; i < mfiles.size(); i++) {
+      GribIndex index = indexes.get(i);
+      if (index == null)
+        continue;
+      MFile mfile = mfiles.get(i);
+      allFiles.add(mfile); // add on success
+      result.add(index);
+      nrecords += index.getNRecords();
+      nbytes += mfile.getLength();
+    }
+
+    long took = Math.max(1, System.currentTimeMillis() - start);
+    if (mfiles.size() > 1)
+      logger.info("{} {}: indexed {} files, {} records, {} Mbytes in {} msecs ({} records/sec)", builderName, name,
+          result.size(), nrecords, nbytes / 1000 / 1000, took, nrecords * 1000 / took);
+    return result;
+  }
+
   //////////////////////////////////////////////////////////////////////////////////////////////////////////
 
   // Throw exception if failure
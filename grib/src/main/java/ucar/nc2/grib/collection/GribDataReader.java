@@ -6,7 +6,11 @@
 package ucar.nc2.grib.collection;
 
 import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import ucar.nc2.grib.coord.CoordinateTime2D;
@@ -26,7 +30,14 @@ import ucar.nc2.grib.grib2.table.Grib2Tables;
 import ucar.unidata.io.RandomAccessFile;
 import javax.annotation.concurrent.Immutable;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
 
 /**
  * Grib Data Reader.
@@ -48,7 +59,16 @@ public abstract class GribDataReader {
       return new Grib2DataReader(gribCollection, vindex);
   }
 
-  protected abstract float[] readData(RandomAccessFile rafData, DataRecord dr) throws IOException;
+  /**
+   * Read and decode one record.
+   *
+   * @param rafData the data file
+   * @param dr the record
+   * @param buffer decode into this array if it has the right size, else allocate a new one. May be null.
+   * @return the decoded record
+   */
+  protected abstract float[] readData(RandomAccessFile rafData, DataRecord dr, @Nullable float[] buffer)
+      throws IOException;
 
   protected abstract void show(RandomAccessFile rafData, long dataPos) throws IOException;
 
@@ -58,6 +78,110 @@ public abstract class GribDataReader {
   public static String currentDataRafFilename;
   private static final boolean show = false; // debug
 
+  // multithreading
+  private static volatile Executor executor;
+  private static volatile int maxPendingReads = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * Read the records of a request on the given Executor. The records are grouped by data file, and each group is
+   * split into shards that are read in file order and decoded concurrently.
+   *
+   * @param exec read on this Executor; if null, read the records one at a time.
+   * @param maxPending maximum number of shards one read has in progress at the same time.
+   */
+  public static void setExecutor(@Nullable Executor exec, int maxPending) {
+    if (maxPending < 1)
+      throw new IllegalArgumentException("maxPending must be > 0");
+    maxPendingReads = maxPending;
+    executor = exec;
+  }
+
+  // decoded records, shared by all collections
+  private static volatile Cache<FieldKey, float[]> fieldCache;
+
+  /**
+   * Keep decoded records in memory, so that repeated reads of the same records, eg subsets of the same fields, do not
+   * decode the GRIB message again.
+   *
+   * @param maxBytes maximum total size of the cached records; if 0, dont cache records.
+   */
+  public static void setFieldCache(long maxBytes) {
+    if (maxBytes < 0)
+      throw new IllegalArgumentException("maxBytes must be >= 0");
+    if (maxBytes == 0) {
+      fieldCache = null;
+      return;
+    }
+    fieldCache = CacheBuilder.newBuilder().maximumWeight(maxBytes)
+        .weigher((FieldKey key, float[] data) -> 4 * data.length).recordStats().build();
+  }
+
+  /** Hit and miss counts of the record cache, or null if there is no cache. */
+  @Nullable
+  public static CacheStats getFieldCacheStats() {
+    Cache<FieldKey, float[]> cache = fieldCache;
+    return (cache == null) ? null : cache.stats();
+  }
+
+  public static void showFieldCache(Formatter f) {
+    Cache<FieldKey, float[]> cache = fieldCache;
+    if (cache == null) {
+      f.format("GribDataReader field cache is off%n");
+      return;
+    }
+    f.format("GribDataReader field cache: %d records, %s%n", cache.size(), cache.stats());
+  }
+
+  // a record is identified by its data file and the position of its message and data representation section
+  private static final class FieldKey {
+    private final String location;
+    private final long lastModified;
+    private final long pos;
+    private final long drsOffset;
+
+    FieldKey(String location, long lastModified, long pos, long drsOffset) {
+      this.location = location;
+      this.lastModified = lastModified;
+      this.pos = pos;
+      this.drsOffset = drsOffset;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o)
+        return true;
+      if (!(o instanceof FieldKey))
+        return false;
+      FieldKey that = (FieldKey) o;
+      return lastModified == that.lastModified && pos == that.pos && drsOffset == that.drsOffset
+          && location.equals(that.location);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(location, lastModified, pos, drsOffset);
+    }
+  }
+
+  /*
+   * Read a record through the field cache, if there is one. Cached records are shared, so they must never be used as
+   * the decode buffer: callers only reuse the returned array when cache is null.
+   */
+  private float[] readRecord(@Nullable Cache<FieldKey, float[]> cache, RandomAccessFile rafData, DataRecord dr,
+      @Nullable float[] buffer) throws IOException {
+    if (cache == null)
+      return readData(rafData, dr, buffer);
+
+    FieldKey key =
+        new FieldKey(rafData.getLocation(), rafData.getLastModified(), dr.record.pos, dr.record.drsOffset);
+    float[] data = cache.getIfPresent(key);
+    if (data == null) {
+      data = readData(rafData, dr, null);
+      cache.put(key, data);
+    }
+    return data;
+  }
+
   protected final GribCollectionImmutable gribCollection;
   private final GribCollectionImmutable.VariableIndex vindex;
   private final List<DataRecord> records = new ArrayList<>();
@@ -235,7 +359,14 @@ public abstract class GribDataReader {
    */
   private void read(DataReceiverIF dataReceiver) throws IOException {
     Collections.sort(records);
+    Executor exec = executor;
+    if (exec != null && canReadConcurrently()) {
+      readConcurrently(exec, maxPendingReads, dataReceiver);
+      return;
+    }
 
+    Cache<FieldKey, float[]> cache = fieldCache;
+    float[] buffer = null; // the data receiver copies each record, so one array is enough
     int currFile = -1;
     RandomAccessFile rafData = null;
     try {
@@ -269,7 +400,9 @@ public abstract class GribDataReader {
           show(rafData, dr.record.pos + dr.record.drsOffset);
         }
 
-        float[] data = readData(rafData, dr);
+        float[] data = readRecord(cache, rafData, dr, buffer);
+        if (cache == null)
+          buffer = data;
         GdsHorizCoordSys hcs = vindex.group.getGdsHorizCoordSys();
         dataReceiver.addData(data, dr.resultIndex, hcs.nx);
       }
@@ -288,7 +421,14 @@ public abstract class GribDataReader {
 
   private void readPartitioned(DataReceiverIF dataReceiver) throws IOException {
     Collections.sort(records);
+    Executor exec = executor;
+    if (exec != null && canReadConcurrently()) {
+      readConcurrently(exec, maxPendingReads, dataReceiver);
+      return;
+    }
 
+    Cache<FieldKey, float[]> cache = fieldCache;
+    float[] buffer = null;
     PartitionCollectionImmutable.DataRecord lastRecord = null;
     RandomAccessFile rafData = null;
     try {
@@ -321,7 +461,9 @@ public abstract class GribDataReader {
           show(rafData, dr.record.pos + dr.record.drsOffset);
         }
 
-        float[] data = readData(rafData, dr);
+        float[] data = readRecord(cache, rafData, dr, buffer);
+        if (cache == null)
+          buffer = data;
         GdsHorizCoordSys hcs = dr.hcs;
         dataReceiver.addData(data, dr.resultIndex, hcs.nx);
       }
@@ -332,6 +474,101 @@ public abstract class GribDataReader {
     }
   }
 
+  // the debugging and validation modes need the records read in order, on this thread
+  private boolean canReadConcurrently() {
+    return records.size() > 1 && validator == null && !show && !Grib.debugIndexOnly && !Grib.debugGbxIndexOnly;
+  }
+
+  /*
+   * Split the sorted records into shards that each read from a single file, in file order. A shard has at most
+   * records.size() / maxPending records, so a request within one file still uses all of the pending reads.
+   * The shards decode into their own buffers and write disjoint parts of the result.
+   */
+  private void readConcurrently(Executor exec, int maxPending, DataReceiverIF dataReceiver) throws IOException {
+    int shardSize = Math.max(1, (records.size() + maxPending - 1) / maxPending);
+    List<ShardReader> shards = new ArrayList<>();
+    int start = 0;
+    for (int i = 1; i <= records.size(); i++) {
+      if (i == records.size() || i - start == shardSize || !sameFile(records.get(i - 1), records.get(i))) {
+        shards.add(new ShardReader(records.subList(start, i), dataReceiver));
+        start = i;
+      }
+    }
+
+    CompletionService<Void> completionService = new ExecutorCompletionService<>(exec);
+    List<Future<Void>> futures = new ArrayList<>();
+    int submitted = 0;
+    try {
+      for (int done = 0; done < shards.size(); done++) {
+        while (submitted < shards.size() && submitted - done < maxPending)
+          futures.add(completionService.submit(shards.get(submitted++)));
+        completionService.take().get();
+      }
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("interrupted reading grib records");
+
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException)
+        throw (IOException) cause;
+      if (cause instanceof RuntimeException)
+        throw (RuntimeException) cause;
+      if (cause instanceof Error)
+        throw (Error) cause;
+      throw new IOException(cause);
+
+    } finally {
+      for (Future<Void> future : futures) // only those not yet run, if there was a failure
+        future.cancel(false);
+    }
+  }
+
+  private static boolean sameFile(DataRecord dr1, DataRecord dr2) {
+    if (dr1 instanceof PartitionCollectionImmutable.DataRecord) {
+      PartitionCollectionImmutable.DataRecord drp = (PartitionCollectionImmutable.DataRecord) dr1;
+      return drp.usesSameFile((PartitionCollectionImmutable.DataRecord) dr2);
+    }
+    return dr1.record.fileno == dr2.record.fileno;
+  }
+
+  private RandomAccessFile openRaf(DataRecord dr) throws IOException {
+    if (dr instanceof PartitionCollectionImmutable.DataRecord) {
+      PartitionCollectionImmutable.DataRecord drp = (PartitionCollectionImmutable.DataRecord) dr;
+      return drp.usePartition.getRaf(drp.partno, dr.record.fileno);
+    }
+    return gribCollection.getDataRaf(dr.record.fileno);
+  }
+
+  // reads a run of records from one file, with its own RandomAccessFile and buffer
+  private class ShardReader implements Callable<Void> {
+    private final List<DataRecord> shard;
+    private final DataReceiverIF dataReceiver;
+
+    ShardReader(List<DataRecord> shard, DataReceiverIF dataReceiver) {
+      this.shard = shard;
+      this.dataReceiver = dataReceiver;
+    }
+
+    @Override
+    public Void call() throws IOException {
+      Cache<FieldKey, float[]> cache = fieldCache;
+      float[] buffer = null;
+      try (RandomAccessFile rafData = openRaf(shard.get(0))) {
+        for (DataRecord dr : shard) {
+          if (dr.record.pos == GribCollectionMutable.MISSING_RECORD)
+            continue;
+          float[] data = readRecord(cache, rafData, dr, buffer);
+          if (cache == null)
+            buffer = data;
+          dataReceiver.addData(data, dr.resultIndex, dr.hcs.nx);
+        }
+      }
+      return null;
+    }
+  }
+
   public static class DataRecord implements Comparable<DataRecord> {
     int resultIndex; // index into the result array
     final GribCollectionImmutable.Record record;
@@ -367,8 +604,13 @@ public abstract class GribDataReader {
     Array getArray();
   }
 
+  /**
+   * Copies the (y, x) subset of each record into the result. addData may be called concurrently for different
+   * resultIndex.
+   */
   public static class DataReceiver implements DataReceiverIF {
-    private Array dataArray;
+    private final Array dataArray;
+    private final float[] storage;
     private final RangeIterator yRange;
     private final RangeIterator xRange;
     private final int horizSize;
@@ -384,9 +626,9 @@ public abstract class GribDataReader {
             Throwables.getStackTraceAsString(new Throwable()));
         throw new IllegalArgumentException("RequestTooLarge: Len greater that 100M ");
       }
-      float[] data = new float[(int) len];
-      Arrays.fill(data, Float.NaN); // prefill primitive array
-      dataArray = Array.factory(DataType.FLOAT, shape, data);
+      storage = new float[(int) len];
+      Arrays.fill(storage, Float.NaN); // prefill primitive array
+      dataArray = Array.factory(DataType.FLOAT, shape, storage);
     }
 
     @Override
@@ -396,7 +638,7 @@ public abstract class GribDataReader {
       for (int y : yRange) {
         for (int x : xRange) {
           int dataIdx = y * nx + x;
-          dataArray.setFloat(start + count, data[dataIdx]);
+          storage[start + count] = data[dataIdx];
           count++;
         }
       }
@@ -405,8 +647,7 @@ public abstract class GribDataReader {
     // optimization
     @Override
     public void setDataToZero() {
-      float[] data = (float[]) dataArray.get1DJavaArray(dataArray.getDataType());
-      Arrays.fill(data, 0.0f);
+      Arrays.fill(storage, 0.0f);
     }
 
     @Override
@@ -466,12 +707,13 @@ public abstract class GribDataReader {
     }
 
     @Override
-    protected float[] readData(RandomAccessFile rafData, GribDataReader.DataRecord dr) throws IOException {
+    protected float[] readData(RandomAccessFile rafData, GribDataReader.DataRecord dr, @Nullable float[] buffer)
+        throws IOException {
       GdsHorizCoordSys hcs = dr.hcs;
       long dataPos = dr.record.pos + dr.record.drsOffset;
       long bmsPos = (dr.record.bmsOffset > 0) ? dr.record.pos + dr.record.bmsOffset : 0;
       return Grib2Record.readData(rafData, dataPos, bmsPos, hcs.gdsNumberPoints, hcs.getScanMode(), hcs.nxRaw,
-          hcs.nyRaw, hcs.nptsInLine);
+          hcs.nyRaw, hcs.nptsInLine, buffer);
     }
 
     @Override
@@ -502,7 +744,7 @@ public abstract class GribDataReader {
     }
 
     @Override
-    protected float[] readData(RandomAccessFile rafData, DataRecord dr) throws IOException {
+    protected float[] readData(RandomAccessFile rafData, DataRecord dr, @Nullable float[] buffer) throws IOException {
       return Grib1Record.readData(rafData, dr.record.pos);
     }
 
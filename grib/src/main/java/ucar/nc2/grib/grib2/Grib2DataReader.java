@@ -14,6 +14,7 @@ import java.awt.image.DataBuffer;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.util.Arrays;
@@ -81,6 +82,18 @@ public class Grib2DataReader {
    */
 
   public float[] getData(RandomAccessFile raf, Grib2SectionBitMap bitmapSection, Grib2Drs gdrs) throws IOException {
+    return getData(raf, bitmapSection, gdrs, null);
+  }
+
+  /**
+   * Read the data, reusing an array from an earlier record if possible.
+   *
+   * @param dest if it has totalNPoints elements, complex packing (templates 2 and 3) decodes into it instead of
+   *        allocating a new array. Other templates ignore it.
+   * @return the data, which may be dest
+   */
+  public float[] getData(RandomAccessFile raf, Grib2SectionBitMap bitmapSection, Grib2Drs gdrs,
+      @Nullable float[] dest) throws IOException {
     this.bitmap = bitmapSection.getBitmap(raf);
     this.bitmapIndicator = bitmapSection.getBitMapIndicator();
 
@@ -100,10 +113,10 @@ public class Grib2DataReader {
         data = getData0(raf, (Grib2Drs.Type0) gdrs);
         break;
       case 2:
-        data = getData2(raf, (Grib2Drs.Type2) gdrs);
+        data = getData2(raf, (Grib2Drs.Type2) gdrs, dest);
         break;
       case 3:
-        data = getData3(raf, (Grib2Drs.Type3) gdrs);
+        data = getData3(raf, (Grib2Drs.Type3) gdrs, dest);
         break;
       case 40:
         data = getData40(raf, (Grib2Drs.Type40) gdrs);
@@ -275,7 +288,7 @@ public class Grib2DataReader {
    * from data representation template.
    * (4) For groups with a constant value, associated field width is 0, and no incremental data are physically present.
    */
-  private float[] getData2(RandomAccessFile raf, Grib2Drs.Type2 gdrs) throws IOException {
+  private float[] getData2(RandomAccessFile raf, Grib2Drs.Type2 gdrs, @Nullable float[] dest) throws IOException {
     int mvm = gdrs.missingValueManagement;
     float mv = getMissingValue(gdrs);
 
@@ -286,97 +299,71 @@ public class Grib2DataReader {
 
     int NG = gdrs.numberOfGroups;
     if (NG == 0) {
-      return nGroups0(bitmapIndicator, ref_val, mv);
+      return nGroups0(bitmapIndicator, ref_val, mv, dest);
     }
 
-    BitReader reader = new BitReader(raf, startPos + 5);
+    PackedBits reader = new PackedBits(raf, dataLength - 5);
 
     // 6-xx Get reference values for groups (X1's)
-    int[] X1 = new int[NG];
-    int nb = gdrs.numberOfBits;
-    if (nb != 0) {
-      for (int i = 0; i < NG; i++) {
-        X1[i] = (int) reader.bits2UInt(nb);
-      }
-    }
+    int[] X1 = reader.unpack(NG, gdrs.numberOfBits);
 
     // [xx +1 ]-yy Get number of bits used to encode each group
-    int[] NB = new int[NG];
-    nb = gdrs.bitsGroupWidths;
-    if (nb != 0) {
+    int[] NB;
+    if (gdrs.bitsGroupWidths != 0) {
       reader.incrByte();
-      for (int i = 0; i < NG; i++) {
-        NB[i] = (int) reader.bits2UInt(nb);
-      }
+      NB = reader.unpack(NG, gdrs.bitsGroupWidths);
+    } else {
+      NB = new int[NG];
     }
 
     // [yy +1 ]-zz Get the scaled group lengths using formula
     // Ln = ref + Kn * len_inc, where n = 1-NG,
     // ref = referenceGroupLength, and len_inc = lengthIncrement
-
-    int[] L = new int[NG];
+    reader.incrByte();
+    int[] L = reader.unpack(NG, gdrs.bitsScaledGroupLength);
     int ref = gdrs.referenceGroupLength;
     int len_inc = gdrs.lengthIncrement;
-    nb = gdrs.bitsScaledGroupLength;
-
-    reader.incrByte();
     for (int i = 0; i < NG; i++) {
-      L[i] = ref + (int) reader.bits2UInt(nb) * len_inc;
+      L[i] = ref + L[i] * len_inc;
     }
     L[NG - 1] = gdrs.lengthLastGroup; // enter Length of Last Group
 
-    float[] data = new float[totalNPoints];
+    // with a bitmap the values are packed together, and spread out afterwards
+    float[] result = allocate(dest);
+    float[] data = (bitmap == null) ? result : new float[totalNPoints];
 
     // [zz +1 ]-nn get X2 values and calculate the results Y using formula
-
-    // Y = R + [(X1 + X2) * (2 ** E) * (10 ** D)]
-    // WHERE:
-    // Y = THE VALUE WE ARE UNPACKING
-    // R = THE REFERENCE VALUE (FIRST ORDER MINIMA)
-    // X1 = THE PACKED VALUE
-    // X2 = THE SECOND ORDER MINIMA
-    // E = THE BINARY SCALE FACTOR
-    // D = THE DECIMAL SCALE FACTOR
+    // Y * 10**D = R + (X1 + X2) * 2**E
     int count = 0;
     reader.incrByte();
     for (int i = 0; i < NG; i++) {
-      for (int j = 0; j < L[i]; j++) {
-        if (NB[i] == 0) {
-          if (mvm == 0) { // X2 = 0
-            data[count++] = (R + X1[i] * EE) / DD;
-          } else { // if (mvm == 1) || (mvm == 2 )
-            data[count++] = mv;
-          }
-        } else {
-          int X2 = (int) reader.bits2UInt(NB[i]);
-          if (mvm == 0) {
-            data[count++] = (R + (X1[i] + X2) * EE) / DD;
-          } else { // if (mvm == 1) || (mvm == 2 )
-            // X2 is also set to missing value if all bits set to 1's
-            if (X2 == bitsmv1[NB[i]]) {
-              data[count++] = mv;
-            } else {
-              data[count++] = (R + (X1[i] + X2) * EE) / DD;
-            }
-          }
+      int nb = NB[i];
+      int x1 = X1[i];
+      int end = count + Math.max(L[i], 0);
+      if (nb == 0) {
+        // X2 = 0
+        Arrays.fill(data, count, end, (mvm == 0) ? (R + x1 * EE) / DD : mv);
+      } else if (mvm == 0) {
+        for (int j = count; j < end; j++) {
+          data[j] = (R + (x1 + reader.next(nb)) * EE) / DD;
         }
-      } // end for j
-    } // end for i
-
-    if (bitmap != null) {
-      int idx = 0;
-      float[] tmp = new float[totalNPoints];
-      for (int i = 0; i < totalNPoints; i++) {
-        if (GribNumbers.testBitIsSet(bitmap[i / 8], i % 8)) {
-          tmp[i] = data[idx++];
-        } else {
-          tmp[i] = mv;
+      } else { // if (mvm == 1) || (mvm == 2 )
+        // X2 is also set to missing value if all bits set to 1's
+        int msng = bitsmv1[nb];
+        for (int j = count; j < end; j++) {
+          int X2 = reader.next(nb);
+          data[j] = (X2 == msng) ? mv : (R + (x1 + X2) * EE) / DD;
         }
       }
-      data = tmp;
+      count = end;
+    }
+    if (data == result) {
+      Arrays.fill(result, count, totalNPoints, 0.0f); // dest may hold values from an earlier record
+    } else {
+      expandBitmap(data, result, mv);
     }
 
-    return data;
+    return result;
   }
 
 
@@ -413,8 +400,8 @@ public class Grib2DataReader {
    * fatal_error("unknown bitmap", "");
    * }
    */
-  private float[] nGroups0(int bitmap_flag, float ref, float mv1) {
-    float[] data = new float[totalNPoints];
+  private float[] nGroups0(int bitmap_flag, float ref, float mv1, @Nullable float[] dest) {
+    float[] data = allocate(dest);
     if (bitmap_flag == 255) {
       for (int i = 0; i < totalNPoints; i++) {
         data[i] = ref;
@@ -461,7 +448,7 @@ public class Grib2DataReader {
    * (4) Overall minimum will be negative in most cases. First bit should indicate the sign: 0 if positive, 1 if
    * negative.
    */
-  private float[] getData3(RandomAccessFile raf, Grib2Drs.Type3 gdrs) throws IOException {
+  private float[] getData3(RandomAccessFile raf, Grib2Drs.Type3 gdrs, @Nullable float[] dest) throws IOException {
     int mvm = gdrs.missingValueManagement;
     float mv = getMissingValue(gdrs);
 
@@ -472,70 +459,40 @@ public class Grib2DataReader {
 
     int NG = gdrs.numberOfGroups;
     if (NG == 0) {
-      return nGroups0(bitmapIndicator, ref_val, mv);
+      return nGroups0(bitmapIndicator, ref_val, mv, dest);
     }
 
-    BitReader reader = new BitReader(raf, startPos + 5);
-
-    int ival1;
-    int ival2 = 0;
-    int minsd;
-
     // [6-ww] 1st values of undifferenced scaled values and minimums
     int os = gdrs.orderSpatial;
-    int nbitsd = gdrs.descriptorSpatial;
-    int sign;
-    // ds is number of bytes, convert to bits -1 for sign bit
-    nbitsd = nbitsd * 8;
-    if (nbitsd > 0) { // first order spatial differencing g1 and gMin
-      sign = (int) reader.bits2UInt(1);
-      ival1 = (int) reader.bits2UInt(nbitsd - 1);
-      if (sign == 1) {
-        ival1 = -ival1;
-      }
-      if (os == 2) { // second order spatial differencing h1, h2, hMin
-        sign = (int) reader.bits2UInt(1);
-        ival2 = (int) reader.bits2UInt(nbitsd - 1);
-        if (sign == 1) {
-          ival2 = -ival2;
-        }
-      }
-      sign = (int) reader.bits2UInt(1);
-      minsd = (int) reader.bits2UInt(nbitsd - 1);
-      if (sign == 1) {
-        minsd = -minsd;
-      }
+    // ds is number of bytes, convert to bits
+    int nbitsd = gdrs.descriptorSpatial * 8;
+    if (nbitsd <= 0) {
+      return allMissing(mv, dest);
+    }
 
-    } else {
-      float[] data = new float[totalNPoints];
-      for (int i = 0; i < totalNPoints; i++) {
-        data[i] = mv;
-      }
-      return data;
+    PackedBits reader = new PackedBits(raf, dataLength - 5);
+    int ival1 = reader.nextSignMagnitude(nbitsd); // first order spatial differencing g1 and gMin
+    int ival2 = 0;
+    if (os == 2) { // second order spatial differencing h1, h2, hMin
+      ival2 = reader.nextSignMagnitude(nbitsd);
     }
+    int minsd = reader.nextSignMagnitude(nbitsd);
 
     // [ww +1]-xx Get reference values for groups (X1's)
     // X1 == gref
-    int[] X1 = new int[NG]; // initialized to zero
     int nb = gdrs.numberOfBits;
     if (nb != 0) {
       reader.incrByte();
-      for (int i = 0; i < NG; i++) {
-        X1[i] = (int) reader.bits2UInt(nb);
-      }
     }
+    int[] X1 = reader.unpack(NG, nb);
 
     // [xx +1 ]-yy Get number of bits used to encode each group
     // NB == gwidth
-    int[] NB = new int[NG]; // initialized to zero
     nb = gdrs.bitsGroupWidths;
     if (nb != 0) {
       reader.incrByte();
-      for (int i = 0; i < NG; i++) {
-        NB[i] = (int) reader.bits2UInt(nb);
-      }
     }
-
+    int[] NB = reader.unpack(NG, nb);
     int referenceGroupWidths = gdrs.referenceGroupWidths;
     for (int i = 0; i < NG; i++) {
       NB[i] += referenceGroupWidths;
@@ -544,19 +501,13 @@ public class Grib2DataReader {
     // [yy +1 ]-zz Get the scaled group lengths using formula
     // Ln = ref + Kn * len_inc, where n = 1-NG,
     // ref = referenceGroupLength, and len_inc = lengthIncrement
-
-    int[] L = new int[NG]; // initialized to zero
-    int referenceGroupLength = gdrs.referenceGroupLength;
     nb = gdrs.bitsScaledGroupLength;
-    int len_inc = gdrs.lengthIncrement;
-
     if (nb != 0) {
       reader.incrByte();
-      for (int i = 0; i < NG; i++) {
-        L[i] = (int) reader.bits2UInt(nb);
-      }
     }
-
+    int[] L = reader.unpack(NG, nb);
+    int referenceGroupLength = gdrs.referenceGroupLength;
+    int len_inc = gdrs.lengthIncrement;
     int totalL = 0;
     for (int i = 0; i < NG; i++) {
       L[i] = L[i] * len_inc + referenceGroupLength;
@@ -572,168 +523,196 @@ public class Grib2DataReader {
     if (mvm != 0) {
       if (totalL != totalNPoints) {
         logger.warn("NPoints != gds.nPts: " + totalL + "!=" + totalNPoints);
-        float[] data = new float[totalNPoints];
-        for (int i = 0; i < totalNPoints; i++) {
-          data[i] = mv;
-        }
-        return data;
+        return allMissing(mv, dest);
       }
     } else {
       if (totalL != dataNPoints) {
         logger.warn("NPoints != drs.nPts: " + totalL + "!=" + totalNPoints);
-        float[] data = new float[totalNPoints];
-        for (int i = 0; i < totalNPoints; i++) {
-          data[i] = mv;
-        }
-        return data;
+        return allMissing(mv, dest);
       }
     }
 
-    float[] data = new float[totalNPoints];
-
-    // [zz +1 ]-nn get X2 values and calculate the results Y using formula
-    // formula used to create values, Y * 10**D = R + (X1 + X2) * 2**E
+    // the scaled values are computed in place when there are no missing values and no bitmap
+    float[] result = allocate(dest);
+    float[] data = (mvm == 0 && bitmap == null) ? result : new float[totalNPoints];
 
-    // Y = (R + (X1 + X2) * (2 ** E) ) / (10 ** D)]
-    // WHERE:
-    // Y = THE VALUE WE ARE UNPACKING
-    // R = THE REFERENCE VALUE (FIRST ORDER MINIMA)
-    // X1 = THE PACKED VALUE
-    // X2 = THE SECOND ORDER MINIMA
-    // E = THE BINARY SCALE FACTOR
-    // D = THE DECIMAL SCALE FACTOR
+    // [zz +1 ]-nn get X2 values, the spatial differences with the overall minimum removed
     int count = 0;
     reader.incrByte();
     int dataSize = 0;
     boolean[] dataBitMap = null;
     if (mvm == 0) {
       for (int i = 0; i < NG; i++) {
-        if (NB[i] != 0) {
-          for (int j = 0; j < L[i]; j++) {
-            data[count++] = (int) reader.bits2UInt(NB[i]) + X1[i];
+        int width = NB[i];
+        int x1 = X1[i];
+        int end = count + Math.max(L[i], 0);
+        if (width != 0) {
+          for (int j = count; j < end; j++) {
+            data[j] = reader.next(width) + x1;
           }
         } else {
-          for (int j = 0; j < L[i]; j++) {
-            data[count++] = X1[i];
-          }
+          Arrays.fill(data, count, end, x1);
         }
+        count = end;
       } // end for i
+      Arrays.fill(data, count, totalNPoints, 0.0f); // dest may hold values from an earlier record
 
     } else if (mvm == 1 || mvm == 2) {
       // don't add missing values into data but keep track of them in dataBitMap
       dataBitMap = new boolean[totalNPoints];
-      dataSize = 0;
       for (int i = 0; i < NG; i++) {
-        if (NB[i] != 0) {
-          int msng1 = bitsmv1[NB[i]];
-          int msng2 = msng1 - 1;
-          for (int j = 0; j < L[i]; j++) {
-            data[count] = (int) reader.bits2UInt(NB[i]);
-            if (data[count] == msng1 || mvm == 2 && data[count] == msng2) {
-              dataBitMap[count] = false;
-            } else {
-              dataBitMap[count] = true;
-              data[dataSize++] = data[count] + X1[i];
+        int width = NB[i];
+        int x1 = X1[i];
+        int end = count + Math.max(L[i], 0);
+        if (width != 0) {
+          // compared as floats, as the values were always held in a float array
+          float msng1 = bitsmv1[width];
+          float msng2 = bitsmv1[width] - 1;
+          for (int j = count; j < end; j++) {
+            float X2 = reader.next(width);
+            if (X2 != msng1 && (mvm != 2 || X2 != msng2)) {
+              dataBitMap[j] = true;
+              data[dataSize++] = X2 + x1;
             }
-            count++;
           }
         } else { // (NB[i] == 0
           int msng1 = bitsmv1[gdrs.numberOfBits];
           int msng2 = msng1 - 1;
-          if (X1[i] == msng1) {
-            for (int j = 0; j < L[i]; j++) {
-              dataBitMap[count++] = false;
-            }
-            // data[count++] = X1[i];
-          } else if (mvm == 2 && X1[i] == msng2) {
-            for (int j = 0; j < L[i]; j++) {
-              dataBitMap[count++] = false;
-            }
-          } else {
-            for (int j = 0; j < L[i]; j++) {
-              dataBitMap[count] = true;
-              data[dataSize++] = X1[i];
-              count++;
-            }
+          if (x1 != msng1 && (mvm != 2 || x1 != msng2)) {
+            Arrays.fill(dataBitMap, count, end, true);
+            Arrays.fill(data, dataSize, dataSize + end - count, x1);
+            dataSize += end - count;
           }
         }
+        count = end;
       } // end for i
     }
 
-    // first order spatial differencing
+    // undo the spatial differencing
+    int itemp = (mvm == 0) ? totalNPoints : dataSize;
     if (os == 1) { // g1 and gMin
       // encoded by G(n) = F(n) - F(n -1 )
       // decoded by F(n) = G(n) + F(n -1 )
       // data[] at this point contains G0, G1, G2, ....
       data[0] = ival1;
-      int itemp;
-      if (mvm == 0) { // no missing values
-        itemp = totalNPoints;
-      } else {
-        itemp = dataSize;
-      }
+      float f1 = data[0];
       for (int i = 1; i < itemp; i++) {
-        data[i] += minsd;
-        data[i] = data[i] + data[i - 1];
+        f1 = (data[i] + minsd) + f1;
+        data[i] = f1;
       }
     } else if (os == 2) { // 2nd order
       data[0] = ival1;
       data[1] = ival2;
-      int itemp;
-      if (mvm == 0) { // no missing values
-        itemp = totalNPoints;
-      } else {
-        itemp = dataSize;
-      }
+      float f2 = data[0];
+      float f1 = data[1];
       for (int i = 2; i < itemp; i++) {
-        data[i] += minsd;
-        data[i] = data[i] + (2 * data[i - 1]) - data[i - 2];
+        float f = (data[i] + minsd) + (2 * f1) - f2;
+        data[i] = f;
+        f2 = f1;
+        f1 = f;
       }
     }
 
     // formula used to create values, Y * 10**D = R + (X1 + X2) * 2**E
-
-    // Y = (R + (X1 + X2) * (2 ** E) ) / (10 ** D)]
-    // WHERE:
-    // Y = THE VALUE WE ARE UNPACKING
-    // R = THE REFERENCE VALUE (FIRST ORDER MINIMA)
-    // X1 = THE PACKED VALUE
-    // X2 = THE SECOND ORDER MINIMA
-    // E = THE BINARY SCALE FACTOR
-    // D = THE DECIMAL SCALE FACTOR
-
     if (mvm == 0) { // no missing values
-      for (int i = 0; i < data.length; i++) {
+      for (int i = 0; i < totalNPoints; i++) {
         data[i] = (R + (data[i] * EE)) / DD;
       }
     } else if (mvm == 1 || mvm == 2) { // missing value == 1 || missing value == 2
+      float[] tmp = (bitmap == null) ? result : new float[totalNPoints];
       int count2 = 0;
-      float[] tmp = new float[totalNPoints];
-      for (int i = 0; i < data.length; i++) {
-        if (dataBitMap[i]) {
-          tmp[i] = (R + (data[count2++] * EE)) / DD;
-        } else { // mvm = 1 or 2
-          tmp[i] = mv;
-        }
+      for (int i = 0; i < totalNPoints; i++) {
+        tmp[i] = dataBitMap[i] ? (R + (data[count2++] * EE)) / DD : mv;
       }
       data = tmp;
+    } else if (bitmap == null) {
+      System.arraycopy(data, 0, result, 0, totalNPoints);
     }
 
     // bit map is used
     if (bitmap != null) {
-      int idx = 0;
-      float[] tmp = new float[totalNPoints];
-      for (int i = 0; i < totalNPoints; i++) {
-        if (GribNumbers.testBitIsSet(bitmap[i / 8], i % 8)) {
-          tmp[i] = data[idx++];
-        } else {
-          tmp[i] = mv;
+      expandBitmap(data, result, mv);
+    }
+
+    return result;
+  }
+
+  private float[] allocate(@Nullable float[] dest) {
+    return (dest != null && dest.length == totalNPoints) ? dest : new float[totalNPoints];
+  }
+
+  private float[] allMissing(float mv, @Nullable float[] dest) {
+    float[] data = allocate(dest);
+    Arrays.fill(data, mv);
+    return data;
+  }
+
+  // spread the packed values over the points that are set in the bitmap
+  private void expandBitmap(float[] packed, float[] result, float mv) {
+    int idx = 0;
+    for (int i = 0; i < totalNPoints; i++) {
+      if (GribNumbers.testBitIsSet(bitmap[i / 8], i % 8)) {
+        result[i] = packed[idx++];
+      } else {
+        result[i] = mv;
+      }
+    }
+  }
+
+  /**
+   * Reads the packed fields of a data section that has been read into memory. Fields of up to 32 bits are extracted
+   * from one 64 bit word, instead of bit by bit as {@link BitReader} does.
+   */
+  private static class PackedBits {
+    private final ByteBuffer buffer;
+    private long bitPos;
+
+    PackedBits(RandomAccessFile raf, int nbytes) throws IOException {
+      // padded so that there is always a whole word to read
+      byte[] bytes = new byte[Math.max(nbytes, 0) + Long.BYTES];
+      int pos = 0;
+      while (pos < nbytes) {
+        int n = raf.read(bytes, pos, nbytes - pos);
+        if (n < 0) {
+          break;
         }
+        pos += n;
       }
-      data = tmp;
+      this.buffer = ByteBuffer.wrap(bytes);
     }
 
-    return data;
+    /** Read the next nb bits as an unsigned integer, same as (int) BitReader.bits2UInt(nb). */
+    int next(int nb) {
+      if (nb == 0) {
+        return 0;
+      }
+      long word = buffer.getLong((int) (bitPos >>> 3)) << (bitPos & 7);
+      bitPos += nb;
+      return (int) (word >>> (64 - nb));
+    }
+
+    /** Read n values of nb bits each. */
+    int[] unpack(int n, int nb) {
+      int[] values = new int[n];
+      if (nb != 0) {
+        for (int i = 0; i < n; i++) {
+          values[i] = next(nb);
+        }
+      }
+      return values;
+    }
+
+    /** Read a sign bit followed by nb - 1 bits of magnitude. */
+    int nextSignMagnitude(int nb) {
+      int sign = next(1);
+      int value = next(nb - 1);
+      return (sign == 1) ? -value : value;
+    }
+
+    /** Skip to the start of the next byte, unless already there. */
+    void incrByte() {
+      bitPos = (bitPos + 7) & ~7L;
+    }
   }
 
   // Grid point data - JPEG 2000 code stream format
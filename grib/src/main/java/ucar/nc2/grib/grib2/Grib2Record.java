@@ -305,6 +305,18 @@ public class Grib2Record {
    */
   public static float[] readData(RandomAccessFile raf, long drsPos, long bmsPos, int gdsNumberPoints, int scanMode,
       int nx, int ny, int[] nptsInLine) throws IOException {
+    return readData(raf, drsPos, bmsPos, gdsNumberPoints, scanMode, nx, ny, nptsInLine, null);
+  }
+
+  /**
+   * Read data array, decoding into dest if possible, see {@link Grib2DataReader#getData}.
+   *
+   * @param dest reuse this array if it has gdsNumberPoints elements, may be null
+   * @return data as float[] array, which may be dest
+   * @throws IOException on read error
+   */
+  public static float[] readData(RandomAccessFile raf, long drsPos, long bmsPos, int gdsNumberPoints, int scanMode,
+      int nx, int ny, int[] nptsInLine, @Nullable float[] dest) throws IOException {
     raf.seek(drsPos);
     Grib2SectionDataRepresentation drs = new Grib2SectionDataRepresentation(raf);
     Grib2SectionBitMap bms = new Grib2SectionBitMap(raf);
@@ -318,7 +330,7 @@ public class Grib2Record {
 
     Grib2Drs gdrs = drs.getDrs(raf);
 
-    float[] data = reader.getData(raf, bms, gdrs);
+    float[] data = reader.getData(raf, bms, gdrs, dest);
 
     if (nptsInLine != null)
       data = QuasiRegular.convertQuasiGrid(data, nptsInLine, nx, ny, GribData.getInterpolationMethod());
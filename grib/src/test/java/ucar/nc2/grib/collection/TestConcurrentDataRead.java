@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.grib.collection;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Formatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import thredds.featurecollection.FeatureCollectionConfig;
+import thredds.featurecollection.FeatureCollectionType;
+import thredds.inventory.CollectionUpdateType;
+import ucar.ma2.Array;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import ucar.nc2.Variable;
+import ucar.nc2.grib.GribIndexCache;
+import ucar.nc2.util.DiskCache2;
+
+/** Records read on an Executor must be the same as those read serially. */
+public class TestConcurrentDataRead {
+  private static final Logger logger = LoggerFactory.getLogger(TestConcurrentDataRead.class);
+  private static final String DATA_DIR = "../grib/src/test/data/";
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private ExecutorService pool;
+
+  @Before
+  public void indexWithData() {
+    DiskCache2 diskCache = GribIndexCache.getDiskCache2();
+    diskCache.setNeverUseCache(true);
+    diskCache.setAlwaysUseCache(false);
+    pool = Executors.newFixedThreadPool(4);
+  }
+
+  @After
+  public void serial() {
+    GribDataReader.setExecutor(null, Runtime.getRuntime().availableProcessors());
+    pool.shutdown();
+  }
+
+  @Test
+  public void testCollection() throws IOException {
+    File dir = tempFolder.newFolder("single");
+    copy(dir, "GFS_Global_onedeg_20220627_0000.TotalPrecip.Out48hrs.grib2");
+    String location = new File(dir, "GFS_Global_onedeg_20220627_0000.TotalPrecip.Out48hrs.grib2").getPath();
+    compare(() -> NetcdfFiles.open(location));
+  }
+
+  @Test
+  public void testPartition() throws IOException {
+    File root = tempFolder.newFolder("collection");
+    copy(new File(root, "d1"), "GFS_Global_onedeg_20220627.TotalPrecip.Out24hrs.grib2");
+    copy(new File(root, "d2"), "GFS_Global_onedeg_20220627_0000.TotalPrecip.Out48hrs.grib2");
+    FeatureCollectionConfig config = new FeatureCollectionConfig("concurrent", "test/concurrent",
+        FeatureCollectionType.GRIB2, root.getPath() + "/**/.*grib2$", null, null, null, "directory", null);
+    assertThat(GribCdmIndex.updateGribCollection(config, CollectionUpdateType.always, logger)).isTrue();
+
+    String indexFilename = new File(root, "concurrent" + GribCdmIndex.NCX_SUFFIX).getPath();
+    try (GribCollectionImmutable gc = GribCdmIndex.openCdmIndex(indexFilename, config, false, logger)) {
+      assertThat(gc).isInstanceOf(PartitionCollectionImmutable.class);
+      GribCollectionImmutable.Dataset best = gc.getDatasets().stream()
+          .filter(ds -> ds.getType() == GribCollectionImmutable.Type.Best).findFirst().orElse(null);
+      assertThat(best).isNotNull();
+      GribCollectionImmutable.GroupGC group = best.getGroup(0);
+      compare(() -> gc.getNetcdfDataset(best, group, indexFilename, config, new Formatter(), logger));
+    }
+  }
+
+  private interface Opener {
+    NetcdfFile open() throws IOException;
+  }
+
+  private void compare(Opener opener) throws IOException {
+    Map<String, Array> serial = readAll(opener);
+    assertThat(serial).isNotEmpty();
+
+    // fewer pending reads than records, so each file is split into several shards
+    GribDataReader.setExecutor(pool, 3);
+    Map<String, Array> concurrent = readAll(opener);
+
+    assertThat(concurrent.keySet()).containsExactlyElementsIn(serial.keySet());
+    for (Map.Entry<String, Array> entry : serial.entrySet()) {
+      float[] want = (float[]) entry.getValue().get1DJavaArray(float.class);
+      float[] got = (float[]) concurrent.get(entry.getKey()).get1DJavaArray(float.class);
+      assertWithMessage(entry.getKey()).that(got).isEqualTo(want);
+    }
+  }
+
+  // the data of every grid variable with more than one record
+  private static Map<String, Array> readAll(Opener opener) throws IOException {
+    Map<String, Array> result = new LinkedHashMap<>();
+    try (NetcdfFile ncfile = opener.open()) {
+      for (Variable v : ncfile.getVariables()) {
+        if (v.getRank() > 2 && v.getSize() > v.getShape(v.getRank() - 1) * v.getShape(v.getRank() - 2)) {
+          result.put(v.getFullName(), v.read());
+        }
+      }
+    }
+    return result;
+  }
+
+  private static void copy(File dir, String filename) throws IOException {
+    assertThat(dir.isDirectory() || dir.mkdir()).isTrue();
+    Files.copy(new File(DATA_DIR + filename).toPath(), new File(dir, filename).toPath(),
+        StandardCopyOption.COPY_ATTRIBUTES);
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.grib.collection;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.cache.CacheStats;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.Array;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import ucar.nc2.Variable;
+import ucar.nc2.grib.GribIndexCache;
+import ucar.nc2.util.DiskCache2;
+
+/** Reads through the decoded record cache must be the same as reads without it. */
+public class TestFieldCache {
+  private static final String DATA_DIR = "../grib/src/test/data/";
+  private static final String FILENAME = "GFS_Global_onedeg_20220627_0000.TotalPrecip.Out48hrs.grib2";
+  private static final String VARNAME = "Total_precipitation_surface_Mixed_intervals_Accumulation";
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  private String location;
+
+  @Before
+  public void setup() throws IOException {
+    DiskCache2 diskCache = GribIndexCache.getDiskCache2();
+    diskCache.setNeverUseCache(true);
+    diskCache.setAlwaysUseCache(false);
+
+    File dir = tempFolder.newFolder();
+    File file = new File(dir, FILENAME);
+    Files.copy(new File(DATA_DIR + FILENAME).toPath(), file.toPath(), StandardCopyOption.COPY_ATTRIBUTES);
+    location = file.getPath();
+  }
+
+  @After
+  public void noCache() {
+    GribDataReader.setFieldCache(0);
+  }
+
+  @Test
+  public void testSubsetsUseCachedRecords() throws IOException, InvalidRangeException {
+    Array want1 = read(":,0:9,0:9");
+    Array want2 = read(":,5:14,5:14");
+    assertThat(GribDataReader.getFieldCacheStats()).isNull();
+
+    GribDataReader.setFieldCache(100 * 1000 * 1000);
+    Array first = read(":,0:9,0:9");
+    CacheStats stats = GribDataReader.getFieldCacheStats();
+    assertThat(stats.hitCount()).isEqualTo(0);
+    long nrecords = stats.missCount();
+    assertThat(nrecords).isGreaterThan(1L);
+
+    // an overlapping subset, from another dataset on the same file, decodes nothing
+    Array second = read(":,5:14,5:14");
+    stats = GribDataReader.getFieldCacheStats();
+    assertThat(stats.missCount()).isEqualTo(nrecords);
+    assertThat(stats.hitCount()).isEqualTo(nrecords);
+
+    assertThat((float[]) first.get1DJavaArray(float.class)).isEqualTo(want1.get1DJavaArray(float.class));
+    assertThat((float[]) second.get1DJavaArray(float.class)).isEqualTo(want2.get1DJavaArray(float.class));
+  }
+
+  @Test
+  public void testCacheIsBounded() throws IOException, InvalidRangeException {
+    // room for one 1 degree global record
+    GribDataReader.setFieldCache(4 * 361 * 360 + 100);
+    read(":,0,0");
+    read(":,0,0");
+    CacheStats stats = GribDataReader.getFieldCacheStats();
+    assertThat(stats.evictionCount()).isGreaterThan(0L);
+    assertThat(stats.hitCount()).isLessThan(stats.missCount());
+  }
+
+  private Array read(String section) throws IOException, InvalidRangeException {
+    try (NetcdfFile ncfile = NetcdfFiles.open(location)) {
+      Variable v = ncfile.findVariable(VARNAME);
+      assertThat((Object) v).isNotNull();
+      return v.read(section);
+    }
+  }
+}
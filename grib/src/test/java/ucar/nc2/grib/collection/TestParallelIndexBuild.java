@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.grib.collection;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Formatter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import thredds.featurecollection.FeatureCollectionConfig;
+import thredds.featurecollection.FeatureCollectionType;
+import thredds.inventory.CollectionUpdateType;
+import ucar.nc2.grib.GribIndexCache;
+import ucar.nc2.util.DiskCache2;
+
+/** Indexes built on the index build pool must be the same as those built serially. */
+public class TestParallelIndexBuild {
+  private static final Logger logger = LoggerFactory.getLogger(TestParallelIndexBuild.class);
+  private static final String DATA_DIR = "../grib/src/test/data/";
+  private static final String TOP_INDEX = "parallel" + GribCdmIndex.NCX_SUFFIX;
+
+  @Rule
+  public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Before
+  public void indexWithData() {
+    // make sure that the indexes are created with the data files
+    DiskCache2 diskCache = GribIndexCache.getDiskCache2();
+    diskCache.setNeverUseCache(true);
+    diskCache.setAlwaysUseCache(false);
+  }
+
+  @After
+  public void serial() {
+    GribCdmIndex.setIndexBuildPool(null);
+  }
+
+  @Test
+  public void testDirectoryPartition() throws IOException {
+    File root = tempFolder.newFolder("collection");
+    copy(root, "d1", "ds.sky.grib2");
+    copy(root, "d2", "ds.snow.grib2");
+    copy(root, "d3", "ds.sky.grib2", "ds.snow.grib2");
+    FeatureCollectionConfig config = new FeatureCollectionConfig("parallel", "test/parallel",
+        FeatureCollectionType.GRIB2, root.getPath() + "/**/.*grib2$", null, null, null, "directory", null);
+
+    assertThat(GribCdmIndex.updateGribCollection(config, CollectionUpdateType.always, logger)).isTrue();
+    String serialContent = describe(root, config);
+    assertThat(serialContent).contains("Partition parallel-d3");
+    Map<String, byte[]> serial = readIndexes(root);
+    assertThat(serial.keySet()).contains(TOP_INDEX);
+    assertThat(serial.keySet()).contains("d1/ds.sky.grib2.gbx9");
+
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      GribCdmIndex.setIndexBuildPool(pool);
+      assertThat(GribCdmIndex.updateGribCollection(config, CollectionUpdateType.always, logger)).isTrue();
+    } finally {
+      pool.shutdown();
+    }
+    String parallelContent = describe(root, config);
+    Map<String, byte[]> parallel = readIndexes(root);
+
+    assertThat(parallel.keySet()).containsExactlyElementsIn(serial.keySet());
+    for (String name : serial.keySet()) {
+      // the partition index records the modification time of each child index, so only its content is compared
+      if (!name.equals(TOP_INDEX)) {
+        assertWithMessage(name).that(parallel.get(name)).isEqualTo(serial.get(name));
+      }
+    }
+    assertThat(parallelContent).isEqualTo(serialContent);
+  }
+
+  // the datasets, variables and partitions of the partition index
+  private static String describe(File root, FeatureCollectionConfig config) throws IOException {
+    Formatter f = new Formatter();
+    String indexFilename = new File(root, TOP_INDEX).getPath();
+    try (GribCollectionImmutable gc = GribCdmIndex.openCdmIndex(indexFilename, config, false, logger)) {
+      assertThat(gc).isInstanceOf(PartitionCollectionImmutable.class);
+      for (GribCollectionImmutable.Dataset ds : gc.getDatasets()) {
+        f.format("Dataset %s%n", ds.getType());
+        for (GribCollectionImmutable.GroupGC group : ds.getGroups()) {
+          f.format(" Group %s%n", group.getId());
+          for (GribCollectionImmutable.VariableIndex vi : group.getVariables()) {
+            f.format("  %s%n", vi.toStringFrom());
+          }
+        }
+      }
+      for (PartitionCollectionImmutable.Partition partition : ((PartitionCollectionImmutable) gc).getPartitions()) {
+        f.format("Partition %s%n", partition.getName());
+      }
+    }
+    return f.toString();
+  }
+
+  private static void copy(File root, String dirName, String... filenames) throws IOException {
+    File dir = new File(root, dirName);
+    assertThat(dir.mkdir()).isTrue();
+    for (String filename : filenames) {
+      Files.copy(new File(DATA_DIR + filename).toPath(), new File(dir, filename).toPath(),
+          StandardCopyOption.COPY_ATTRIBUTES);
+    }
+  }
+
+  // read the index files, and delete them so that they are recreated
+  private static Map<String, byte[]> readIndexes(File root) throws IOException {
+    Map<String, byte[]> result = new TreeMap<>();
+    File[] dirs = root.listFiles(File::isDirectory);
+    assertThat(dirs).isNotNull();
+    for (File dir : dirs) {
+      readIndexes(dir, dir.getName() + "/", result);
+    }
+    readIndexes(root, "", result);
+    return result;
+  }
+
+  private static void readIndexes(File dir, String prefix, Map<String, byte[]> result) throws IOException {
+    File[] indexes = dir.listFiles((d, name) -> name.endsWith(".gbx9") || name.endsWith(GribCdmIndex.NCX_SUFFIX));
+    assertThat(indexes).isNotNull();
+    for (File index : indexes) {
+      result.put(prefix + index.getName(), Files.readAllBytes(index.toPath()));
+      assertThat(index.delete()).isTrue();
+    }
+  }
+}
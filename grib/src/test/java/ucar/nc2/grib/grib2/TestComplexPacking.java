@@ -0,0 +1,677 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+package ucar.nc2.grib.grib2;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import ucar.nc2.grib.GribNumbers;
+import ucar.nc2.iosp.BitReader;
+import ucar.unidata.io.InMemoryRandomAccessFile;
+import ucar.unidata.io.RandomAccessFile;
+
+/**
+ * Compare the complex packing decoding of {@link Grib2DataReader} (templates 5.2 and 5.3) bit for bit with the
+ * original implementation, which read every field with a {@link BitReader}.
+ */
+public class TestComplexPacking {
+  private static final Logger logger = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+  private static final String DATA_DIR = "../grib/src/test/data/";
+
+  @Test
+  public void testFiles() throws IOException {
+    int nrecords = 0;
+    File[] files = new File(DATA_DIR).listFiles((dir, name) -> name.endsWith(".grib2"));
+    assertThat(files).isNotNull();
+    for (File file : files) {
+      try (RandomAccessFile raf = new RandomAccessFile(file.getPath(), "r")) {
+        raf.order(RandomAccessFile.BIG_ENDIAN);
+        Grib2RecordScanner scanner = new Grib2RecordScanner(raf);
+        while (scanner.hasNext()) {
+          Grib2Record gr = scanner.next();
+          if (gr == null) {
+            break;
+          }
+          Grib2SectionDataRepresentation drss = gr.getDataRepresentationSection();
+          int template = drss.getDataTemplate();
+          if (template != 2 && template != 3) {
+            continue;
+          }
+          Grib2SectionData dataSection = gr.getDataSection();
+          compare(file.getName(), raf, template, gr.getGDSsection().getNumberPoints(), drss.getDataPoints(),
+              drss.getDrs(raf), gr.getBitmapSection(), dataSection.getStartingPosition(), dataSection.getMsgLength());
+          nrecords++;
+        }
+      }
+    }
+    // ds.snow.grib2 and ds.sky.grib2 at least
+    assertThat(nrecords).isAtLeast(2);
+  }
+
+  @Test
+  public void testSynthetic() throws IOException {
+    Random random = new Random(42);
+    for (int template : new int[] {2, 3}) {
+      for (int mvm = 0; mvm <= 2; mvm++) {
+        for (boolean withBitmap : new boolean[] {false, true}) {
+          for (int i = 0; i < 20; i++) {
+            Encoded encoded = new Encoded(random, template, mvm, withBitmap);
+            try (RandomAccessFile raf = new InMemoryRandomAccessFile("synthetic", encoded.bytes)) {
+              raf.order(RandomAccessFile.BIG_ENDIAN);
+              String name = String.format("template %d mvm %d bitmap %s case %d", template, mvm, withBitmap, i);
+              raf.seek(0);
+              Grib2Drs gdrs = Grib2Drs.factory(template, raf);
+              Grib2SectionBitMap bms = new Grib2SectionBitMap(raf);
+              compare(name, raf, template, encoded.totalNPoints, encoded.dataNPoints, gdrs, bms, encoded.dataPos,
+                  encoded.dataLength);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private static void compare(String name, RandomAccessFile raf, int template, int totalNPoints, int dataNPoints,
+      Grib2Drs gdrs, Grib2SectionBitMap bms, long dataPos, int dataLength) throws IOException {
+    // scan mode 0 leaves the data as decoded
+    Grib2DataReader reader = new Grib2DataReader(template, totalNPoints, dataNPoints, 0, 1, dataPos, dataLength);
+    Reference reference = new Reference(dataPos + 5, totalNPoints, dataNPoints, bms.getBitMapIndicator(),
+        bms.getBitmap(raf));
+    float[] expected = (template == 2) ? reference.getData2(raf, (Grib2Drs.Type2) gdrs)
+        : reference.getData3(raf, (Grib2Drs.Type3) gdrs);
+
+    float[] data = reader.getData(raf, bms, gdrs);
+    assertWithMessage(name).that(toBits(data)).isEqualTo(toBits(expected));
+
+    // decoding into an array that holds an earlier record
+    float[] dest = new float[totalNPoints];
+    Arrays.fill(dest, 12345.0f);
+    float[] reused = reader.getData(raf, bms, gdrs, dest);
+    assertWithMessage(name).that(reused).isSameInstanceAs(dest);
+    assertWithMessage(name).that(toBits(reused)).isEqualTo(toBits(expected));
+
+    // the wrong size is not used
+    assertWithMessage(name).that(reader.getData(raf, bms, gdrs, new float[totalNPoints + 1])).hasLength(totalNPoints);
+  }
+
+  private static int[] toBits(float[] data) {
+    int[] bits = new int[data.length];
+    for (int i = 0; i < data.length; i++) {
+      bits[i] = Float.floatToRawIntBits(data[i]);
+    }
+    return bits;
+  }
+
+  /** A data representation, bitmap and data section for random complex packed values. */
+  private static class Encoded {
+    final int totalNPoints;
+    final int dataNPoints;
+    final byte[] bytes;
+    final long dataPos;
+    final int dataLength;
+
+    Encoded(Random random, int template, int mvm, boolean withBitmap) throws IOException {
+      totalNPoints = 500 + random.nextInt(3000);
+      byte[] bitmap = null;
+      if (withBitmap) {
+        bitmap = new byte[(totalNPoints + 7) / 8];
+        random.nextBytes(bitmap);
+        int count = 0;
+        for (int i = 0; i < totalNPoints; i++) {
+          if (GribNumbers.testBitIsSet(bitmap[i / 8], i % 8)) {
+            count++;
+          }
+        }
+        dataNPoints = count;
+      } else {
+        dataNPoints = totalNPoints;
+      }
+      // the number of values that are checked for 5.3
+      int npacked = (mvm == 0) ? dataNPoints : totalNPoints;
+
+      // groups
+      int referenceGroupLength = 5 + random.nextInt(40);
+      int lengthIncrement = 1 + random.nextInt(3);
+      int bitsScaledGroupLength = random.nextInt(5);
+      int referenceGroupWidths = (template == 3) ? random.nextInt(4) : 0;
+      int bitsGroupWidths = random.nextInt(6);
+      int numberOfBits = random.nextInt(17);
+      int[] lengths = new int[npacked];
+      int[] scaledLengths = new int[npacked];
+      int ngroups = 0;
+      int remaining = npacked;
+      while (remaining > 0) {
+        int scaled = random.nextInt(1 << bitsScaledGroupLength);
+        int length = Math.min(referenceGroupLength + scaled * lengthIncrement, remaining);
+        scaledLengths[ngroups] = scaled;
+        lengths[ngroups++] = length;
+        remaining -= length;
+      }
+
+      BitWriter bits = new BitWriter();
+      int descriptorSpatial = random.nextInt(10) == 0 ? 0 : 1 + random.nextInt(4);
+      int orderSpatial = 1 + random.nextInt(2);
+      if (template == 3 && descriptorSpatial > 0) {
+        int maxValue = 1 << Math.min(descriptorSpatial * 8 - 1, 20);
+        for (int i = 0; i < orderSpatial + 1; i++) {
+          bits.writeSigned(random.nextInt(2 * maxValue - 1) - maxValue + 1, descriptorSpatial * 8);
+        }
+        bits.align();
+      }
+      int[] widths = new int[ngroups];
+      int[] refs = new int[ngroups];
+      int maxWidth = Math.min((1 << bitsGroupWidths) - 1, 30 - referenceGroupWidths);
+      for (int g = 0; g < ngroups; g++) {
+        widths[g] = random.nextInt(maxWidth + 1);
+        refs[g] = (random.nextInt(10) == 0) ? (1 << numberOfBits) - 1 : random.nextInt(1 << numberOfBits);
+        bits.write(refs[g], numberOfBits);
+      }
+      bits.align();
+      for (int g = 0; g < ngroups; g++) {
+        bits.write(widths[g], bitsGroupWidths);
+      }
+      bits.align();
+      for (int g = 0; g < ngroups; g++) {
+        bits.write(scaledLengths[g], bitsScaledGroupLength);
+      }
+      bits.align();
+      for (int g = 0; g < ngroups; g++) {
+        int width = widths[g] + referenceGroupWidths;
+        long allOnes = (1L << width) - 1;
+        for (int j = 0; j < lengths[g]; j++) {
+          int choice = random.nextInt(20);
+          long value = (choice == 0) ? allOnes : (choice == 1) ? Math.max(allOnes - 1, 0) : random.nextLong() & allOnes;
+          bits.write(value, width);
+        }
+      }
+      byte[] data = bits.toByteArray();
+
+      ByteArrayOutputStream bytesOut = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytesOut);
+      out.writeFloat(random.nextFloat() * 2000 - 1000); // reference value
+      writeInt2(out, random.nextInt(11) - 5); // binary scale factor
+      writeInt2(out, random.nextInt(6) - 2); // decimal scale factor
+      out.writeByte(numberOfBits);
+      out.writeByte(0);
+      out.writeByte(1); // group splitting method
+      out.writeByte(mvm);
+      out.writeFloat(9999); // primary missing value
+      out.writeFloat(-9999); // secondary missing value
+      out.writeInt(ngroups);
+      out.writeByte(referenceGroupWidths);
+      out.writeByte(bitsGroupWidths);
+      out.writeInt(referenceGroupLength);
+      out.writeByte(lengthIncrement);
+      out.writeInt(lengths[ngroups - 1]);
+      out.writeByte(bitsScaledGroupLength);
+      if (template == 3) {
+        out.writeByte(orderSpatial);
+        out.writeByte(descriptorSpatial);
+      }
+
+      // bitmap section
+      out.writeInt(6 + (withBitmap ? bitmap.length : 0));
+      out.writeByte(6);
+      out.writeByte(withBitmap ? 0 : 255);
+      if (withBitmap) {
+        out.write(bitmap);
+      }
+
+      // data section
+      dataPos = out.size();
+      dataLength = 5 + data.length;
+      out.writeInt(dataLength);
+      out.writeByte(7);
+      out.write(data);
+      bytes = bytesOut.toByteArray();
+    }
+
+    /** Sign bit followed by the magnitude, see Regulation 92.1.5 */
+    private static void writeInt2(DataOutputStream out, int value) throws IOException {
+      out.writeShort(value < 0 ? 0x8000 | -value : value);
+    }
+  }
+
+  /** Packs values most significant bit first, as {@link BitReader} reads them. */
+  private static class BitWriter {
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private int buff;
+    private int nbits;
+
+    void write(long value, int width) {
+      for (int bit = width - 1; bit >= 0; bit--) {
+        buff = (buff << 1) | (int) ((value >>> bit) & 1);
+        if (++nbits == 8) {
+          out.write(buff);
+          buff = 0;
+          nbits = 0;
+        }
+      }
+    }
+
+    void writeSigned(int value, int width) {
+      write(value < 0 ? 1 : 0, 1);
+      write(Math.abs(value), width - 1);
+    }
+
+    void align() {
+      if (nbits > 0) {
+        write(0, 8 - nbits);
+      }
+    }
+
+    byte[] toByteArray() {
+      align();
+      return out.toByteArray();
+    }
+  }
+
+  /** The original implementation of Grib2DataReader.getData2 and getData3, with a missing value of NaN. */
+  private static class Reference {
+    // look up table: 2**i - 1
+    private static final int[] bitsmv1 = new int[31];
+    static {
+      for (int i = 0; i < 31; i++) {
+        bitsmv1[i] = (int) java.lang.Math.pow((double) 2, (double) i) - 1;
+      }
+    }
+
+    private final long dataStart;
+    private final int totalNPoints;
+    private final int dataNPoints;
+    private final int bitmapIndicator;
+    private final byte[] bitmap;
+
+    Reference(long dataStart, int totalNPoints, int dataNPoints, int bitmapIndicator, byte[] bitmap) {
+      this.dataStart = dataStart;
+      this.totalNPoints = totalNPoints;
+      this.dataNPoints = dataNPoints;
+      this.bitmapIndicator = bitmapIndicator;
+      this.bitmap = bitmap;
+    }
+
+    float[] getData2(RandomAccessFile raf, Grib2Drs.Type2 gdrs) throws IOException {
+      int mvm = gdrs.missingValueManagement;
+      float mv = Float.NaN;
+
+      float DD = (float) java.lang.Math.pow((double) 10, (double) gdrs.decimalScaleFactor);
+      float R = gdrs.referenceValue;
+      float EE = (float) java.lang.Math.pow(2.0, (double) gdrs.binaryScaleFactor);
+      float ref_val = R / DD;
+
+      int NG = gdrs.numberOfGroups;
+      if (NG == 0) {
+        return nGroups0(bitmapIndicator, ref_val, mv);
+      }
+
+      BitReader reader = new BitReader(raf, dataStart);
+
+      // 6-xx Get reference values for groups (X1's)
+      int[] X1 = new int[NG];
+      int nb = gdrs.numberOfBits;
+      if (nb != 0) {
+        for (int i = 0; i < NG; i++) {
+          X1[i] = (int) reader.bits2UInt(nb);
+        }
+      }
+
+      // [xx +1 ]-yy Get number of bits used to encode each group
+      int[] NB = new int[NG];
+      nb = gdrs.bitsGroupWidths;
+      if (nb != 0) {
+        reader.incrByte();
+        for (int i = 0; i < NG; i++) {
+          NB[i] = (int) reader.bits2UInt(nb);
+        }
+      }
+
+      // [yy +1 ]-zz Get the scaled group lengths using formula
+      // Ln = ref + Kn * len_inc, where n = 1-NG,
+      // ref = referenceGroupLength, and len_inc = lengthIncrement
+
+      int[] L = new int[NG];
+      int ref = gdrs.referenceGroupLength;
+      int len_inc = gdrs.lengthIncrement;
+      nb = gdrs.bitsScaledGroupLength;
+
+      reader.incrByte();
+      for (int i = 0; i < NG; i++) {
+        L[i] = ref + (int) reader.bits2UInt(nb) * len_inc;
+      }
+      L[NG - 1] = gdrs.lengthLastGroup; // enter Length of Last Group
+
+      float[] data = new float[totalNPoints];
+
+      // [zz +1 ]-nn get X2 values and calculate the results Y using formula
+      int count = 0;
+      reader.incrByte();
+      for (int i = 0; i < NG; i++) {
+        for (int j = 0; j < L[i]; j++) {
+          if (NB[i] == 0) {
+            if (mvm == 0) { // X2 = 0
+              data[count++] = (R + X1[i] * EE) / DD;
+            } else { // if (mvm == 1) || (mvm == 2 )
+              data[count++] = mv;
+            }
+          } else {
+            int X2 = (int) reader.bits2UInt(NB[i]);
+            if (mvm == 0) {
+              data[count++] = (R + (X1[i] + X2) * EE) / DD;
+            } else { // if (mvm == 1) || (mvm == 2 )
+              if (X2 == bitsmv1[NB[i]]) {
+                data[count++] = mv;
+              } else {
+                data[count++] = (R + (X1[i] + X2) * EE) / DD;
+              }
+            }
+          }
+        } // end for j
+      } // end for i
+
+      if (bitmap != null) {
+        int idx = 0;
+        float[] tmp = new float[totalNPoints];
+        for (int i = 0; i < totalNPoints; i++) {
+          if (GribNumbers.testBitIsSet(bitmap[i / 8], i % 8)) {
+            tmp[i] = data[idx++];
+          } else {
+            tmp[i] = mv;
+          }
+        }
+        data = tmp;
+      }
+
+      return data;
+    }
+
+    float[] getData3(RandomAccessFile raf, Grib2Drs.Type3 gdrs) throws IOException {
+      int mvm = gdrs.missingValueManagement;
+      float mv = Float.NaN;
+
+      float DD = (float) java.lang.Math.pow((double) 10, (double) gdrs.decimalScaleFactor);
+      float R = gdrs.referenceValue;
+      float EE = (float) java.lang.Math.pow(2.0, (double) gdrs.binaryScaleFactor);
+      float ref_val = R / DD;
+
+      int NG = gdrs.numberOfGroups;
+      if (NG == 0) {
+        return nGroups0(bitmapIndicator, ref_val, mv);
+      }
+
+      BitReader reader = new BitReader(raf, dataStart);
+
+      int ival1;
+      int ival2 = 0;
+      int minsd;
+
+      // [6-ww] 1st values of undifferenced scaled values and minimums
+      int os = gdrs.orderSpatial;
+      int nbitsd = gdrs.descriptorSpatial;
+      int sign;
+      // ds is number of bytes, convert to bits -1 for sign bit
+      nbitsd = nbitsd * 8;
+      if (nbitsd > 0) { // first order spatial differencing g1 and gMin
+        sign = (int) reader.bits2UInt(1);
+        ival1 = (int) reader.bits2UInt(nbitsd - 1);
+        if (sign == 1) {
+          ival1 = -ival1;
+        }
+        if (os == 2) { // second order spatial differencing h1, h2, hMin
+          sign = (int) reader.bits2UInt(1);
+          ival2 = (int) reader.bits2UInt(nbitsd - 1);
+          if (sign == 1) {
+            ival2 = -ival2;
+          }
+        }
+        sign = (int) reader.bits2UInt(1);
+        minsd = (int) reader.bits2UInt(nbitsd - 1);
+        if (sign == 1) {
+          minsd = -minsd;
+        }
+
+      } else {
+        float[] data = new float[totalNPoints];
+        for (int i = 0; i < totalNPoints; i++) {
+          data[i] = mv;
+        }
+        return data;
+      }
+
+      // [ww +1]-xx Get reference values for groups (X1's)
+      int[] X1 = new int[NG]; // initialized to zero
+      int nb = gdrs.numberOfBits;
+      if (nb != 0) {
+        reader.incrByte();
+        for (int i = 0; i < NG; i++) {
+          X1[i] = (int) reader.bits2UInt(nb);
+        }
+      }
+
+      // [xx +1 ]-yy Get number of bits used to encode each group
+      // NB == gwidth
+      int[] NB = new int[NG]; // initialized to zero
+      nb = gdrs.bitsGroupWidths;
+      if (nb != 0) {
+        reader.incrByte();
+        for (int i = 0; i < NG; i++) {
+          NB[i] = (int) reader.bits2UInt(nb);
+        }
+      }
+
+      int referenceGroupWidths = gdrs.referenceGroupWidths;
+      for (int i = 0; i < NG; i++) {
+        NB[i] += referenceGroupWidths;
+      }
+
+      // [yy +1 ]-zz Get the scaled group lengths using formula
+      // Ln = ref + Kn * len_inc, where n = 1-NG,
+      // ref = referenceGroupLength, and len_inc = lengthIncrement
+
+      int[] L = new int[NG]; // initialized to zero
+      int referenceGroupLength = gdrs.referenceGroupLength;
+      nb = gdrs.bitsScaledGroupLength;
+      int len_inc = gdrs.lengthIncrement;
+
+      if (nb != 0) {
+        reader.incrByte();
+        for (int i = 0; i < NG; i++) {
+          L[i] = (int) reader.bits2UInt(nb);
+        }
+      }
+
+      int totalL = 0;
+      for (int i = 0; i < NG; i++) {
+        L[i] = L[i] * len_inc + referenceGroupLength;
+        totalL += L[i];
+      }
+      totalL -= L[NG - 1];
+      totalL += gdrs.lengthLastGroup;
+
+      // enter Length of Last Group
+      L[NG - 1] = gdrs.lengthLastGroup;
+
+      // test
+      if (mvm != 0) {
+        if (totalL != totalNPoints) {
+          logger.warn("NPoints != gds.nPts: " + totalL + "!=" + totalNPoints);
+          float[] data = new float[totalNPoints];
+          for (int i = 0; i < totalNPoints; i++) {
+            data[i] = mv;
+          }
+          return data;
+        }
+      } else {
+        if (totalL != dataNPoints) {
+          logger.warn("NPoints != drs.nPts: " + totalL + "!=" + totalNPoints);
+          float[] data = new float[totalNPoints];
+          for (int i = 0; i < totalNPoints; i++) {
+            data[i] = mv;
+          }
+          return data;
+        }
+      }
+
+      float[] data = new float[totalNPoints];
+
+      // [zz +1 ]-nn get X2 values and calculate the results Y using formula
+      int count = 0;
+      reader.incrByte();
+      int dataSize = 0;
+      boolean[] dataBitMap = null;
+      if (mvm == 0) {
+        for (int i = 0; i < NG; i++) {
+          if (NB[i] != 0) {
+            for (int j = 0; j < L[i]; j++) {
+              data[count++] = (int) reader.bits2UInt(NB[i]) + X1[i];
+            }
+          } else {
+            for (int j = 0; j < L[i]; j++) {
+              data[count++] = X1[i];
+            }
+          }
+        } // end for i
+
+      } else if (mvm == 1 || mvm == 2) {
+        // don't add missing values into data but keep track of them in dataBitMap
+        dataBitMap = new boolean[totalNPoints];
+        dataSize = 0;
+        for (int i = 0; i < NG; i++) {
+          if (NB[i] != 0) {
+            int msng1 = bitsmv1[NB[i]];
+            int msng2 = msng1 - 1;
+            for (int j = 0; j < L[i]; j++) {
+              data[count] = (int) reader.bits2UInt(NB[i]);
+              if (data[count] == msng1 || mvm == 2 && data[count] == msng2) {
+                dataBitMap[count] = false;
+              } else {
+                dataBitMap[count] = true;
+                data[dataSize++] = data[count] + X1[i];
+              }
+              count++;
+            }
+          } else { // (NB[i] == 0
+            int msng1 = bitsmv1[gdrs.numberOfBits];
+            int msng2 = msng1 - 1;
+            if (X1[i] == msng1) {
+              for (int j = 0; j < L[i]; j++) {
+                dataBitMap[count++] = false;
+              }
+              // data[count++] = X1[i];
+            } else if (mvm == 2 && X1[i] == msng2) {
+              for (int j = 0; j < L[i]; j++) {
+                dataBitMap[count++] = false;
+              }
+            } else {
+              for (int j = 0; j < L[i]; j++) {
+                dataBitMap[count] = true;
+                data[dataSize++] = X1[i];
+                count++;
+              }
+            }
+          }
+        } // end for i
+      }
+
+      // first order spatial differencing
+      if (os == 1) { // g1 and gMin
+        // encoded by G(n) = F(n) - F(n -1 )
+        // decoded by F(n) = G(n) + F(n -1 )
+        // data[] at this point contains G0, G1, G2, ....
+        data[0] = ival1;
+        int itemp;
+        if (mvm == 0) { // no missing values
+          itemp = totalNPoints;
+        } else {
+          itemp = dataSize;
+        }
+        for (int i = 1; i < itemp; i++) {
+          data[i] += minsd;
+          data[i] = data[i] + data[i - 1];
+        }
+      } else if (os == 2) { // 2nd order
+        data[0] = ival1;
+        data[1] = ival2;
+        int itemp;
+        if (mvm == 0) { // no missing values
+          itemp = totalNPoints;
+        } else {
+          itemp = dataSize;
+        }
+        for (int i = 2; i < itemp; i++) {
+          data[i] += minsd;
+          data[i] = data[i] + (2 * data[i - 1]) - data[i - 2];
+        }
+      }
+
+      if (mvm == 0) { // no missing values
+        for (int i = 0; i < data.length; i++) {
+          data[i] = (R + (data[i] * EE)) / DD;
+        }
+      } else if (mvm == 1 || mvm == 2) { // missing value == 1 || missing value == 2
+        int count2 = 0;
+        float[] tmp = new float[totalNPoints];
+        for (int i = 0; i < data.length; i++) {
+          if (dataBitMap[i]) {
+            tmp[i] = (R + (data[count2++] * EE)) / DD;
+          } else { // mvm = 1 or 2
+            tmp[i] = mv;
+          }
+        }
+        data = tmp;
+      }
+
+      // bit map is used
+      if (bitmap != null) {
+        int idx = 0;
+        float[] tmp = new float[totalNPoints];
+        for (int i = 0; i < totalNPoints; i++) {
+          if (GribNumbers.testBitIsSet(bitmap[i / 8], i % 8)) {
+            tmp[i] = data[idx++];
+          } else {
+            tmp[i] = mv;
+          }
+        }
+        data = tmp;
+      }
+
+      return data;
+    }
+
+    private float[] nGroups0(int bitmap_flag, float ref, float mv1) {
+      float[] data = new float[totalNPoints];
+      if (bitmap_flag == 255) {
+        for (int i = 0; i < totalNPoints; i++) {
+          data[i] = ref;
+        }
+
+      } else if (bitmap_flag == 0 || bitmap_flag == 254) {
+        int mask = 0;
+        int mask_pointer = 0;
+        for (int i = 0; i < totalNPoints; i++) {
+          if ((i & 7) == 0) {
+            mask = bitmap[mask_pointer];
+            mask_pointer++;
+          }
+          data[i] = ((mask & 128) == 0) ? ref : mv1;
+          mask <<= 1;
+        }
+
+      } else {
+        throw new IllegalArgumentException("unknown bitmap type =" + bitmap_flag);
+      }
+      return data;
+    }
+  }
+}
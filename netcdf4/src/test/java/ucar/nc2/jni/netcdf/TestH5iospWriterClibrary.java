@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2024 University Corporation for Atmospheric Research/Unidata
+ * See LICENSE for license information.
+ */
+
+package ucar.nc2.jni.netcdf;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Formatter;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import ucar.ma2.Array;
+import ucar.ma2.ArrayObject;
+import ucar.ma2.DataType;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.Attribute;
+import ucar.nc2.Dimension;
+import ucar.nc2.Group;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFileSubclass;
+import ucar.nc2.NetcdfFileWriter;
+import ucar.nc2.NetcdfFiles;
+import ucar.nc2.Variable;
+import ucar.nc2.util.CompareNetcdf2;
+import ucar.nc2.write.Nc4Chunking;
+import ucar.nc2.write.Nc4ChunkingStrategy;
+import ucar.nc2.write.NetcdfFileFormat;
+import ucar.nc2.write.NetcdfFormatWriter;
+import ucar.unidata.io.RandomAccessFile;
+
+/** Read netCDF-4 files written in pure Java by H5iospWriter with the netCDF-C library. */
+public class TestH5iospWriterClibrary {
+
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
+  @Before
+  public void setLibrary() {
+    // Ignore this class's tests if NetCDF-4 isn't present.
+    assumeTrue("NetCDF-4 C library not present.", Nc4Iosp.isClibraryPresent());
+  }
+
+  @Test
+  public void testNetcdf4() throws IOException, InvalidRangeException {
+    compare(write(NetcdfFileFormat.NETCDF4));
+  }
+
+  @Test
+  public void testNetcdf4Classic() throws IOException, InvalidRangeException {
+    compare(write(NetcdfFileFormat.NETCDF4_CLASSIC));
+  }
+
+  private String write(NetcdfFileFormat format) throws IOException, InvalidRangeException {
+    boolean classic = format == NetcdfFileFormat.NETCDF4_CLASSIC;
+    String location = tempFolder.newFile().getAbsolutePath();
+    Nc4Chunking chunker = Nc4ChunkingStrategy.factory(Nc4Chunking.Strategy.standard, 5, true);
+    NetcdfFormatWriter.Builder builder =
+        NetcdfFormatWriter.createNewNetcdf4(format, location, chunker).setUsePureJava(true);
+    builder.addAttribute(new Attribute("title", "written in pure Java"));
+    builder.addAttribute(Attribute.builder("levels").setValues(Arrays.asList(1, 2, 3), false).build());
+    builder.addUnlimitedDimension("time");
+    builder.addDimension("y", 40);
+    builder.addDimension("x", 50);
+    builder.addDimension("strlen", 6);
+    builder.addVariable("time", DataType.DOUBLE, "time").addAttribute(new Attribute("units", "days since 2000-01-01"));
+    builder.addVariable("data", DataType.FLOAT, "time y x").addAttribute(new Attribute("_FillValue", -99f));
+    builder.addVariable("counts", DataType.SHORT, "y x");
+    builder.addVariable("names", DataType.CHAR, "y strlen");
+    if (!classic) {
+      builder.addVariable("labels", DataType.STRING, "x");
+    }
+    Group.Builder nested = Group.builder().setName("nested").addAttribute(new Attribute("level", 2));
+    nested.addDimension(new Dimension("z", 7));
+    builder.getRootGroup().addGroup(nested);
+    nested.addVariable(Variable.builder().setName("z").setDataType(DataType.DOUBLE).setParentGroupBuilder(nested)
+        .setDimensionsByName("z"));
+
+    try (NetcdfFormatWriter writer = builder.build()) {
+      Variable data = writer.findVariable("data");
+      Variable time = writer.findVariable("time");
+      for (int t = 0; t < 5; t++) {
+        writer.write(data, new int[] {t, 0, 0},
+            Array.makeArray(DataType.FLOAT, 40 * 50, t * 1000, 0.25).reshape(new int[] {1, 40, 50}));
+        writer.write(time, new int[] {t}, Array.makeArray(DataType.DOUBLE, 1, t, 0));
+      }
+      writer.write(writer.findVariable("counts"),
+          Array.makeArray(DataType.SHORT, 40 * 50, 0, 1).reshape(new int[] {40, 50}));
+      ArrayObject names = new ArrayObject(DataType.STRING, String.class, false, new int[] {40});
+      for (int j = 0; j < 40; j++) {
+        names.setObject(j, "name" + j);
+      }
+      writer.writeStringDataToChar(writer.findVariable("names"), names);
+      if (!classic) {
+        ArrayObject labels = new ArrayObject(DataType.STRING, String.class, false, new int[] {50});
+        for (int i = 0; i < 50; i++) {
+          labels.setObject(i, "label " + i);
+        }
+        writer.write(writer.findVariable("labels"), labels);
+      }
+      writer.write(writer.findVariable("nested/z"), Array.makeArray(DataType.DOUBLE, 7, 0.5, 1));
+    }
+    return location;
+  }
+
+  private void compare(String location) throws IOException {
+    try (NetcdfFile ncfile = NetcdfFiles.open(location); NetcdfFile jni = openJni(location)) {
+      assertThat(jni.findVariable("data").getShape()).isEqualTo(new int[] {5, 40, 50});
+      Formatter f = new Formatter();
+      boolean ok = new CompareNetcdf2(f, false, false, true).compare(ncfile, jni,
+          new CompareNetcdf2.Netcdf4ObjectFilter());
+      assertWithMessage(f.toString()).that(ok).isTrue();
+    }
+  }
+
+  private NetcdfFile openJni(String location) throws IOException {
+    Nc4Iosp iosp = new Nc4Iosp(NetcdfFileWriter.Version.netcdf4);
+    NetcdfFile ncfile = new NetcdfFileSubclass(iosp, location);
+    RandomAccessFile raf = new RandomAccessFile(location, "r");
+    iosp.open(raf, ncfile, null);
+    return ncfile;
+  }
+}